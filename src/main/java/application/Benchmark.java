@@ -0,0 +1,1226 @@
+package application;
+
+import application.Entity.AllocationGroupInfo;
+import application.Entity.DefragReport;
+import application.Entity.DiskConfig;
+import application.Enum.AllocationPolicy;
+import application.Enum.DurabilityMode;
+import application.Enum.EntryAttribute;
+import application.Enum.EvictionPolicy;
+import application.Enum.FormatMode;
+import application.Enum.MountMode;
+import application.Manager.BlockCache;
+import application.Manager.BufferPool;
+import application.Manager.DiskManager;
+import application.Manager.Journal;
+import application.Service.EntryOperator;
+import application.Service.FileSystem;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * 磁盘性能基准测试，直接运行main方法，使用临时磁盘文件，不影响disk.dat
+ */
+public class Benchmark {
+    private static final int WARMUP_ROUNDS = 2_000; // 预热次数
+    private static final int ROUNDS = 20_000; // 计时次数
+
+    public static void main(String[] args) {
+        System.out.println("benchmark1----------------------------------");
+        benchmark1();
+        System.out.println("benchmark2----------------------------------");
+        benchmark2();
+        System.out.println("benchmark3----------------------------------");
+        benchmark3();
+        System.out.println("benchmark4----------------------------------");
+        benchmark4();
+        System.out.println("benchmark5----------------------------------");
+        benchmark5();
+        System.out.println("benchmark6----------------------------------");
+        benchmark6();
+        System.out.println("benchmark7----------------------------------");
+        benchmark7();
+        System.out.println("benchmark8----------------------------------");
+        benchmark8();
+        System.out.println("benchmark9----------------------------------");
+        benchmark9();
+        System.out.println("benchmark10---------------------------------");
+        benchmark10();
+        System.out.println("benchmark11---------------------------------");
+        benchmark11();
+        System.out.println("benchmark12---------------------------------");
+        benchmark12();
+        System.out.println("benchmark13---------------------------------");
+        benchmark13();
+        System.out.println("benchmark14---------------------------------");
+        benchmark14();
+        System.out.println("benchmark15---------------------------------");
+        benchmark15();
+        System.out.println("benchmark16---------------------------------");
+        benchmark16();
+        System.out.println("benchmark17---------------------------------");
+        benchmark17();
+        System.out.println("benchmark18---------------------------------");
+        benchmark18();
+        System.out.println("benchmark19---------------------------------");
+        benchmark19();
+        System.out.println("benchmark20---------------------------------");
+        benchmark20();
+        System.out.println("benchmark21---------------------------------");
+        benchmark21();
+        System.out.println("benchmark22---------------------------------");
+        benchmark22();
+        System.out.println("benchmark23---------------------------------");
+        benchmark23();
+    }
+
+    // 基准测试1，比较每次打开RandomAccessFile的旧读写方式与常驻FileChannel的单块读写延迟
+    private static void benchmark1() {
+        File image = tempDisk("bench1");
+        try (DiskManager disk = new DiskManager(image)) {
+            Random random = new Random(1);
+            int[] indices = new int[ROUNDS];
+            for (int i = 0; i < ROUNDS; i++) {
+                indices[i] = disk.getUserAreaStart() + random.nextInt(disk.getDiskSize() - disk.getUserAreaStart());
+            }
+            int blockSize = disk.getBlockSize();
+            byte[] data = new byte[blockSize];
+
+            // 预热
+            for (int i = 0; i < WARMUP_ROUNDS; i++) {
+                legacyReadBlock(image, indices[i], blockSize);
+                disk.readBlock(indices[i]);
+            }
+
+            long start = System.nanoTime();
+            for (int index : indices) legacyReadBlock(image, index, blockSize);
+            report("legacy readBlock", System.nanoTime() - start, ROUNDS);
+
+            start = System.nanoTime();
+            for (int index : indices) disk.readBlock(index);
+            report("channel readBlock", System.nanoTime() - start, ROUNDS);
+
+            start = System.nanoTime();
+            for (int index : indices) legacyWriteBlock(image, index, blockSize, data);
+            report("legacy writeBlock", System.nanoTime() - start, ROUNDS);
+
+            start = System.nanoTime();
+            for (int index : indices) disk.writeBlock(index, data);
+            report("channel writeBlock", System.nanoTime() - start, ROUNDS);
+        } finally {
+            image.delete();
+        }
+    }
+
+    // 基准测试2，比较通道模式与内存映射模式下的目录路径查找和FAT访问
+    private static void benchmark2() {
+        for (MountMode mode : MountMode.values()) {
+            File image = tempDisk("bench2");
+            try {
+                FileSystem fileSystem = new FileSystem(new DiskConfig(image, mode));
+                fileSystem.createDir("/a", EntryAttribute.DIRECTORY.getValue());
+                fileSystem.createDir("/a/b", EntryAttribute.DIRECTORY.getValue());
+                fileSystem.createDir("/a/b/c", EntryAttribute.DIRECTORY.getValue());
+                for (int i = 0; i < WARMUP_ROUNDS; i++) fileSystem.listDir("/a/b/c");
+                long start = System.nanoTime();
+                for (int i = 0; i < ROUNDS; i++) fileSystem.listDir("/a/b/c");
+                report(mode + " listDir /a/b/c", System.nanoTime() - start, ROUNDS);
+                fileSystem.close();
+
+                try (DiskManager disk = new DiskManager(new DiskConfig(image, mode))) {
+                    start = System.nanoTime();
+                    for (int i = 0; i < ROUNDS; i++) disk.readBlock(DiskManager.ROOT_DIR_POS);
+                    report(mode + " readBlock root", System.nanoTime() - start, ROUNDS);
+
+                    start = System.nanoTime();
+                    for (int i = 0; i < ROUNDS; i++) {
+                        int index = disk.getUserAreaStart() + i % (disk.getDiskSize() - disk.getUserAreaStart());
+                        disk.setFatEntry(index, disk.getFatEntry(index));
+                    }
+                    report(mode + " get+setFatEntry", System.nanoTime() - start, ROUNDS);
+                }
+            } finally {
+                image.delete();
+            }
+        }
+    }
+
+    // 基准测试3，在热点访问夹杂顺序扫描的负载下比较各淘汰策略和缓存大小的命中率
+    private static void benchmark3() {
+        for (EvictionPolicy policy : EvictionPolicy.values()) {
+            for (int cacheBlocks : new int[]{8, 32}) {
+                File image = tempDisk("bench3");
+                DiskConfig config = new DiskConfig(image, MountMode.CHANNEL);
+                config.setCacheBlocks(cacheBlocks);
+                config.setEvictionPolicy(policy);
+                try (DiskManager disk = new DiskManager(config)) {
+                    int[] trace = hotScanTrace(disk);
+                    long start = System.nanoTime();
+                    for (int index : trace) disk.readBlock(index);
+                    report(policy + " x" + cacheBlocks + " readBlock", System.nanoTime() - start, ROUNDS);
+                    BlockCache cache = disk.getBlockCache();
+                    System.out.println("    " + cache);
+                } finally {
+                    image.delete();
+                }
+            }
+        }
+    }
+
+    // 基准测试4，不同几何参数（最大为1M个4KB块，即4GB）下的格式化、挂载、分配和FAT查找
+    private static void benchmark4() {
+        int blockSize = 4096;
+        int chainLength = 10_000;
+        for (int diskSize : new int[]{16 * 1024, 256 * 1024, 1024 * 1024}) {
+            File image = tempDisk("bench4");
+            DiskConfig config = new DiskConfig(image, MountMode.CHANNEL);
+            config.setGeometry(diskSize, blockSize);
+            try {
+                long start = System.nanoTime();
+                new DiskManager(config).close();
+                System.out.printf("%d blocks x %d B (%d MB): format %.1f ms%n",
+                        diskSize, blockSize, ((long) diskSize * blockSize) >> 20, (System.nanoTime() - start) / 1e6);
+
+                start = System.nanoTime();
+                try (DiskManager disk = new DiskManager(config)) {
+                    System.out.printf("    mount %.1f ms%n", (System.nanoTime() - start) / 1e6);
+
+                    // 分配一条链
+                    start = System.nanoTime();
+                    int head = disk.allocateBlock();
+                    int prev = head;
+                    for (int i = 1; i < chainLength; i++) {
+                        int next = disk.allocateBlock();
+                        disk.setFatEntry(prev, next);
+                        prev = next;
+                    }
+                    report("    allocateBlock+link", System.nanoTime() - start, chainLength);
+
+                    // 沿FAT链查找
+                    start = System.nanoTime();
+                    int count = 0;
+                    for (int cur = head; cur != -1; cur = disk.getFatEntry(cur)) count++;
+                    report("    chain walk", System.nanoTime() - start, count);
+
+                    // 随机读取整个磁盘范围内的块
+                    Random random = new Random(4);
+                    start = System.nanoTime();
+                    for (int i = 0; i < ROUNDS; i++) {
+                        disk.readBlock(disk.getUserAreaStart() + random.nextInt(diskSize - disk.getUserAreaStart()));
+                    }
+                    report("    random readBlock", System.nanoTime() - start, ROUNDS);
+                }
+            } finally {
+                image.delete();
+            }
+        }
+    }
+
+    // 基准测试5，大FAT（1M个条目）下每个操作后同步一次：分配4块的链并回收，只写回脏的FAT块
+    private static void benchmark5() {
+        File image = tempDisk("bench5");
+        DiskConfig config = new DiskConfig(image, MountMode.CHANNEL);
+        config.setGeometry(1024 * 1024, 4096);
+        try (DiskManager disk = new DiskManager(config)) {
+            int files = 5_000;
+            long start = System.nanoTime();
+            for (int i = 0; i < files; i++) {
+                int head = disk.allocateBlock();
+                int prev = head;
+                for (int j = 1; j < 4; j++) {
+                    int next = disk.allocateBlock();
+                    disk.setFatEntry(prev, next);
+                    prev = next;
+                }
+                disk.flush();
+                disk.freeChain(head);
+                disk.flush();
+            }
+            report("alloc4+flush+free+flush", System.nanoTime() - start, files);
+        } finally {
+            image.delete();
+        }
+    }
+
+    // 基准测试6，比较各分配策略在顺序负载和混合负载下的分配耗时和碎片情况
+    private static void benchmark6() {
+        for (AllocationPolicy policy : AllocationPolicy.values()) {
+            for (boolean mixed : new boolean[]{false, true}) {
+                File image = tempDisk("bench6");
+                DiskConfig config = new DiskConfig(image, MountMode.CHANNEL);
+                config.setGeometry(256 * 1024, 512);
+                config.setAllocationPolicy(policy);
+                try (DiskManager disk = new DiskManager(config)) {
+                    Random random = new Random(6);
+                    List<Integer> files = new ArrayList<>();
+                    int fallbacks = 0;
+                    long start = System.nanoTime();
+                    for (int i = 0; i < ROUNDS; i++) {
+                        // 混合负载：随机长度，三分之一的操作删除一个已有文件
+                        if (mixed && !files.isEmpty() && random.nextInt(3) == 0) {
+                            disk.freeChain(files.remove(random.nextInt(files.size())));
+                            continue;
+                        }
+                        int length = mixed ? 1 + random.nextInt(32) : 8;
+                        if (disk.getFreeBlockCount() < length) {
+                            disk.freeChain(files.remove(0));
+                            continue;
+                        }
+                        int head = disk.allocateRun(length);
+                        if (head == -1) {
+                            // 没有足够长的连续段时像writeFile一样逐块分配并链接
+                            fallbacks++;
+                            head = disk.allocateBlock();
+                            for (int j = 1, prev = head; j < length; j++) {
+                                int next = disk.allocateBlock();
+                                disk.setFatEntry(prev, next);
+                                prev = next;
+                            }
+                        }
+                        files.add(head);
+                    }
+                    report(policy + (mixed ? " mixed" : " sequential"), System.nanoTime() - start, ROUNDS);
+                    System.out.println("    fallbacks=" + fallbacks + " " + disk.getFragmentationReport());
+                } finally {
+                    image.delete();
+                }
+            }
+        }
+    }
+
+    // 基准测试7，比较快速格式化（稀疏文件）和完整格式化（大块写0）的耗时
+    private static void benchmark7() {
+        for (FormatMode formatMode : FormatMode.values()) {
+            for (int diskSize : new int[]{256 * 1024, 1024 * 1024}) {
+                File image = tempDisk("bench7");
+                DiskConfig config = new DiskConfig(image, MountMode.CHANNEL);
+                config.setGeometry(diskSize, 4096);
+                config.setFormatMode(formatMode);
+                try {
+                    long start = System.nanoTime();
+                    new DiskManager(config).close();
+                    System.out.printf("%s format %d MB: %.1f ms%n",
+                            formatMode, ((long) diskSize * 4096) >> 20, (System.nanoTime() - start) / 1e6);
+                } finally {
+                    image.delete();
+                }
+            }
+        }
+    }
+
+    // 基准测试8，不使用缓存时逐块读取与批量读取一条256块的连续FAT链
+    private static void benchmark8() {
+        File image = tempDisk("bench8");
+        DiskConfig config = new DiskConfig(image, MountMode.CHANNEL);
+        config.setCacheBlocks(0);
+        config.setGeometry(4096, 128);
+        try (DiskManager disk = new DiskManager(config)) {
+            int length = 256;
+            int[] chain = disk.getChain(disk.allocateRun(length), length);
+            ByteBuffer[] buffers = new ByteBuffer[length];
+            int rounds = ROUNDS / 10;
+
+            // 预热
+            for (int r = 0; r < rounds; r++) {
+                for (int index : chain) disk.readBlock(index);
+                for (int i = 0; i < length; i++) buffers[i] = ByteBuffer.allocate(disk.getBlockSize());
+                disk.readBlocks(chain, buffers);
+                for (int i = 0; i < length; i++) buffers[i].flip();
+                disk.writeBlocks(chain, buffers);
+            }
+
+            long start = System.nanoTime();
+            for (int r = 0; r < rounds; r++) {
+                for (int index : chain) disk.readBlock(index);
+            }
+            report("readBlock x" + length, System.nanoTime() - start, rounds);
+
+            start = System.nanoTime();
+            for (int r = 0; r < rounds; r++) {
+                for (int i = 0; i < length; i++) buffers[i] = ByteBuffer.allocate(disk.getBlockSize());
+                disk.readBlocks(chain, buffers);
+            }
+            report("readBlocks x" + length, System.nanoTime() - start, rounds);
+
+            start = System.nanoTime();
+            for (int r = 0; r < rounds; r++) {
+                for (int i = 0; i < length; i++) buffers[i].flip();
+                disk.writeBlocks(chain, buffers);
+            }
+            report("writeBlocks x" + length, System.nanoTime() - start, rounds);
+        } finally {
+            image.delete();
+        }
+    }
+
+    // 基准测试9，不使用缓存时逐块同步读取与多个异步读取同时在途的吞吐量，以及异步写
+    private static void benchmark9() {
+        File image = tempDisk("bench9");
+        DiskConfig config = new DiskConfig(image, MountMode.CHANNEL);
+        config.setCacheBlocks(0);
+        config.setGeometry(16 * 1024, 4096);
+        config.setAsyncIo(4, 32);
+        try (DiskManager disk = new DiskManager(config)) {
+            Random random = new Random(9);
+            int[] indices = new int[ROUNDS];
+            for (int i = 0; i < ROUNDS; i++) {
+                indices[i] = disk.getUserAreaStart() + random.nextInt(disk.getDiskSize() - disk.getUserAreaStart());
+            }
+            byte[] data = new byte[disk.getBlockSize()];
+            CompletableFuture<?>[] futures = new CompletableFuture<?>[ROUNDS];
+
+            // 预热
+            for (int i = 0; i < WARMUP_ROUNDS; i++) {
+                disk.readBlock(indices[i]);
+                disk.readBlockAsync(indices[i]).join();
+            }
+            disk.getAsyncEngine().resetStats();
+
+            long start = System.nanoTime();
+            for (int index : indices) disk.readBlock(index);
+            report("sync readBlock", System.nanoTime() - start, ROUNDS);
+
+            start = System.nanoTime();
+            for (int i = 0; i < ROUNDS; i++) futures[i] = disk.readBlockAsync(indices[i]);
+            CompletableFuture.allOf(futures).join();
+            report("readBlockAsync", System.nanoTime() - start, ROUNDS);
+            System.out.println("    " + disk.getAsyncEngine());
+            disk.getAsyncEngine().resetStats();
+
+            start = System.nanoTime();
+            for (int i = 0; i < ROUNDS; i++) futures[i] = disk.writeBlockAsync(indices[i], data);
+            CompletableFuture.allOf(futures).join();
+            report("writeBlockAsync", System.nanoTime() - start, ROUNDS);
+            System.out.println("    " + disk.getAsyncEngine());
+        } finally {
+            image.delete();
+        }
+    }
+
+    // 基准测试10，稳定状态下每次操作在堆上分配的字节数：返回新数组的readBlock与读入租用缓冲区的readBlock，以及目录查找
+    private static void benchmark10() {
+        for (int cacheBlocks : new int[]{0, 64}) {
+            File image = tempDisk("bench10");
+            DiskConfig config = new DiskConfig(image, MountMode.CHANNEL);
+            config.setCacheBlocks(cacheBlocks);
+            config.setDirectBuffers(true);
+            FileSystem fileSystem = new FileSystem(config);
+            try {
+                fileSystem.createDir("/a", EntryAttribute.DIRECTORY.getValue());
+                fileSystem.createDir("/a/b", EntryAttribute.DIRECTORY.getValue());
+                fileSystem.createDir("/a/b/c", EntryAttribute.DIRECTORY.getValue());
+                fileSystem.createFile("/a/b/c/x.tx", EntryAttribute.NORMAL_FILE.getValue());
+                DiskManager disk = fileSystem.getDiskManager();
+                EntryOperator entryOperator = new EntryOperator(disk);
+                int dirBlock = entryOperator.findDirBlockIndex("/a/b/c");
+                BufferPool bufferPool = disk.getBufferPool();
+                System.out.println("cacheBlocks=" + cacheBlocks);
+
+                measureAllocation("readBlock(int)", () -> disk.readBlock(dirBlock));
+                measureAllocation("readBlock(int, buffer)", () -> {
+                    ByteBuffer buffer = bufferPool.lease();
+                    disk.readBlock(dirBlock, buffer);
+                    bufferPool.release(buffer);
+                });
+                measureAllocation("findDirBlockIndex", () -> entryOperator.findDirBlockIndex("/a/b/c"));
+                measureAllocation("findEntry miss", () -> entryOperator.findEntryInDirectory(dirBlock, "y.tx", EntryAttribute.NORMAL_FILE.getValue()));
+                measureAllocation("findEntry hit", () -> entryOperator.findEntryInDirectory(dirBlock, "x.tx", EntryAttribute.NORMAL_FILE.getValue()));
+                System.out.println("    " + bufferPool);
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            } finally {
+                fileSystem.close();
+                image.delete();
+            }
+        }
+    }
+
+    // 基准测试11，多个线程同时修改各自的目录块并提交事务，组提交把同时到达的事务合并为一次刷盘
+    private static void benchmark11() {
+        int commitsPerThread = 200;
+        for (int threads : new int[]{1, 2, 4, 8}) {
+            File image = tempDisk("bench11");
+            DiskConfig config = new DiskConfig(image, MountMode.CHANNEL);
+            config.setGeometry(4096, 512);
+            config.setJournalBlocks(256);
+            try (DiskManager disk = new DiskManager(config)) {
+                int firstBlock = disk.allocateRun(threads);
+                disk.flush();
+                Journal journal = disk.getJournal();
+                long fsyncsBefore = journal.getFsyncs();
+                long transactionsBefore = journal.getTransactions();
+                Thread[] workers = new Thread[threads];
+                for (int t = 0; t < threads; t++) {
+                    int dirBlock = firstBlock + t;
+                    workers[t] = new Thread(() -> {
+                        byte[] data = new byte[disk.getBlockSize()];
+                        for (int i = 0; i < commitsPerThread; i++) {
+                            data[0] = (byte) i;
+                            disk.writeMetadataBlock(dirBlock, data);
+                            disk.flush();
+                        }
+                    });
+                }
+                long start = System.nanoTime();
+                for (Thread worker : workers) worker.start();
+                for (Thread worker : workers) worker.join();
+                long elapsed = System.nanoTime() - start;
+                int commits = threads * commitsPerThread;
+                long fsyncs = journal.getFsyncs() - fsyncsBefore;
+                System.out.printf("threads=%d %8.0f commits/s, transactions=%d, fsyncs=%d (%.2f per commit)%n",
+                        threads, commits / (elapsed / 1e9), journal.getTransactions() - transactionsBefore,
+                        fsyncs, (double) fsyncs / commits);
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            } finally {
+                image.delete();
+            }
+        }
+    }
+
+    // 基准测试12，同一组文件操作（创建、写入、关闭、删除）在各刷盘策略下的吞吐量和刷盘延迟
+    private static void benchmark12() {
+        int rounds = 200;
+        byte[] data = new byte[300];
+        Arrays.fill(data, (byte) 'x');
+        // 第一轮只用于预热
+        for (int pass = 0; pass < 2; pass++) for (DurabilityMode mode : DurabilityMode.values()) {
+            File image = tempDisk("bench12");
+            DiskConfig config = new DiskConfig(image, MountMode.CHANNEL);
+            config.setGeometry(1024, 512);
+            config.setDurability(mode, 10);
+            FileSystem fileSystem = new FileSystem(config);
+            try {
+                DiskManager disk = fileSystem.getDiskManager();
+                disk.getSyncStats().reset();
+                long start = System.nanoTime();
+                for (int i = 0; i < rounds; i++) {
+                    fileSystem.createFile("/f.tx", EntryAttribute.NORMAL_FILE.getValue());
+                    fileSystem.writeFile("/f.tx", data, data.length, true);
+                    fileSystem.closeFile("/f.tx");
+                    fileSystem.deleteFile("/f.tx");
+                }
+                long elapsed = System.nanoTime() - start;
+                if (pass == 1) {
+                    System.out.printf("%-9s %8.1f us/round  %s%n", mode, elapsed / 1e3 / rounds, disk.getSyncStats());
+                }
+            } finally {
+                fileSystem.close();
+                image.delete();
+            }
+        }
+    }
+
+    // 快照：创建写时复制快照与复制整个磁盘文件做备份的耗时对比，以及之后覆盖部分块时快照额外占用的块数
+    private static void benchmark13() {
+        for (int diskSize : new int[]{4096, 16384, 65536}) {
+            File image = tempDisk("bench13");
+            File backup = tempDisk("bench13copy");
+            DiskConfig config = new DiskConfig(image, MountMode.CHANNEL);
+            config.setGeometry(diskSize, 512);
+            config.setFormatMode(FormatMode.FULL);
+            DiskManager disk = new DiskManager(config);
+            try {
+                long start = System.nanoTime();
+                Files.copy(image.toPath(), backup.toPath(), StandardCopyOption.REPLACE_EXISTING);
+                long copyNanos = System.nanoTime() - start;
+
+                start = System.nanoTime();
+                disk.createSnapshot("bench");
+                long snapshotNanos = System.nanoTime() - start;
+
+                // 覆盖用户区前1/16的块，每块第一次覆盖时复制一次
+                byte[] data = new byte[disk.getBlockSize()];
+                int rewritten = (diskSize - disk.getUserAreaStart()) / 16;
+                start = System.nanoTime();
+                for (int round = 0; round < 2; round++) {
+                    for (int i = 0; i < rewritten; i++) disk.writeBlock(disk.getUserAreaStart() + i, data);
+                }
+                long writeNanos = System.nanoTime() - start;
+                System.out.printf("%6d blocks: copy %8.2f ms, snapshot %6.3f ms, %d rewrites %7.2f ms, snapshot blocks %d%n",
+                        diskSize, copyNanos / 1e6, snapshotNanos / 1e6, 2 * rewritten, writeNanos / 1e6,
+                        disk.getSnapshotBlockCount());
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            } finally {
+                disk.close();
+                image.delete();
+                backup.delete();
+            }
+        }
+    }
+
+    // 覆盖层：从同一个基础镜像启动多个短期文件系统，每个复制一份镜像与每个新建一个覆盖层的耗时和写入量对比
+    private static void benchmark14() {
+        int instances = 8;
+        File golden = tempDisk("bench14base");
+        DiskConfig config = new DiskConfig(golden, MountMode.CHANNEL);
+        config.setGeometry(65536, 512);
+        config.setFormatMode(FormatMode.FULL);
+        FileSystem fileSystem = new FileSystem(config);
+        byte[] data = new byte[4096];
+        Arrays.fill(data, (byte) 'g');
+        for (int i = 0; i < 32; i++) {
+            fileSystem.createFile("/f" + i + ".tx", EntryAttribute.NORMAL_FILE.getValue());
+            fileSystem.writeFile("/f" + i + ".tx", data, data.length, true);
+            fileSystem.closeFile("/f" + i + ".tx");
+        }
+        fileSystem.close();
+
+        List<File> images = new ArrayList<>();
+        try {
+            for (boolean useOverlay : new boolean[]{false, true}) {
+                long bytes = 0;
+                long start = System.nanoTime();
+                for (int i = 0; i < instances; i++) {
+                    File image = tempDisk("bench14");
+                    images.add(image);
+                    DiskConfig instanceConfig = new DiskConfig(image, MountMode.CHANNEL);
+                    if (useOverlay) {
+                        instanceConfig.setBackingFile(golden);
+                    } else {
+                        Files.copy(golden.toPath(), image.toPath());
+                    }
+                    FileSystem instance = new FileSystem(instanceConfig);
+                    // 每个实例改写一个文件
+                    instance.writeFile("/f" + i + ".tx", data, data.length, true);
+                    instance.closeFile("/f" + i + ".tx");
+                    DiskManager disk = instance.getDiskManager();
+                    bytes += useOverlay ? (long) disk.getOverlayBlockCount() * disk.getBlockSize() : disk.getCapacity();
+                    instance.close();
+                }
+                long elapsed = System.nanoTime() - start;
+                System.out.printf("%-8s %d instances: %8.2f ms, %8.1f KB written per instance%n",
+                        useOverlay ? "overlay" : "copy", instances, elapsed / 1e6, bytes / 1024.0 / instances);
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        } finally {
+            for (File image : images) image.delete();
+            golden.delete();
+        }
+    }
+
+    // 校验和：不同块大小下，不使用缓存的随机读在读入时校验与不校验的耗时对比
+    private static void benchmark15() {
+        System.out.println("java " + System.getProperty("java.version"));
+        int capacity = 16 << 20;
+        for (int blockSize : new int[]{512, 4096, 65536}) {
+            File image = tempDisk("bench15");
+            DiskConfig config = new DiskConfig(image, MountMode.CHANNEL);
+            config.setGeometry(capacity / blockSize, blockSize);
+            config.setCacheBlocks(0);
+            int userAreaStart;
+            int blocks;
+            // 先写满用户区，每块都有校验和
+            try (DiskManager disk = new DiskManager(config)) {
+                userAreaStart = disk.getUserAreaStart();
+                blocks = disk.getDiskSize() - userAreaStart;
+                byte[] data = new byte[blockSize];
+                new Random(15).nextBytes(data);
+                for (int i = 0; i < blocks; i++) disk.writeBlock(userAreaStart + i, data);
+            }
+            int[] trace = new int[ROUNDS];
+            Random random = new Random(42);
+            for (int i = 0; i < ROUNDS; i++) trace[i] = userAreaStart + random.nextInt(blocks);
+            double[] nanos = new double[2];
+            // 第一轮只用于预热
+            for (int pass = 0; pass < 2; pass++) for (int verify = 0; verify < 2; verify++) {
+                config.setVerifyChecksums(verify == 1);
+                try (DiskManager disk = new DiskManager(config)) {
+                    ByteBuffer buffer = ByteBuffer.allocate(blockSize);
+                    for (int i = 0; i < WARMUP_ROUNDS; i++) {
+                        buffer.clear();
+                        disk.readBlock(trace[i], buffer);
+                    }
+                    long start = System.nanoTime();
+                    for (int index : trace) {
+                        buffer.clear();
+                        disk.readBlock(index, buffer);
+                    }
+                    nanos[verify] = (double) (System.nanoTime() - start) / ROUNDS;
+                }
+            }
+            System.out.printf("blockSize=%-6d verify off %9.1f ns/op, verify on %9.1f ns/op, overhead %5.1f%%%n",
+                    blockSize, nanos[0], nanos[1], (nanos[1] - nanos[0]) / nanos[0] * 100);
+            image.delete();
+        }
+    }
+
+    // 碎片整理：交替追加写出的文件FAT链分散，按5ms的时间预算增量整理，比较整理前后不使用缓存时顺序读全部文件的耗时
+    private static void benchmark16() {
+        int files = 16;
+        int rounds = 16;
+        File image = tempDisk("bench16");
+        DiskConfig config = new DiskConfig(image, MountMode.CHANNEL);
+        config.setGeometry(16384, 512);
+        config.setCacheBlocks(0);
+        FileSystem fileSystem = new FileSystem(config);
+        try {
+            StringBuilder content = new StringBuilder();
+            for (int i = 0; i < files; i++) {
+                fileSystem.createFile("/f" + i + ".tx", EntryAttribute.NORMAL_FILE.getValue());
+                fileSystem.closeFile("/f" + i + ".tx");
+            }
+            // 每轮给每个文件追加8块，各文件的块交错分配
+            for (int round = 0; round < rounds; round++) {
+                for (int k = 0; k < 8 * 512; k++) content.append((char) ('a' + k % 26));
+                byte[] data = content.toString().getBytes();
+                for (int i = 0; i < files; i++) {
+                    fileSystem.writeFile("/f" + i + ".tx", data, data.length, true);
+                    fileSystem.closeFile("/f" + i + ".tx");
+                }
+            }
+            System.out.printf("before: %8.2f ms to read %d files, %s%n", readAll(fileSystem, files) / 1e6, files,
+                    fileSystem.getDiskManager().getFragmentationReport());
+            int calls = 0;
+            int moved = 0;
+            DefragReport report;
+            do {
+                report = fileSystem.defragment(5);
+                calls++;
+                moved += report.getFilesMoved();
+            } while (!report.isPassComplete());
+            System.out.printf("defragment: %d calls with 5 ms budget, %d files moved%n", calls, moved);
+            System.out.printf("after:  %8.2f ms to read %d files, %s%n", readAll(fileSystem, files) / 1e6, files,
+                    fileSystem.getDiskManager().getFragmentationReport());
+        } finally {
+            fileSystem.close();
+            image.delete();
+        }
+    }
+
+    // 块级去重：分别写入全不相同的块和由少量模板块组成的块（每4块中3块重复），比较去重开关下每块写入的耗时和节省的空间
+    private static void benchmark17() {
+        int blockSize = 4096;
+        int blocks = 4096;
+        Random random = new Random(17);
+        byte[][] templates = new byte[16][blockSize];
+        for (byte[] template : templates) random.nextBytes(template);
+        for (String workload : new String[]{"unique", "template"}) {
+            byte[][] contents = new byte[blocks][];
+            for (int i = 0; i < blocks; i++) {
+                if (workload.equals("template") && i % 4 != 0) {
+                    contents[i] = templates[i % templates.length];
+                } else {
+                    contents[i] = new byte[blockSize];
+                    random.nextBytes(contents[i]);
+                }
+            }
+            double[] nanos = new double[2];
+            String report = null;
+            // 第一轮只用于预热
+            for (int pass = 0; pass < 2; pass++) for (int dedup = 0; dedup < 2; dedup++) {
+                File image = tempDisk("bench17");
+                DiskConfig config = new DiskConfig(image, MountMode.CHANNEL);
+                config.setGeometry(2 * blocks, blockSize);
+                config.setCacheBlocks(0);
+                config.setDedup(dedup == 1);
+                try (DiskManager disk = new DiskManager(config)) {
+                    int start = disk.allocateRun(blocks);
+                    long begin = System.nanoTime();
+                    for (int i = 0; i < blocks; i++) disk.writeBlock(start + i, contents[i]);
+                    disk.sync();
+                    nanos[dedup] = (double) (System.nanoTime() - begin) / blocks;
+                    if (dedup == 1) report = disk.getDedupReport().toString();
+                }
+                image.delete();
+            }
+            System.out.printf("%-8s dedup off %9.1f ns/block, dedup on %9.1f ns/block, overhead %6.1f%%%n",
+                    workload, nanos[0], nanos[1], (nanos[1] - nanos[0]) / nanos[0] * 100);
+            System.out.println("         " + report);
+        }
+    }
+
+    // 压缩属性：同样的文本分别写入普通文件和压缩文件，比较占用的块数和读写吞吐量（按原始数据计）
+    private static void benchmark18() {
+        String[] words = {"disk", "block", "file", "the", "of", "directory", "entry", "allocation", "table", "and",
+                "journal", "cache", "read", "write", "to", "a", "snapshot", "checksum", "in", "is"};
+        Random random = new Random(18);
+        StringBuilder text = new StringBuilder();
+        while (text.length() < 4 << 20) {
+            text.append(words[random.nextInt(words.length)]).append(random.nextInt(8) == 0 ? ".\n" : " ");
+        }
+        byte[] data = text.toString().getBytes();
+        byte compressed = (byte) (EntryAttribute.NORMAL_FILE.getValue() | EntryAttribute.COMPRESSED.getValue());
+        for (byte attribute : new byte[]{EntryAttribute.NORMAL_FILE.getValue(), compressed}) {
+            File image = tempDisk("bench18");
+            DiskConfig config = new DiskConfig(image, MountMode.CHANNEL);
+            config.setGeometry(4096, 4096);
+            FileSystem fileSystem = new FileSystem(config);
+            try {
+                long writeNanos = 0;
+                long readNanos = 0;
+                // 第一轮只用于预热
+                for (int pass = 0; pass < 2; pass++) {
+                    String path = "/f" + pass + ".tx";
+                    fileSystem.createFile(path, attribute);
+                    long start = System.nanoTime();
+                    fileSystem.writeFile(path, data, data.length, true);
+                    fileSystem.closeFile(path);
+                    writeNanos = System.nanoTime() - start;
+                    start = System.nanoTime();
+                    String content = fileSystem.typeFile(path);
+                    readNanos = System.nanoTime() - start;
+                    if (content.length() != data.length) {
+                        throw new IllegalStateException("Content mismatch");
+                    }
+                }
+                String[] info = fileSystem.getFileInfo("/f1.tx");
+                int blocks = Integer.parseInt(info[5]);
+                System.out.printf("%-10s %5d blocks, ratio %5.2f, write %7.1f MB/s, read %7.1f MB/s%n",
+                        attribute == compressed ? "compressed" : "plain", blocks,
+                        (double) data.length / Long.parseLong(info[4]),
+                        data.length / 1e6 / (writeNanos / 1e9), data.length / 1e6 / (readNanos / 1e9));
+            } finally {
+                fileSystem.close();
+                image.delete();
+            }
+        }
+    }
+
+    // 顺序读预读：两个大文件按连续和交错两种布局写入，分别关闭和开启预读，用typeFile流式读出，比较吞吐量
+    private static void benchmark19() {
+        int blockSize = 4096;
+        int chunks = 2048; // 每个文件的块数
+        byte[] chunk = new byte[blockSize];
+        Arrays.fill(chunk, (byte) 'a');
+        for (String layout : new String[]{"contiguous", "interleaved"}) {
+            for (int readAhead = 0; readAhead < 2; readAhead++) {
+                File image = tempDisk("bench19");
+                DiskConfig config = new DiskConfig(image, MountMode.CHANNEL);
+                config.setGeometry(4 * chunks + 256, blockSize);
+                config.setCacheBlocks(256);
+                config.setReadAheadBlocks(readAhead == 1 ? DiskManager.DEFAULT_READ_AHEAD_BLOCKS : 0);
+                FileSystem fileSystem = new FileSystem(config);
+                try {
+                    byte attribute = EntryAttribute.NORMAL_FILE.getValue();
+                    fileSystem.createFile("/a.tx", attribute);
+                    fileSystem.createFile("/b.tx", attribute);
+                    if (layout.equals("contiguous")) {
+                        byte[] data = new byte[chunks * blockSize];
+                        Arrays.fill(data, (byte) 'a');
+                        for (String path : new String[]{"/a.tx", "/b.tx"}) {
+                            fileSystem.writeFile(path, data, data.length, true);
+                            fileSystem.closeFile(path);
+                        }
+                    } else { // 两个文件轮流追加，链上相邻的块在磁盘上不相邻
+                        for (int i = 0; i < chunks; i++) {
+                            fileSystem.writeFile("/a.tx", chunk, chunk.length, false);
+                            fileSystem.writeFile("/b.tx", chunk, chunk.length, false);
+                        }
+                        fileSystem.closeFile("/a.tx");
+                        fileSystem.closeFile("/b.tx");
+                    }
+                    fileSystem.typeFile("/a.tx"); // 预热
+                    fileSystem.typeFile("/b.tx");
+                    long start = System.nanoTime();
+                    int rounds = 5;
+                    long bytes = 0;
+                    for (int round = 0; round < rounds; round++) {
+                        bytes += fileSystem.typeFile("/a.tx").length();
+                        bytes += fileSystem.typeFile("/b.tx").length();
+                    }
+                    long elapsed = System.nanoTime() - start;
+                    if (bytes != (long) rounds * 2 * chunks * blockSize) {
+                        throw new IllegalStateException("Content mismatch");
+                    }
+                    System.out.printf("%-11s read-ahead %-3s %8.1f MB/s%n", layout, readAhead == 1 ? "on" : "off",
+                            bytes / 1e6 / (elapsed / 1e9));
+                    if (readAhead == 1) System.out.println("            " + fileSystem.getDiskManager().getReadAhead());
+                } finally {
+                    fileSystem.close();
+                    image.delete();
+                }
+            }
+        }
+    }
+
+    // 并发读：多个线程同时列目录、查文件信息、显示文件内容，比较不同线程数下的总吞吐量
+    private static void benchmark20() {
+        File image = tempDisk("bench20");
+        DiskConfig config = new DiskConfig(image, MountMode.CHANNEL);
+        config.setGeometry(4096, 512);
+        config.setCacheBlocks(1024);
+        FileSystem fileSystem = new FileSystem(config);
+        try {
+            int files = 32;
+            fileSystem.createDir("/d", EntryAttribute.DIRECTORY.getValue());
+            byte[] data = new byte[4096];
+            Arrays.fill(data, (byte) 'x');
+            for (int i = 0; i < files; i++) {
+                String path = "/d/f" + i + ".tx";
+                fileSystem.createFile(path, EntryAttribute.NORMAL_FILE.getValue());
+                fileSystem.writeFile(path, data, data.length, true);
+                fileSystem.closeFile(path);
+            }
+            int opsPerThread = 2_000;
+            readConcurrently(fileSystem, 1, opsPerThread, files, data.length); // 预热
+            double single = 0;
+            int maxThreads = Math.max(4, Runtime.getRuntime().availableProcessors());
+            for (int threads = 1; threads <= maxThreads; threads *= 2) {
+                long elapsed = readConcurrently(fileSystem, threads, opsPerThread, files, data.length);
+                double opsPerSecond = (double) threads * opsPerThread / (elapsed / 1e9);
+                if (threads == 1) single = opsPerSecond;
+                System.out.printf("%2d readers %10.0f ops/s, speedup %5.2fx%n", threads, opsPerSecond, opsPerSecond / single);
+            }
+            System.out.println("available processors: " + Runtime.getRuntime().availableProcessors());
+        } finally {
+            fileSystem.close();
+            image.delete();
+        }
+    }
+
+    // 多目录并发修改：每个客户端在自己的目录下反复创建、写入、关闭、删除文件，比较不同客户端数下的总吞吐量
+    // 分别在不使用日志和使用日志并每次操作刷盘两种配置下测量；打开文件表最多5项，客户端数不超过4
+    private static void benchmark21() {
+        for (int journal = 0; journal <= 1; journal++) {
+            File image = tempDisk("bench21");
+            DiskConfig config = new DiskConfig(image, MountMode.CHANNEL);
+            config.setGeometry(4096, 512);
+            config.setCacheBlocks(1024);
+            if (journal == 1) {
+                config.setDurability(DurabilityMode.EVERY_OP); // 日志区按磁盘大小自动选择
+            } else {
+                config.setJournalBlocks(0);
+            }
+            FileSystem fileSystem = new FileSystem(config);
+            try {
+                System.out.println(journal == 1 ? "journal, sync every op:" : "no journal:");
+                int maxClients = 4;
+                for (int c = 0; c < maxClients; c++) {
+                    fileSystem.createDir("/c" + c, EntryAttribute.DIRECTORY.getValue());
+                }
+                int opsPerClient = journal == 1 ? 100 : 1_000;
+                updateConcurrently(fileSystem, 1, opsPerClient); // 预热
+                double single = 0;
+                for (int clients = 1; clients <= maxClients; clients *= 2) {
+                    long elapsed = updateConcurrently(fileSystem, clients, opsPerClient);
+                    double opsPerSecond = (double) clients * opsPerClient / (elapsed / 1e9);
+                    if (clients == 1) single = opsPerSecond;
+                    System.out.printf("%2d clients %10.0f ops/s, speedup %5.2fx%n", clients, opsPerSecond, opsPerSecond / single);
+                }
+            } finally {
+                fileSystem.close();
+                image.delete();
+            }
+        }
+        System.out.println("available processors: " + Runtime.getRuntime().availableProcessors());
+    }
+
+    // 每个客户端在自己的目录下执行一组修改操作（创建、写入、关闭、删除算一次），返回全部完成的耗时
+    private static long updateConcurrently(FileSystem fileSystem, int clients, int opsPerClient) {
+        byte[] data = new byte[1000];
+        Arrays.fill(data, (byte) 'x');
+        Thread[] workers = new Thread[clients];
+        for (int c = 0; c < clients; c++) {
+            String dir = "/c" + c;
+            workers[c] = new Thread(() -> {
+                for (int i = 0; i < opsPerClient; i++) {
+                    String path = dir + "/f" + i % 8 + ".tx";
+                    if (!"1".equals(fileSystem.createFile(path, EntryAttribute.NORMAL_FILE.getValue()))
+                            || !"1".equals(fileSystem.writeFile(path, data, data.length, true))
+                            || !"1".equals(fileSystem.closeFile(path))
+                            || !"1".equals(fileSystem.deleteFile(path))) {
+                        throw new IllegalStateException("Update failed: " + path);
+                    }
+                }
+            });
+        }
+        long start = System.nanoTime();
+        for (Thread worker : workers) worker.start();
+        for (Thread worker : workers) {
+            try {
+                worker.join();
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+        }
+        return System.nanoTime() - start;
+    }
+
+    // 并发分配：多个线程同时分配和回收磁盘块，比较无锁分配（CAS占用空闲块位图）与每次调用都加同一把锁的基线
+    private static void benchmark22() {
+        File image = tempDisk("bench22");
+        DiskConfig config = new DiskConfig(image, MountMode.CHANNEL);
+        config.setGeometry(65536, 512);
+        DiskManager disk = new DiskManager(config);
+        try {
+            int opsPerThread = 200_000;
+            allocateConcurrently(disk, 1, opsPerThread, false); // 预热
+            allocateConcurrently(disk, 1, opsPerThread, true);
+            int maxThreads = Math.max(4, Runtime.getRuntime().availableProcessors());
+            for (int threads = 1; threads <= maxThreads; threads *= 2) {
+                long locked = allocateConcurrently(disk, threads, opsPerThread, true);
+                long lockFree = allocateConcurrently(disk, threads, opsPerThread, false);
+                double total = (double) threads * opsPerThread;
+                System.out.printf("%2d threads  synchronized %10.0f allocs/s  lock-free %10.0f allocs/s  (%.2fx)%n",
+                        threads, total / (locked / 1e9), total / (lockFree / 1e9), (double) locked / lockFree);
+            }
+            System.out.println("available processors: " + Runtime.getRuntime().availableProcessors());
+        } finally {
+            disk.close();
+            image.delete();
+        }
+    }
+
+    // 每个线程分配8块后全部回收，反复进行；synchronized为true时每次分配和回收都持有磁盘管理器的锁，返回全部完成的耗时
+    private static long allocateConcurrently(DiskManager disk, int threads, int opsPerThread, boolean synchronize) {
+        Thread[] workers = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            workers[t] = new Thread(() -> {
+                int[] blocks = new int[8];
+                try {
+                    for (int i = 0; i < opsPerThread; i += blocks.length) {
+                        for (int k = 0; k < blocks.length; k++) {
+                            if (synchronize) {
+                                synchronized (disk) {
+                                    blocks[k] = disk.allocateBlock();
+                                }
+                            } else {
+                                blocks[k] = disk.allocateBlock();
+                            }
+                        }
+                        for (int block : blocks) {
+                            if (synchronize) {
+                                synchronized (disk) {
+                                    disk.deallocateBlock(block);
+                                }
+                            } else {
+                                disk.deallocateBlock(block);
+                            }
+                        }
+                    }
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+            });
+        }
+        long start = System.nanoTime();
+        for (Thread worker : workers) worker.start();
+        for (Thread worker : workers) {
+            try {
+                worker.join();
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+        }
+        return System.nanoTime() - start;
+    }
+
+    // 分配组：多个线程各自在几个目录下交错地逐块追加文件，比较不分组与按默认大小分组时文件离父目录的距离、
+    // 按目录依次读完所有文件时磁头移动的块数（没有寻道延迟模型，用块号差代替）以及分配的吞吐量和冲突次数
+    private static void benchmark23() {
+        int dirsPerThread = 4;
+        int filesPerDir = 16;
+        int blocksPerFile = 16;
+        for (int threads = 1; threads <= 4; threads *= 4) {
+            for (int grouped = 0; grouped <= 1; grouped++) {
+                File image = tempDisk("bench23");
+                DiskConfig config = new DiskConfig(image, MountMode.CHANNEL);
+                config.setGeometry(65536, 512);
+                config.setGroupBlocks(grouped == 1 ? DiskManager.DEFAULT_GROUP_BLOCKS : 0);
+                DiskManager disk = new DiskManager(config);
+                try {
+                    int[][] dirs = new int[threads][dirsPerThread];
+                    int[][][] files = new int[threads][dirsPerThread][filesPerDir];
+                    long elapsed = layoutConcurrently(disk, dirs, files, blocksPerFile);
+                    long parentDistance = 0;
+                    long seekDistance = 0;
+                    long visited = 0;
+                    for (int t = 0; t < threads; t++) {
+                        for (int d = 0; d < dirsPerThread; d++) {
+                            int head = dirs[t][d];
+                            for (int file : files[t][d]) {
+                                parentDistance += Math.abs(file - dirs[t][d]);
+                                for (int block : disk.getChain(file, blocksPerFile)) {
+                                    seekDistance += Math.abs(block - head);
+                                    head = block;
+                                    visited++;
+                                }
+                            }
+                        }
+                    }
+                    long contended = 0;
+                    for (AllocationGroupInfo group : disk.getAllocationGroups()) contended += group.getContended();
+                    int fileCount = threads * dirsPerThread * filesPerDir;
+                    System.out.printf("%d threads, %-9s %2d groups  file-parent %8.1f blocks  seek %8.1f blocks/read  "
+                                    + "%10.0f allocs/s  contended %d%n",
+                            threads, grouped == 1 ? "grouped" : "ungrouped", disk.getAllocationGroupCount(),
+                            (double) parentDistance / fileCount, (double) seekDistance / visited,
+                            fileCount * (1 + blocksPerFile) / (elapsed / 1e9), contended);
+                    if (grouped == 1 && threads > 1) {
+                        for (AllocationGroupInfo group : disk.getAllocationGroups()) System.out.println("  " + group);
+                    }
+                } finally {
+                    disk.close();
+                    image.delete();
+                }
+            }
+        }
+        System.out.println("available processors: " + Runtime.getRuntime().availableProcessors());
+    }
+
+    // 每个线程为自己的目录分配目录块，在每个目录下创建文件，然后一轮一轮地给每个文件追加一块，
+    // 目标块与FileSystem相同（目录用pickDirectoryGoal，文件用父目录块，追加用文件末尾的块），返回全部完成的耗时
+    private static long layoutConcurrently(DiskManager disk, int[][] dirs, int[][][] files, int blocksPerFile) {
+        Thread[] workers = new Thread[dirs.length];
+        for (int t = 0; t < dirs.length; t++) {
+            int[] myDirs = dirs[t];
+            int[][] myFiles = files[t];
+            workers[t] = new Thread(() -> {
+                int[][] tails = new int[myDirs.length][];
+                for (int d = 0; d < myDirs.length; d++) {
+                    myDirs[d] = disk.allocateBlock(disk.pickDirectoryGoal());
+                    for (int f = 0; f < myFiles[d].length; f++) {
+                        myFiles[d][f] = disk.allocateBlock(myDirs[d]);
+                    }
+                    tails[d] = myFiles[d].clone();
+                }
+                for (int round = 1; round < blocksPerFile; round++) {
+                    for (int d = 0; d < myDirs.length; d++) {
+                        for (int f = 0; f < tails[d].length; f++) {
+                            int block = disk.allocateBlock(tails[d][f]);
+                            if (block == -1) throw new IllegalStateException("Disk is full");
+                            disk.setFatEntry(tails[d][f], block);
+                            tails[d][f] = block;
+                        }
+                    }
+                }
+            });
+        }
+        long start = System.nanoTime();
+        for (Thread worker : workers) worker.start();
+        for (Thread worker : workers) {
+            try {
+                worker.join();
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+        }
+        return System.nanoTime() - start;
+    }
+
+    // 多个线程同时执行读操作，返回全部完成的耗时
+    private static long readConcurrently(FileSystem fileSystem, int threads, int opsPerThread, int files, int length) {
+        Thread[] workers = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            int seed = t;
+            workers[t] = new Thread(() -> {
+                for (int i = 0; i < opsPerThread; i++) {
+                    String path = "/d/f" + (i + seed) % files + ".tx";
+                    fileSystem.listDir("/d");
+                    fileSystem.getFileInfo(path);
+                    if (fileSystem.typeFile(path).length() != length) {
+                        throw new IllegalStateException("Content mismatch");
+                    }
+                }
+            });
+        }
+        long start = System.nanoTime();
+        for (Thread worker : workers) worker.start();
+        for (Thread worker : workers) {
+            try {
+                worker.join();
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+        }
+        return System.nanoTime() - start;
+    }
+
+    // 顺序读出所有文件多次，返回耗时
+    private static long readAll(FileSystem fileSystem, int files) {
+        for (int i = 0; i < files; i++) fileSystem.typeFile("/f" + i + ".tx"); // 预热
+        long start = System.nanoTime();
+        for (int pass = 0; pass < 5; pass++) {
+            for (int i = 0; i < files; i++) fileSystem.typeFile("/f" + i + ".tx");
+        }
+        return System.nanoTime() - start;
+    }
+
+    private interface BenchmarkOp {
+        void run() throws Exception;
+    }
+
+    // 预热后测量平均每次操作在当前线程分配的字节数和耗时
+    private static void measureAllocation(String name, BenchmarkOp op) throws Exception {
+        com.sun.management.ThreadMXBean threadBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+        for (int i = 0; i < WARMUP_ROUNDS * 10; i++) op.run();
+        long allocated = threadBean.getThreadAllocatedBytes(threadId);
+        long start = System.nanoTime();
+        for (int i = 0; i < ROUNDS; i++) op.run();
+        long elapsed = System.nanoTime() - start;
+        allocated = threadBean.getThreadAllocatedBytes(threadId) - allocated;
+        System.out.printf("%-24s %10.1f ns/op %10.1f B/op%n", name, (double) elapsed / ROUNDS, (double) allocated / ROUNDS);
+    }
+
+    // 负载：根目录和少量热点块被反复访问，每隔一段时间顺序扫描一遍整个用户区
+    private static int[] hotScanTrace(DiskManager disk) {
+        int userBlocks = disk.getDiskSize() - disk.getUserAreaStart();
+        Random random = new Random(3);
+        int[] trace = new int[ROUNDS];
+        for (int i = 0; i < ROUNDS; i++) {
+            if (i % 1000 < userBlocks) {
+                trace[i] = disk.getUserAreaStart() + i % 1000;
+            } else if (random.nextInt(4) == 0) {
+                trace[i] = DiskManager.ROOT_DIR_POS;
+            } else {
+                trace[i] = disk.getUserAreaStart() + random.nextInt(16);
+            }
+        }
+        return trace;
+    }
+
+    // 旧的读块方式：每次打开文件并从头跳过
+    private static byte[] legacyReadBlock(File image, int index, int blockSize) {
+        try (RandomAccessFile raf = new RandomAccessFile(image, "rw")) {
+            byte[] data = new byte[blockSize];
+            raf.skipBytes(index * blockSize);
+            raf.read(data);
+            return data;
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    // 旧的写块方式：每次打开文件并定位
+    private static void legacyWriteBlock(File image, int index, int blockSize, byte[] data) {
+        try (RandomAccessFile raf = new RandomAccessFile(image, "rw")) {
+            raf.seek((long) index * blockSize);
+            raf.write(data);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    // 创建一个不存在的临时磁盘文件路径，由DiskManager负责格式化
+    private static File tempDisk(String name) {
+        try {
+            File image = File.createTempFile(name, ".dat");
+            if (!image.delete()) {
+                throw new IOException("Cannot reset temp disk " + image);
+            }
+            return image;
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    // 输出平均每次操作耗时
+    private static void report(String name, long elapsedNanos, int ops) {
+        System.out.printf("%-24s %10.1f ns/op  (%d ops)%n", name, (double) elapsedNanos / ops, ops);
+    }
+}
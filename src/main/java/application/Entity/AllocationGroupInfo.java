@@ -0,0 +1,68 @@
+package application.Entity;
+
+/**
+ * 一个分配组的使用情况，由DiskManager.getAllocationGroups()统计
+ */
+public class AllocationGroupInfo {
+    private final int index; // 组号
+    private final int start; // 起始块号
+    private final int blocks; // 块数
+    private final int freeBlocks; // 空闲块数
+    private final long allocations; // 在本组分配成功的次数
+    private final long contended; // 找到的位置被其他线程抢先占用的次数
+    private final long spills; // 以本组为目标但改到其他组分配的次数
+
+    public AllocationGroupInfo(int index, int start, int blocks, int freeBlocks, long allocations, long contended,
+                               long spills) {
+        this.index = index;
+        this.start = start;
+        this.blocks = blocks;
+        this.freeBlocks = freeBlocks;
+        this.allocations = allocations;
+        this.contended = contended;
+        this.spills = spills;
+    }
+
+    public int getIndex() {
+        return index;
+    }
+
+    public int getStart() {
+        return start;
+    }
+
+    public int getBlocks() {
+        return blocks;
+    }
+
+    public int getFreeBlocks() {
+        return freeBlocks;
+    }
+
+    public long getAllocations() {
+        return allocations;
+    }
+
+    public long getContended() {
+        return contended;
+    }
+
+    public long getSpills() {
+        return spills;
+    }
+
+    /**
+     * 利用率：已使用的块占本组块数的比例
+     *
+     * @return 0到1之间
+     */
+    public double getUtilization() {
+        return blocks == 0 ? 0 : (double) (blocks - freeBlocks) / blocks;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("group %d [%d, %d): used %.1f%%, free=%d, allocations=%d, contended=%d, spills=%d",
+                index, start, start + blocks, getUtilization() * 100, freeBlocks, allocations, contended, spills);
+    }
+}
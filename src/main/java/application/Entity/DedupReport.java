@@ -0,0 +1,106 @@
+package application.Entity;
+
+/**
+ * 去重报告，由DiskManager.getDedupReport()统计
+ * FAT中的块号不变，节省的是物理块：共享内容的逻辑块不写入自己的位置，稀疏的磁盘文件和覆盖层不为它们分配空间，写入量也相应减少
+ */
+public class DedupReport {
+    private final int blockSize; // 磁盘块大小
+    private final int usedBlocks; // 已分配的用户区块数（逻辑块）
+    private final int storedBlocks; // 实际保存内容的物理块数
+    private final int sharedBlocks; // 被其他块共享的物理块数
+    private final long writes; // 参与查找的写入次数
+    private final long hits; // 内容重复、改为映射的写入次数
+    private final long unchanged; // 内容没有变化、不需要写入的次数
+    private final long evacuations; // 共享的物理块被覆盖前复制内容的次数
+    private final long hashNanos; // 计算哈希的总耗时
+
+    public DedupReport(int blockSize, int usedBlocks, int storedBlocks, int sharedBlocks, long writes, long hits,
+                       long unchanged, long evacuations, long hashNanos) {
+        this.blockSize = blockSize;
+        this.usedBlocks = usedBlocks;
+        this.storedBlocks = storedBlocks;
+        this.sharedBlocks = sharedBlocks;
+        this.writes = writes;
+        this.hits = hits;
+        this.unchanged = unchanged;
+        this.evacuations = evacuations;
+        this.hashNanos = hashNanos;
+    }
+
+    public int getUsedBlocks() {
+        return usedBlocks;
+    }
+
+    public int getStoredBlocks() {
+        return storedBlocks;
+    }
+
+    public int getSharedBlocks() {
+        return sharedBlocks;
+    }
+
+    public long getWrites() {
+        return writes;
+    }
+
+    public long getHits() {
+        return hits;
+    }
+
+    public long getUnchanged() {
+        return unchanged;
+    }
+
+    public long getEvacuations() {
+        return evacuations;
+    }
+
+    public long getHashNanos() {
+        return hashNanos;
+    }
+
+    /**
+     * 节省的物理块数
+     *
+     * @return 已分配的逻辑块数 - 实际保存内容的物理块数
+     */
+    public int getSavedBlocks() {
+        return Math.max(0, usedBlocks - storedBlocks);
+    }
+
+    /**
+     * 节省的字节数
+     *
+     * @return 字节数
+     */
+    public long getSavedBytes() {
+        return (long) getSavedBlocks() * blockSize;
+    }
+
+    /**
+     * 去重率：节省的物理块占已分配块的比例
+     *
+     * @return 0到1之间
+     */
+    public double getSavedRatio() {
+        return usedBlocks == 0 ? 0 : (double) getSavedBlocks() / usedBlocks;
+    }
+
+    /**
+     * 每次写入计算哈希的平均耗时，即去重在写入路径上的主要开销
+     *
+     * @return 纳秒
+     */
+    public double getHashNanosPerWrite() {
+        return writes == 0 ? 0 : (double) hashNanos / writes;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("used=%d, stored=%d, shared=%d, saved=%d (%.1f%%, %d KB), writes=%d, hits=%d, "
+                        + "unchanged=%d, evacuations=%d, hash %.0f ns/write",
+                usedBlocks, storedBlocks, sharedBlocks, getSavedBlocks(), getSavedRatio() * 100, getSavedBytes() >> 10,
+                writes, hits, unchanged, evacuations, getHashNanosPerWrite());
+    }
+}
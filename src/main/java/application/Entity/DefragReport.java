@@ -0,0 +1,72 @@
+package application.Entity;
+
+/**
+ * 碎片整理报告，由FileSystem.defragment()返回，一次调用只处理时间预算内能完成的文件
+ */
+public class DefragReport {
+    private final FragmentationReport before; // 整理前的碎片情况
+    private final FragmentationReport after; // 整理后的碎片情况
+    private final int filesScanned; // 检查过的文件数
+    private final int filesMoved; // 搬到连续块的文件数
+    private final int blocksMoved; // 搬动的块数
+    private final int skippedOpen; // 正在打开而跳过的文件数
+    private final int skippedNoSpace; // 没有足够长的连续空闲段而跳过的文件数
+    private final boolean passComplete; // 整个目录树是否已经走完，下一次调用从头开始
+    private final long elapsedNanos; // 本次耗时
+
+    public DefragReport(FragmentationReport before, FragmentationReport after, int filesScanned, int filesMoved,
+                        int blocksMoved, int skippedOpen, int skippedNoSpace, boolean passComplete, long elapsedNanos) {
+        this.before = before;
+        this.after = after;
+        this.filesScanned = filesScanned;
+        this.filesMoved = filesMoved;
+        this.blocksMoved = blocksMoved;
+        this.skippedOpen = skippedOpen;
+        this.skippedNoSpace = skippedNoSpace;
+        this.passComplete = passComplete;
+        this.elapsedNanos = elapsedNanos;
+    }
+
+    public FragmentationReport getBefore() {
+        return before;
+    }
+
+    public FragmentationReport getAfter() {
+        return after;
+    }
+
+    public int getFilesScanned() {
+        return filesScanned;
+    }
+
+    public int getFilesMoved() {
+        return filesMoved;
+    }
+
+    public int getBlocksMoved() {
+        return blocksMoved;
+    }
+
+    public int getSkippedOpen() {
+        return skippedOpen;
+    }
+
+    public int getSkippedNoSpace() {
+        return skippedNoSpace;
+    }
+
+    public boolean isPassComplete() {
+        return passComplete;
+    }
+
+    public long getElapsedNanos() {
+        return elapsedNanos;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("scanned=%d moved=%d blocks=%d skippedOpen=%d skippedNoSpace=%d %s %.2f ms%n    before: %s%n    after:  %s",
+                filesScanned, filesMoved, blocksMoved, skippedOpen, skippedNoSpace, passComplete ? "complete" : "partial",
+                elapsedNanos / 1e6, before, after);
+    }
+}
@@ -0,0 +1,334 @@
+package application.Entity;
+
+import application.Enum.AllocationPolicy;
+import application.Enum.DurabilityMode;
+import application.Enum.EvictionPolicy;
+import application.Enum.FormatMode;
+import application.Enum.MountMode;
+import application.Manager.DiskManager;
+
+import java.io.File;
+
+/**
+ * 磁盘挂载配置，在构造DiskManager时指定
+ */
+public class DiskConfig {
+    private File diskFile; // 磁盘文件
+    private MountMode mountMode; // 挂载方式
+    private int cacheBlocks; // 磁盘块缓存容量（块数），0表示不使用缓存
+    private long cacheBytes; // 按字节设置的缓存容量，大于0时代替cacheBlocks
+    private EvictionPolicy evictionPolicy; // 缓存淘汰策略
+    private int diskSize; // 格式化新磁盘时使用的磁盘块数
+    private int blockSize; // 格式化新磁盘时使用的磁盘块大小
+    private FormatMode formatMode; // 格式化新磁盘时使用的格式化方式
+    private AllocationPolicy allocationPolicy; // 磁盘块分配策略
+    private int ioThreads; // 异步I/O线程数
+    private int ioQueueDepth; // 异步I/O最大在途请求数
+    private boolean directBuffers; // 缓冲区池是否使用直接缓冲区
+    private int journalBlocks; // 格式化新磁盘时的日志区块数，-1表示按磁盘大小自动选择
+    private DurabilityMode durabilityMode; // 刷盘策略
+    private long syncIntervalMillis; // PERIODIC模式的刷盘间隔
+    private File backingFile; // 覆盖层的只读底层磁盘文件，null表示普通磁盘
+    private boolean checksums; // 格式化新磁盘时是否留出校验和区
+    private boolean verifyChecksums; // 从设备读入时是否校验
+    private boolean dedup; // 格式化新磁盘时是否启用块级去重
+    private int readAheadBlocks; // 顺序读时最大预读窗口（块数），0表示不预读
+    private int groupBlocks; // 每个分配组的块数，0表示不分组
+
+    /**
+     * 默认配置：使用disk.dat，通过FileChannel读写，使用默认大小的LRU缓存，循环首次适应分配
+     */
+    public DiskConfig() {
+        this(new File(DiskManager.DEFAULT_DISK_FILE), MountMode.CHANNEL);
+    }
+
+    public DiskConfig(File diskFile, MountMode mountMode) {
+        this.diskFile = diskFile;
+        this.mountMode = mountMode;
+        this.cacheBlocks = DiskManager.DEFAULT_CACHE_BLOCKS;
+        this.evictionPolicy = EvictionPolicy.LRU;
+        this.diskSize = DiskManager.DEFAULT_DISK_SIZE;
+        this.blockSize = DiskManager.DEFAULT_BLOCK_SIZE;
+        this.formatMode = FormatMode.QUICK;
+        this.allocationPolicy = AllocationPolicy.NEXT_FIT;
+        this.ioThreads = DiskManager.DEFAULT_IO_THREADS;
+        this.ioQueueDepth = DiskManager.DEFAULT_IO_QUEUE_DEPTH;
+        this.journalBlocks = -1;
+        this.durabilityMode = DurabilityMode.EVERY_OP;
+        this.syncIntervalMillis = DiskManager.DEFAULT_SYNC_INTERVAL_MILLIS;
+        this.checksums = true;
+        this.verifyChecksums = true;
+        this.readAheadBlocks = DiskManager.DEFAULT_READ_AHEAD_BLOCKS;
+        this.groupBlocks = DiskManager.DEFAULT_GROUP_BLOCKS;
+    }
+
+    public File getDiskFile() {
+        return diskFile;
+    }
+
+    public MountMode getMountMode() {
+        return mountMode;
+    }
+
+    /**
+     * 按实际的磁盘块大小换算缓存块数
+     *
+     * @param blockSize 挂载磁盘的块大小
+     * @return 缓存块数
+     */
+    public int getCacheBlocks(int blockSize) {
+        if (cacheBytes > 0) {
+            return (int) Math.min(Integer.MAX_VALUE, cacheBytes / blockSize);
+        }
+        return cacheBlocks;
+    }
+
+    public int getDiskSize() {
+        return diskSize;
+    }
+
+    public int getBlockSize() {
+        return blockSize;
+    }
+
+    public FormatMode getFormatMode() {
+        return formatMode;
+    }
+
+    public EvictionPolicy getEvictionPolicy() {
+        return evictionPolicy;
+    }
+
+    public AllocationPolicy getAllocationPolicy() {
+        return allocationPolicy;
+    }
+
+    public int getIoThreads() {
+        return ioThreads;
+    }
+
+    public int getIoQueueDepth() {
+        return ioQueueDepth;
+    }
+
+    public boolean isDirectBuffers() {
+        return directBuffers;
+    }
+
+    public DurabilityMode getDurabilityMode() {
+        return durabilityMode;
+    }
+
+    public long getSyncIntervalMillis() {
+        return syncIntervalMillis;
+    }
+
+    public File getBackingFile() {
+        return backingFile;
+    }
+
+    public boolean isChecksums() {
+        return checksums;
+    }
+
+    public boolean isVerifyChecksums() {
+        return verifyChecksums;
+    }
+
+    public boolean isDedup() {
+        return dedup;
+    }
+
+    public int getReadAheadBlocks() {
+        return readAheadBlocks;
+    }
+
+    public int getGroupBlocks() {
+        return groupBlocks;
+    }
+
+    /**
+     * 按磁盘块数换算日志区块数，自动选择时取磁盘的1/32，限制在MIN_JOURNAL_BLOCKS到MAX_JOURNAL_BLOCKS之间，
+     * 且不少于容纳最大事务所需的块数
+     *
+     * @param diskSize  磁盘块数
+     * @param minBlocks 容纳最大事务所需的日志区块数
+     * @return 日志区块数
+     */
+    public int getJournalBlocks(int diskSize, int minBlocks) {
+        if (journalBlocks >= 0) {
+            return journalBlocks;
+        }
+        return Math.max(minBlocks,
+                Math.max(DiskManager.MIN_JOURNAL_BLOCKS, Math.min(DiskManager.MAX_JOURNAL_BLOCKS, diskSize / 32)));
+    }
+
+    public void setDiskFile(File diskFile) {
+        this.diskFile = diskFile;
+    }
+
+    public void setMountMode(MountMode mountMode) {
+        this.mountMode = mountMode;
+    }
+
+    /**
+     * 按块数设置缓存容量
+     *
+     * @param cacheBlocks 缓存块数，0表示不使用缓存
+     */
+    public void setCacheBlocks(int cacheBlocks) {
+        this.cacheBlocks = cacheBlocks;
+        this.cacheBytes = 0;
+    }
+
+    /**
+     * 按字节数设置缓存容量，挂载时按磁盘块大小换算，不足一块的部分舍去
+     *
+     * @param cacheBytes 缓存字节数
+     */
+    public void setCacheBytes(long cacheBytes) {
+        this.cacheBytes = cacheBytes;
+    }
+
+    /**
+     * 设置格式化新磁盘时的几何参数，已存在的磁盘文件使用超级块中记录的参数
+     *
+     * @param diskSize  磁盘块数
+     * @param blockSize 磁盘块大小，须为登记项长度的整数倍
+     */
+    public void setGeometry(int diskSize, int blockSize) {
+        this.diskSize = diskSize;
+        this.blockSize = blockSize;
+    }
+
+    public void setFormatMode(FormatMode formatMode) {
+        this.formatMode = formatMode;
+    }
+
+    public void setEvictionPolicy(EvictionPolicy evictionPolicy) {
+        this.evictionPolicy = evictionPolicy;
+    }
+
+    public void setAllocationPolicy(AllocationPolicy allocationPolicy) {
+        this.allocationPolicy = allocationPolicy;
+    }
+
+    /**
+     * 设置缓冲区池是否使用直接缓冲区，直接缓冲区通过FileChannel读写时少一次复制
+     *
+     * @param directBuffers 是否使用直接缓冲区
+     */
+    public void setDirectBuffers(boolean directBuffers) {
+        this.directBuffers = directBuffers;
+    }
+
+    /**
+     * 设置格式化新磁盘时的日志区块数，已存在的磁盘文件使用超级块中记录的值
+     *
+     * @param journalBlocks 日志区块数，0表示不使用日志，否则要能容纳最大的事务（见DiskManager.getMaxTransactionBlocks()）
+     */
+    public void setJournalBlocks(int journalBlocks) {
+        this.journalBlocks = journalBlocks;
+    }
+
+    /**
+     * 设置刷盘策略，PERIODIC模式使用默认间隔
+     *
+     * @param durabilityMode 刷盘策略
+     */
+    public void setDurability(DurabilityMode durabilityMode) {
+        setDurability(durabilityMode, DiskManager.DEFAULT_SYNC_INTERVAL_MILLIS);
+    }
+
+    /**
+     * 设置刷盘策略
+     *
+     * @param durabilityMode     刷盘策略
+     * @param syncIntervalMillis PERIODIC模式的刷盘间隔（毫秒），其他模式忽略
+     */
+    public void setDurability(DurabilityMode durabilityMode, long syncIntervalMillis) {
+        if (syncIntervalMillis < 0) {
+            throw new IllegalArgumentException("Invalid sync interval: " + syncIntervalMillis);
+        }
+        this.durabilityMode = durabilityMode;
+        this.syncIntervalMillis = syncIntervalMillis;
+    }
+
+    /**
+     * 设置只读的底层磁盘文件：磁盘文件不存在时在它之上新建一个覆盖层，几何参数取自底层；
+     * 已存在的覆盖层默认使用创建时记录的底层文件，设置后改用这里指定的文件
+     *
+     * @param backingFile 底层磁盘文件，null表示普通磁盘
+     */
+    public void setBackingFile(File backingFile) {
+        this.backingFile = backingFile;
+    }
+
+    /**
+     * 设置格式化新磁盘时是否为每个数据块和目录块记录CRC32C校验和，已存在的磁盘文件按超级块中的记录
+     *
+     * @param checksums 是否留出校验和区
+     */
+    public void setChecksums(boolean checksums) {
+        this.checksums = checksums;
+    }
+
+    /**
+     * 设置从设备读入时是否校验，关闭后写入仍然记录校验和，只省去读取时的计算
+     *
+     * @param verifyChecksums 是否校验
+     */
+    public void setVerifyChecksums(boolean verifyChecksums) {
+        this.verifyChecksums = verifyChecksums;
+    }
+
+    /**
+     * 设置格式化新磁盘时是否启用块级去重，内容相同的数据块共用一个物理块；已存在的磁盘文件按超级块中的记录
+     * 去重的磁盘不能创建快照
+     *
+     * @param dedup 是否留出去重区
+     */
+    public void setDedup(boolean dedup) {
+        this.dedup = dedup;
+    }
+
+    /**
+     * 设置顺序读时的最大预读窗口，实际窗口还不超过缓存容量的一半，避免预读的块把自己挤出缓存
+     * 不使用缓存时不预读
+     *
+     * @param readAheadBlocks 最大预读块数，0表示不预读
+     */
+    public void setReadAheadBlocks(int readAheadBlocks) {
+        if (readAheadBlocks < 0) {
+            throw new IllegalArgumentException("Read-ahead window must not be negative");
+        }
+        this.readAheadBlocks = readAheadBlocks;
+    }
+
+    /**
+     * 设置分配组大小：挂载时把用户区按这个块数划分为分配组，新文件放在父目录所在的组，同时写入的线程分散到不同的组
+     * 只影响挂载期间的分配，不记录在磁盘上；用户区不大于一个组时等同于不分组
+     *
+     * @param groupBlocks 每个分配组的块数，0表示不分组
+     */
+    public void setGroupBlocks(int groupBlocks) {
+        if (groupBlocks < 0) {
+            throw new IllegalArgumentException("Allocation group size must not be negative");
+        }
+        this.groupBlocks = groupBlocks;
+    }
+
+    /**
+     * 设置异步I/O线程池大小和最大在途请求数
+     *
+     * @param ioThreads    I/O线程数
+     * @param ioQueueDepth 最大在途请求数，超过时提交方等待
+     */
+    public void setAsyncIo(int ioThreads, int ioQueueDepth) {
+        if (ioThreads <= 0 || ioQueueDepth <= 0) {
+            throw new IllegalArgumentException("Invalid async I/O settings");
+        }
+        this.ioThreads = ioThreads;
+        this.ioQueueDepth = ioQueueDepth;
+    }
+}
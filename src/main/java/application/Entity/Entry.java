@@ -9,8 +9,8 @@ public class Entry {
     private byte[] name;        // 文件名 / 目录名
     private byte[] type;        // 文件类型名 / 目录未使用，填充空格
     private byte attribute;     // 文件属性 / 目录属性
-    private byte startNum;      // 文件起始盘块号 / 目录起始盘块号
-    private byte diskBlockLength; // 文件长度(盘块数) / 目录未使用，填充0
+    private int startNum;       // 文件起始盘块号 / 目录起始盘块号
+    private int diskBlockLength; // 文件长度(盘块数) / 目录未使用，填充0
 
     /**
      * 用于创建目录项的构造函数
@@ -19,7 +19,7 @@ public class Entry {
      * @param attribute
      * @param startNum
      */
-    public Entry(byte[] name, byte attribute, byte startNum) {
+    public Entry(byte[] name, byte attribute, int startNum) {
         this.name = name;
         // 目录类型未使用，填充空格
         this.type = new byte[2];
@@ -40,7 +40,7 @@ public class Entry {
      * @param startNum
      * @param diskBlockLength
      */
-    public Entry(byte[] name, byte[] type, byte attribute, byte startNum, byte diskBlockLength) {
+    public Entry(byte[] name, byte[] type, byte attribute, int startNum, int diskBlockLength) {
         this.name = name;
         this.type = type;
         this.attribute = attribute;
@@ -68,11 +68,11 @@ public class Entry {
         return attribute;
     }
 
-    public byte getStartNum() {
+    public int getStartNum() {
         return startNum;
     }
 
-    public byte getDiskBlockLength() {
+    public int getDiskBlockLength() {
         return diskBlockLength;
     }
 
@@ -92,6 +92,10 @@ public class Entry {
         return EntryAttribute.NORMAL_FILE.isEqual(this.attribute);
     }
 
+    public boolean isCompressed() {
+        return EntryAttribute.COMPRESSED.isEqual(this.attribute);
+    }
+
     public void setAttribute(byte newAttribute) {
         this.attribute = newAttribute;
     }
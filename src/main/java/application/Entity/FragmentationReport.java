@@ -0,0 +1,65 @@
+package application.Entity;
+
+/**
+ * 碎片报告，由DiskManager.getFragmentationReport()统计
+ */
+public class FragmentationReport {
+    private final int freeBlocks; // 空闲块数
+    private final int freeExtents; // 空闲段数（连续空闲块算一段）
+    private final int largestFreeExtent; // 最长空闲段的块数
+    private final int links; // FAT链中块到块的链接数
+    private final int brokenLinks; // 下一块不是物理上相邻块的链接数
+
+    public FragmentationReport(int freeBlocks, int freeExtents, int largestFreeExtent, int links, int brokenLinks) {
+        this.freeBlocks = freeBlocks;
+        this.freeExtents = freeExtents;
+        this.largestFreeExtent = largestFreeExtent;
+        this.links = links;
+        this.brokenLinks = brokenLinks;
+    }
+
+    public int getFreeBlocks() {
+        return freeBlocks;
+    }
+
+    public int getFreeExtents() {
+        return freeExtents;
+    }
+
+    public int getLargestFreeExtent() {
+        return largestFreeExtent;
+    }
+
+    public int getLinks() {
+        return links;
+    }
+
+    public int getBrokenLinks() {
+        return brokenLinks;
+    }
+
+    /**
+     * 空闲空间碎片率：1 - 最长空闲段 / 空闲块数，0表示空闲空间完全连续
+     *
+     * @return 空闲空间碎片率
+     */
+    public double getFreeFragmentation() {
+        return freeBlocks == 0 ? 0 : 1 - (double) largestFreeExtent / freeBlocks;
+    }
+
+    /**
+     * 文件碎片率：不连续链接占全部链接的比例，0表示所有文件都连续存放
+     *
+     * @return 文件碎片率
+     */
+    public double getFileFragmentation() {
+        return links == 0 ? 0 : (double) brokenLinks / links;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("free=%d extents=%d largest=%d freeFrag=%.1f%% links=%d broken=%d fileFrag=%.1f%%",
+                freeBlocks, freeExtents, largestFreeExtent, getFreeFragmentation() * 100,
+                links, brokenLinks, getFileFragmentation() * 100);
+    }
+}
@@ -1,7 +1,5 @@
 package application.Entity;
 
-import application.Manager.DiskManager;
-
 /**
  * 已打开文件表项
  */
@@ -13,22 +11,25 @@ public class OFTLE {
     private int operateFlag; // 操作类型，0 表示读操作，1 表示写操作
     private Pointer read; // 读文件的位置，文件打开时 dnum 为文件起始盘块号，bnum 为“0”
     private Pointer write; // 写文件的位置，文件刚建立时 dnum 为文件起始盘块号，bnum 为“0 ，打开文件时 dnum 和 bnum 为文件的末尾位置
+    private long plainRead; // 压缩文件的读位置，按解压后的字节数计
 
     /**
      * 构造函数
      * @param filePath 文件绝对路径名
      * @param attribute 文件属性
      * @param startNum 文件起始盘块号
+     * @param endNum 文件结束盘块号
      * @param bytesLength 文件长度
+     * @param blockSize 磁盘块大小
      * @param operateFlag 操作类型
      */
-    public OFTLE(String filePath, byte attribute, int startNum, int endNum, int bytesLength, String operateFlag) {
+    public OFTLE(String filePath, byte attribute, int startNum, int endNum, int bytesLength, int blockSize, String operateFlag) {
         this.filePath = filePath;
         this.attribute = attribute;
         this.startNum = startNum;
         this.bytesLength = bytesLength;
         this.read = new Pointer(startNum, 0);
-        this.write = new Pointer(endNum, bytesLength % DiskManager.BLOCK_SIZE);
+        this.write = new Pointer(endNum, bytesLength % blockSize);
         switch (operateFlag) {
             case "r":
                 this.operateFlag = 0; break;
@@ -68,6 +69,10 @@ public class OFTLE {
         return write;
     }
 
+    public long getPlainRead() {
+        return plainRead;
+    }
+
     public void setFilePath(String filePath) {
         this.filePath = filePath;
     }
@@ -96,6 +101,10 @@ public class OFTLE {
         this.write = write;
     }
 
+    public void setPlainRead(long plainRead) {
+        this.plainRead = plainRead;
+    }
+
     public void setOperateFlag(String operateFlag) {
         switch (operateFlag) {
             case "r":
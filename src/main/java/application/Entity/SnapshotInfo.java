@@ -0,0 +1,33 @@
+package application.Entity;
+
+/**
+ * 快照信息，由DiskManager.getSnapshots()返回
+ */
+public class SnapshotInfo {
+    private final String name; // 快照名
+    private final int epoch; // 纪元号，按创建顺序递增
+    private final int preservedBlocks; // 创建后被覆盖、为它保存了旧内容的块数
+
+    public SnapshotInfo(String name, int epoch, int preservedBlocks) {
+        this.name = name;
+        this.epoch = epoch;
+        this.preservedBlocks = preservedBlocks;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getEpoch() {
+        return epoch;
+    }
+
+    public int getPreservedBlocks() {
+        return preservedBlocks;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("snapshot %s epoch=%d preserved=%d", name, epoch, preservedBlocks);
+    }
+}
@@ -0,0 +1,11 @@
+package application.Enum;
+
+/**
+ * 磁盘块分配策略枚举
+ */
+public enum AllocationPolicy {
+    FIRST_FIT, // 首次适应：从用户区开头找第一个足够长的空闲段
+    NEXT_FIT, // 循环首次适应：从上次分配的位置继续查找
+    BEST_FIT, // 最佳适应：选择能容纳请求的最短空闲段
+    BUDDY; // 伙伴：请求向上取整为2的幂，在按该大小对齐的位置分配
+}
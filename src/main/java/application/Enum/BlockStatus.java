@@ -2,6 +2,7 @@ package application.Enum;
 
 /**
  * 磁盘块状态枚举
+ * FAT条目为32位，END_OF_FILE、BAD_BLOCK按符号扩展后分别为-1、-2，不会和任何磁盘块号冲突
  */
 public enum BlockStatus {
     FREE((byte) 0), // 空闲块
@@ -19,8 +20,8 @@ public enum BlockStatus {
         return value;
     }
 
-    // 判断状态是否相等
-    public boolean isEqual(byte status) {
+    // 判断状态是否相等，status可以是FAT条目或者磁盘块中的字节
+    public boolean isEqual(int status) {
         return status == value;
     }
 }
@@ -0,0 +1,11 @@
+package application.Enum;
+
+/**
+ * 刷盘策略枚举，决定已写入的数据什么时候用force()刷到磁盘
+ */
+public enum DurabilityMode {
+    NONE, // 不主动刷盘，由操作系统决定何时落盘；启用日志时每个同步点照常提交事务，只是不刷盘
+    PERIODIC, // 距上次刷盘超过设定间隔后，在下一个同步点刷盘
+    ON_CLOSE, // 关闭文件时刷盘
+    EVERY_OP; // 每个修改类操作结束时刷盘
+}
@@ -7,7 +7,8 @@ public enum EntryAttribute {
     READ_ONLY((byte) 0x01), // 第0位 只读
     SYSTEM_FILE((byte) 0x02), // 第1位 系统文件
     NORMAL_FILE((byte) 0x04), // 第2位 普通文件
-    DIRECTORY((byte) 0x08); // 第3位 目录
+    DIRECTORY((byte) 0x08), // 第3位 目录
+    COMPRESSED((byte) 0x10); // 第4位 压缩文件，创建时确定，内容按帧压缩保存
 
     private final byte value;
 
@@ -11,9 +11,9 @@ public enum EntryStructure {
     TYPE_END(5), // 文件类型结束位置
     TYPE_LENGTH(2), // 文件类型长度
     ATTRIBUTE_POS(5), // 文件属性位置
-    START_NUM_POS(6),  // 起始盘块号位置
-    DISK_BLOCK_LENGTH_POS(7), // 文件长度位置
-    ENTRY_LENGTH(8); // 条目长度
+    START_NUM_POS(6),  // 起始盘块号位置（4字节）
+    DISK_BLOCK_LENGTH_POS(10), // 文件长度位置（4字节）
+    ENTRY_LENGTH(16); // 条目长度，最后2字节保留
 
     private final int value;
 
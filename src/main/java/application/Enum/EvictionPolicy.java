@@ -0,0 +1,10 @@
+package application.Enum;
+
+/**
+ * 磁盘块缓存的淘汰策略枚举
+ */
+public enum EvictionPolicy {
+    LRU, // 最近最少使用
+    CLOCK, // 时钟（二次机会）算法
+    ARC; // 自适应替换缓存，兼顾最近使用和使用频率
+}
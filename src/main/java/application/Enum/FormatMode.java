@@ -0,0 +1,9 @@
+package application.Enum;
+
+/**
+ * 磁盘格式化方式枚举
+ */
+public enum FormatMode {
+    QUICK, // 快速格式化：只写超级块、根目录和FAT，用户区为稀疏空洞，读取时为0
+    FULL; // 完整格式化：按大块把用户区全部写0
+}
@@ -0,0 +1,9 @@
+package application.Enum;
+
+/**
+ * 磁盘挂载方式枚举
+ */
+public enum MountMode {
+    CHANNEL, // 通过常驻的FileChannel按位置读写
+    MAPPED; // 将整个磁盘文件映射到内存，读写即内存访问
+}
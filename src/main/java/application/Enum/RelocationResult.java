@@ -0,0 +1,12 @@
+package application.Enum;
+
+/**
+ * 坏块搬迁结果枚举
+ */
+public enum RelocationResult {
+    FALSE_ALARM, // 重新校验通过，不是坏块（巡检读取时恰好遇到并发写入）
+    RETIRED, // 没有文件引用这一块，直接标记为坏块停用
+    RELOCATED, // 能读出的内容已搬到新块并接回原来的FAT链或登记项，坏块停用
+    BUSY, // 所在文件正在打开，暂不搬迁
+    FAILED; // 无法搬迁：没有空闲块、坏块是根目录块或快照副本
+}
@@ -0,0 +1,76 @@
+package application.Manager;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 分配组：用户区中连续的一段块，有自己的空闲块位图视图、空闲块数和分配策略实例（游标等状态），
+ * 不同组的分配互不影响，各组的游标也不会互相推动；组内同样用CAS占用，不加锁
+ */
+class AllocationGroup {
+    private final int index; // 组号
+    private final FreeBlockMap map; // 本组范围内的空闲块位图视图
+    private final AllocationStrategy allocator; // 本组的分配策略实例
+
+    private final AtomicLong allocations = new AtomicLong(); // 在本组分配成功的次数
+    private final AtomicLong contended = new AtomicLong(); // 找到的位置被其他线程抢先占用、需要重新查找的次数
+    private final AtomicLong spills = new AtomicLong(); // 以本组为目标但本组没有足够空间、改到其他组分配的次数
+
+    AllocationGroup(int index, FreeBlockMap map, AllocationStrategy allocator) {
+        this.index = index;
+        this.map = map;
+        this.allocator = allocator;
+    }
+
+    /**
+     * 在本组中占用一段连续的空闲块，不修改FAT
+     *
+     * @param length 需要的连续块数
+     * @return 起始块号，本组没有足够长的连续空闲段时返回-1
+     */
+    int allocate(int length) {
+        while (map.getFreeCount() >= length) {
+            int start = allocator.find(map, length);
+            if (start == -1) return -1;
+            if (!map.claim(start, length)) {
+                contended.incrementAndGet();
+                continue;
+            }
+            allocator.allocated(start, length);
+            allocations.incrementAndGet();
+            return start;
+        }
+        return -1;
+    }
+
+    void spilled() {
+        spills.incrementAndGet();
+    }
+
+    int getIndex() {
+        return index;
+    }
+
+    int getStart() {
+        return map.getStart();
+    }
+
+    int getBlocks() {
+        return map.getEnd() - map.getStart();
+    }
+
+    int getFreeCount() {
+        return map.getFreeCount();
+    }
+
+    long getAllocations() {
+        return allocations.get();
+    }
+
+    long getContended() {
+        return contended.get();
+    }
+
+    long getSpills() {
+        return spills.get();
+    }
+}
@@ -0,0 +1,25 @@
+package application.Manager;
+
+/**
+ * 磁盘块分配策略，只负责在空闲块位图中选择位置，FAT由DiskManager修改
+ */
+interface AllocationStrategy {
+
+    /**
+     * 选择一段连续的空闲块
+     *
+     * @param map    空闲块位图
+     * @param length 需要的连续块数
+     * @return 起始块号，找不到足够长的空闲段时返回-1
+     */
+    int find(FreeBlockMap map, int length);
+
+    /**
+     * 分配成功后调用，用于记录游标等状态
+     *
+     * @param start  起始块号
+     * @param length 分配的块数
+     */
+    default void allocated(int start, int length) {
+    }
+}
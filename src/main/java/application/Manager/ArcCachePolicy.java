@@ -0,0 +1,101 @@
+package application.Manager;
+
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+
+/**
+ * ARC淘汰策略（Megiddo & Modha）
+ * T1保存只访问过一次的块，T2保存访问过多次的块，B1、B2分别记录刚从T1、T2淘汰的块号（幽灵表，不占数据空间），
+ * 根据幽灵表的命中情况自适应地调整T1的目标大小p
+ */
+class ArcCachePolicy implements CachePolicy {
+    private final int capacity; // 缓存容量c
+    private final LinkedHashSet<Integer> t1 = new LinkedHashSet<>(); // 最近访问一次，从LRU到MRU
+    private final LinkedHashSet<Integer> t2 = new LinkedHashSet<>(); // 最近访问多次
+    private final LinkedHashSet<Integer> b1 = new LinkedHashSet<>(); // T1的幽灵表
+    private final LinkedHashSet<Integer> b2 = new LinkedHashSet<>(); // T2的幽灵表
+    private int p; // T1的目标大小
+
+    ArcCachePolicy(int capacity) {
+        this.capacity = capacity;
+    }
+
+    @Override
+    public void onHit(int blockIndex) {
+        // 命中T1或T2都移到T2的MRU端
+        if (t1.remove(blockIndex) || t2.remove(blockIndex)) {
+            t2.add(blockIndex);
+        }
+    }
+
+    @Override
+    public int admit(int blockIndex) {
+        int victim = -1;
+        if (b1.contains(blockIndex)) {
+            // 幽灵表B1命中，说明T1太小
+            p = Math.min(capacity, p + Math.max(b2.size() / b1.size(), 1));
+            victim = replace(false);
+            b1.remove(blockIndex);
+            t2.add(blockIndex);
+        } else if (b2.contains(blockIndex)) {
+            // 幽灵表B2命中，说明T2太小
+            p = Math.max(0, p - Math.max(b1.size() / b2.size(), 1));
+            victim = replace(true);
+            b2.remove(blockIndex);
+            t2.add(blockIndex);
+        } else {
+            int l1 = t1.size() + b1.size();
+            int total = l1 + t2.size() + b2.size();
+            if (l1 >= capacity) {
+                if (t1.size() < capacity) {
+                    removeFirst(b1);
+                    victim = replace(false);
+                } else {
+                    victim = removeFirst(t1);
+                }
+            } else if (total >= capacity) {
+                if (total >= 2 * capacity) {
+                    removeFirst(b2);
+                }
+                victim = replace(false);
+            }
+            t1.add(blockIndex);
+        }
+        return victim;
+    }
+
+    // 缓存已满时从T1或T2淘汰一块并记入对应幽灵表
+    private int replace(boolean inB2) {
+        if (t1.size() + t2.size() < capacity) return -1;
+        if (!t1.isEmpty() && (t1.size() > p || (inB2 && t1.size() == p) || t2.isEmpty())) {
+            int victim = removeFirst(t1);
+            b1.add(victim);
+            return victim;
+        }
+        int victim = removeFirst(t2);
+        b2.add(victim);
+        return victim;
+    }
+
+    private static int removeFirst(LinkedHashSet<Integer> list) {
+        Iterator<Integer> it = list.iterator();
+        int first = it.next();
+        it.remove();
+        return first;
+    }
+
+    @Override
+    public void remove(int blockIndex) {
+        t1.remove(blockIndex);
+        t2.remove(blockIndex);
+    }
+
+    @Override
+    public void clear() {
+        t1.clear();
+        t2.clear();
+        b1.clear();
+        b2.clear();
+        p = 0;
+    }
+}
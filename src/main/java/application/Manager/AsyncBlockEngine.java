@@ -0,0 +1,210 @@
+package application.Manager;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousFileChannel;
+import java.nio.channels.CompletionHandler;
+import java.nio.file.StandardOpenOption;
+import java.util.EnumSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 异步块I/O引擎，基于AsynchronousFileChannel，完成回调在固定大小的I/O线程池中执行
+ * 同时在途的请求数受队列深度限制，超过时提交方阻塞等待；记录在途请求数和完成延迟
+ */
+public class AsyncBlockEngine {
+    private final AsynchronousFileChannel channel; // 异步文件通道
+    private final ExecutorService ioPool; // I/O线程池
+    private final Semaphore slots; // 剩余的提交名额
+    private final int maxQueueDepth; // 最大在途请求数
+
+    private final AtomicInteger queueDepth = new AtomicInteger(); // 当前在途请求数
+    private final AtomicInteger peakQueueDepth = new AtomicInteger(); // 在途请求数峰值
+    private final AtomicLong completed = new AtomicLong(); // 已完成请求数
+    private final AtomicLong totalLatencyNanos = new AtomicLong(); // 从提交到完成的总耗时
+    private final AtomicLong maxLatencyNanos = new AtomicLong(); // 最长完成耗时
+
+    /**
+     * @param diskFile      磁盘文件
+     * @param ioThreads     I/O线程数
+     * @param maxQueueDepth 最大在途请求数
+     */
+    AsyncBlockEngine(File diskFile, int ioThreads, int maxQueueDepth) throws IOException {
+        AtomicInteger threadNo = new AtomicInteger();
+        this.ioPool = new ThreadPoolExecutor(ioThreads, ioThreads, 0L, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(), r -> {
+            Thread thread = new Thread(r, "disk-io-" + threadNo.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.channel = AsynchronousFileChannel.open(diskFile.toPath(),
+                EnumSet.of(StandardOpenOption.READ, StandardOpenOption.WRITE), ioPool);
+        this.maxQueueDepth = maxQueueDepth;
+        this.slots = new Semaphore(maxQueueDepth);
+    }
+
+    /**
+     * 从指定位置开始异步读满缓冲区，超出磁盘文件末尾的部分填0
+     *
+     * @param position 文件中的字节偏移
+     * @param dst      目标缓冲区
+     * @return 读完时完成的future
+     */
+    CompletableFuture<Void> read(long position, ByteBuffer dst) {
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        long start = submit();
+        try {
+            channel.read(dst, position, null, new CompletionHandler<Integer, Void>() {
+                private long next = position;
+
+                @Override
+                public void completed(Integer n, Void attachment) {
+                    if (n < 0) {
+                        while (dst.hasRemaining()) dst.put((byte) 0);
+                    }
+                    if (!dst.hasRemaining()) {
+                        finish(start);
+                        future.complete(null);
+                        return;
+                    }
+                    next += n;
+                    channel.read(dst, next, null, this);
+                }
+
+                @Override
+                public void failed(Throwable e, Void attachment) {
+                    finish(start);
+                    future.completeExceptionally(e);
+                }
+            });
+        } catch (RuntimeException e) {
+            finish(start);
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
+    /**
+     * 从指定位置开始异步写完缓冲区
+     *
+     * @param position 文件中的字节偏移
+     * @param src      源缓冲区
+     * @return 写完时完成的future
+     */
+    CompletableFuture<Void> write(long position, ByteBuffer src) {
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        long start = submit();
+        try {
+            channel.write(src, position, null, new CompletionHandler<Integer, Void>() {
+                private long next = position;
+
+                @Override
+                public void completed(Integer n, Void attachment) {
+                    if (!src.hasRemaining()) {
+                        finish(start);
+                        future.complete(null);
+                        return;
+                    }
+                    next += n;
+                    channel.write(src, next, null, this);
+                }
+
+                @Override
+                public void failed(Throwable e, Void attachment) {
+                    finish(start);
+                    future.completeExceptionally(e);
+                }
+            });
+        } catch (RuntimeException e) {
+            finish(start);
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
+    // 占用一个提交名额，返回提交时间
+    private long submit() {
+        slots.acquireUninterruptibly();
+        int depth = queueDepth.incrementAndGet();
+        peakQueueDepth.accumulateAndGet(depth, Math::max);
+        return System.nanoTime();
+    }
+
+    // 请求完成，释放名额并记录延迟
+    private void finish(long start) {
+        long latency = System.nanoTime() - start;
+        totalLatencyNanos.addAndGet(latency);
+        maxLatencyNanos.accumulateAndGet(latency, Math::max);
+        completed.incrementAndGet();
+        queueDepth.decrementAndGet();
+        slots.release();
+    }
+
+    /**
+     * 等待在途请求全部完成后关闭通道和线程池
+     */
+    void close() throws IOException {
+        slots.acquireUninterruptibly(maxQueueDepth);
+        try {
+            channel.close();
+        } finally {
+            slots.release(maxQueueDepth);
+            ioPool.shutdown();
+        }
+    }
+
+    public int getQueueDepth() {
+        return queueDepth.get();
+    }
+
+    public int getPeakQueueDepth() {
+        return peakQueueDepth.get();
+    }
+
+    public int getMaxQueueDepth() {
+        return maxQueueDepth;
+    }
+
+    public long getCompleted() {
+        return completed.get();
+    }
+
+    /**
+     * 平均完成延迟
+     *
+     * @return 平均每个请求从提交到完成的微秒数，没有完成的请求时为0
+     */
+    public double getAverageLatencyMicros() {
+        long count = completed.get();
+        return count == 0 ? 0 : totalLatencyNanos.get() / 1e3 / count;
+    }
+
+    public double getMaxLatencyMicros() {
+        return maxLatencyNanos.get() / 1e3;
+    }
+
+    /**
+     * 重置计数器
+     */
+    public void resetStats() {
+        peakQueueDepth.set(queueDepth.get());
+        completed.set(0);
+        totalLatencyNanos.set(0);
+        maxLatencyNanos.set(0);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("async io depth=%d/%d peak=%d, completed=%d, avgLatency=%.1fus, maxLatency=%.1fus",
+                getQueueDepth(), maxQueueDepth, getPeakQueueDepth(), getCompleted(),
+                getAverageLatencyMicros(), getMaxLatencyMicros());
+    }
+}
@@ -0,0 +1,25 @@
+package application.Manager;
+
+/**
+ * 最佳适应：遍历所有空闲段，选择能容纳请求的最短空闲段，遇到长度恰好相等的立即返回
+ */
+class BestFitStrategy implements AllocationStrategy {
+
+    @Override
+    public int find(FreeBlockMap map, int length) {
+        int best = -1;
+        int bestLength = Integer.MAX_VALUE;
+        int free = map.nextFree(map.getStart(), map.getEnd());
+        while (free != -1) {
+            int used = map.nextUsed(free, map.getEnd());
+            int runLength = used - free;
+            if (runLength >= length && runLength < bestLength) {
+                best = free;
+                bestLength = runLength;
+                if (runLength == length) break;
+            }
+            free = map.nextFree(used, map.getEnd());
+        }
+        return best;
+    }
+}
@@ -0,0 +1,265 @@
+package application.Manager;
+
+import application.Enum.EvictionPolicy;
+
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+
+/**
+ * 磁盘块缓存，位于DiskManager的读写入口与底层设备之间
+ * 读未命中时从设备读入并按淘汰策略放入缓存；写磁盘块时同步更新已缓存的副本，保证缓存不会读到旧数据
+ * 异步读写在I/O线程上访问缓存，因此修改缓存的方法都加锁
+ * 预读的块在读完时才放入缓存，期间这一块被写入、放入或失效时预读作废，避免旧内容覆盖新写入
+ */
+public class BlockCache {
+    private final int capacity; // 缓存容量（块数）
+    private final int blockSize; // 磁盘块大小
+    private final EvictionPolicy evictionPolicy; // 淘汰策略
+    private final CachePolicy policy;
+    private final HashMap<Integer, byte[]> blocks; // 磁盘块号到缓存数据的映射
+    private final HashMap<Integer, Long> prefetching = new HashMap<>(); // 正在预读的块 -> 预读序号
+    private long prefetchSeq; // 最近一次预读的序号
+
+    private long hits; // 命中次数
+    private long misses; // 未命中次数
+    private long evictions; // 淘汰次数
+    private long prefetched; // 预读放入缓存的块数
+
+    /**
+     * @param capacity       缓存容量（块数），必须大于0
+     * @param blockSize      磁盘块大小
+     * @param evictionPolicy 淘汰策略
+     */
+    public BlockCache(int capacity, int blockSize, EvictionPolicy evictionPolicy) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Cache capacity must be positive");
+        }
+        this.capacity = capacity;
+        this.blockSize = blockSize;
+        this.evictionPolicy = evictionPolicy;
+        this.blocks = new HashMap<>(capacity * 2);
+        switch (evictionPolicy) {
+            case CLOCK:
+                this.policy = new ClockCachePolicy(capacity); break;
+            case ARC:
+                this.policy = new ArcCachePolicy(capacity); break;
+            case LRU:
+            default:
+                this.policy = new LruCachePolicy(capacity);
+        }
+    }
+
+    /**
+     * 查找缓存，命中时把数据复制到dst
+     *
+     * @param blockIndex 磁盘块号
+     * @param dst        目标数组，长度为磁盘块大小
+     * @return 是否命中
+     */
+    synchronized boolean read(int blockIndex, byte[] dst) {
+        byte[] cached = blocks.get(blockIndex);
+        if (cached == null) {
+            misses++;
+            return false;
+        }
+        hits++;
+        policy.onHit(blockIndex);
+        System.arraycopy(cached, 0, dst, 0, blockSize);
+        return true;
+    }
+
+    /**
+     * 查找缓存，命中时把数据写入dst的当前位置，位置前进一块
+     *
+     * @param blockIndex 磁盘块号
+     * @param dst        目标缓冲区，剩余空间不少于一块
+     * @return 是否命中
+     */
+    synchronized boolean read(int blockIndex, ByteBuffer dst) {
+        byte[] cached = blocks.get(blockIndex);
+        if (cached == null) {
+            misses++;
+            return false;
+        }
+        hits++;
+        policy.onHit(blockIndex);
+        dst.put(cached, 0, blockSize);
+        return true;
+    }
+
+    /**
+     * 把从设备读到的磁盘块放入缓存，必要时淘汰一块
+     *
+     * @param blockIndex 磁盘块号
+     * @param data       磁盘块数据
+     */
+    synchronized void fill(int blockIndex, byte[] data) {
+        cancelPrefetch(blockIndex);
+        if (blocks.containsKey(blockIndex)) {
+            update(blockIndex, data);
+            return;
+        }
+        System.arraycopy(data, 0, admit(blockIndex), 0, blockSize);
+    }
+
+    /**
+     * 把从设备读到的磁盘块放入缓存，数据取自src中从offset开始的一块，不改变src的位置
+     *
+     * @param blockIndex 磁盘块号
+     * @param src        读到的数据所在的缓冲区
+     * @param offset     数据在缓冲区中的起始位置
+     */
+    synchronized void fill(int blockIndex, ByteBuffer src, int offset) {
+        cancelPrefetch(blockIndex);
+        byte[] cached = blocks.get(blockIndex);
+        if (cached == null) cached = admit(blockIndex);
+        int position = src.position();
+        src.position(offset);
+        src.get(cached, 0, blockSize);
+        src.position(position);
+    }
+
+    // 按淘汰策略为新块腾出位置，被淘汰块的数组直接复用，返回新块的缓存数组
+    private byte[] admit(int blockIndex) {
+        byte[] array = null;
+        int victim = policy.admit(blockIndex);
+        if (victim != -1) {
+            array = blocks.remove(victim);
+            if (array != null) evictions++;
+        }
+        if (array == null) array = new byte[blockSize];
+        blocks.put(blockIndex, array);
+        return array;
+    }
+
+    /**
+     * 磁盘块被写入时调用，更新已缓存的副本（data可以比磁盘块短，只覆盖开头部分，和设备写入一致）
+     *
+     * @param blockIndex 磁盘块号
+     * @param data       写入的数据
+     */
+    synchronized void update(int blockIndex, byte[] data) {
+        cancelPrefetch(blockIndex);
+        byte[] cached = blocks.get(blockIndex);
+        if (cached != null) {
+            System.arraycopy(data, 0, cached, 0, Math.min(data.length, blockSize));
+        }
+    }
+
+    /**
+     * 使某一块的缓存失效
+     *
+     * @param blockIndex 磁盘块号
+     */
+    public synchronized void invalidate(int blockIndex) {
+        cancelPrefetch(blockIndex);
+        if (blocks.remove(blockIndex) != null) {
+            policy.remove(blockIndex);
+        }
+    }
+
+    /**
+     * 清空缓存
+     */
+    public synchronized void clear() {
+        blocks.clear();
+        policy.clear();
+        prefetching.clear();
+    }
+
+    /**
+     * 是否已缓存，不计入命中统计
+     *
+     * @param blockIndex 磁盘块号
+     */
+    synchronized boolean contains(int blockIndex) {
+        return blocks.containsKey(blockIndex);
+    }
+
+    /**
+     * 发出预读前登记
+     *
+     * @param blockIndex 磁盘块号
+     * @return 预读序号，读完时交给completePrefetch
+     */
+    synchronized long beginPrefetch(int blockIndex) {
+        prefetching.put(blockIndex, ++prefetchSeq);
+        return prefetchSeq;
+    }
+
+    /**
+     * 预读完成，登记之后这一块没有被写入或放入过时把数据放入缓存
+     *
+     * @param blockIndex 磁盘块号
+     * @param ticket     beginPrefetch返回的序号
+     * @param data       读到的数据
+     * @param offset     这一块在data中的起始位置
+     * @return 是否放入缓存
+     */
+    synchronized boolean completePrefetch(int blockIndex, long ticket, byte[] data, int offset) {
+        if (!prefetching.remove(blockIndex, ticket)) return false;
+        if (blocks.containsKey(blockIndex)) return false;
+        System.arraycopy(data, offset, admit(blockIndex), 0, blockSize);
+        prefetched++;
+        return true;
+    }
+
+    // 这一块有了更新的内容，正在进行的预读作废
+    private void cancelPrefetch(int blockIndex) {
+        if (!prefetching.isEmpty()) prefetching.remove(blockIndex);
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public EvictionPolicy getEvictionPolicy() {
+        return evictionPolicy;
+    }
+
+    public synchronized int getSize() {
+        return blocks.size();
+    }
+
+    public long getHits() {
+        return hits;
+    }
+
+    public long getMisses() {
+        return misses;
+    }
+
+    public long getEvictions() {
+        return evictions;
+    }
+
+    public long getPrefetched() {
+        return prefetched;
+    }
+
+    /**
+     * 命中率
+     *
+     * @return 命中次数 / 查找次数，没有查找过时为0
+     */
+    public double getHitRatio() {
+        long lookups = hits + misses;
+        return lookups == 0 ? 0 : (double) hits / lookups;
+    }
+
+    /**
+     * 重置计数器
+     */
+    public synchronized void resetStats() {
+        hits = 0;
+        misses = 0;
+        evictions = 0;
+        prefetched = 0;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("%s cache %d/%d blocks, hits=%d, misses=%d, evictions=%d, hitRatio=%.2f%%",
+                evictionPolicy, blocks.size(), capacity, hits, misses, evictions, getHitRatio() * 100);
+    }
+}
@@ -0,0 +1,52 @@
+package application.Manager;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * 磁盘文件的底层读写设备，按字节偏移读写，由DiskManager换算磁盘块位置
+ */
+interface BlockDevice extends AutoCloseable {
+
+    /**
+     * 从指定位置开始读满缓冲区，超出磁盘文件末尾的部分视为未写入的0
+     *
+     * @param position 文件中的字节偏移
+     * @param dst      目标缓冲区
+     */
+    void read(long position, ByteBuffer dst) throws IOException;
+
+    /**
+     * 从指定位置开始写完缓冲区
+     *
+     * @param position 文件中的字节偏移
+     * @param src      源缓冲区
+     */
+    void write(long position, ByteBuffer src) throws IOException;
+
+    /**
+     * 分散读：从指定位置开始依次读满各缓冲区，各缓冲区对应文件中首尾相接的区域
+     *
+     * @param position 文件中的字节偏移
+     * @param dsts     目标缓冲区
+     */
+    void read(long position, ByteBuffer[] dsts) throws IOException;
+
+    /**
+     * 聚集写：从指定位置开始依次写完各缓冲区
+     *
+     * @param position 文件中的字节偏移
+     * @param srcs     源缓冲区
+     */
+    void write(long position, ByteBuffer[] srcs) throws IOException;
+
+    /**
+     * 将已写入的数据刷到磁盘
+     *
+     * @param metaData 是否同时刷写文件的元数据（修改时间等），数据块和文件长度不需要
+     */
+    void force(boolean metaData) throws IOException;
+
+    @Override
+    void close() throws IOException;
+}
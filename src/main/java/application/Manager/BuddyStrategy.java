@@ -0,0 +1,39 @@
+package application.Manager;
+
+/**
+ * 伙伴分配：请求长度向上取整为2的幂（阶），只在相对用户区起点按该大小对齐的位置分配
+ * 优先选择伙伴已被部分使用的空闲块，尽量不拆分更大的完整空闲块；回收通过FAT置空闲，位图中相邻伙伴自然合并
+ * 实际只占用请求的块数，取整多出的尾部仍保持空闲，供之后的小请求使用
+ * 找到第一个可用位置后最多再向后检查SEARCH_LIMIT个对齐位置，避免在大片空闲区中扫描整个磁盘
+ */
+class BuddyStrategy implements AllocationStrategy {
+    private static final int SEARCH_LIMIT = 64; // 找到候选位置后继续检查的对齐位置数
+
+    @Override
+    public int find(FreeBlockMap map, int length) {
+        int size = Integer.highestOneBit(length);
+        if (size < length) size <<= 1;
+        int base = map.getStart();
+        int fallback = -1;
+        int searched = 0;
+        for (int offset = 0; base + offset < map.getEnd(); offset += size) {
+            int candidate = base + offset;
+            // 跳过开头已使用的对齐块，直接转到下一个空闲块所在的对齐位置
+            int free = map.nextFree(candidate, map.getEnd());
+            if (free == -1) break;
+            int slot = (free - base) / size * size;
+            if (slot > offset) {
+                offset = slot - size;
+                continue;
+            }
+            if (free != candidate || !map.isRunFree(candidate, length)) continue;
+            int buddy = base + (offset ^ size);
+            if (buddy >= map.getEnd() || !map.isRunFree(buddy, Math.min(size, map.getEnd() - buddy))) {
+                return candidate; // 伙伴不完整，分配这里不会拆开更大的空闲块
+            }
+            if (fallback == -1) fallback = candidate;
+            if (++searched > SEARCH_LIMIT) break;
+        }
+        return fallback;
+    }
+}
@@ -0,0 +1,89 @@
+package application.Manager;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+
+/**
+ * 磁盘块缓冲区池，租用（lease）一个块大小的缓冲区，用完后归还（release）复用
+ * 稳定状态下读写磁盘块不再分配新的数组；池中最多保留maxPooled个空闲缓冲区，多余的归还后交给GC
+ */
+public class BufferPool {
+    private final int bufferSize; // 每个缓冲区的字节数（磁盘块大小）
+    private final boolean direct; // 是否使用直接缓冲区
+    private final int maxPooled; // 最多保留的空闲缓冲区数
+    private final ArrayDeque<ByteBuffer> free; // 空闲缓冲区
+
+    private long created; // 累计新建的缓冲区数
+    private long leases; // 累计租用次数
+    private int outstanding; // 已租出未归还的缓冲区数
+
+    /**
+     * @param bufferSize 每个缓冲区的字节数
+     * @param direct     是否使用直接缓冲区，直接缓冲区在FileChannel读写时少一次复制
+     * @param maxPooled  最多保留的空闲缓冲区数
+     */
+    public BufferPool(int bufferSize, boolean direct, int maxPooled) {
+        this.bufferSize = bufferSize;
+        this.direct = direct;
+        this.maxPooled = maxPooled;
+        this.free = new ArrayDeque<>(maxPooled);
+    }
+
+    /**
+     * 租用一个缓冲区，position为0，limit为缓冲区大小
+     *
+     * @return 缓冲区，用完后必须调用release归还
+     */
+    public synchronized ByteBuffer lease() {
+        ByteBuffer buffer = free.pollFirst();
+        if (buffer == null) {
+            buffer = direct ? ByteBuffer.allocateDirect(bufferSize) : ByteBuffer.allocate(bufferSize);
+            created++;
+        }
+        leases++;
+        outstanding++;
+        buffer.clear();
+        return buffer;
+    }
+
+    /**
+     * 归还缓冲区，归还后调用方不能再使用它
+     *
+     * @param buffer 从本池租用的缓冲区
+     */
+    public synchronized void release(ByteBuffer buffer) {
+        if (buffer.capacity() != bufferSize || buffer.isDirect() != direct) {
+            throw new IllegalArgumentException("Buffer does not belong to this pool");
+        }
+        outstanding--;
+        if (free.size() < maxPooled) {
+            free.addFirst(buffer);
+        }
+    }
+
+    public int getBufferSize() {
+        return bufferSize;
+    }
+
+    public boolean isDirect() {
+        return direct;
+    }
+
+    public synchronized long getCreated() {
+        return created;
+    }
+
+    public synchronized long getLeases() {
+        return leases;
+    }
+
+    public synchronized int getOutstanding() {
+        return outstanding;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("%s buffer pool %d B, pooled=%d/%d, created=%d, leases=%d, outstanding=%d",
+                direct ? "direct" : "heap", bufferSize, free.size(), maxPooled, created, leases, outstanding);
+    }
+}
@@ -0,0 +1,34 @@
+package application.Manager;
+
+/**
+ * 缓存淘汰策略，只记录缓存中有哪些磁盘块以及它们的先后次序，块数据由BlockCache保存
+ */
+interface CachePolicy {
+
+    /**
+     * 缓存命中时调用
+     *
+     * @param blockIndex 命中的磁盘块号
+     */
+    void onHit(int blockIndex);
+
+    /**
+     * 未命中的磁盘块准备放入缓存时调用，由策略决定要淘汰哪一块
+     *
+     * @param blockIndex 要放入的磁盘块号
+     * @return 被淘汰的磁盘块号，不需要淘汰时返回-1
+     */
+    int admit(int blockIndex);
+
+    /**
+     * 磁盘块被移出缓存（失效）时调用
+     *
+     * @param blockIndex 被移出的磁盘块号
+     */
+    void remove(int blockIndex);
+
+    /**
+     * 清空策略中的所有记录
+     */
+    void clear();
+}
@@ -0,0 +1,117 @@
+package application.Manager;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * 基于常驻FileChannel的设备，每次读写都是一次基于位置的系统调用
+ * 直接缓冲区的分散读和聚集写需要先设置通道位置，因此这两个操作互斥执行；
+ * 堆缓冲区交给通道做分散读写时JDK会为每个缓冲区各借一个临时直接缓冲区，因此改为经一个合并缓冲区做一次基于位置的读写
+ */
+class ChannelBlockDevice implements BlockDevice {
+    private final RandomAccessFile raf; // 挂载期间一直打开的磁盘文件
+    private final FileChannel channel; // 挂载期间一直打开的文件通道
+
+    ChannelBlockDevice(File diskFile) throws IOException {
+        this(diskFile, false);
+    }
+
+    /**
+     * @param diskFile 磁盘文件
+     * @param readOnly 是否只读打开，覆盖层的底层磁盘文件只读打开
+     */
+    ChannelBlockDevice(File diskFile, boolean readOnly) throws IOException {
+        this.raf = new RandomAccessFile(diskFile, readOnly ? "r" : "rw");
+        this.channel = raf.getChannel();
+    }
+
+    @Override
+    public void read(long position, ByteBuffer dst) throws IOException {
+        while (dst.hasRemaining()) {
+            int n = channel.read(dst, position);
+            if (n < 0) {
+                while (dst.hasRemaining()) dst.put((byte) 0);
+                return;
+            }
+            position += n;
+        }
+    }
+
+    @Override
+    public void write(long position, ByteBuffer src) throws IOException {
+        while (src.hasRemaining()) {
+            position += channel.write(src, position);
+        }
+    }
+
+    @Override
+    public synchronized void read(long position, ByteBuffer[] dsts) throws IOException {
+        if (!allDirect(dsts)) {
+            ByteBuffer merged = ByteBuffer.allocate(totalRemaining(dsts));
+            read(position, merged);
+            merged.flip();
+            for (ByteBuffer dst : dsts) {
+                int limit = merged.position() + dst.remaining();
+                merged.limit(limit);
+                dst.put(merged);
+                merged.limit(merged.capacity());
+            }
+            return;
+        }
+        channel.position(position);
+        int first = 0;
+        while (first < dsts.length) {
+            if (channel.read(dsts, first, dsts.length - first) < 0) {
+                for (int i = first; i < dsts.length; i++) {
+                    while (dsts[i].hasRemaining()) dsts[i].put((byte) 0);
+                }
+                return;
+            }
+            while (first < dsts.length && !dsts[first].hasRemaining()) first++;
+        }
+    }
+
+    @Override
+    public synchronized void write(long position, ByteBuffer[] srcs) throws IOException {
+        if (!allDirect(srcs)) {
+            ByteBuffer merged = ByteBuffer.allocate(totalRemaining(srcs));
+            for (ByteBuffer src : srcs) merged.put(src);
+            merged.flip();
+            write(position, merged);
+            return;
+        }
+        channel.position(position);
+        int first = 0;
+        while (first < srcs.length) {
+            channel.write(srcs, first, srcs.length - first);
+            while (first < srcs.length && !srcs[first].hasRemaining()) first++;
+        }
+    }
+
+    private static boolean allDirect(ByteBuffer[] buffers) {
+        for (ByteBuffer buffer : buffers) {
+            if (!buffer.isDirect()) return false;
+        }
+        return true;
+    }
+
+    private static int totalRemaining(ByteBuffer[] buffers) {
+        int total = 0;
+        for (ByteBuffer buffer : buffers) total += buffer.remaining();
+        return total;
+    }
+
+    @Override
+    public void force(boolean metaData) throws IOException {
+        channel.force(metaData);
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+        raf.close();
+    }
+}
@@ -0,0 +1,59 @@
+package application.Manager;
+
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * CLOCK淘汰策略：缓存槽位排成一圈，命中只置访问位，淘汰时指针转动，跳过并清除访问位为1的槽位
+ */
+class ClockCachePolicy implements CachePolicy {
+    private final int[] slots; // 每个槽位保存的磁盘块号，-1表示空槽
+    private final boolean[] referenced; // 访问位
+    private final HashMap<Integer, Integer> slotOf = new HashMap<>(); // 磁盘块号到槽位的映射
+    private int hand; // 时钟指针
+
+    ClockCachePolicy(int capacity) {
+        this.slots = new int[capacity];
+        this.referenced = new boolean[capacity];
+        Arrays.fill(slots, -1);
+    }
+
+    @Override
+    public void onHit(int blockIndex) {
+        Integer slot = slotOf.get(blockIndex);
+        if (slot != null) referenced[slot] = true;
+    }
+
+    @Override
+    public int admit(int blockIndex) {
+        // 转动指针直到找到空槽或访问位为0的槽位
+        while (slots[hand] != -1 && referenced[hand]) {
+            referenced[hand] = false;
+            hand = (hand + 1) % slots.length;
+        }
+        int victim = slots[hand];
+        if (victim != -1) slotOf.remove(victim);
+        slots[hand] = blockIndex;
+        referenced[hand] = false;
+        slotOf.put(blockIndex, hand);
+        hand = (hand + 1) % slots.length;
+        return victim;
+    }
+
+    @Override
+    public void remove(int blockIndex) {
+        Integer slot = slotOf.remove(blockIndex);
+        if (slot != null) {
+            slots[slot] = -1;
+            referenced[slot] = false;
+        }
+    }
+
+    @Override
+    public void clear() {
+        Arrays.fill(slots, -1);
+        Arrays.fill(referenced, false);
+        slotOf.clear();
+        hand = 0;
+    }
+}
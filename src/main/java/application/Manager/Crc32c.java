@@ -0,0 +1,107 @@
+package application.Manager;
+
+import java.nio.ByteBuffer;
+import java.util.zip.Checksum;
+
+/**
+ * CRC32C（Castagnoli）校验和
+ * 运行在Java 9及以上时使用java.util.zip.CRC32C，JIT会把它编译为CPU的CRC32指令；
+ * Java 8没有这个类，改用下面按字节查表的实现，两者结果相同
+ */
+final class Crc32c implements Checksum {
+    private static final int POLY = 0x82F63B78; // CRC32C多项式（反转表示）
+    private static final int[] TABLE = new int[256];
+    private static final Class<?> INTRINSIC = findIntrinsic(); // java.util.zip.CRC32C，不存在时为null
+
+    // 每个线程复用一个校验和对象和一个临时数组（用于直接缓冲区）
+    private static final ThreadLocal<Checksum> LOCAL = ThreadLocal.withInitial(Crc32c::newChecksum);
+    private static final ThreadLocal<byte[]> SCRATCH = ThreadLocal.withInitial(() -> new byte[0]);
+
+    static {
+        for (int i = 0; i < 256; i++) {
+            int crc = i;
+            for (int k = 0; k < 8; k++) crc = (crc >>> 1) ^ (POLY & -(crc & 1));
+            TABLE[i] = crc;
+        }
+    }
+
+    private int crc = ~0;
+
+    private Crc32c() {
+    }
+
+    private static Class<?> findIntrinsic() {
+        try {
+            return Class.forName("java.util.zip.CRC32C");
+        } catch (ClassNotFoundException e) {
+            return null;
+        }
+    }
+
+    private static Checksum newChecksum() {
+        if (INTRINSIC != null) {
+            try {
+                return (Checksum) INTRINSIC.getDeclaredConstructor().newInstance();
+            } catch (ReflectiveOperationException ignored) {
+            }
+        }
+        return new Crc32c();
+    }
+
+    /**
+     * 是否使用JDK自带（硬件加速）的CRC32C
+     */
+    static boolean isIntrinsic() {
+        return LOCAL.get().getClass() != Crc32c.class;
+    }
+
+    /**
+     * 计算数组[offset, offset + length)的CRC32C
+     */
+    static int checksum(byte[] data, int offset, int length) {
+        Checksum checksum = LOCAL.get();
+        checksum.reset();
+        checksum.update(data, offset, length);
+        return (int) checksum.getValue();
+    }
+
+    /**
+     * 计算缓冲区[offset, offset + length)的CRC32C，不改变缓冲区的位置
+     */
+    static int checksum(ByteBuffer buffer, int offset, int length) {
+        if (buffer.hasArray()) {
+            return checksum(buffer.array(), buffer.arrayOffset() + offset, length);
+        }
+        byte[] scratch = SCRATCH.get();
+        if (scratch.length < length) {
+            scratch = new byte[length];
+            SCRATCH.set(scratch);
+        }
+        ByteBuffer view = buffer.duplicate();
+        view.limit(offset + length).position(offset);
+        view.get(scratch, 0, length);
+        return checksum(scratch, 0, length);
+    }
+
+    @Override
+    public void update(int b) {
+        crc = (crc >>> 8) ^ TABLE[(crc ^ b) & 0xFF];
+    }
+
+    @Override
+    public void update(byte[] b, int off, int len) {
+        int c = crc;
+        for (int i = off; i < off + len; i++) c = (c >>> 8) ^ TABLE[(c ^ b[i]) & 0xFF];
+        crc = c;
+    }
+
+    @Override
+    public long getValue() {
+        return ~crc & 0xFFFFFFFFL;
+    }
+
+    @Override
+    public void reset() {
+        crc = ~0;
+    }
+}
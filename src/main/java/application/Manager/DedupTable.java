@@ -0,0 +1,294 @@
+package application.Manager;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * 块级去重表：内存中的内容哈希索引，以及叠加在FAT之上的逻辑块到物理块的映射和引用计数
+ * FAT中的块号是逻辑块号，文件的FAT链不变；写入的内容与索引中某个物理块相同时不写入自己的位置，
+ * 只把逻辑块映射到那个物理块，物理块的引用数加1，多个文件共用一份内容
+ * 写入一个共享的逻辑块时先解除映射再写入自己的位置（写时复制，整块写入不需要复制旧内容）；
+ * 被其他块共享的物理块自己要被覆盖时，先把内容复制到某个引用者的位置，其余引用者改为映射到那里
+ * <p>
+ * 映射保存在去重区（每块4字节，与FAT一样大，0表示内容就在自己的位置），与FAT一样在内存中修改、在同步点写回；
+ * 引用计数挂载时由映射重建；内容哈希索引只在内存中，挂载后从空开始，之后写入的块才会参与查找
+ * 哈希取SHA-256的前128位，碰撞概率可以忽略，命中时不再读出比较
+ */
+class DedupTable {
+    private static final ThreadLocal<MessageDigest> DIGEST = ThreadLocal.withInitial(DedupTable::newDigest);
+
+    // 块内容的哈希
+    private static final class ContentKey {
+        final long high;
+        final long low;
+
+        ContentKey(byte[] digest) {
+            ByteBuffer buffer = ByteBuffer.wrap(digest);
+            this.high = buffer.getLong();
+            this.low = buffer.getLong();
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof ContentKey)) return false;
+            ContentKey other = (ContentKey) o;
+            return high == other.high && low == other.low;
+        }
+
+        @Override
+        public int hashCode() {
+            return (int) low;
+        }
+    }
+
+    private final int diskSize; // 磁盘块数
+    private final int blockSize; // 磁盘块大小
+    private final int[] map; // 逻辑块 -> 保存其内容的物理块，0表示就在自己的位置
+    private final int[] refs; // 每个物理块被其他逻辑块引用的次数
+    private final ContentKey[] keys; // 物理块在索引中登记的内容哈希，没有登记时为null
+    private final HashMap<ContentKey, Integer> index = new HashMap<>(); // 内容哈希 -> 物理块
+    private final long[] dirtyBlocks; // 去重区脏位图，每位对应一个去重区块
+
+    private long writes; // 参与查找的写入次数
+    private long hits; // 内容重复、改为映射的次数
+    private long unchanged; // 内容没有变化、不需要写入的次数
+    private long evacuations; // 共享的物理块被覆盖前复制内容的次数
+    private long hashNanos; // 计算哈希的总耗时
+
+    /**
+     * @param diskSize   磁盘块数
+     * @param blockSize  磁盘块大小
+     * @param areaBlocks 去重区块数
+     */
+    DedupTable(int diskSize, int blockSize, int areaBlocks) {
+        this.diskSize = diskSize;
+        this.blockSize = blockSize;
+        this.map = new int[diskSize];
+        this.refs = new int[diskSize];
+        this.keys = new ContentKey[diskSize];
+        this.dirtyBlocks = new long[(areaBlocks + 63) >>> 6];
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * 挂载时载入去重区的内容，重建引用计数
+     *
+     * @param area 去重区，每个逻辑块一个int
+     */
+    synchronized void load(ByteBuffer area) {
+        area.asIntBuffer().get(map);
+        Arrays.fill(refs, 0);
+        Arrays.fill(keys, null);
+        index.clear();
+        for (int i = 0; i < diskSize; i++) {
+            if (map[i] <= 0 || map[i] >= diskSize) {
+                map[i] = 0; // 损坏的映射按没有共享处理
+            } else {
+                refs[map[i]]++;
+            }
+        }
+        Arrays.fill(dirtyBlocks, 0L);
+    }
+
+    /**
+     * 逻辑块的内容所在的物理块号
+     */
+    synchronized int physical(int index) {
+        int p = map[index];
+        return p == 0 ? index : p;
+    }
+
+    /**
+     * 物理块被其他逻辑块引用的次数
+     */
+    synchronized int getRefs(int index) {
+        return refs[index];
+    }
+
+    /**
+     * 数据块写入前调用：计算新内容的哈希并在索引中查找
+     * 找到相同内容的物理块时把逻辑块映射过去，不需要写入；否则解除原来的共享，在索引中登记自己的位置
+     *
+     * @param index  逻辑块号
+     * @param image  新内容，恰好一块
+     * @param device 设备，共享的内容需要搬走时使用
+     * @return 是否需要把新内容写入自己的位置
+     */
+    synchronized boolean write(int index, byte[] image, BlockDevice device) throws IOException {
+        long start = System.nanoTime();
+        MessageDigest digest = DIGEST.get();
+        ContentKey key = new ContentKey(digest.digest(image));
+        hashNanos += System.nanoTime() - start;
+        writes++;
+        Integer holder = this.index.get(key);
+        if (holder != null && holder == physical(index)) {
+            unchanged++;
+            return false;
+        }
+        release(index, device);
+        if (holder != null) {
+            map[index] = holder;
+            refs[holder]++;
+            markDirty(index);
+            hits++;
+            return false;
+        }
+        this.index.put(key, index);
+        keys[index] = key;
+        return true;
+    }
+
+    /**
+     * 逻辑块不经过去重写入自己的位置之前调用（目录块、映射到的内容已经不再需要时），
+     * 解除它对其他物理块的引用；自己的位置被其他块共享时先把内容搬走
+     *
+     * @param index  逻辑块号
+     * @param device 设备
+     */
+    synchronized void release(int index, BlockDevice device) throws IOException {
+        int p = map[index];
+        if (p != 0) {
+            refs[p]--;
+            map[index] = 0;
+            markDirty(index);
+        } else if (refs[index] > 0) {
+            evacuate(index, device);
+        } else {
+            forget(index);
+        }
+    }
+
+    /**
+     * 逻辑块被回收或停用时调用，解除它对其他物理块的引用
+     * 自己的位置仍被其他块共享时内容保留，重新分配后写入前再搬走
+     */
+    synchronized void drop(int index) {
+        int p = map[index];
+        if (p != 0) {
+            refs[p]--;
+            map[index] = 0;
+            markDirty(index);
+        } else if (refs[index] == 0) {
+            forget(index);
+        }
+    }
+
+    // 物理块的内容要被覆盖，从索引中移除
+    private void forget(int index) {
+        if (keys[index] != null) {
+            this.index.remove(keys[index], index);
+            keys[index] = null;
+        }
+    }
+
+    /**
+     * 共享的物理块要被覆盖：把内容复制到第一个引用者自己的位置，其余引用者改为映射到那里
+     * 需要扫描整个映射表查找引用者，只在覆盖共享内容的源块时发生
+     */
+    private void evacuate(int index, BlockDevice device) throws IOException {
+        int heir = -1;
+        for (int i = 0; i < diskSize; i++) {
+            if (map[i] != index) continue;
+            if (heir == -1) {
+                heir = i;
+                ByteBuffer buffer = ByteBuffer.allocate(blockSize);
+                device.read((long) index * blockSize, buffer);
+                buffer.flip();
+                device.write((long) heir * blockSize, buffer);
+                map[i] = 0;
+            } else {
+                map[i] = heir;
+            }
+            markDirty(i);
+        }
+        if (heir == -1) { // 引用计数与映射不一致，按没有共享处理
+            refs[index] = 0;
+            forget(index);
+            return;
+        }
+        refs[heir] = refs[index] - 1;
+        refs[index] = 0;
+        if (keys[index] != null) {
+            this.index.put(keys[index], heir);
+            keys[heir] = keys[index];
+            keys[index] = null;
+        }
+        evacuations++;
+    }
+
+    private void markDirty(int index) {
+        int block = index / (blockSize / 4);
+        dirtyBlocks[block >>> 6] |= 1L << block;
+    }
+
+    /**
+     * 取出有变化的去重区块序号并清除脏标记
+     *
+     * @return 去重区块序号（相对去重区起始块）
+     */
+    synchronized int[] takeDirtyBlocks() {
+        int count = 0;
+        for (long word : dirtyBlocks) count += Long.bitCount(word);
+        int[] blocks = new int[count];
+        int n = 0;
+        for (int w = 0; w < dirtyBlocks.length; w++) {
+            for (long bits = dirtyBlocks[w]; bits != 0; bits &= bits - 1) {
+                blocks[n++] = (w << 6) + Long.numberOfTrailingZeros(bits);
+            }
+            dirtyBlocks[w] = 0;
+        }
+        return blocks;
+    }
+
+    /**
+     * 重新标记取出后没有提交的去重区块，留到下一个同步点
+     *
+     * @param blocks 去重区块序号（相对去重区起始块）
+     */
+    synchronized void markDirtyBlocks(int[] blocks) {
+        for (int block : blocks) dirtyBlocks[block >>> 6] |= 1L << block;
+    }
+
+    /**
+     * 生成一个去重区块的内容
+     *
+     * @param block 去重区块序号
+     */
+    synchronized byte[] image(int block) {
+        ByteBuffer image = ByteBuffer.allocate(blockSize);
+        int from = block * (blockSize / 4);
+        image.asIntBuffer().put(map, from, Math.min(diskSize, from + blockSize / 4) - from);
+        return image.array();
+    }
+
+    synchronized long getWrites() {
+        return writes;
+    }
+
+    synchronized long getHits() {
+        return hits;
+    }
+
+    synchronized long getUnchanged() {
+        return unchanged;
+    }
+
+    synchronized long getEvacuations() {
+        return evacuations;
+    }
+
+    synchronized long getHashNanos() {
+        return hashNanos;
+    }
+}
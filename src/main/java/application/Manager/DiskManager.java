@@ -1,207 +1,2045 @@
 package application.Manager;
 
+import application.Entity.AllocationGroupInfo;
+import application.Entity.DedupReport;
+import application.Entity.DiskConfig;
+import application.Entity.FragmentationReport;
+import application.Entity.SnapshotInfo;
+import application.Enum.AllocationPolicy;
 import application.Enum.BlockStatus;
+import application.Enum.DurabilityMode;
+import application.Enum.EntryAttribute;
+import application.Enum.EntryStructure;
+import application.Enum.FormatMode;
+import application.Enum.MountMode;
+import application.Enum.RelocationResult;
 
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.IntFunction;
+import java.util.function.IntPredicate;
 
 
 /**
  * 模拟磁盘，管理磁盘块和提供FAT
+ * 挂载期间持有同一个设备（FileChannel或内存映射），所有磁盘块读写都是基于位置的读写，卸载时调用close()关闭
+ * 内存中的FAT是权威副本，修改时只标记所在的FAT块为脏，在同步点（flush、sync、close）统一写回脏块
+ * 启用日志时，目录块通过writeMetadataBlock暂存在内存中，同步点把FAT脏块和暂存的目录块作为一个事务写入日志，
+ * 刷盘后再写回原位置，崩溃后挂载时重放日志，不会出现只写了一半的目录项或FAT
+ * 可以随时创建只读快照，创建时不复制数据；之后每块第一次被覆盖前先把旧内容复制到一个空闲块归快照所有（写时复制），
+ * 快照通过openSnapshot()得到一个只读的DiskManager，可以交给FileSystem挂载
+ * 磁盘文件也可以是叠加在只读底层磁盘文件上的覆盖层（DiskConfig.setBackingFile），只有写过的块存放在覆盖层中，其余块读底层
+ * 格式化时可以在日志区之后留出校验和区，为每个根目录块和用户区块保存CRC32C，与FAT一样在内存中修改、在同步点写回；
+ * 从设备读入的块与校验和不一致时记为坏块并抛出异常，不会把损坏的内容当作正常数据返回；
+ * 后台巡检（startScrubber）按限定速率校验已分配的块，坏块中能读出的内容搬到新块并接回原来的FAT链或登记项，坏块停用；
+ * 搬迁、模拟损坏和修复磁盘都会修改FAT和目录块，由FileSystem在全局写锁下调用并提交
+ * 格式化时还可以启用块级去重（DiskConfig.setDedup），写入的数据块按内容哈希查找，重复的块映射到已有的物理块上共用，
+ * 读写按映射转到物理块，FAT中的块号和链不变，见DedupTable
+ * 顺序读取文件时可以经过预读引擎（getReadAhead），沿FAT链提前把后面的块异步读入缓存，见ReadAhead
+ * 用户区按DiskConfig.setGroupBlocks划分为分配组，指定了目标块的分配优先在目标所在的组进行（文件靠近父目录，追加的块靠近文件末尾），
+ * 新目录分散到空闲较多的组；组内没有空间时依次尝试后面的组，最后在整个用户区查找
+ * 读磁盘块和FAT的方法可以被多个线程并发调用；分配、回收块和修改FAT条目不加锁，用CAS修改空闲块位图和FAT脏位图，可以并发调用，
+ * 同一目录块或同一文件的修改需要调用方串行（FileSystem的目录锁），同步点不能与修改同时进行（FileSystem的提交锁）
+ * <p>
+ * 磁盘布局（几何参数在格式化时确定并记录在超级块中）：
+ * 0号块为超级块，1号块为根目录，随后若干块存放FAT（每个条目4字节），再之后是日志区（可以为0块）、校验和区（每块4字节，可以为0块）
+ * 和去重区（每块4字节，可以为0块），其后为用户区
  */
-public class DiskManager {
+public class DiskManager implements AutoCloseable {
 
-    public static final int DISK_SIZE = 128; // 128 个磁盘块
-    public static final int BLOCK_SIZE = 64; // 每个磁盘块64字节
-    public static final int ROOT_DIR_POS = 2; // 根目录磁盘号为2
-    public static final int USER_AREA_START = 5; // 用户区域起始块号，0到4号磁盘包括了FAT（0、1）、根目录项、系统文件区
+    public static final int SUPERBLOCK_POS = 0; // 超级块磁盘号为0
+    public static final int ROOT_DIR_POS = 1; // 根目录磁盘号为1
+    public static final int FAT_START = 2; // FAT起始块号
+    public static final int FAT_ENTRY_SIZE = 4; // 每个FAT条目4字节
 
-    private static final File diskFile = new File("disk.dat"); // 磁盘文件
-    private byte[] FAT; //模拟内存中保存的FAT表
+    public static final int DEFAULT_DISK_SIZE = 128; // 默认128个磁盘块
+    public static final int DEFAULT_BLOCK_SIZE = 128; // 默认每个磁盘块128字节，根目录可容纳8个登记项
+    public static final int MIN_BLOCK_SIZE = 64; // 最小磁盘块大小，每块至少容纳4个登记项
+    public static final String DEFAULT_DISK_FILE = "disk.dat"; // 默认磁盘文件名
+    public static final int DEFAULT_CACHE_BLOCKS = 32; // 默认缓存块数
+    public static final int FORMAT_CHUNK_SIZE = 1 << 20; // 格式化时每次写入的字节数
+    public static final int DEFAULT_IO_THREADS = 2; // 默认异步I/O线程数
+    public static final int DEFAULT_IO_QUEUE_DEPTH = 32; // 默认异步I/O最大在途请求数
+    public static final int POOLED_BUFFERS = 64; // 缓冲区池最多保留的空闲缓冲区数
+    public static final long DEFAULT_SYNC_INTERVAL_MILLIS = 1000; // PERIODIC模式默认刷盘间隔
+    public static final int MIN_JOURNAL_BLOCKS = 8; // 默认日志区最少块数
+    public static final int MAX_JOURNAL_BLOCKS = 1024; // 默认日志区最多块数
+    public static final int MAX_TRANSACTION_METADATA_BLOCKS = 16; // 一个事务中目录块、超级块、快照映射块等元数据块的预留块数
+    public static final int DEFAULT_READ_AHEAD_BLOCKS = 64; // 默认最大预读窗口（块数）
+    public static final int DEFAULT_GROUP_BLOCKS = 8192; // 默认每个分配组的块数
+
+    private static final int MAGIC = 0x44465332; // 超级块魔数"DFS2"
+    private static final int SUPERBLOCK_LENGTH = 12; // 超级块有效长度：魔数、块大小、块数，其后的日志块数、校验和区块数、去重区块数在旧格式中为0
+
+    private final File diskFile; // 磁盘文件
+    private File legacyBackup; // 挂载时备份的旧格式磁盘文件，没有备份时为null
+    private int legacyEntries; // 从旧格式磁盘导入的文件和目录数
+    private final MountMode mountMode; // 挂载方式
+    private BlockDevice device; // 挂载期间一直打开的设备
+    private int[] FAT; //模拟内存中保存的FAT表，挂载时从磁盘读入
+    private AtomicLongArray dirtyFatBlocks; // FAT块脏位图，每位对应一个FAT块，多个线程同时修改FAT时用CAS置位
+    private FreeBlockMap freeMap; // 空闲块位图，挂载时由FAT重建，随FAT修改维护
+    private final AllocationPolicy allocationPolicy; // 分配策略
+    private final AllocationStrategy allocator; // 分配策略的实现，在整个用户区查找
+    private final int groupBlocks; // 每个分配组的块数，0表示不分组
+    private AllocationGroup[] groups; // 分配组，随空闲块位图重建；不分组时只有一个覆盖整个用户区的组
+    private final AtomicInteger directoryGroupCursor = new AtomicInteger(); // 新目录从这个组开始选择，每次后移
+    private BlockCache blockCache; // 磁盘块缓存，容量为0时为null
+    private AsyncBlockEngine asyncEngine; // 异步I/O引擎，第一次异步读写时创建
+    private Scrubber scrubber; // 后台巡检，startScrubber()时创建
+    private ReadAhead readAhead; // 顺序读预读引擎，不能预读时为null
+    private BufferPool bufferPool; // 磁盘块缓冲区池
+    private Journal journal; // 元数据日志，日志区为0块时为null
+    private OverlayBlockDevice overlay; // 覆盖层设备，普通磁盘时为null
+    private final HashMap<Integer, byte[]> pendingMetadata = new HashMap<>(); // 尚未写回原位置的目录块新内容，读取时优先返回
+    private final int ioThreads; // 异步I/O线程数
+    private final int ioQueueDepth; // 异步I/O最大在途请求数
+    private final DurabilityMode durabilityMode; // 刷盘策略
+    private final long syncIntervalNanos; // PERIODIC模式的刷盘间隔
+    private long lastSyncNanos; // 上次刷盘的时间
+    private final SyncStats syncStats = new SyncStats(); // 刷盘延迟统计
+    private int[] checksums; // 各块内容的CRC32C，0表示写入后还没有记录过；没有校验和区时为null
+    private long[] dirtyChecksumBlocks; // 校验和区脏位图，每位对应一个校验和块
+    private final boolean verifyChecksums; // 从设备读入时是否校验
+    private final BitSet corruptBlocks = new BitSet(); // 校验失败的块，修复或重新写入前视为坏块；同时是校验和表的锁
+    private long checksumFailures; // 校验失败次数
+    private DedupTable dedup; // 块级去重表，没有去重区时为null
+    private IntPredicate openFileCheck = start -> false; // 按链首块号判断文件是否正在打开，搬迁时跳过打开的文件
+    private final SnapshotTable snapshots; // 快照表，快照视图与所属的卷共用
+    private final DiskManager base; // 快照视图所属的卷，普通挂载时为null
+    private final SnapshotTable.Snapshot snapshot; // 快照视图对应的快照，普通挂载时为null
+
+    private int diskSize; // 磁盘块数
+    private int blockSize; // 每个磁盘块的字节数
+    private int fatBlocks; // FAT占用的块数
+    private int journalBlocks; // 日志区块数
+    private int checksumBlocks; // 校验和区块数
+    private int dedupBlocks; // 去重区块数
+    private int userAreaStart; // 用户区域起始块号
 
     public void debug_printDisk() {
-        try (FileInputStream fis = new FileInputStream(diskFile)) {
-            for (int i = 0; i < DISK_SIZE; i++) {
-                System.out.print((byte) fis.read() + "\t");
-                if ((i + 1) % 16 == 0)
-                    System.out.println();
+        for (int i = 0; i < Math.min(diskSize, 256); i++) {
+            System.out.print(getFatEntry(i) + "\t");
+            if ((i + 1) % 16 == 0)
+                System.out.println();
+        }
+    }
+
+    public void debug_rootDir() {
+        byte[] rootDirBlock = readBlock(ROOT_DIR_POS);
+        for (int i = 0; i < blockSize; i += EntryStructure.ENTRY_LENGTH.getValue()) {
+            System.out.print((char) rootDirBlock[i] + " ");
+        }
+        System.out.println();
+    }
+
+    public List<Boolean> disk_status() {
+        System.out.println("获取磁盘状态");
+        List<Boolean> list = new ArrayList<>();
+        for (int i = 0; i < diskSize; i++) {
+            // 空闲块以外（已分配、文件结束、坏块）都视为已使用
+            list.add(!isBlockFree(i));
+        }
+
+        return list;
+    }
+
+    /**
+     * 使用默认磁盘文件初始化磁盘和文件分配表
+     */
+    public DiskManager() {
+        this(new File(DEFAULT_DISK_FILE));
+    }
+
+    /**
+     * 初始化磁盘和文件分配表
+     *
+     * @param diskFile 磁盘文件
+     */
+    public DiskManager(File diskFile) {
+        this(new DiskConfig(diskFile, MountMode.CHANNEL));
+    }
+
+    /**
+     * 按配置初始化磁盘和文件分配表
+     *
+     * @param config 挂载配置
+     */
+    public DiskManager(DiskConfig config) {
+        this.diskFile = config.getDiskFile();
+        this.mountMode = config.getMountMode();
+        this.allocationPolicy = config.getAllocationPolicy();
+        this.groupBlocks = config.getGroupBlocks();
+        this.ioThreads = config.getIoThreads();
+        this.ioQueueDepth = config.getIoQueueDepth();
+        this.durabilityMode = config.getDurabilityMode();
+        this.syncIntervalNanos = config.getSyncIntervalMillis() * 1_000_000L;
+        this.verifyChecksums = config.isVerifyChecksums();
+        this.base = null;
+        this.snapshot = null;
+        this.allocator = newAllocator(allocationPolicy);
+        // 指定了底层磁盘文件时，在它之上新建覆盖层
+        if (!diskFile.exists() && config.getBackingFile() != null) {
+            createOverlay(config.getBackingFile());
+        }
+        // 没有超级块的旧格式磁盘文件先备份，按配置格式化后在挂载的最后导入原来的目录树；无法识别的文件不挂载
+        LegacyImage legacyImage = null;
+        if (diskFile.exists() && !hasSuperblock(diskFile)) {
+            legacyImage = LegacyImage.read(diskFile);
+            if (legacyImage == null) {
+                throw new RuntimeException("无法识别的磁盘文件格式: " + diskFile);
+            }
+            File legacy = new File(diskFile.getPath() + ".legacy");
+            if (!diskFile.renameTo(legacy)) {
+                throw new RuntimeException("无法备份旧格式磁盘文件: " + diskFile);
+            }
+            this.legacyBackup = legacy;
+        }
+        // 检查磁盘文件是否存在，如果不存在则创建
+        if (!diskFile.exists()) {
+            boolean res = false;
+            try {
+                res = diskFile.createNewFile();
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+            if (!res) {
+                throw new RuntimeException("创建文件失败");
+            }
+            // 按配置的几何参数格式化磁盘，先不计日志区算出各区大小，日志区至少要容纳最大的事务
+            setGeometry(config.getDiskSize(), config.getBlockSize(), 0, config.isChecksums(), config.isDedup());
+            int minJournalBlocks = Journal.lengthFor(getMaxTransactionBlocks(), blockSize);
+            int journalBlocks = config.getJournalBlocks(config.getDiskSize(), minJournalBlocks);
+            if (journalBlocks > 0 && journalBlocks < minJournalBlocks) {
+                throw new IllegalArgumentException("Journal too small: " + journalBlocks + " blocks, at least "
+                        + minJournalBlocks + " blocks needed");
+            }
+            setGeometry(config.getDiskSize(), config.getBlockSize(), journalBlocks, config.isChecksums(), config.isDedup());
+            writeImage(config.getFormatMode());
+        }
+        // 读取超级块中记录的几何参数
+        readSuperblock();
+        this.snapshots = new SnapshotTable(diskSize, blockSize);
+        int cacheBlocks = config.getCacheBlocks(blockSize);
+        this.blockCache = cacheBlocks > 0 ? new BlockCache(cacheBlocks, blockSize, config.getEvictionPolicy()) : null;
+        this.bufferPool = new BufferPool(blockSize, config.isDirectBuffers(), POOLED_BUFFERS);
+        // 挂载磁盘：打开设备，保存当前FAT在内存中
+        try {
+            BlockDevice rawDevice;
+            if (mountMode == MountMode.MAPPED) {
+                rawDevice = new MappedBlockDevice(diskFile, getCapacity());
+            } else {
+                rawDevice = new ChannelBlockDevice(diskFile);
+            }
+            if (OverlayBlockDevice.isOverlay(diskFile, getCapacity())) {
+                this.overlay = new OverlayBlockDevice(rawDevice, diskFile, config.getBackingFile(), blockSize, diskSize);
+                checkBackingGeometry(overlay.getBaseFile());
+                rawDevice = overlay;
+            }
+            this.device = new TimedBlockDevice(rawDevice, syncStats);
+            this.lastSyncNanos = System.nanoTime();
+            // 先重放日志，再读入FAT
+            if (journalBlocks > 0) {
+                this.journal = new Journal(device, FAT_START + fatBlocks, journalBlocks, blockSize, diskSize);
+                journal.recover(); // 重放的事务数由getJournal().getReplayed()查看
+            }
+            this.FAT = readFAT();
+            this.dirtyFatBlocks = new AtomicLongArray((fatBlocks + 63) >>> 6);
+            rebuildFreeBitmap();
+            readChecksums();
+            readDedupMap();
+            snapshots.load(readRawBlock(SUPERBLOCK_POS), FAT, this::readRawBlock);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        // 预读的块放在缓存中，窗口不超过缓存的一半；覆盖层和去重的磁盘异步读不到正确的位置，不预读
+        int readAheadBlocks = Math.min(config.getReadAheadBlocks(), cacheBlocks / 2);
+        if (readAheadBlocks >= ReadAhead.MIN_WINDOW && overlay == null && dedup == null) {
+            this.readAhead = new ReadAhead(this, readAheadBlocks);
+        }
+        if (legacyImage != null) importLegacy(legacyImage);
+    }
+
+    /**
+     * 把旧格式磁盘的目录树导入刚格式化的磁盘；导入失败时删除新磁盘文件，把备份改回原来的文件名
+     */
+    private void importLegacy(LegacyImage legacyImage) {
+        try {
+            this.legacyEntries = legacyImage.importInto(this);
+            sync();
+        } catch (RuntimeException e) {
+            close();
+            if (!diskFile.delete() || !legacyBackup.renameTo(diskFile)) {
+                throw new RuntimeException("旧格式磁盘文件导入失败，原文件保留为" + legacyBackup, e);
+            }
+            throw new RuntimeException("旧格式磁盘文件导入失败: " + diskFile, e);
+        }
+    }
+
+    /**
+     * 快照视图：与所属的卷共用设备和快照表，FAT按快照创建时的内容载入，只能读取
+     *
+     * @param base     所属的卷
+     * @param snapshot 快照
+     */
+    private DiskManager(DiskManager base, SnapshotTable.Snapshot snapshot) {
+        this.diskFile = base.diskFile;
+        this.mountMode = base.mountMode;
+        this.allocationPolicy = base.allocationPolicy;
+        this.allocator = base.allocator; // 只读，不会分配
+        this.groupBlocks = base.groupBlocks;
+        this.ioThreads = base.ioThreads;
+        this.ioQueueDepth = base.ioQueueDepth;
+        this.durabilityMode = base.durabilityMode;
+        this.syncIntervalNanos = base.syncIntervalNanos;
+        this.verifyChecksums = false; // 快照视图不校验，校验和只对应卷的当前内容
+        this.snapshots = base.snapshots;
+        this.base = base;
+        this.snapshot = snapshot;
+        setGeometry(base.diskSize, base.blockSize, base.journalBlocks, base.checksumBlocks > 0, base.dedupBlocks > 0);
+        this.bufferPool = new BufferPool(blockSize, base.bufferPool.isDirect(), POOLED_BUFFERS);
+        this.device = base.device;
+        this.FAT = readFAT();
+        this.dirtyFatBlocks = new AtomicLongArray((fatBlocks + 63) >>> 6);
+        rebuildFreeBitmap();
+    }
+
+    /**
+     * 设置几何参数并计算FAT和用户区的位置
+     *
+     * @param diskSize      磁盘块数
+     * @param blockSize     每个磁盘块的字节数
+     * @param journalBlocks 日志区块数，0表示不使用日志
+     * @param checksums     是否留出校验和区
+     * @param dedup         是否留出去重区
+     */
+    private void setGeometry(int diskSize, int blockSize, int journalBlocks, boolean checksums, boolean dedup) {
+        if (blockSize < MIN_BLOCK_SIZE || blockSize % EntryStructure.ENTRY_LENGTH.getValue() != 0) {
+            throw new IllegalArgumentException("Invalid block size: " + blockSize);
+        }
+        if (journalBlocks < 0 || journalBlocks == 1) {
+            throw new IllegalArgumentException("Invalid journal size: " + journalBlocks);
+        }
+        this.diskSize = diskSize;
+        this.blockSize = blockSize;
+        this.fatBlocks = (int) (((long) diskSize * FAT_ENTRY_SIZE + blockSize - 1) / blockSize);
+        this.journalBlocks = journalBlocks;
+        this.checksumBlocks = checksums ? fatBlocks : 0; // 每块4字节，与FAT一样大
+        this.dedupBlocks = dedup ? fatBlocks : 0; // 每块4字节
+        this.userAreaStart = FAT_START + fatBlocks + journalBlocks + checksumBlocks + dedupBlocks;
+        if (diskSize <= userAreaStart) {
+            throw new IllegalArgumentException("Disk too small: " + diskSize + " blocks");
+        }
+    }
+
+    /**
+     * 在底层磁盘文件之上新建覆盖层：几何参数取自底层的超级块，只把超级块复制到覆盖层，
+     * 其余的块（包括FAT和日志区）都是稀疏的空洞，读取时落到底层
+     *
+     * @param backingFile 底层磁盘文件
+     */
+    private void createOverlay(File backingFile) {
+        if (!hasSuperblock(backingFile)) {
+            throw new IllegalArgumentException("Backing file is not a disk image: " + backingFile);
+        }
+        readSuperblock(backingFile);
+        try (RandomAccessFile base = new RandomAccessFile(backingFile, "r");
+             RandomAccessFile raf = new RandomAccessFile(diskFile, "rw")) {
+            byte[] superblock = new byte[blockSize];
+            base.readFully(superblock);
+            raf.setLength(0);
+            raf.write(superblock);
+            raf.setLength(getCapacity());
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        try {
+            OverlayBlockDevice.create(diskFile, backingFile, blockSize, diskSize, 1);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * 检查底层磁盘文件的几何参数与覆盖层一致
+     */
+    private void checkBackingGeometry(File backingFile) {
+        int diskSize = this.diskSize;
+        int blockSize = this.blockSize;
+        int journalBlocks = this.journalBlocks;
+        int checksumBlocks = this.checksumBlocks;
+        int dedupBlocks = this.dedupBlocks;
+        readSuperblock(backingFile);
+        if (this.diskSize != diskSize || this.blockSize != blockSize || this.journalBlocks != journalBlocks
+                || this.checksumBlocks != checksumBlocks || this.dedupBlocks != dedupBlocks) {
+            setGeometry(diskSize, blockSize, journalBlocks, checksumBlocks > 0, dedupBlocks > 0);
+            throw new IllegalStateException("Backing file geometry differs from overlay: " + backingFile);
+        }
+    }
+
+    /**
+     * 判断磁盘文件开头是否为本格式的超级块
+     */
+    private static boolean hasSuperblock(File diskFile) {
+        try (RandomAccessFile raf = new RandomAccessFile(diskFile, "r")) {
+            return raf.length() >= SUPERBLOCK_LENGTH && raf.readInt() == MAGIC;
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * 从磁盘文件读取超级块中的几何参数
+     */
+    private void readSuperblock() {
+        readSuperblock(diskFile);
+    }
+
+    /**
+     * 从指定磁盘文件读取超级块中的几何参数
+     */
+    private void readSuperblock(File diskFile) {
+        try (RandomAccessFile raf = new RandomAccessFile(diskFile, "r")) {
+            if (raf.readInt() != MAGIC) {
+                throw new RuntimeException("磁盘文件格式错误: " + diskFile);
+            }
+            int blockSize = raf.readInt();
+            int diskSize = raf.readInt();
+            int journalBlocks = raf.readInt();
+            int checksumBlocks = raf.readInt();
+            int dedupBlocks = raf.readInt();
+            setGeometry(diskSize, blockSize, journalBlocks, checksumBlocks > 0, dedupBlocks > 0);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * 同步点，每个修改类操作结束时调用，按刷盘策略决定是否刷盘：
+     * EVERY_OP每次都调用sync()，PERIODIC在距上次刷盘超过设定间隔时调用sync()；
+     * 其余情况不使用日志时把FAT脏块写回设备，使用日志时把暂存的修改作为一个事务提交，都不强制刷盘：
+     * 刷盘策略只决定什么时候调用force()，修改总是在同步点交给操作系统，进程被终止不会丢失，暂存的目录块也不会一直增加
+     */
+    public void flush() {
+        if (snapshot != null) return;
+        if (durabilityMode == DurabilityMode.EVERY_OP
+                || durabilityMode == DurabilityMode.PERIODIC && System.nanoTime() - lastSyncNanos >= syncIntervalNanos) {
+            sync();
+        } else if (journal == null) {
+            writeDirtyFat();
+        } else {
+            commitTransaction(false);
+        }
+    }
+
+    /**
+     * 关闭文件时的同步点，ON_CLOSE模式下刷盘，其余模式与flush()相同
+     */
+    public void syncOnFileClose() {
+        if (durabilityMode == DurabilityMode.ON_CLOSE) {
+            sync();
+        } else {
+            flush();
+        }
+    }
+
+    /**
+     * 将内存中FAT的脏块写回原位置（不强制刷盘），相邻的脏块合并为一次写入
+     */
+    private void writeDirtyFat() {
+        prepareSnapshotWrites();
+        int[] dirty = takeDirtyFatBlocks();
+        int written = 0; // 已写出的脏块数
+        try {
+            for (int k = 0; k < dirty.length; k = written) {
+                int end = k + 1;
+                while (end < dirty.length && dirty[end] == dirty[end - 1] + 1) end++;
+                int first = dirty[k];
+                int last = dirty[end - 1] + 1;
+                ByteBuffer buffer = ByteBuffer.allocate((last - first) * blockSize);
+                int entriesPerBlock = blockSize / FAT_ENTRY_SIZE;
+                int from = first * entriesPerBlock;
+                int to = Math.min(diskSize, last * entriesPerBlock);
+                buffer.asIntBuffer().put(FAT, from, to - from);
+                device.write((long) (FAT_START + first) * blockSize, buffer);
+                written = end;
+            }
+            synchronized (corruptBlocks) {
+                for (int i = nextSetBit(dirtyChecksumBlocks, 0); i != -1; i = nextSetBit(dirtyChecksumBlocks, i + 1)) {
+                    device.write((long) (checksumStart() + i) * blockSize, ByteBuffer.wrap(checksumImage(i)));
+                    dirtyChecksumBlocks[i >>> 6] &= ~(1L << i);
+                }
+            }
+            if (dedup != null) {
+                synchronized (dedup) {
+                    for (int i : dedup.takeDirtyBlocks()) {
+                        device.write((long) (dedupStart() + i) * blockSize, ByteBuffer.wrap(dedup.image(i)));
+                    }
+                }
+            }
+        } catch (IOException e) {
+            for (int k = written; k < dirty.length; k++) markFatDirty(dirty[k]); // 没有写出的FAT块留到下一个同步点
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * 把FAT脏块和暂存的目录块作为一个事务提交到日志，durable为true时返回时事务已刷盘
+     * 多个线程同时调用时由日志合并刷盘；提交的块追加到日志后才从暂存表中移除，写回原位置之前的读取由日志返回新内容
+     *
+     * @param durable 是否等待事务刷盘；为false时只追加到日志，不调用force()，原位置在之后刷盘时写回
+     * @return 是否提交了新事务，没有修改时返回false
+     * @throws IllegalStateException 事务超过日志容量，修改留在内存中
+     */
+    private boolean commitTransaction(boolean durable) {
+        prepareSnapshotWrites();
+        int[] targets;
+        byte[][] images;
+        synchronized (pendingMetadata) {
+            int[] checksumTargets;
+            byte[][] checksumImages;
+            // 校验和块与目录块、FAT在同一个事务中，元数据块和它的校验和一起生效
+            synchronized (corruptBlocks) {
+                checksumTargets = new int[countSetBits(dirtyChecksumBlocks)];
+                checksumImages = new byte[checksumTargets.length][];
+                int k = 0;
+                for (int i = nextSetBit(dirtyChecksumBlocks, 0); i != -1; i = nextSetBit(dirtyChecksumBlocks, i + 1)) {
+                    checksumTargets[k] = checksumStart() + i;
+                    checksumImages[k++] = checksumImage(i);
+                }
+                if (dirtyChecksumBlocks != null) Arrays.fill(dirtyChecksumBlocks, 0L);
+            }
+            // 去重映射与FAT在同一个事务中，FAT链和链上各块内容的位置一起生效
+            int[] dedupTargets = new int[0];
+            byte[][] dedupImages = new byte[0][];
+            if (dedup != null) {
+                synchronized (dedup) {
+                    dedupTargets = dedup.takeDirtyBlocks();
+                    dedupImages = new byte[dedupTargets.length][];
+                    for (int k = 0; k < dedupTargets.length; k++) {
+                        dedupImages[k] = dedup.image(dedupTargets[k]);
+                        dedupTargets[k] += dedupStart();
+                    }
+                }
+            }
+            int[] dirty = takeDirtyFatBlocks();
+            int count = dirty.length + checksumTargets.length + dedupTargets.length + pendingMetadata.size();
+            // 超过日志容量的事务不能原子提交，也不能拆开直接写回原位置：取出的脏标记放回去，本次同步点失败
+            if (!journal.fits(count)) {
+                for (int i : dirty) markFatDirty(i);
+                synchronized (corruptBlocks) {
+                    for (int target : checksumTargets) {
+                        int i = target - checksumStart();
+                        dirtyChecksumBlocks[i >>> 6] |= 1L << i;
+                    }
+                }
+                if (dedup != null) {
+                    for (int k = 0; k < dedupTargets.length; k++) dedupTargets[k] -= dedupStart();
+                    dedup.markDirtyBlocks(dedupTargets);
+                }
+                throw new IllegalStateException("事务有" + count + "块，超过日志容量" + journal.getLength() + "块，无法原子提交");
+            }
+            targets = new int[count];
+            images = new byte[count][];
+            int n = 0;
+            int entriesPerBlock = blockSize / FAT_ENTRY_SIZE;
+            for (int i : dirty) {
+                ByteBuffer image = ByteBuffer.allocate(blockSize);
+                int from = i * entriesPerBlock;
+                image.asIntBuffer().put(FAT, from, Math.min(diskSize, from + entriesPerBlock) - from);
+                targets[n] = FAT_START + i;
+                images[n++] = image.array();
+            }
+            System.arraycopy(checksumTargets, 0, targets, n, checksumTargets.length);
+            System.arraycopy(checksumImages, 0, images, n, checksumImages.length);
+            n += checksumTargets.length;
+            System.arraycopy(dedupTargets, 0, targets, n, dedupTargets.length);
+            System.arraycopy(dedupImages, 0, images, n, dedupImages.length);
+            n += dedupTargets.length;
+            for (Map.Entry<Integer, byte[]> entry : pendingMetadata.entrySet()) {
+                targets[n] = entry.getKey();
+                images[n++] = entry.getValue();
+            }
+        }
+        try {
+            if (targets.length == 0) {
+                if (durable) journal.commitPending();
+                return false;
+            }
+            if (durable) {
+                journal.commit(targets, images);
+            } else {
+                journal.commitUnforced(targets, images);
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        // 暂存的内容每次写入都换成新数组，数组相同说明提交后没有再被修改
+        synchronized (pendingMetadata) {
+            for (int i = 0; i < targets.length; i++) pendingMetadata.remove(targets[i], images[i]);
+        }
+        return true;
+    }
+
+    /**
+     * 写入目录块等元数据块：使用日志时先暂存在内存中，在下一个同步点与FAT修改一起作为一个事务提交；
+     * 不使用日志时与writeBlock相同
+     *
+     * @param index 磁盘块索引
+     * @param data  要写入的数据，不足一块时其余部分保持原内容
+     */
+    public void writeMetadataBlock(int index, byte[] data) {
+        checkWritable();
+        if (journal == null) {
+            writeBlock(index, data, false);
+            return;
+        }
+        if (!isDataBlock(index)) {
+            throw new IllegalArgumentException("Invalid block index");
+        }
+        byte[] image = new byte[blockSize];
+        if (data.length < blockSize) readBlock(index, ByteBuffer.wrap(image));
+        System.arraycopy(data, 0, image, 0, Math.min(data.length, blockSize));
+        // 日志直接写回原位置，目录块不参与去重，先解除映射
+        if (dedup != null) releaseDedup(index);
+        synchronized (pendingMetadata) {
+            pendingMetadata.put(index, image);
+            if (blockCache != null) blockCache.update(index, image);
+        }
+        putChecksum(index, ByteBuffer.wrap(image), 0);
+    }
+
+    /**
+     * 块有尚未写回的元数据新内容时，把它写入dst，位置前进一块
+     * 先看暂存表，再看日志中已提交但还没有写回原位置的内容
+     *
+     * @return 是否有暂存的新内容
+     */
+    private boolean readPendingMetadata(int index, ByteBuffer dst) {
+        byte[] image = pendingImage(index);
+        if (image == null) return false;
+        dst.put(image, 0, blockSize);
+        return true;
+    }
+
+    // 块尚未写回原位置的最新内容，没有时返回null
+    private byte[] pendingImage(int index) {
+        synchronized (pendingMetadata) {
+            byte[] image = pendingMetadata.isEmpty() ? null : pendingMetadata.get(index);
+            if (image != null) return image;
+        }
+        return journal != null ? journal.getUnapplied(index) : null;
+    }
+
+    // 回收的目录块或快照映射块不再写回原位置：丢弃暂存的新内容和缓存中的这一块，
+    // 重新分配后按普通数据块写入，提交时不会用旧的目录内容覆盖
+    private void dropPendingMetadata(int index) {
+        synchronized (pendingMetadata) {
+            if (pendingMetadata.isEmpty() || pendingMetadata.remove(index) == null) return;
+            if (blockCache != null) blockCache.invalidate(index);
+        }
+    }
+
+    // 块是否有尚未写回的元数据新内容；日志中还没有写回的块也算，之后的写入要经过日志，不能被检查点时写回的旧内容覆盖
+    private boolean isPendingMetadata(int index) {
+        return pendingImage(index) != null;
+    }
+
+    /**
+     * 获取挂载时备份的旧格式磁盘文件：磁盘文件没有超级块时先改名备份，按配置格式化后导入原来的文件和目录
+     *
+     * @return 备份文件，挂载时没有备份则返回null
+     */
+    public File getLegacyBackup() {
+        return legacyBackup;
+    }
+
+    /**
+     * 获取挂载时从旧格式磁盘导入的文件和目录数
+     *
+     * @return 导入的登记项数，没有导入时为0
+     */
+    public int getLegacyEntries() {
+        return legacyEntries;
+    }
+
+    /**
+     * 获取元数据日志，可用于查看事务数、刷盘次数等
+     *
+     * @return 日志，未启用日志时为null
+     */
+    public Journal getJournal() {
+        return journal;
+    }
+
+    /**
+     * 刷盘点，不论刷盘策略都写回FAT脏块并将已写入的数据刷到磁盘（force(false)，磁盘文件长度不变，不需要刷写元数据）
+     * 使用日志时暂存的元数据作为一个事务提交，提交本身已经刷盘，没有新事务时才单独刷盘
+     */
+    public void sync() {
+        if (snapshot != null) return;
+        try {
+            if (journal == null) {
+                writeDirtyFat();
+                device.force(false);
+            } else if (!commitTransaction(true)) {
+                device.force(false);
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        lastSyncNanos = System.nanoTime();
+    }
+
+    /**
+     * 创建只读快照，只记录快照表，不复制任何数据块
+     * 先把暂存的修改写回原位置，此时磁盘上的内容就是快照的内容；之后每块第一次被覆盖前才复制旧内容
+     *
+     * @param name 快照名，不超过12字节
+     */
+    public void createSnapshot(String name) {
+        checkWritable();
+        if (dedup != null) {
+            throw new IllegalStateException("Snapshots are not supported on a deduplicated disk");
+        }
+        if (name == null || name.isEmpty() || name.getBytes(StandardCharsets.UTF_8).length > SnapshotTable.NAME_LENGTH) {
+            throw new IllegalArgumentException("Invalid snapshot name: " + name);
+        }
+        synchronized (snapshots) {
+            if (snapshots.find(name) != null) {
+                throw new IllegalArgumentException("Snapshot already exists: " + name);
+            }
+            if (snapshots.getSnapshots().size() >= snapshots.getCapacity()) {
+                throw new IllegalStateException("Snapshot table is full");
+            }
+        }
+        sync();
+        synchronized (snapshots) {
+            snapshots.create(name);
+        }
+        sync(); // 把快照表写入超级块
+    }
+
+    /**
+     * 删除快照，回收只属于它的旧内容副本和映射块
+     *
+     * @param name 快照名
+     */
+    public void deleteSnapshot(String name) {
+        checkWritable();
+        synchronized (snapshots) {
+            SnapshotTable.Snapshot target = snapshots.find(name);
+            if (target == null) {
+                throw new IllegalArgumentException("No such snapshot: " + name);
+            }
+            for (int block : snapshots.delete(target)) putFatEntry(block, BlockStatus.FREE.getValue());
+        }
+        sync();
+    }
+
+    /**
+     * 获取所有快照，按创建顺序排列
+     *
+     * @return 快照信息
+     */
+    public List<SnapshotInfo> getSnapshots() {
+        List<SnapshotInfo> list = new ArrayList<>();
+        synchronized (snapshots) {
+            for (SnapshotTable.Snapshot s : snapshots.getSnapshots()) {
+                list.add(new SnapshotInfo(s.name, s.epoch, s.count));
             }
-        } catch (Exception e) {
-            e.printStackTrace();
         }
+        return list;
+    }
+
+    /**
+     * 获取快照占用的块数（旧内容副本和映射块）
+     *
+     * @return 块数
+     */
+    public int getSnapshotBlockCount() {
+        synchronized (snapshots) {
+            return snapshots.getOwnedCount();
+        }
+    }
+
+    /**
+     * 以只读方式打开快照，返回的DiskManager可以交给FileSystem挂载，所有写操作抛出IllegalStateException
+     * 快照视图与本卷共用设备，本卷卸载后不能再使用
+     *
+     * @param name 快照名
+     * @return 快照视图
+     */
+    public DiskManager openSnapshot(String name) {
+        DiskManager volume = base != null ? base : this;
+        SnapshotTable.Snapshot target;
+        synchronized (snapshots) {
+            target = snapshots.find(name);
+        }
+        if (target == null) {
+            throw new IllegalArgumentException("No such snapshot: " + name);
+        }
+        return new DiskManager(volume, target);
+    }
+
+    /**
+     * 是否为只读的快照视图
+     *
+     * @return 快照视图返回true
+     */
+    public boolean isReadOnly() {
+        return snapshot != null;
+    }
+
+    // 快照视图不能修改
+    private void checkWritable() {
+        if (snapshot != null) {
+            throw new IllegalStateException("Snapshot " + snapshot.name + " is mounted read-only");
+        }
+    }
+
+    /**
+     * 写回原位置前，如果最新的快照还没有保存这一块，先把旧内容复制到一个新分配的块
+     *
+     * @param index 磁盘块号
+     * @return 是否复制了旧内容
+     */
+    private boolean copyOnWrite(int index) {
+        synchronized (snapshots) {
+            if (index == SUPERBLOCK_POS || !snapshots.needsCopy(index)) return false;
+            int copy = allocateRun(1);
+            if (copy == -1) {
+                throw new IllegalStateException("No free block to preserve block " + index + " for snapshot");
+            }
+            ByteBuffer buffer = bufferPool.lease();
+            try {
+                device.read((long) index * blockSize, buffer);
+                buffer.flip();
+                putChecksum(copy, buffer, 0);
+                device.write((long) copy * blockSize, buffer);
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            } finally {
+                bufferPool.release(buffer);
+            }
+            if (blockCache != null) blockCache.invalidate(copy);
+            snapshots.preserved(index, copy);
+            return true;
+        }
+    }
+
+    /**
+     * 同步点写回FAT脏块和暂存的元数据块之前调用：先为快照保存这些块的旧内容，再写出有变化的快照表
+     * 复制和写出映射块都会分配块、弄脏更多的FAT块，反复处理直到没有新的复制
+     */
+    private void prepareSnapshotWrites() {
+        synchronized (snapshots) {
+            if (snapshots.isEmpty() && !snapshots.isDirty()) return;
+            boolean copied;
+            do {
+                persistSnapshots();
+                copied = false;
+                for (int i = nextDirtyFatBlock(0); i != -1; i = i + 1 < fatBlocks ? nextDirtyFatBlock(i + 1) : -1) {
+                    copied |= copyOnWrite(FAT_START + i);
+                }
+                int[] pending;
+                synchronized (pendingMetadata) {
+                    pending = new int[pendingMetadata.size()];
+                    int n = 0;
+                    for (int index : pendingMetadata.keySet()) pending[n++] = index;
+                }
+                for (int index : pending) copied |= copyOnWrite(index);
+            } while (copied || snapshots.isDirty());
+        }
+    }
+
+    /**
+     * 写出新增的映射和超级块中的快照表，映射块不够时分配新块接在映射链末尾
+     */
+    private void persistSnapshots() {
+        boolean changed = snapshots.isDirty();
+        for (SnapshotTable.Snapshot s : snapshots.getSnapshots()) {
+            if (s.persisted == s.count) continue;
+            int length = snapshots.chainLength(s);
+            while (s.chain.length < length) {
+                int block = allocateRun(1);
+                if (block == -1) {
+                    throw new IllegalStateException("No free block for snapshot map");
+                }
+                if (s.chain.length > 0) putFatEntry(s.chain[s.chain.length - 1], block);
+                snapshots.appendChainBlock(s, block);
+            }
+            for (int k = snapshots.firstDirtyChainBlock(s); k < length; k++) {
+                stageSystemBlock(s.chain[k], snapshots.chainImage(s, k));
+            }
+            snapshots.chainPersisted(s);
+            changed = true; // 映射数变了
+        }
+        if (changed) {
+            byte[] superblock = new byte[blockSize];
+            ByteBuffer.wrap(superblock).putInt(MAGIC).putInt(blockSize).putInt(diskSize).putInt(journalBlocks).putInt(checksumBlocks)
+                    .putInt(dedupBlocks);
+            snapshots.writeTo(superblock);
+            stageSystemBlock(SUPERBLOCK_POS, superblock);
+        }
+    }
+
+    /**
+     * 写出超级块、映射块等快照相关的块：使用日志时并入本次事务，否则直接写回原位置
+     */
+    private void stageSystemBlock(int index, byte[] image) {
+        putChecksum(index, ByteBuffer.wrap(image), 0);
+        if (journal != null) {
+            synchronized (pendingMetadata) {
+                pendingMetadata.put(index, image);
+            }
+            return;
+        }
+        try {
+            device.write((long) index * blockSize, ByteBuffer.wrap(image));
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        if (blockCache != null) blockCache.invalidate(index);
+    }
+
+    // 绕过缓存和暂存表，直接读取磁盘块在设备上的内容（去重时读它映射到的物理块）
+    private byte[] readRawBlock(int index) {
+        byte[] data = new byte[blockSize];
+        try {
+            device.read((long) physicalBlock(index) * blockSize, ByteBuffer.wrap(data));
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        return data;
+    }
+
+    /**
+     * 快照视图读取一个块：先查快照表找到块在快照创建时的内容所在位置
+     * 读完后再查一次，期间本卷刚好复制并覆盖了这一块时改读副本
+     */
+    private void readSnapshotBlock(int index, ByteBuffer dst) {
+        int start = dst.position();
+        int limit = dst.limit();
+        try {
+            dst.limit(start + blockSize);
+            int physical = resolveSnapshotBlock(index);
+            device.read((long) physical * blockSize, dst);
+            int again = resolveSnapshotBlock(index);
+            if (again != physical) {
+                dst.position(start);
+                device.read((long) again * blockSize, dst);
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        } finally {
+            dst.limit(limit);
+        }
+    }
+
+    // 快照创建时一个块的内容所在的块号
+    private int resolveSnapshotBlock(int index) {
+        synchronized (snapshots) {
+            if (snapshot.deleted) {
+                throw new IllegalStateException("Snapshot " + snapshot.name + " has been deleted");
+            }
+            return snapshots.resolve(snapshot, index);
+        }
+    }
+
+    /**
+     * 获取刷盘策略
+     *
+     * @return 刷盘策略
+     */
+    public DurabilityMode getDurabilityMode() {
+        return durabilityMode;
+    }
+
+    /**
+     * 获取刷盘延迟统计，包括日志提交和检查点的刷盘
+     *
+     * @return 刷盘统计
+     */
+    public SyncStats getSyncStats() {
+        return syncStats;
+    }
+
+    /**
+     * 卸载磁盘，写回FAT脏块、刷盘并关闭设备
+     * NONE模式且不使用日志时只写回不刷盘；使用日志时总要提交并做检查点，清空日志
+     */
+    @Override
+    public void close() {
+        if (device == null) return;
+        if (snapshot != null) { // 设备属于所属的卷，由它关闭
+            device = null;
+            return;
+        }
+        try {
+            stopScrubber();
+            // 先等待异步请求全部完成
+            if (asyncEngine != null) {
+                asyncEngine.close();
+                asyncEngine = null;
+            }
+            if (durabilityMode == DurabilityMode.NONE && journal == null) {
+                writeDirtyFat();
+            } else {
+                sync();
+            }
+            // 正常卸载时清空日志，下次挂载不需要重放
+            if (journal != null) journal.checkpoint();
+            if (durabilityMode != DurabilityMode.NONE) device.force(true);
+            device.close();
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        } finally {
+            device = null;
+        }
+    }
+
+    /**
+     * 从指定FAT块开始查找下一个脏块
+     *
+     * @param from 起始FAT块序号（相对FAT起始块）
+     * @return 脏块序号，没有则返回-1
+     */
+    private int nextDirtyFatBlock(int from) {
+        int word = from >>> 6;
+        if (word >= dirtyFatBlocks.length()) return -1;
+        long value = dirtyFatBlocks.get(word) & (-1L << from);
+        while (true) {
+            if (value != 0) return (word << 6) + Long.numberOfTrailingZeros(value);
+            if (++word == dirtyFatBlocks.length()) return -1;
+            value = dirtyFatBlocks.get(word);
+        }
+    }
+
+    // 标记FAT块为脏，已经是脏块时不写，减少多个线程在同一个字上的竞争
+    private void markFatDirty(int block) {
+        long mask = 1L << block;
+        if ((dirtyFatBlocks.get(block >>> 6) & mask) == 0) {
+            dirtyFatBlocks.accumulateAndGet(block >>> 6, mask, (w, m) -> w | m);
+        }
+    }
+
+    /**
+     * 取出FAT脏块序号并清除脏标记
+     * 先清除标记再读FAT，之后其他线程的修改会重新标记，在下一个同步点写回，不会丢失
+     *
+     * @return 脏块序号（相对FAT起始块），从小到大
+     */
+    private int[] takeDirtyFatBlocks() {
+        int[] blocks = new int[16];
+        int n = 0;
+        for (int w = 0; w < dirtyFatBlocks.length(); w++) {
+            if (dirtyFatBlocks.get(w) == 0) continue;
+            for (long bits = dirtyFatBlocks.getAndSet(w, 0L); bits != 0; bits &= bits - 1) {
+                if (n == blocks.length) blocks = Arrays.copyOf(blocks, n * 2);
+                blocks[n++] = (w << 6) + Long.numberOfTrailingZeros(bits);
+            }
+        }
+        return Arrays.copyOf(blocks, n);
+    }
+
+    // 在位图中从from开始查找下一个置位的位，位图为null或没有时返回-1
+    private static int nextSetBit(long[] bits, int from) {
+        if (bits == null) return -1;
+        int word = from >>> 6;
+        if (word >= bits.length) return -1;
+        long value = bits[word] & (-1L << from);
+        while (true) {
+            if (value != 0) return (word << 6) + Long.numberOfTrailingZeros(value);
+            if (++word == bits.length) return -1;
+            value = bits[word];
+        }
+    }
+
+    private static int countSetBits(long[] bits) {
+        int count = 0;
+        if (bits != null) for (long word : bits) count += Long.bitCount(word);
+        return count;
+    }
+
+    // 校验和区的起始块号，紧接在日志区之后
+    private int checksumStart() {
+        return FAT_START + fatBlocks + journalBlocks;
+    }
+
+    /**
+     * 挂载时读入校验和区，没有校验和区的磁盘不做校验
+     */
+    private void readChecksums() throws IOException {
+        if (checksumBlocks == 0) return;
+        ByteBuffer buffer = ByteBuffer.allocate(diskSize * 4);
+        device.read((long) checksumStart() * blockSize, buffer);
+        buffer.flip();
+        this.checksums = new int[diskSize];
+        buffer.asIntBuffer().get(checksums);
+        this.dirtyChecksumBlocks = new long[(checksumBlocks + 63) >>> 6];
+        synchronized (corruptBlocks) {
+            corruptBlocks.clear();
+        }
+    }
+
+    // 生成一个校验和块的内容
+    private byte[] checksumImage(int block) {
+        ByteBuffer image = ByteBuffer.allocate(blockSize);
+        int from = block * (blockSize / 4);
+        image.asIntBuffer().put(checksums, from, Math.min(diskSize, from + blockSize / 4) - from);
+        return image.array();
+    }
+
+    // 0表示没有记录过，算出的CRC恰好为0时记为1，两者的区别只在2^32分之一的概率上放过一次校验
+    private static int seal(int crc) {
+        return crc == 0 ? 1 : crc;
+    }
+
+    /**
+     * 块写回原位置前记录它新内容的校验和，只在内存中修改并标记所在校验和块为脏，在同步点与FAT一起写回
+     *
+     * @param index  磁盘块号
+     * @param block  包含新内容的缓冲区
+     * @param offset 新内容在缓冲区中的绝对偏移
+     */
+    private void putChecksum(int index, ByteBuffer block, int offset) {
+        if (checksums == null || !isDataBlock(index)) return;
+        int crc = seal(Crc32c.checksum(block, offset, blockSize));
+        int checksumBlock = index / (blockSize / 4);
+        synchronized (corruptBlocks) {
+            checksums[index] = crc;
+            dirtyChecksumBlocks[checksumBlock >>> 6] |= 1L << checksumBlock;
+            corruptBlocks.clear(index);
+        }
+    }
+
+    /**
+     * 校验刚从设备读入的一块，不一致时记为坏块并抛出异常
+     *
+     * @param index  磁盘块号
+     * @param block  包含读入内容的缓冲区
+     * @param offset 读入内容在缓冲区中的绝对偏移
+     */
+    private void verifyChecksum(int index, ByteBuffer block, int offset) {
+        if (checksumMatches(index, block, offset)) return;
+        synchronized (corruptBlocks) {
+            corruptBlocks.set(index);
+            checksumFailures++;
+        }
+        throw new IllegalStateException("Checksum mismatch in block " + index);
+    }
+
+    // 读入的内容与记录的校验和一致，或者不需要校验
+    private boolean checksumMatches(int index, ByteBuffer block, int offset) {
+        if (!verifyChecksums || checksums == null) return true;
+        int expected = checksums[index];
+        return expected == 0 || seal(Crc32c.checksum(block, offset, blockSize)) == expected;
+    }
+
+    /**
+     * 直接从设备读取一块并校验，不经过缓存，可用于巡检
+     * 失败时再读一次，排除读取期间恰好有并发写入的情况
+     *
+     * @param index 磁盘块号
+     * @return 校验通过或没有校验和返回true，读取失败或校验失败返回false（块被记为坏块）
+     */
+    public boolean verifyBlock(int index) {
+        if (!isDataBlock(index)) {
+            throw new IllegalArgumentException("Invalid block index");
+        }
+        if (checkBlock(index) || checkBlock(index)) return true;
+        synchronized (corruptBlocks) {
+            corruptBlocks.set(index);
+            checksumFailures++;
+        }
+        return false;
+    }
+
+    // 从设备读取一块并与校验和比较，不记录结果；没有校验和时只检查能否读出，读取失败视为校验失败
+    private boolean checkBlock(int index) {
+        if (isPendingMetadata(index)) return true;
+        ByteBuffer buffer = bufferPool.lease();
+        try {
+            device.read((long) physicalBlock(index) * blockSize, buffer);
+            int expected;
+            synchronized (corruptBlocks) {
+                expected = checksums != null ? checksums[index] : 0;
+            }
+            return expected == 0 || seal(Crc32c.checksum(buffer, 0, blockSize)) == expected;
+        } catch (IOException e) {
+            return false;
+        } finally {
+            bufferPool.release(buffer);
+        }
+    }
+
+    /**
+     * 磁盘是否有校验和区
+     *
+     * @return 格式化时启用了校验和返回true
+     */
+    public boolean hasChecksums() {
+        return checksumBlocks > 0;
+    }
+
+    /**
+     * 从设备读入时是否校验
+     *
+     * @return 有校验和区且挂载时开启了校验返回true
+     */
+    public boolean isVerifyChecksums() {
+        return verifyChecksums && checksums != null;
+    }
+
+    /**
+     * 获取校验失败的次数
+     *
+     * @return 次数
+     */
+    public long getChecksumFailures() {
+        synchronized (corruptBlocks) {
+            return checksumFailures;
+        }
+    }
+
+    // 去重区的起始块号，紧接在校验和区之后
+    private int dedupStart() {
+        return checksumStart() + checksumBlocks;
+    }
+
+    /**
+     * 挂载时读入去重区，重建引用计数，没有去重区的磁盘不去重
+     */
+    private void readDedupMap() throws IOException {
+        if (dedupBlocks == 0) return;
+        ByteBuffer buffer = ByteBuffer.allocate(diskSize * 4);
+        device.read((long) dedupStart() * blockSize, buffer);
+        buffer.flip();
+        this.dedup = new DedupTable(diskSize, blockSize, dedupBlocks);
+        dedup.load(buffer);
+    }
+
+    // 逻辑块的内容所在的物理块号，不去重时就是块号本身
+    private int physicalBlock(int index) {
+        return dedup != null ? dedup.physical(index) : index;
+    }
+
+    /**
+     * 数据块写入自己的位置之前交给去重表处理
+     *
+     * @param index  磁盘块号
+     * @param image  新内容，恰好一块
+     * @param dedupe 是否按内容查找重复的块，目录块不参与
+     * @return 是否需要写入自己的位置，内容重复时已经映射到已有的物理块，不需要写入
+     */
+    private boolean storeDedup(int index, byte[] image, boolean dedupe) {
+        if (index < userAreaStart) return true;
+        try {
+            if (dedupe) return dedup.write(index, image, device);
+            dedup.release(index, device);
+            return true;
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    // 块将不经过去重写入自己的位置，解除映射，自己的位置被共享时先搬走内容
+    private void releaseDedup(int index) {
+        storeDedup(index, null, false);
+    }
+
+    /**
+     * 磁盘是否启用了块级去重
+     *
+     * @return 格式化时启用了去重返回true
+     */
+    public boolean isDedup() {
+        return dedupBlocks > 0;
+    }
+
+    /**
+     * 统计去重节省的空间和写入路径上的开销
+     *
+     * @return 去重报告，未启用去重时为null
+     */
+    public DedupReport getDedupReport() {
+        if (dedup == null) return null;
+        int used = 0;
+        int stored = 0;
+        int shared = 0;
+        for (int i = userAreaStart; i < diskSize; i++) {
+            int refs = dedup.getRefs(i);
+            if (refs > 0) shared++;
+            if (isBlockAllocated(i)) {
+                used++;
+                if (dedup.physical(i) == i) stored++;
+            } else if (refs > 0) {
+                stored++; // 已回收但内容仍被其他块共享
+            }
+        }
+        return new DedupReport(blockSize, used, stored, shared, dedup.getWrites(), dedup.getHits(),
+                dedup.getUnchanged(), dedup.getEvacuations(), dedup.getHashNanos());
+    }
+
+    /**
+     * 根据内存中的FAT重建空闲块位图、空闲块数和分配组
+     */
+    private void rebuildFreeBitmap() {
+        FreeBlockMap map = new FreeBlockMap(userAreaStart, diskSize, groupBlocks);
+        for (int i = userAreaStart; i < diskSize; i++) {
+            if (BlockStatus.FREE.isEqual(FAT[i])) map.setFree(i, true);
+        }
+        AllocationGroup[] rebuilt = new AllocationGroup[map.getGroupCount()];
+        if (rebuilt.length == 1) {
+            rebuilt[0] = new AllocationGroup(0, map, allocator); // 不分组时与原来一样在整个用户区按分配策略查找
+        } else {
+            for (int g = 0; g < rebuilt.length; g++) {
+                rebuilt[g] = new AllocationGroup(g, map.group(g), newAllocator(allocationPolicy));
+            }
+        }
+        this.freeMap = map;
+        this.groups = rebuilt;
+    }
+
+    // 按分配策略创建实现，每个分配组一个实例
+    private static AllocationStrategy newAllocator(AllocationPolicy policy) {
+        switch (policy) {
+            case FIRST_FIT:
+                return new FirstFitStrategy();
+            case BEST_FIT:
+                return new BestFitStrategy();
+            case BUDDY:
+                return new BuddyStrategy();
+            case NEXT_FIT:
+            default:
+                return new NextFitStrategy();
+        }
+    }
+
+    /**
+     * 获取空闲块数，O(1)
+     *
+     * @return 空闲块数
+     */
+    public int getFreeBlockCount() {
+        return freeMap.getFreeCount();
+    }
+
+    /**
+     * 获取已使用块数（含系统区和坏块），O(1)
+     *
+     * @return 已使用块数
+     */
+    public int getUsedBlockCount() {
+        return diskSize - freeMap.getFreeCount();
+    }
+
+    /**
+     * 获取尚未写回的FAT脏块数
+     *
+     * @return 脏块数
+     */
+    public int getDirtyFatBlockCount() {
+        int count = 0;
+        for (int w = 0; w < dirtyFatBlocks.length(); w++) count += Long.bitCount(dirtyFatBlocks.get(w));
+        return count;
+    }
+
+    /**
+     * 获取挂载方式
+     *
+     * @return 挂载方式
+     */
+    public MountMode getMountMode() {
+        return mountMode;
+    }
+
+    /**
+     * 获取磁盘块数
+     *
+     * @return 磁盘块数
+     */
+    public int getDiskSize() {
+        return diskSize;
+    }
+
+    /**
+     * 获取磁盘块大小
+     *
+     * @return 每个磁盘块的字节数
+     */
+    public int getBlockSize() {
+        return blockSize;
+    }
+
+    /**
+     * 获取日志区块数
+     *
+     * @return 日志区块数，0表示不使用日志
+     */
+    public int getJournalBlocks() {
+        return journalBlocks;
+    }
+
+    /**
+     * 一个事务最多包含的块数：所有FAT块、校验和块、去重区块，加上预留的目录块等元数据块
+     * 格式化时日志区至少要容纳这样一条记录
+     *
+     * @return 块数
+     */
+    public int getMaxTransactionBlocks() {
+        return fatBlocks + checksumBlocks + dedupBlocks + MAX_TRANSACTION_METADATA_BLOCKS;
+    }
+
+    /**
+     * 获取用户区域起始块号，之前的块是超级块、根目录、FAT和日志区
+     *
+     * @return 用户区域起始块号
+     */
+    public int getUserAreaStart() {
+        return userAreaStart;
+    }
+
+    /**
+     * 获取磁盘总字节数
+     *
+     * @return 磁盘块数 * 磁盘块大小
+     */
+    public long getCapacity() {
+        return (long) diskSize * blockSize;
+    }
+
+    /**
+     * 获取覆盖层的底层磁盘文件
+     *
+     * @return 底层磁盘文件，普通磁盘时为null
+     */
+    public File getBackingFile() {
+        return overlay != null ? overlay.getBaseFile() : null;
+    }
+
+    /**
+     * 获取已写入覆盖层的块数（含创建时复制的超级块），覆盖层占用的空间与它成正比
+     *
+     * @return 块数，普通磁盘时为0
+     */
+    public int getOverlayBlockCount() {
+        return overlay != null ? overlay.getPresentCount() : 0;
+    }
+
+    /**
+     * 获取磁盘块缓存，可用于查看命中、未命中、淘汰计数
+     *
+     * @return 磁盘块缓存，未启用缓存时为null
+     */
+    public BlockCache getBlockCache() {
+        return blockCache;
+    }
+
+    /**
+     * 按当前几何参数快速格式化磁盘
+     */
+    public void formatDisk() {
+        formatDisk(FormatMode.QUICK);
+    }
+
+    /**
+     * 按当前几何参数格式化磁盘
+     *
+     * @param formatMode 格式化方式
+     */
+    public void formatDisk(FormatMode formatMode) {
+        checkWritable();
+        if (overlay != null) {
+            throw new IllegalStateException("Cannot format an overlay image");
+        }
+        if (mountMode == MountMode.MAPPED) {
+            throw new IllegalStateException("Cannot format a memory-mapped disk while mounted");
+        }
+        writeImage(formatMode);
+        // 格式化后重新载入FAT，未写回的FAT修改、暂存的目录块、日志和缓存中的数据全部作废
+        synchronized (pendingMetadata) {
+            pendingMetadata.clear();
+        }
+        synchronized (snapshots) {
+            snapshots.clear(); // 格式化后所有快照失效
+        }
+        if (device != null) {
+            try {
+                if (journal != null) journal.reset();
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+            this.FAT = readFAT();
+            takeDirtyFatBlocks();
+            rebuildFreeBitmap();
+            try {
+                readChecksums();
+                readDedupMap();
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        }
+        if (blockCache != null) blockCache.clear();
+    }
+
+    /**
+     * 按当前几何参数写出磁盘文件：超级块、根目录和FAT，再按格式化方式处理用户区
+     * 快速格式化先把文件截断为0再设置长度，用户区成为稀疏的空洞，读取时由文件系统返回0；
+     * 完整格式化按FORMAT_CHUNK_SIZE大块写入0，实际分配全部空间
+     *
+     * @param formatMode 格式化方式
+     */
+    private void writeImage(FormatMode formatMode) {
+        try (RandomAccessFile raf = new RandomAccessFile(diskFile, "rw")) {
+            raf.setLength(0);
+            FileChannel channel = raf.getChannel();
+            ByteBuffer chunk = ByteBuffer.allocate(Math.max(2 * blockSize, FORMAT_CHUNK_SIZE / blockSize * blockSize));
+
+            // 超级块：魔数、块大小、块数、日志块数、校验和区块数、去重区块数
+            chunk.putInt(MAGIC).putInt(blockSize).putInt(diskSize).putInt(journalBlocks).putInt(checksumBlocks)
+                    .putInt(dedupBlocks);
+            chunk.position(blockSize);
+
+            // 初始化根目录项
+            for (int i = 0; i < blockSize; i += EntryStructure.ENTRY_LENGTH.getValue()) {
+                chunk.put(blockSize + i, BlockStatus.EMPTY_ENTRY.getValue());
+            }
+            chunk.position(2 * blockSize);
+
+            // 初始化FAT，系统区域各块标记为文件结束，其余为空闲
+            for (int i = 0; i < fatBlocks * (blockSize / FAT_ENTRY_SIZE); i++) {
+                if (!chunk.hasRemaining()) {
+                    writeChunk(channel, chunk);
+                }
+                chunk.putInt(i < userAreaStart ? BlockStatus.END_OF_FILE.getValue() : BlockStatus.FREE.getValue());
+            }
+            writeChunk(channel, chunk);
+
+            // 初始化其余磁盘存储
+            if (formatMode == FormatMode.FULL) {
+                long remaining = getCapacity() - channel.position();
+                while (remaining > 0) {
+                    chunk.position((int) Math.min(chunk.capacity(), remaining));
+                    remaining -= chunk.position();
+                    writeChunk(channel, chunk);
+                }
+            } else {
+                raf.setLength(getCapacity());
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * 写出缓冲区中的数据，然后把缓冲区清零以便复用
+     */
+    private static void writeChunk(FileChannel channel, ByteBuffer chunk) throws IOException {
+        chunk.flip();
+        while (chunk.hasRemaining()) {
+            channel.write(chunk);
+        }
+        Arrays.fill(chunk.array(), (byte) 0);
+        chunk.clear();
+    }
+
+    /**
+     * 从磁盘读取FAT
+     *
+     * @return 文件分配表
+     */
+    private int[] readFAT() {
+        int[] FAT = new int[diskSize];
+        try {
+            ByteBuffer buffer = ByteBuffer.allocate(diskSize * FAT_ENTRY_SIZE);
+            if (snapshot == null) {
+                device.read((long) FAT_START * blockSize, buffer);
+            } else {
+                // 快照视图逐块读取快照创建时的FAT
+                ByteBuffer block = ByteBuffer.allocate(blockSize);
+                for (int i = 0; i < fatBlocks; i++) {
+                    block.clear();
+                    readSnapshotBlock(FAT_START + i, block);
+                    block.flip().limit(Math.min(blockSize, buffer.remaining()));
+                    buffer.put(block);
+                }
+            }
+            buffer.flip();
+            buffer.asIntBuffer().get(FAT);
+            return FAT;
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * 修改一个FAT条目：只更新内存中的FAT并标记所在FAT块为脏，在同步点写回
+     *
+     * @param index 文件分配表的索引
+     * @param value 要设置的值
+     */
+    private void putFatEntry(int index, int value) {
+        checkWritable();
+        boolean free = BlockStatus.FREE.isEqual(value);
+        if (!free) freeMap.setFree(index, false); // 系统区不参与分配；分配到的块已经占用，这里不会改变
+        this.FAT[index] = value;
+        markFatDirty((int) ((long) index * FAT_ENTRY_SIZE / blockSize));
+        if (checksums != null && free) dropChecksum(index);
+        if (dedup != null && (free || BlockStatus.BAD_BLOCK.isEqual(value))) dedup.drop(index);
+        if (journal != null && free) dropPendingMetadata(index);
+        // 回收的块在FAT、校验和、去重表和暂存的元数据都处理完之后才能被其他线程再次分配
+        if (free) freeMap.setFree(index, true);
+    }
+
+    // 回收的块内容不再有意义，清除它的校验和，重新分配后在写入前读取不会误报
+    private void dropChecksum(int index) {
+        synchronized (corruptBlocks) {
+            if (checksums[index] == 0 && !corruptBlocks.get(index)) return;
+            checksums[index] = 0;
+            int checksumBlock = index / (blockSize / 4);
+            dirtyChecksumBlocks[checksumBlock >>> 6] |= 1L << checksumBlock;
+            corruptBlocks.clear(index);
+        }
+    }
+
+    /**
+     * 设置磁盘块的数据
+     *
+     * @param index 磁盘块索引
+     * @param data  要写入的数据
+     */
+    public void writeBlock(int index, byte[] data) {
+        writeBlock(index, data, true);
+    }
+
+    /**
+     * 设置磁盘块的数据
+     *
+     * @param index  磁盘块索引
+     * @param data   要写入的数据
+     * @param dedupe 启用去重时是否按内容查找重复的块
+     */
+    private void writeBlock(int index, byte[] data, boolean dedupe) {
+        checkWritable();
+        // 尚未提交的目录块被直接写入时并入同一个事务，避免提交时旧内容覆盖新写入
+        if (journal != null && isPendingMetadata(index)) {
+            writeMetadataBlock(index, data);
+            return;
+        }
+        if (index >= 0 && index < diskSize) {
+            copyOnWrite(index);
+            byte[] image = data;
+            if (checksums != null || dedup != null) {
+                if (data.length < blockSize) { // 不满一块时其余部分保持原内容
+                    image = readRawBlock(index);
+                    System.arraycopy(data, 0, image, 0, data.length);
+                }
+                putChecksum(index, ByteBuffer.wrap(image), 0);
+            }
+            // 去重时自己的位置上可能是旧内容，要写入完整的一块
+            if (dedup != null && !storeDedup(index, image, dedupe)) {
+                if (blockCache != null) blockCache.update(index, data);
+                return;
+            }
+            try {
+                device.write((long) index * blockSize, ByteBuffer.wrap(dedup != null ? image : data));
+                if (blockCache != null) blockCache.update(index, data);
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        } else {
+            throw new IllegalArgumentException("Invalid block index");
+        }
+    }
+
+
+    /**
+     * 读取磁盘块的数据
+     *
+     * @param index 磁盘块索引
+     * @return 读取的数据
+     */
+    public byte[] readBlock(int index) {
+        byte[] data = new byte[blockSize];
+        readBlock(index, ByteBuffer.wrap(data));
+        return data;
+    }
+
+    /**
+     * 读取磁盘块到调用方提供的缓冲区，不分配新数组，可配合getBufferPool()租用的缓冲区使用
+     * 从dst的当前位置起写入一块，完成后位置前进blockSize
+     *
+     * @param index 磁盘块索引
+     * @param dst   目标缓冲区，剩余空间不少于一块
+     */
+    public void readBlock(int index, ByteBuffer dst) {
+        // 检查索引是否合法
+        if (!isDataBlock(index)) {
+            throw new IllegalArgumentException("Invalid block index");
+        }
+        if (dst.remaining() < blockSize) {
+            throw new IllegalArgumentException("Buffer smaller than a block");
+        }
+        if (snapshot != null) {
+            readSnapshotBlock(index, dst);
+            return;
+        }
+        if (journal != null && readPendingMetadata(index, dst)) {
+            return;
+        }
+        if (blockCache != null && blockCache.read(index, dst)) {
+            return;
+        }
+        int start = dst.position();
+        int limit = dst.limit();
+        try {
+            dst.limit(start + blockSize);
+            device.read((long) physicalBlock(index) * blockSize, dst);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        } finally {
+            dst.limit(limit);
+        }
+        verifyChecksum(index, dst, start);
+        if (blockCache != null) blockCache.fill(index, dst, start);
     }
 
-    public void debug_rootDir() {
-        byte[] rootDirBlock = readBlock(ROOT_DIR_POS);
-        for (int i = 0; i < BLOCK_SIZE; i += 8) {
-            byte[] entry = Arrays.copyOfRange(rootDirBlock, i, i + 8);
-            System.out.print((char) entry[0] + " ");
+    /**
+     * 从调用方提供的缓冲区写入一个完整的磁盘块，不分配新数组
+     * 从src的当前位置起写出一块，完成后位置前进blockSize
+     *
+     * @param index 磁盘块索引
+     * @param src   源缓冲区，剩余数据不少于一块
+     */
+    public void writeBlock(int index, ByteBuffer src) {
+        checkWritable();
+        if (index < 0 || index >= diskSize) {
+            throw new IllegalArgumentException("Invalid block index");
         }
-        System.out.println();
-    }
-
-    public List<Boolean> disk_status() {
-        System.out.println("获取磁盘状态");
-        List<Boolean> list = new ArrayList<>();
-        try (FileInputStream fis = new FileInputStream(diskFile)) {
-            for (int i = 0; i < DISK_SIZE; i++) {
-                byte read = (byte)fis.read();
-                if (BlockStatus.END_OF_FILE.isEqual(read) ||  BlockStatus.BAD_BLOCK.isEqual(read)) {
-                    list.add(true);
-                } else if (BlockStatus.FREE.isEqual(read) ) {
-                    list.add(false);
-                }else{
-                    list.add(false);
-                }
-            }
-            debug_printDisk();
-        } catch (Exception e) {
-            e.printStackTrace();
+        if (src.remaining() < blockSize) {
+            throw new IllegalArgumentException("Buffer smaller than a block");
         }
+        if (journal != null && isPendingMetadata(index)) {
+            byte[] data = new byte[blockSize];
+            src.get(data);
+            writeMetadataBlock(index, data);
+            return;
+        }
+        if (dedup != null) { // 去重要对整块内容计算哈希
+            byte[] data = new byte[blockSize];
+            src.get(data);
+            writeBlock(index, data);
+            return;
+        }
+        copyOnWrite(index);
+        int start = src.position();
+        int limit = src.limit();
+        putChecksum(index, src, start);
+        try {
+            src.limit(start + blockSize);
+            device.write((long) index * blockSize, src);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        } finally {
+            src.limit(limit);
+        }
+        if (blockCache != null) blockCache.fill(index, src, start);
+    }
 
-        return list;
+    /**
+     * 获取磁盘块缓冲区池，租用的缓冲区大小为一块
+     *
+     * @return 缓冲区池
+     */
+    public BufferPool getBufferPool() {
+        return bufferPool;
     }
 
     /**
-     * 初始化磁盘和文件分配表
+     * 获取异步I/O引擎，第一次调用时打开异步通道和I/O线程池
+     *
+     * @return 异步I/O引擎，可用于查看在途请求数和完成延迟
      */
-    public DiskManager() {
-        // 检查磁盘文件是否存在，如果不存在则创建
-        if (!diskFile.exists()) {
-            boolean res = false;
+    public synchronized AsyncBlockEngine getAsyncEngine() {
+        if (asyncEngine == null) {
             try {
-                res = diskFile.createNewFile();
+                asyncEngine = new AsyncBlockEngine(diskFile, ioThreads, ioQueueDepth);
             } catch (IOException e) {
                 throw new RuntimeException(e);
             }
-            if (!res) {
-                throw new RuntimeException("创建文件失败");
-            }
-            // 格式化磁盘
-            formatDisk();
-            // 保存当前FAT在内存中
-            this.FAT = readFAT();
-        } else {
-            // 读取FAT
-            this.FAT = readFAT();
         }
+        return asyncEngine;
     }
 
     /**
-     * 格式化磁盘
+     * 异步读取磁盘块，缓存命中时直接返回已完成的future，未命中时读完后放入缓存
+     * 在途请求数达到上限时，调用方阻塞到有请求完成
+     *
+     * @param index 磁盘块索引
+     * @return 完成时得到磁盘块数据
      */
-    public void formatDisk() {
-        // 在磁盘文件开头写入FAT和根目录项
-        try (RandomAccessFile raf = new RandomAccessFile(diskFile, "rw")) {
+    public CompletableFuture<byte[]> readBlockAsync(int index) {
+        if (!isDataBlock(index)) {
+            throw new IllegalArgumentException("Invalid block index");
+        }
+        byte[] data = new byte[blockSize];
+        if (snapshot != null) {
+            readSnapshotBlock(index, ByteBuffer.wrap(data));
+            return CompletableFuture.completedFuture(data);
+        }
+        if (journal != null && readPendingMetadata(index, ByteBuffer.wrap(data))) {
+            return CompletableFuture.completedFuture(data);
+        }
+        if (blockCache != null && blockCache.read(index, data)) {
+            return CompletableFuture.completedFuture(data);
+        }
+        if (overlay != null) { // 异步通道直接读写磁盘文件，不经过覆盖层，改为同步读取
+            readBlock(index, ByteBuffer.wrap(data));
+            return CompletableFuture.completedFuture(data);
+        }
+        return getAsyncEngine().read((long) physicalBlock(index) * blockSize, ByteBuffer.wrap(data)).thenApply(v -> {
+            verifyChecksum(index, ByteBuffer.wrap(data), 0);
+            if (blockCache != null) blockCache.fill(index, data);
+            return data;
+        });
+    }
 
-            // 初始化FAT
-            for (int i = 0; i < DISK_SIZE; i++) {
-                // 设置FAT中表示的各磁盘块的状态
-                if (i < USER_AREA_START) {
-                    raf.seek(raf.length());
-                    raf.write(BlockStatus.END_OF_FILE.getValue());
-                } else {
-                    raf.seek(raf.length());
-                    raf.write(BlockStatus.FREE.getValue());
+    /**
+     * 用一次异步读把链上一段块号递增的块读入缓存，不等待完成，夹在中间的其他块一起读出后丢弃；
+     * 已缓存的块和尚未写回的目录块不放入缓存
+     * 读完之前被写入的块读到的内容作废；与校验和不一致的块也不放入缓存，之后正常读取时再校验并报告
+     *
+     * @param blocks 块号，严格递增
+     * @return 读完并放入缓存时完成的future，没有需要读的块或不能异步读取时为null
+     */
+    CompletableFuture<Void> prefetchBlocks(int[] blocks) {
+        if (blockCache == null || snapshot != null || overlay != null || dedup != null) return null;
+        int first = blocks[0];
+        int last = blocks[blocks.length - 1];
+        if (!isDataBlock(first) || !isDataBlock(last)) return null;
+        long[] tickets = new long[blocks.length];
+        boolean any = false;
+        for (int i = 0; i < blocks.length; i++) {
+            if (blockCache.contains(blocks[i]) || journal != null && isPendingMetadata(blocks[i])) continue;
+            tickets[i] = blockCache.beginPrefetch(blocks[i]);
+            any = true;
+        }
+        if (!any) return null;
+        byte[] data = new byte[(last - first + 1) * blockSize];
+        return getAsyncEngine().read((long) first * blockSize, ByteBuffer.wrap(data)).thenAccept(v -> {
+            ByteBuffer buffer = ByteBuffer.wrap(data);
+            for (int i = 0; i < blocks.length; i++) {
+                int offset = (blocks[i] - first) * blockSize;
+                if (tickets[i] != 0 && checksumMatches(blocks[i], buffer, offset)) {
+                    blockCache.completePrefetch(blocks[i], tickets[i], data, offset);
                 }
             }
+        });
+    }
 
-            // 初始化根目录项
-            byte[] rootDirBlock = new byte[BLOCK_SIZE];
-            Arrays.fill(rootDirBlock, (byte) 0);
-            for (int i = 0; i < BLOCK_SIZE; i += 8) {
-                rootDirBlock[i] = BlockStatus.EMPTY_ENTRY.getValue();
-            }
-            raf.seek(raf.length());
-            raf.write(rootDirBlock);
-
-            // 初始化其余磁盘存储
-            for (int i = USER_AREA_START * BLOCK_SIZE; i < DISK_SIZE * BLOCK_SIZE; i++) {
-                raf.seek(raf.length());
-                raf.write(0);
-            }
+    /**
+     * 获取顺序读预读引擎
+     *
+     * @return 预读引擎，没有缓存、最大预读窗口为0、覆盖层、去重的磁盘或快照视图时为null
+     */
+    public ReadAhead getReadAhead() {
+        return readAhead;
+    }
 
-        } catch (IOException e) {
-            throw new RuntimeException(e);
+    /**
+     * 异步写入磁盘块，缓存立即更新；同一块的多个异步写之间不保证顺序，需要顺序时等待前一个完成
+     *
+     * @param index 磁盘块索引
+     * @param data  要写入的数据，完成前不要修改
+     * @return 写完时完成的future
+     */
+    public CompletableFuture<Void> writeBlockAsync(int index, byte[] data) {
+        checkWritable();
+        if (index < 0 || index >= diskSize) {
+            throw new IllegalArgumentException("Invalid block index");
+        }
+        if (overlay != null || dedup != null) { // 去重时写入前要先查找，也改为同步写入
+            writeBlock(index, data);
+            return CompletableFuture.completedFuture(null);
         }
+        copyOnWrite(index);
+        putChecksum(index, ByteBuffer.wrap(data), 0);
+        if (blockCache != null) blockCache.update(index, data);
+        return getAsyncEngine().write((long) index * blockSize, ByteBuffer.wrap(data));
     }
 
     /**
-     * 从磁盘读取FAT
+     * 检查磁盘块号是否可以作为数据块读写（根目录或用户区）
+     */
+    private boolean isDataBlock(int index) {
+        return index == ROOT_DIR_POS || index >= userAreaStart && index < diskSize;
+    }
+
+    /**
+     * 批量读取磁盘块，块号相邻的连续未命中块合并为一次分散读
+     * 每个目标缓冲区从当前位置起读入一块，读完后位置前进blockSize
      *
-     * @return 文件分配表的字节数组
+     * @param indices 磁盘块号
+     * @param dst     目标缓冲区，与块号一一对应，剩余空间不少于一块
      */
-    private byte[] readFAT() {
-        byte[] FAT = new byte[DISK_SIZE];
-        try (FileInputStream fis = new FileInputStream(diskFile)) {
-            // 读取文件
-            if (fis.read(FAT) != -1) {
-                return FAT;
+    public void readBlocks(int[] indices, ByteBuffer[] dst) {
+        ByteBuffer[] views = blockViews(indices, dst);
+        if (snapshot != null) {
+            for (int i = 0; i < indices.length; i++) readSnapshotBlock(indices[i], views[i]);
+            for (ByteBuffer buffer : dst) buffer.position(buffer.position() + blockSize);
+            return;
+        }
+        byte[] data = new byte[blockSize];
+        boolean[] hit = new boolean[indices.length];
+        if (journal != null) {
+            for (int i = 0; i < indices.length; i++) {
+                hit[i] = readPendingMetadata(indices[i], views[i]);
+            }
+        }
+        if (blockCache != null) {
+            for (int i = 0; i < indices.length; i++) {
+                if (!hit[i] && blockCache.read(indices[i], data)) {
+                    views[i].put(data);
+                    hit[i] = true;
+                }
+            }
+        }
+        // 去重时按物理块号合并
+        int[] physical = indices;
+        if (dedup != null) {
+            physical = new int[indices.length];
+            for (int i = 0; i < indices.length; i++) physical[i] = dedup.physical(indices[i]);
+        }
+        try {
+            for (int i = 0; i < indices.length; ) {
+                if (hit[i]) {
+                    i++;
+                    continue;
+                }
+                int end = i + 1;
+                while (end < indices.length && !hit[end] && physical[end] == physical[end - 1] + 1) end++;
+                device.read((long) physical[i] * blockSize, Arrays.copyOfRange(views, i, end));
+                for (int j = i; j < end; j++) verifyChecksum(indices[j], views[j], 0);
+                if (blockCache != null) {
+                    for (int j = i; j < end; j++) {
+                        views[j].flip();
+                        views[j].get(data);
+                        blockCache.fill(indices[j], data);
+                    }
+                }
+                i = end;
             }
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
-        throw new RuntimeException("读取FAT失败");
+        for (ByteBuffer buffer : dst) buffer.position(buffer.position() + blockSize);
     }
 
     /**
-     * 将FAT写回磁盘
+     * 批量写入磁盘块，块号相邻的块合并为一次聚集写
+     * 每个源缓冲区从当前位置起写出一块，写完后位置前进blockSize
      *
-     * @param FAT 文件分配表的字节数组
+     * @param indices 磁盘块号
+     * @param src     源缓冲区，与块号一一对应，剩余数据不少于一块
      */
-    private void writeFAT(byte[] FAT) {
-        try (RandomAccessFile raf = new RandomAccessFile(diskFile, "rw")) {
-            raf.write(FAT);
-            // 更新内存中的FAT
-            this.FAT = readFAT();
+    public void writeBlocks(int[] indices, ByteBuffer[] src) {
+        checkWritable();
+        ByteBuffer[] views = blockViews(indices, src);
+        if (dedup != null) { // 去重时逐块查找，重复的块不写入
+            for (int i = 0; i < indices.length; i++) writeBlock(indices[i], views[i]);
+            for (ByteBuffer buffer : src) buffer.position(buffer.position() + blockSize);
+            return;
+        }
+        // 有尚未提交的元数据新内容的块逐块经writeBlock并入同一个事务，不参与聚集写，否则提交时旧内容会覆盖新写入
+        boolean[] pending = new boolean[indices.length];
+        for (int i = 0; i < indices.length; i++) {
+            pending[i] = journal != null && isPendingMetadata(indices[i]);
+            if (pending[i]) {
+                writeBlock(indices[i], views[i]);
+                continue;
+            }
+            copyOnWrite(indices[i]);
+            putChecksum(indices[i], views[i], 0);
+        }
+        try {
+            for (int i = 0; i < indices.length; ) {
+                if (pending[i]) {
+                    i++;
+                    continue;
+                }
+                int end = i + 1;
+                while (end < indices.length && !pending[end] && indices[end] == indices[end - 1] + 1) end++;
+                device.write((long) indices[i] * blockSize, Arrays.copyOfRange(views, i, end));
+                i = end;
+            }
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
+        if (blockCache != null) {
+            byte[] data = new byte[blockSize];
+            for (int i = 0; i < indices.length; i++) {
+                if (pending[i]) continue;
+                views[i].flip();
+                views[i].get(data);
+                blockCache.update(indices[i], data);
+            }
+        }
+        for (ByteBuffer buffer : src) buffer.position(buffer.position() + blockSize);
     }
 
     /**
-     * 设置磁盘块的数据
-     *
-     * @param index 磁盘块索引
-     * @param data  要写入的数据
+     * 检查批量读写的参数，并为每个缓冲区建立一个恰好一块大小的视图
      */
-    public void writeBlock(int index, byte[] data) {
-        if (index >= 0 && index < DISK_SIZE) {
-            try (RandomAccessFile raf = new RandomAccessFile(diskFile, "rw")) {
-                raf.seek((long) index * BLOCK_SIZE);
-                raf.write(data);
-            } catch (IOException e) {
-                throw new RuntimeException(e);
+    private ByteBuffer[] blockViews(int[] indices, ByteBuffer[] buffers) {
+        if (indices.length != buffers.length) {
+            throw new IllegalArgumentException("Block indices and buffers differ in length");
+        }
+        ByteBuffer[] views = new ByteBuffer[buffers.length];
+        for (int i = 0; i < indices.length; i++) {
+            if (!isDataBlock(indices[i])) {
+                throw new IllegalArgumentException("Invalid block index");
             }
-        } else {
-            throw new IllegalArgumentException("Invalid block index");
+            if (buffers[i].remaining() < blockSize) {
+                throw new IllegalArgumentException("Buffer smaller than a block");
+            }
+            views[i] = buffers[i].duplicate();
+            views[i].limit(views[i].position() + blockSize);
+            views[i] = views[i].slice();
         }
+        return views;
     }
 
-
     /**
-     * 读取磁盘块的数据
+     * 沿FAT链取出从指定块开始的块号序列
      *
-     * @param index 磁盘块索引
-     * @return 读取的数据
+     * @param startBlockIndex 起始块号
+     * @param maxBlocks       最多取出的块数
+     * @return 块号序列
      */
-    public byte[] readBlock(int index) {
-        try (RandomAccessFile raf = new RandomAccessFile(diskFile, "rw")) {
-            // 检查索引是否合法
-            if (index == ROOT_DIR_POS || index >= USER_AREA_START && index < DISK_SIZE) {
-                byte[] data = new byte[BLOCK_SIZE];
-                raf.skipBytes(index * BLOCK_SIZE);
-                raf.read(data);
-                return data;
-            } else {
-                throw new IllegalArgumentException("Invalid block index");
-            }
-        } catch (IOException e) {
-            throw new RuntimeException(e);
+    public int[] getChain(int startBlockIndex, int maxBlocks) {
+        int[] chain = new int[16];
+        int length = 0;
+        maxBlocks = Math.min(maxBlocks, diskSize); // 防止损坏的FAT链成环
+        for (int cur = startBlockIndex; isDataBlock(cur) && length < maxBlocks; cur = FAT[cur]) {
+            if (length == chain.length) chain = Arrays.copyOf(chain, length * 2);
+            chain[length++] = cur;
         }
+        return Arrays.copyOf(chain, length);
     }
 
     /**
@@ -210,13 +2048,9 @@ public class DiskManager {
      * @param index 文件分配表的索引
      * @param value 要设置的值
      */
-    public void setFatEntry(int index, byte value) {
-        byte[] FAT = readFAT();
-        if (index >= 0 && index < DISK_SIZE) {
-            FAT[index] = value;
-            writeFAT(FAT);
-            // 更新内存中的FAT
-            this.FAT = readFAT();
+    public void setFatEntry(int index, int value) {
+        if (index >= 0 && index < diskSize) {
+            putFatEntry(index, value);
         } else {
             throw new IllegalArgumentException("Invalid FAT index");
         }
@@ -228,10 +2062,9 @@ public class DiskManager {
      * @param index 文件分配表的索引
      * @return 文件分配表的条目值
      */
-    public byte getFatEntry(int index) {
-        byte[] FAT = this.FAT;
-        if (index >= 0 && index < DISK_SIZE) {
-            return FAT[index];
+    public int getFatEntry(int index) {
+        if (index >= 0 && index < diskSize) {
+            return this.FAT[index];
         } else {
             throw new IllegalArgumentException("Invalid FAT index");
         }
@@ -243,17 +2076,150 @@ public class DiskManager {
      * @return 分配的磁盘块索引，如果没有空闲块则返回-1
      */
     public int allocateBlock() {
-        byte[] FAT = readFAT();
-        for (int i = USER_AREA_START; i < DISK_SIZE; i++) { // 从用户区域开始查找
-            if (BlockStatus.FREE.isEqual(FAT[i])) {
-                FAT[i] = BlockStatus.END_OF_FILE.getValue(); // 标记为文件结束
-                writeFAT(FAT);
-                // 更新内存中的FAT
-                this.FAT = readFAT();
-                return i;
+        return allocateRun(1);
+    }
+
+    /**
+     * 在目标块附近分配一个新的磁盘块
+     *
+     * @param goal 目标块号，优先在它所在的分配组中分配
+     * @return 分配的磁盘块索引，如果没有空闲块则返回-1
+     */
+    public int allocateBlock(int goal) {
+        return allocateRun(1, goal);
+    }
+
+    /**
+     * 按分配策略分配一段连续的磁盘块，没有指定目标块，从当前线程对应的分配组开始，同时分配的线程分散在不同的组
+     *
+     * @param length 需要的连续块数
+     * @return 起始块号，如果没有足够长的连续空闲段则返回-1
+     */
+    public int allocateRun(int length) {
+        AllocationGroup[] groups = this.groups;
+        return allocateRun(length, groups[(int) (Thread.currentThread().getId() % groups.length)].getStart());
+    }
+
+    /**
+     * 按分配策略分配一段连续的磁盘块，段内的FAT条目依次相连，最后一块标记为文件结束
+     * 先在目标块所在的分配组中查找，没有空间时依次尝试后面的组，超过一个组的长度或各组都放不下时在整个用户区查找
+     *
+     * @param length 需要的连续块数
+     * @param goal   目标块号，用户区之前的块（根目录）属于第0组
+     * @return 起始块号，如果没有足够长的连续空闲段则返回-1
+     */
+    public int allocateRun(int length, int goal) {
+        if (length <= 0) {
+            throw new IllegalArgumentException("Invalid run length: " + length);
+        }
+        checkWritable();
+        // 不加锁：分配策略找到的位置用CAS在空闲块位图中占用，被其他线程抢先时重新查找
+        // 占用成功后这一段只属于当前线程，再依次写FAT条目把它们连成链
+        FreeBlockMap map = this.freeMap;
+        AllocationGroup[] groups = this.groups;
+        int start = -1;
+        if (length <= groups[0].getBlocks()) {
+            int first = map.groupOf(goal);
+            for (int i = 0; i < groups.length && start == -1; i++) {
+                start = groups[(first + i) % groups.length].allocate(length);
+                if (start == -1 && i == 0 && groups.length > 1) groups[first].spilled();
+            }
+        }
+        if (start == -1 && groups.length > 1) start = allocateAnywhere(map, length);
+        if (start == -1) return -1; // 空闲块不足
+        for (int i = start; i < start + length - 1; i++) {
+            putFatEntry(i, i + 1);
+        }
+        putFatEntry(start + length - 1, BlockStatus.END_OF_FILE.getValue()); // 标记为文件结束
+        return start;
+    }
+
+    // 在整个用户区按分配策略占用一段连续的空闲块，可以跨越分配组的边界
+    private int allocateAnywhere(FreeBlockMap map, int length) {
+        while (map.getFreeCount() >= length) {
+            int start = allocator.find(map, length);
+            if (start == -1) return -1;
+            if (!map.claim(start, length)) continue;
+            allocator.allocated(start, length);
+            return start;
+        }
+        return -1;
+    }
+
+    /**
+     * 为新目录选择目标块：从上次选择的下一个组开始，取第一个空闲块数不低于平均值的分配组的起始块，
+     * 各目录分散在不同的组中，它们下面的文件随目录放在各自的组里，同时在不同目录下写入的线程不会集中在同一个组
+     *
+     * @return 目标块号
+     */
+    public int pickDirectoryGoal() {
+        AllocationGroup[] groups = this.groups;
+        if (groups.length == 1) return userAreaStart;
+        int average = freeMap.getFreeCount() / groups.length;
+        int first = Math.floorMod(directoryGroupCursor.getAndIncrement(), groups.length);
+        for (int i = 0; i < groups.length; i++) {
+            AllocationGroup group = groups[(first + i) % groups.length];
+            if (group.getFreeCount() >= average) return group.getStart();
+        }
+        return groups[first].getStart();
+    }
+
+    /**
+     * 获取分配组数
+     *
+     * @return 分配组数，不分组时为1
+     */
+    public int getAllocationGroupCount() {
+        return groups.length;
+    }
+
+    /**
+     * 统计各分配组的使用情况
+     *
+     * @return 按组号排列
+     */
+    public List<AllocationGroupInfo> getAllocationGroups() {
+        List<AllocationGroupInfo> infos = new ArrayList<>();
+        for (AllocationGroup group : groups) {
+            infos.add(new AllocationGroupInfo(group.getIndex(), group.getStart(), group.getBlocks(),
+                    group.getFreeCount(), group.getAllocations(), group.getContended(), group.getSpills()));
+        }
+        return infos;
+    }
+
+    /**
+     * 获取分配策略
+     *
+     * @return 分配策略
+     */
+    public AllocationPolicy getAllocationPolicy() {
+        return allocationPolicy;
+    }
+
+    /**
+     * 统计当前的碎片情况：空闲段的数量和长度，以及FAT链中不连续的链接数
+     *
+     * @return 碎片报告
+     */
+    public FragmentationReport getFragmentationReport() {
+        int freeExtents = 0;
+        int largestFreeExtent = 0;
+        for (int free = freeMap.nextFree(userAreaStart, diskSize); free != -1; ) {
+            int used = freeMap.nextUsed(free, diskSize);
+            freeExtents++;
+            largestFreeExtent = Math.max(largestFreeExtent, used - free);
+            free = freeMap.nextFree(used, diskSize);
+        }
+        int links = 0;
+        int brokenLinks = 0;
+        for (int i = userAreaStart; i < diskSize; i++) {
+            int next = FAT[i];
+            if (next >= userAreaStart && next < diskSize) {
+                links++;
+                if (next != i + 1) brokenLinks++;
             }
         }
-        return -1; // 没有空闲块
+        return new FragmentationReport(freeMap.getFreeCount(), freeExtents, largestFreeExtent, links, brokenLinks);
     }
 
     /**
@@ -262,17 +2228,31 @@ public class DiskManager {
      * @param blockIndex 要回收的磁盘块索引
      */
     public void deallocateBlock(int blockIndex) throws IOException {
-        byte[] FAT = readFAT();
-        if (blockIndex >= USER_AREA_START && blockIndex < DISK_SIZE) { // 系统区域块不回收
-            FAT[blockIndex] = BlockStatus.FREE.getValue();
-            writeFAT(FAT);
-            // 更新内存中的FAT
-            this.FAT = readFAT();
+        if (blockIndex >= userAreaStart && blockIndex < diskSize) { // 系统区域块不回收
+            putFatEntry(blockIndex, BlockStatus.FREE.getValue());
         } else {
             throw new IllegalArgumentException("Invalid block index for deallocation");
         }
     }
 
+    /**
+     * 回收从指定块开始的整条FAT链，所有条目一次性在内存中置为空闲，在下一个同步点统一写回
+     *
+     * @param startBlockIndex 链的起始块号
+     * @return 回收的磁盘块数
+     */
+    public int freeChain(int startBlockIndex) {
+        int count = 0;
+        int blockIndex = startBlockIndex;
+        while (blockIndex >= userAreaStart && blockIndex < diskSize) { // 遇到文件结束或非法值时停止
+            int next = FAT[blockIndex];
+            putFatEntry(blockIndex, BlockStatus.FREE.getValue());
+            blockIndex = next;
+            count++;
+        }
+        return count;
+    }
+
     /**
      * 检查磁盘块是否空闲
      *
@@ -280,8 +2260,10 @@ public class DiskManager {
      * @return 如果磁盘块空闲返回true，否则返回false
      */
     public boolean isBlockFree(int blockIndex) {
-        byte[] FAT = this.FAT;
-        return BlockStatus.EMPTY_ENTRY.isEqual(FAT[blockIndex]);
+        if (blockIndex < 0 || blockIndex >= diskSize) {
+            throw new IllegalArgumentException("Invalid block index");
+        }
+        return freeMap.isFree(blockIndex);
     }
 
     /**
@@ -291,8 +2273,10 @@ public class DiskManager {
      * @return 如果磁盘块是坏块返回true，否则返回false
      */
     public boolean isBlockBad(int blockIndex) {
-        byte[] FAT = this.FAT;
-        return BlockStatus.BAD_BLOCK.isEqual(FAT[blockIndex]);
+        if (BlockStatus.BAD_BLOCK.isEqual(getFatEntry(blockIndex))) return true;
+        synchronized (corruptBlocks) {
+            return corruptBlocks.get(blockIndex);
+        }
     }
 
     /**
@@ -302,9 +2286,9 @@ public class DiskManager {
      * @return 如果磁盘块已被分配返回true，否则返回false
      */
     public boolean isBlockAllocated(int blockIndex) {
-        byte[] FAT = this.FAT;
-        return !BlockStatus.FREE.isEqual(FAT[blockIndex])
-                && !BlockStatus.BAD_BLOCK.isEqual(FAT[blockIndex]);
+        int status = getFatEntry(blockIndex);
+        return !BlockStatus.FREE.isEqual(status)
+                && !BlockStatus.BAD_BLOCK.isEqual(status);
     }
 
     /**
@@ -314,49 +2298,243 @@ public class DiskManager {
         Random rand = new Random();
         int blockIndex;
 
+        // 所有块都已使用时不再损坏
+        if (freeMap.getFreeCount() == 0) {
+            return;
+        }
+
         // 确保只损坏用户区域的完整磁盘块
         do {
-            blockIndex = rand.nextInt(DISK_SIZE - USER_AREA_START) + USER_AREA_START;
+            blockIndex = rand.nextInt(diskSize - userAreaStart) + userAreaStart;
             System.out.println("blockIndex:" + blockIndex);
+        } while (isBlockBad(blockIndex)); // 如果已经是坏块，则重新选择
 
-            try (FileInputStream fis = new FileInputStream(diskFile)) {
-                int cnt = 0;
-                for (int i = 0; i < DISK_SIZE; i++) {
-                    int read = fis.read();
-                    if(read!=0){
-                        cnt++;
-                    }
-                }
-
-                if(cnt == DISK_SIZE){
-                    return;
-                }
-            } catch (Exception e) {
-                e.printStackTrace();
+        if (checksums != null) {
+            // 有校验和时模拟介质损坏：绕过校验和直接改写设备上的内容，由读取时的校验发现坏块
+            checkWritable();
+            copyOnWrite(blockIndex);
+            try {
+                device.write((long) blockIndex * blockSize, ByteBuffer.wrap(new byte[blockSize]));
+            } catch (IOException e) {
+                throw new RuntimeException(e);
             }
-
-        } while (isBlockBad(blockIndex)); // 如果已经是坏块，则重新选择
+            synchronized (pendingMetadata) {
+                pendingMetadata.remove(blockIndex);
+                if (blockCache != null) blockCache.invalidate(blockIndex);
+            }
+            if (checksums[blockIndex] == 0) {
+                // 从未写过的块没有校验和，按原来的方式标记为坏块
+                setFatEntry(blockIndex, BlockStatus.BAD_BLOCK.getValue());
+            }
+            return;
+        }
 
         // 将选中的磁盘块标记为坏块
         setFatEntry(blockIndex, BlockStatus.BAD_BLOCK.getValue());
 
         // 模拟磁盘块数据损坏，corruptedData里都是0
-        byte[] corruptedData = new byte[BLOCK_SIZE];
+        byte[] corruptedData = new byte[blockSize];
         // 模拟填充损坏数据，简单地用0填充
         writeBlock(blockIndex, corruptedData);
     }
 
     /**
      * 修复所有损坏的非系统区磁盘块
+     * 被文件引用的坏块先搬迁到新块，文件的FAT链不再经过它，再把坏块恢复为空闲
+     * 调用方需要保证期间没有其他文件操作（FileSystem.fixDisk）；每个坏块处理完就到达同步点，搬迁一块的修改是一个事务
      */
     public void fixDisk() {
-        for (int i = USER_AREA_START; i < DISK_SIZE; i++) {
+        if (checksums != null) {
+            // 巡检所有已分配且记录过校验和的块
+            for (int i = userAreaStart; i < diskSize; i++) {
+                if (isBlockAllocated(i) && checksums[i] != 0) verifyBlock(i);
+            }
+        }
+        for (int i = userAreaStart; i < diskSize; i++) {
             // 检查磁盘块是否为坏块
             if (isBlockBad(i)) {
-                // 将坏块标记为空闲状态
-                setFatEntry(i, BlockStatus.FREE.getValue());
+                RelocationResult result = relocateBlock(i);
+                if (result == RelocationResult.RETIRED || result == RelocationResult.RELOCATED) {
+                    // 将坏块标记为空闲状态
+                    setFatEntry(i, BlockStatus.FREE.getValue());
+                }
+                flush();
+            }
+        }
+    }
+
+    /**
+     * 启动后台巡检，已经在运行时直接返回
+     *
+     * @param blocksPerSecond 每秒最多读取的块数
+     * @param relocator       搬迁坏块的操作，需要和文件操作互斥并提交修改，例如FileSystem::relocateBlock
+     * @return 巡检
+     */
+    public synchronized Scrubber startScrubber(int blocksPerSecond, IntFunction<RelocationResult> relocator) {
+        checkWritable();
+        if (scrubber != null && scrubber.isRunning()) return scrubber;
+        scrubber = new Scrubber(this, blocksPerSecond, relocator);
+        scrubber.start();
+        return scrubber;
+    }
+
+    /**
+     * 停止后台巡检
+     */
+    public void stopScrubber() {
+        Scrubber current;
+        synchronized (this) {
+            current = scrubber;
+        }
+        if (current != null) current.stop();
+    }
+
+    /**
+     * 获取后台巡检，可用于查看进度和发现的坏块
+     *
+     * @return 巡检，从未启动时为null
+     */
+    public synchronized Scrubber getScrubber() {
+        return scrubber;
+    }
+
+    /**
+     * 设置打开文件的判断，搬迁坏块时跳过正在打开的文件，避免打开文件表中的块号失效
+     *
+     * @param openFileCheck 参数为文件的起始盘块号，返回true表示文件正在打开
+     */
+    public void setOpenFileCheck(IntPredicate openFileCheck) {
+        this.openFileCheck = openFileCheck;
+    }
+
+    /**
+     * 搬迁一个坏块：能读出的内容复制到新分配的块，接回原来的FAT链或登记项，坏块在FAT中标记为坏块停用
+     * 会修改FAT、目录块和登记项的起始盘块号，调用方需要保证期间没有其他文件操作（FileSystem.relocateBlock）；修改在下一个同步点写回
+     * 旧的坏块标记已经覆盖了FAT中的下一块块号，这种块搬迁后链在新块处结束
+     *
+     * @param index 坏块号
+     * @return 搬迁结果
+     */
+    public RelocationResult relocateBlock(int index) {
+        checkWritable();
+        if (index < userAreaStart || index >= diskSize) {
+            throw new IllegalArgumentException("Invalid block index");
+        }
+        int next = FAT[index];
+        boolean marked = BlockStatus.BAD_BLOCK.isEqual(next);
+        if (!marked && checkBlock(index)) {
+            synchronized (corruptBlocks) {
+                corruptBlocks.clear(index);
+            }
+            return RelocationResult.FALSE_ALARM;
+        }
+        synchronized (snapshots) {
+            if (snapshots.isOwned(index)) return RelocationResult.FAILED; // 快照副本的位置记录在快照表中，不能搬迁
+        }
+        BlockOwner owner = findOwner(index);
+        if (owner == null) {
+            retireBlock(index);
+            return RelocationResult.RETIRED;
+        }
+        if (openFileCheck.test(owner.start)) return RelocationResult.BUSY;
+        int fresh = allocateBlock(index);
+        if (fresh == -1) return RelocationResult.FAILED;
+        byte[] data = readUnverified(index);
+        if (owner.directory) {
+            writeMetadataBlock(fresh, data);
+        } else {
+            writeBlock(fresh, data);
+        }
+        putFatEntry(fresh, marked ? BlockStatus.END_OF_FILE.getValue() : next);
+        if (owner.previous != -1) {
+            putFatEntry(owner.previous, fresh);
+        } else {
+            byte[] dir = readUnverified(owner.entryBlock);
+            ByteBuffer.wrap(dir).putInt(owner.entryOffset + EntryStructure.START_NUM_POS.getValue(), fresh);
+            writeMetadataBlock(owner.entryBlock, dir);
+        }
+        retireBlock(index);
+        return RelocationResult.RELOCATED;
+    }
+
+    // 在FAT中把块标记为坏块，不再分配；暂存和缓存的内容作废
+    private void retireBlock(int index) {
+        putFatEntry(index, BlockStatus.BAD_BLOCK.getValue());
+        synchronized (pendingMetadata) {
+            pendingMetadata.remove(index);
+            if (blockCache != null) blockCache.invalidate(index);
+        }
+        synchronized (corruptBlocks) {
+            corruptBlocks.clear(index); // 之后由FAT中的坏块标记表示
+        }
+    }
+
+    // 引用一个块的位置
+    private static class BlockOwner {
+        int start; // 所在文件或目录的起始盘块号
+        int previous = -1; // 链上的前一块，是链首时为-1
+        int entryBlock; // 链首登记项所在的目录块
+        int entryOffset; // 链首登记项在目录块中的偏移
+        boolean directory; // 是否为目录块
+    }
+
+    /**
+     * 从根目录开始遍历目录树，查找经过指定块的FAT链
+     *
+     * @return 引用位置，没有文件或目录引用时返回null
+     */
+    private BlockOwner findOwner(int index) {
+        BitSet visited = new BitSet(diskSize); // 防止损坏的目录树成环
+        ArrayDeque<int[]> dirs = new ArrayDeque<>(); // 待遍历的目录：起始盘块号、登记项所在块、登记项偏移
+        dirs.push(new int[]{ROOT_DIR_POS, -1, 0});
+        int entryLength = EntryStructure.ENTRY_LENGTH.getValue();
+        while (!dirs.isEmpty()) {
+            int[] dir = dirs.pop();
+            int[] dirChain = getChain(dir[0], Integer.MAX_VALUE);
+            for (int k = 0; k < dirChain.length; k++) {
+                int block = dirChain[k];
+                if (block == index) return newOwner(dir, k > 0 ? dirChain[k - 1] : -1, true);
+                if (visited.get(block)) break;
+                visited.set(block);
+                ByteBuffer data = ByteBuffer.wrap(readUnverified(block));
+                for (int offset = 0; offset + entryLength <= blockSize; offset += entryLength) {
+                    if (data.get(offset) == BlockStatus.EMPTY_ENTRY.getValue()) continue;
+                    int start = data.getInt(offset + EntryStructure.START_NUM_POS.getValue());
+                    if (start < userAreaStart || start >= diskSize) continue;
+                    int[] entry = {start, block, offset};
+                    if (EntryAttribute.DIRECTORY.isEqual(data.get(offset + EntryStructure.ATTRIBUTE_POS.getValue()))) {
+                        dirs.push(entry);
+                        continue;
+                    }
+                    int[] chain = getChain(start, Integer.MAX_VALUE);
+                    for (int j = 0; j < chain.length; j++) {
+                        if (chain[j] == index) return newOwner(entry, j > 0 ? chain[j - 1] : -1, false);
+                    }
+                }
             }
         }
+        return null;
+    }
+
+    private static BlockOwner newOwner(int[] entry, int previous, boolean directory) {
+        BlockOwner owner = new BlockOwner();
+        owner.start = entry[0];
+        owner.previous = previous;
+        owner.entryBlock = entry[1];
+        owner.entryOffset = entry[2];
+        owner.directory = directory;
+        return owner;
+    }
+
+    // 读取一块的当前内容，不做校验：暂存的目录块返回暂存内容，否则直接读设备，读取失败时返回全0
+    private byte[] readUnverified(int index) {
+        byte[] image = pendingImage(index);
+        if (image != null) return image.clone();
+        try {
+            return readRawBlock(index);
+        } catch (RuntimeException e) {
+            return new byte[blockSize];
+        }
     }
 
     /**
@@ -365,12 +2543,11 @@ public class DiskManager {
      * @param newBlockIndex 新的磁盘块索引
      */
     public void initDirBlock(int newBlockIndex) {
-        byte[] data = new byte[BLOCK_SIZE];
-        Arrays.fill(data, (byte) 0);
-        for (int i = 0; i < BLOCK_SIZE; i += 8) {
+        byte[] data = new byte[blockSize];
+        for (int i = 0; i < blockSize; i += EntryStructure.ENTRY_LENGTH.getValue()) {
             data[i] = BlockStatus.EMPTY_ENTRY.getValue();
         }
-        writeBlock(newBlockIndex, data);
+        writeMetadataBlock(newBlockIndex, data);
     }
 
     /**
@@ -379,8 +2556,7 @@ public class DiskManager {
      * @param newBlockIndex 新的磁盘块索引
      */
     public void initBlock(int newBlockIndex) {
-        byte[] data = new byte[BLOCK_SIZE];
-        Arrays.fill(data, (byte) 0);
+        byte[] data = new byte[blockSize];
         writeBlock(newBlockIndex, data);
     }
 
@@ -389,7 +2565,7 @@ public class DiskManager {
      *
      * @return FAT
      */
-    public byte[] getFAT() {
+    public int[] getFAT() {
         return FAT;
     }
 
@@ -0,0 +1,25 @@
+package application.Manager;
+
+/**
+ * 首次适应：从用户区开头依次检查每个空闲段，返回第一个足够长的
+ */
+class FirstFitStrategy implements AllocationStrategy {
+
+    @Override
+    public int find(FreeBlockMap map, int length) {
+        return findIn(map, map.getStart(), map.getEnd(), length);
+    }
+
+    /**
+     * 查找第一个起点在[from, to)范围内、长度不小于length的空闲段，空闲段本身可以延伸到to之后
+     */
+    static int findIn(FreeBlockMap map, int from, int to, int length) {
+        int free = map.nextFree(from, to);
+        while (free != -1) {
+            int used = map.nextUsed(free, Math.min(map.getEnd(), free + length));
+            if (used - free >= length) return free;
+            free = map.nextFree(used, to);
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,206 @@
+package application.Manager;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 空闲块位图，每位对应一个磁盘块，置位表示空闲；只覆盖用户区[start, end)，并维护空闲块数
+ * 位图按64位字用CAS修改，多个线程同时分配和回收不需要加锁：分配策略查找到的位置只是候选，
+ * claim()把这一段从空闲改为已使用，其中有块已被其他线程抢先占用时撤销已改的部分并返回false，由调用方重新查找
+ * 用户区可以按固定块数划分为分配组，group()得到一个组范围内的视图，与整个位图共用位，空闲块数按组单独统计，
+ * 分配策略在视图上查找时只看本组的块
+ */
+class FreeBlockMap {
+    private final AtomicLongArray bits; // 位图，按64位字存放，分组视图与整个位图共用
+    private final int start; // 范围起始块号，整个位图为用户区起始块号
+    private final int end; // 范围结束块号（不含），整个位图为磁盘块数
+    private final AtomicInteger freeCount = new AtomicInteger(); // 范围内的空闲块数
+    private final FreeBlockMap root; // 分组视图所属的整个位图，整个位图为自己
+    private final int groupBlocks; // 每个分配组的块数
+    private final FreeBlockMap[] groups; // 分组视图，只有整个位图记录；不分组时只有自己
+
+    /**
+     * @param start       用户区起始块号
+     * @param end         磁盘块数
+     * @param groupBlocks 每个分配组的块数，不大于0时不分组
+     */
+    FreeBlockMap(int start, int end, int groupBlocks) {
+        this.bits = new AtomicLongArray((end + 63) >>> 6);
+        this.start = start;
+        this.end = end;
+        this.root = this;
+        this.groupBlocks = groupBlocks > 0 && groupBlocks < end - start ? groupBlocks : Math.max(1, end - start);
+        this.groups = new FreeBlockMap[Math.max(1, (end - start + this.groupBlocks - 1) / this.groupBlocks)];
+        if (groups.length == 1) {
+            groups[0] = this;
+        } else {
+            for (int g = 0; g < groups.length; g++) {
+                int from = start + g * this.groupBlocks;
+                groups[g] = new FreeBlockMap(this, from, Math.min(end, from + this.groupBlocks));
+            }
+        }
+    }
+
+    // 分组视图
+    private FreeBlockMap(FreeBlockMap root, int start, int end) {
+        this.bits = root.bits;
+        this.start = start;
+        this.end = end;
+        this.root = root;
+        this.groupBlocks = root.groupBlocks;
+        this.groups = null;
+    }
+
+    /**
+     * 分配组数，不分组时为1
+     */
+    int getGroupCount() {
+        return root.groups.length;
+    }
+
+    /**
+     * 第g个分配组的视图，不分组时是整个位图
+     */
+    FreeBlockMap group(int g) {
+        return root.groups[g];
+    }
+
+    /**
+     * 块所在的分配组，用户区之前的块（根目录等）算第0组
+     */
+    int groupOf(int index) {
+        if (index < root.start) return 0;
+        return Math.min(root.groups.length - 1, (index - root.start) / groupBlocks);
+    }
+
+    int getStart() {
+        return start;
+    }
+
+    int getEnd() {
+        return end;
+    }
+
+    int getFreeCount() {
+        return freeCount.get();
+    }
+
+    boolean isFree(int index) {
+        return (bits.get(index >>> 6) & (1L << index)) != 0;
+    }
+
+    /**
+     * 修改一个块的空闲状态，用户区以外的块忽略
+     *
+     * @param index 磁盘块号
+     * @param free  是否空闲
+     */
+    void setFree(int index, boolean free) {
+        if (index < start || index >= end) return;
+        int word = index >>> 6;
+        long mask = 1L << index;
+        while (true) {
+            long w = bits.get(word);
+            if (((w & mask) != 0) == free) return;
+            if (bits.compareAndSet(word, w, w ^ mask)) break;
+        }
+        root.count(index, index + 1, free ? 1 : -1);
+    }
+
+    // 修改[from, to)所在的整个位图和各分配组的空闲块数
+    private void count(int from, int to, int delta) {
+        freeCount.addAndGet(delta * (to - from));
+        if (groups.length == 1) return;
+        for (int i = from; i < to; ) {
+            FreeBlockMap group = groups[groupOf(i)];
+            int next = Math.min(to, group.end);
+            group.freeCount.addAndGet(delta * (next - i));
+            i = next;
+        }
+    }
+
+    /**
+     * 把[from, from + length)从空闲改为已使用，同一个64位字中的块一次CAS修改
+     *
+     * @return 是否占用成功；其中有已使用的块时不做任何修改，返回false
+     */
+    boolean claim(int from, int length) {
+        if (from < start || from + length > end) return false;
+        int to = from + length;
+        for (int i = from; i < to; ) {
+            int word = i >>> 6;
+            int next = Math.min(to, (word + 1) << 6);
+            long mask = rangeMask(i, next);
+            while (true) {
+                long w = bits.get(word);
+                if ((w & mask) != mask) { // 已被其他线程占用，撤销前面已改的字
+                    release(from, i);
+                    return false;
+                }
+                if (bits.compareAndSet(word, w, w & ~mask)) break;
+            }
+            i = next;
+        }
+        root.count(from, to, -1);
+        return true;
+    }
+
+    // 把claim()中已改为已使用的[from, to)恢复为空闲
+    private void release(int from, int to) {
+        for (int i = from; i < to; ) {
+            int word = i >>> 6;
+            int next = Math.min(to, (word + 1) << 6);
+            long mask = rangeMask(i, next);
+            bits.accumulateAndGet(word, mask, (w, m) -> w | m);
+            i = next;
+        }
+    }
+
+    // 同一个字中[from, to)对应的位，to可以是下一个字的开头
+    private static long rangeMask(int from, int to) {
+        long high = (to & 63) == 0 ? -1L : (1L << to) - 1;
+        return (-1L << from) & high;
+    }
+
+    /**
+     * 在[from, to)范围内按64位字查找第一个空闲块
+     *
+     * @return 空闲块号，没有则返回-1
+     */
+    int nextFree(int from, int to) {
+        return next(from, to, 0L);
+    }
+
+    /**
+     * 在[from, to)范围内按64位字查找第一个已使用块
+     *
+     * @return 已使用块号，没有则返回to
+     */
+    int nextUsed(int from, int to) {
+        int index = next(from, to, -1L);
+        return index == -1 ? to : index;
+    }
+
+    // flip为0时查找置位，为-1时查找清零位
+    private int next(int from, int to, long flip) {
+        if (from >= to) return -1;
+        int word = from >>> 6;
+        int lastWord = (to - 1) >>> 6;
+        long w = (bits.get(word) ^ flip) & (-1L << from);
+        while (true) {
+            if (w != 0) {
+                int index = (word << 6) + Long.numberOfTrailingZeros(w);
+                return index < to ? index : -1;
+            }
+            if (++word > lastWord) return -1;
+            w = bits.get(word) ^ flip;
+        }
+    }
+
+    /**
+     * 检查[from, from + length)是否全部空闲
+     */
+    boolean isRunFree(int from, int length) {
+        return from + length <= end && nextUsed(from, from + length) == from + length;
+    }
+}
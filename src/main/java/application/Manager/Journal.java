@@ -0,0 +1,377 @@
+package application.Manager;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+
+/**
+ * 元数据预写日志，位于FAT之后、用户区之前的一段连续磁盘块
+ * 第一块是日志头，记录魔数和本轮日志中第一个事务的序号；之后依次追加事务记录，
+ * 每条记录是描述块（魔数、序号、块数、CRC32和各块的目标块号，块号多时占多块）加上各元数据块的新内容
+ * 记录刷盘后才把新内容写回原位置；CRC32覆盖整条记录，写了一半的记录在重放时被丢弃，所以每个事务只需要一次刷盘
+ * 不刷盘的提交只追加记录，原位置在下一次刷盘的提交或检查点时写回，在此之前读取由getUnapplied()返回新内容
+ * 多个线程同时提交时只有一个线程刷盘，刷盘期间追加的事务由下一次刷盘一起完成（组提交）
+ * 日志写满或卸载时做检查点：原位置全部刷盘后重写日志头，清空日志
+ */
+public class Journal {
+    private static final int HEADER_MAGIC = 0x4A524E4C; // 日志头魔数"JRNL"
+    private static final int RECORD_MAGIC = 0x4A545843; // 事务记录魔数"JTXC"
+    private static final int DESCRIPTOR_HEADER = 20; // 描述块固定部分：魔数、序号、块数、CRC32
+    private static final int CRC_POS = 16; // CRC32在描述块中的偏移
+
+    private final BlockDevice device; // 磁盘设备
+    private final int start; // 日志区起始块号（日志头）
+    private final int length; // 日志区块数，包括日志头
+    private final int blockSize; // 磁盘块大小
+    private final int diskSize; // 磁盘块数，重放时检查目标块号
+
+    private long nextSequence = 1; // 下一个事务的序号
+    private int head = 1; // 下一条记录在日志区中的块偏移
+    private final ArrayDeque<Record> unapplied = new ArrayDeque<>(); // 已追加、尚未写回原位置的事务，按序号排列
+    private final ConcurrentHashMap<Integer, byte[]> unappliedImages = new ConcurrentHashMap<>(); // 尚未写回原位置的块的最新内容
+    private final AtomicLong durableSequence = new AtomicLong(); // 已刷盘的最大事务序号
+    private final Object syncLock = new Object(); // 刷盘锁，同一时间只有一个线程等待刷盘
+
+    private long transactions; // 已提交事务数
+    private long blocksLogged; // 写入日志的元数据块数
+    private final AtomicLong fsyncs = new AtomicLong(); // 提交时的刷盘次数
+    private final AtomicLong grouped = new AtomicLong(); // 搭其他线程刷盘完成、自己不用刷盘的提交数
+    private long checkpoints; // 检查点次数
+    private int replayed; // 挂载时重放的事务数
+
+    // 一个已追加的事务
+    private static class Record {
+        final long sequence;
+        final int[] targets;
+        final byte[][] images;
+
+        Record(long sequence, int[] targets, byte[][] images) {
+            this.sequence = sequence;
+            this.targets = targets;
+            this.images = images;
+        }
+    }
+
+    /**
+     * @param device    磁盘设备
+     * @param start     日志区起始块号
+     * @param length    日志区块数，至少2块
+     * @param blockSize 磁盘块大小
+     * @param diskSize  磁盘块数
+     */
+    Journal(BlockDevice device, int start, int length, int blockSize, int diskSize) {
+        if (length < 2) {
+            throw new IllegalArgumentException("Journal needs at least 2 blocks");
+        }
+        this.device = device;
+        this.start = start;
+        this.length = length;
+        this.blockSize = blockSize;
+        this.diskSize = diskSize;
+    }
+
+    /**
+     * 挂载时重放日志：从日志头记录的序号开始，按顺序把校验通过的事务写回原位置，遇到第一条无效记录停止
+     * 重放后做检查点清空日志；日志头无效（新格式化的磁盘）时直接初始化
+     *
+     * @return 重放的事务数
+     */
+    synchronized int recover() throws IOException {
+        ByteBuffer block = ByteBuffer.allocate(blockSize);
+        device.read((long) start * blockSize, block);
+        if (block.getInt(0) == HEADER_MAGIC) {
+            long sequence = block.getLong(4);
+            int position = 1;
+            Record record;
+            while ((record = readRecord(position, sequence)) != null) {
+                writeHome(record);
+                position += descriptorBlocks(record.targets.length) + record.targets.length;
+                sequence++;
+                replayed++;
+            }
+            nextSequence = sequence;
+        }
+        durableSequence.set(nextSequence - 1);
+        head = 1;
+        if (replayed > 0) device.force(false);
+        writeHeader();
+        return replayed;
+    }
+
+    /**
+     * 读取并校验日志区中指定位置的事务记录
+     *
+     * @param position 记录在日志区中的块偏移
+     * @param sequence 期望的事务序号
+     * @return 有效的记录，无效时返回null
+     */
+    private Record readRecord(int position, long sequence) throws IOException {
+        if (position >= length) return null;
+        ByteBuffer first = ByteBuffer.allocate(blockSize);
+        device.read((long) (start + position) * blockSize, first);
+        int count = first.getInt(12);
+        if (first.getInt(0) != RECORD_MAGIC || first.getLong(4) != sequence || count <= 0
+                || count > (length - position) * (long) blockSize) {
+            return null;
+        }
+        int blocks = descriptorBlocks(count) + count;
+        if (position + blocks > length) return null;
+        ByteBuffer record = ByteBuffer.allocate(blocks * blockSize);
+        device.read((long) (start + position) * blockSize, record);
+        int crc = record.getInt(CRC_POS);
+        record.putInt(CRC_POS, 0);
+        if (checksum(record) != crc) return null;
+
+        int[] targets = new int[count];
+        byte[][] images = new byte[count][blockSize];
+        int dataPos = descriptorBlocks(count) * blockSize;
+        for (int i = 0; i < count; i++) {
+            targets[i] = record.getInt(DESCRIPTOR_HEADER + i * 4);
+            if (targets[i] < 0 || targets[i] >= diskSize || targets[i] >= start && targets[i] < start + length) {
+                return null;
+            }
+            record.position(dataPos + i * blockSize);
+            record.get(images[i]);
+        }
+        return new Record(sequence, targets, images);
+    }
+
+    /**
+     * 提交一个事务：追加到日志，等待刷盘，再写回原位置（不刷盘）
+     * 返回后事务已经持久，即使原位置的写入还在操作系统缓存中，崩溃后也会由重放补上
+     *
+     * @param targets 元数据块号
+     * @param images  对应块的完整新内容，提交期间不能修改
+     */
+    void commit(int[] targets, byte[][] images) throws IOException {
+        long sequence = append(targets, images);
+        awaitDurable(sequence);
+        applyDurable();
+    }
+
+    /**
+     * 提交一个事务但不刷盘：只追加到日志，原位置留到下一次刷盘的提交或检查点时写回
+     * 修改已经交给操作系统，进程被终止不会丢失；掉电时上次刷盘之后的事务可能丢失，挂载时只重放日志中完整的记录，
+     * 原位置不会出现没有刷盘的记录中的内容
+     *
+     * @param targets 元数据块号
+     * @param images  对应块的完整新内容，提交期间不能修改
+     */
+    void commitUnforced(int[] targets, byte[][] images) throws IOException {
+        append(targets, images);
+    }
+
+    /**
+     * 等待此前追加的所有事务持久化并写回原位置，用于没有新修改的同步点
+     */
+    void commitPending() throws IOException {
+        long sequence;
+        synchronized (this) {
+            sequence = nextSequence - 1;
+        }
+        awaitDurable(sequence);
+        applyDurable();
+    }
+
+    /**
+     * 把事务记录追加到日志，日志剩余空间不够时先做检查点
+     *
+     * @return 事务序号
+     * @throws IllegalStateException 事务超过整个日志容量，无法原子提交
+     */
+    private synchronized long append(int[] targets, byte[][] images) throws IOException {
+        int count = targets.length;
+        int blocks = descriptorBlocks(count) + count;
+        if (!fits(count)) {
+            throw new IllegalStateException("Transaction of " + count + " blocks exceeds journal of " + length + " blocks");
+        }
+        if (head + blocks > length) {
+            checkpoint();
+        }
+
+        long sequence = nextSequence++;
+        ByteBuffer buffer = ByteBuffer.allocate(blocks * blockSize);
+        buffer.putInt(RECORD_MAGIC).putLong(sequence).putInt(count).putInt(0);
+        for (int target : targets) buffer.putInt(target);
+        buffer.position(descriptorBlocks(count) * blockSize);
+        for (byte[] image : images) buffer.put(image, 0, blockSize);
+        buffer.putInt(CRC_POS, checksum(buffer));
+        buffer.clear();
+        device.write((long) (start + head) * blockSize, buffer);
+
+        head += blocks;
+        unapplied.addLast(new Record(sequence, targets, images));
+        for (int i = 0; i < count; i++) unappliedImages.put(targets[i], images[i]);
+        transactions++;
+        blocksLogged += count;
+        return sequence;
+    }
+
+    /**
+     * 等待指定序号的事务刷盘；正在刷盘的线程完成后，排队的线程发现自己的事务已被覆盖就直接返回
+     */
+    private void awaitDurable(long sequence) throws IOException {
+        if (durableSequence.get() >= sequence) return;
+        synchronized (syncLock) {
+            if (durableSequence.get() >= sequence) {
+                grouped.incrementAndGet();
+                return;
+            }
+            long target;
+            synchronized (this) {
+                target = nextSequence - 1;
+            }
+            device.force(false);
+            fsyncs.incrementAndGet();
+            durableSequence.accumulateAndGet(target, Math::max);
+        }
+    }
+
+    /**
+     * 按序号顺序把已刷盘的事务写回原位置，保证同一块的新内容不会被旧内容覆盖
+     */
+    private synchronized void applyDurable() throws IOException {
+        long durable = durableSequence.get();
+        while (!unapplied.isEmpty() && unapplied.peekFirst().sequence <= durable) {
+            writeHome(unapplied.pollFirst());
+        }
+    }
+
+    /**
+     * 检查点：日志中的事务全部写回原位置并刷盘后，重写日志头清空日志
+     */
+    synchronized void checkpoint() throws IOException {
+        device.force(false);
+        durableSequence.accumulateAndGet(nextSequence - 1, Math::max);
+        while (!unapplied.isEmpty()) {
+            writeHome(unapplied.pollFirst());
+        }
+        device.force(false);
+        head = 1;
+        writeHeader();
+        checkpoints++;
+    }
+
+    /**
+     * 格式化后重置日志，丢弃未写回的事务
+     */
+    synchronized void reset() throws IOException {
+        unapplied.clear();
+        unappliedImages.clear();
+        durableSequence.accumulateAndGet(nextSequence - 1, Math::max);
+        head = 1;
+        writeHeader();
+    }
+
+    // 写日志头并刷盘，本轮日志从nextSequence开始
+    private void writeHeader() throws IOException {
+        ByteBuffer block = ByteBuffer.allocate(blockSize);
+        block.putInt(HEADER_MAGIC).putLong(nextSequence);
+        block.clear();
+        device.write((long) start * blockSize, block);
+        device.force(false);
+    }
+
+    // 把事务中的各块写回原位置，之后读取这些块不再需要日志中的内容
+    private void writeHome(Record record) throws IOException {
+        for (int i = 0; i < record.targets.length; i++) {
+            device.write((long) record.targets[i] * blockSize, ByteBuffer.wrap(record.images[i], 0, blockSize));
+            unappliedImages.remove(record.targets[i], record.images[i]);
+        }
+    }
+
+    /**
+     * 块在日志中已提交、尚未写回原位置的最新内容
+     *
+     * @param index 磁盘块号
+     * @return 块的内容，不能修改；没有时返回null
+     */
+    byte[] getUnapplied(int index) {
+        return unappliedImages.isEmpty() ? null : unappliedImages.get(index);
+    }
+
+    /**
+     * 包含count个块的事务能否写入日志，超过整个日志容量的事务无法原子提交
+     */
+    boolean fits(int count) {
+        return lengthFor(count, blockSize) <= length;
+    }
+
+    /**
+     * 容纳一个包含count个块的事务所需的日志区块数，包括日志头
+     *
+     * @param count     事务中的块数
+     * @param blockSize 磁盘块大小
+     * @return 日志区块数
+     */
+    static int lengthFor(int count, int blockSize) {
+        return 1 + descriptorBlocks(count, blockSize) + count;
+    }
+
+    // 描述count个目标块号需要的描述块数
+    private int descriptorBlocks(int count) {
+        return descriptorBlocks(count, blockSize);
+    }
+
+    private static int descriptorBlocks(int count, int blockSize) {
+        return (DESCRIPTOR_HEADER + count * 4 + blockSize - 1) / blockSize;
+    }
+
+    // 计算缓冲区[0, limit)的CRC32
+    private static int checksum(ByteBuffer buffer) {
+        CRC32 crc = new CRC32();
+        crc.update(buffer.array(), 0, buffer.limit());
+        return (int) crc.getValue();
+    }
+
+    public int getStart() {
+        return start;
+    }
+
+    public int getLength() {
+        return length;
+    }
+
+    /**
+     * 日志区中已使用的块数，包括日志头
+     */
+    public synchronized int getUsedBlocks() {
+        return head;
+    }
+
+    public synchronized long getTransactions() {
+        return transactions;
+    }
+
+    public synchronized long getBlocksLogged() {
+        return blocksLogged;
+    }
+
+    public long getFsyncs() {
+        return fsyncs.get();
+    }
+
+    public long getGroupedCommits() {
+        return grouped.get();
+    }
+
+    public synchronized long getCheckpoints() {
+        return checkpoints;
+    }
+
+    /**
+     * 挂载时重放的事务数，大于0说明上次没有正常卸载
+     */
+    public synchronized int getReplayed() {
+        return replayed;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("journal %d blocks at %d, used=%d, transactions=%d, blocks=%d, fsyncs=%d, grouped=%d, checkpoints=%d, replayed=%d",
+                length, start, head, transactions, blocksLogged, fsyncs.get(), grouped.get(), checkpoints, replayed);
+    }
+}
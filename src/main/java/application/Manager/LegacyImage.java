@@ -0,0 +1,186 @@
+package application.Manager;
+
+import application.Enum.BlockStatus;
+import application.Enum.EntryAttribute;
+import application.Enum.EntryStructure;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * 旧格式磁盘文件（没有超级块）：固定128块、每块64字节，0、1号块是每个条目1字节的FAT，2号块是根目录，5号块起为用户区，
+ * 目录项8字节（文件名3字节、类型2字节、属性1字节、起始盘块号1字节、长度1字节）
+ * 挂载时把其中的目录树按新格式写入新格式化的磁盘：目录项换成新的长度，文件内容按新的块大小重新分块，'#'之后的内容丢弃
+ */
+final class LegacyImage {
+    static final int DISK_SIZE = 128; // 磁盘块数
+    static final int BLOCK_SIZE = 64; // 磁盘块大小
+    static final int ROOT_DIR_POS = 2; // 根目录块号
+    static final int USER_AREA_START = 5; // 用户区起始块号
+    static final int ENTRY_LENGTH = 8; // 目录项长度
+    private static final int START_POS = 6; // 起始盘块号位置
+
+    private final byte[] image; // 整个磁盘文件
+
+    private LegacyImage(byte[] image) {
+        this.image = image;
+    }
+
+    /**
+     * 读入旧格式磁盘文件并检查FAT
+     *
+     * @param diskFile 没有超级块的磁盘文件
+     * @return 旧格式磁盘，长度或FAT不符合旧格式时返回null
+     */
+    static LegacyImage read(File diskFile) {
+        byte[] image;
+        try {
+            if (diskFile.length() != (long) DISK_SIZE * BLOCK_SIZE) return null;
+            image = Files.readAllBytes(diskFile.toPath());
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        // 系统区的FAT条目在旧格式中都标记为文件结束，其余条目是空闲、结束、坏块或用户区块号
+        for (int i = 0; i < DISK_SIZE; i++) {
+            int next = image[i];
+            boolean valid = i < USER_AREA_START ? next == -1
+                    : next == 0 || next == -1 || next == -2 || next >= USER_AREA_START;
+            if (!valid) return null;
+        }
+        return new LegacyImage(image);
+    }
+
+    /**
+     * 把旧格式磁盘中的目录树写入新格式的磁盘，调用方负责之后的同步
+     *
+     * @param disk 新格式化的磁盘
+     * @return 导入的文件和目录数
+     */
+    int importInto(DiskManager disk) {
+        int perBlock = disk.getBlockSize() / EntryStructure.ENTRY_LENGTH.getValue();
+        List<byte[]> root = entries(ROOT_DIR_POS, new BitSet());
+        if (root.size() > perBlock) {
+            throw new IllegalStateException("根目录有" + root.size() + "个目录项，新磁盘的根目录只能容纳" + perBlock + "个");
+        }
+        BitSet visited = new BitSet();
+        visited.set(ROOT_DIR_POS);
+        return importDirectory(disk, new int[]{DiskManager.ROOT_DIR_POS}, root, visited);
+    }
+
+    // 依次导入目录中的登记项，dirBlocks是新目录已分配的块
+    private int importDirectory(DiskManager disk, int[] dirBlocks, List<byte[]> entries, BitSet visited) {
+        int blockSize = disk.getBlockSize();
+        int entryLength = EntryStructure.ENTRY_LENGTH.getValue();
+        int perBlock = blockSize / entryLength;
+        byte[][] images = new byte[dirBlocks.length][blockSize];
+        for (byte[] image : images) {
+            for (int i = 0; i < blockSize; i += entryLength) image[i] = BlockStatus.EMPTY_ENTRY.getValue();
+        }
+        int imported = 0;
+        for (int k = 0; k < entries.size(); k++) {
+            byte[] entry = entries.get(k);
+            int oldStart = entry[START_POS] & 0xFF;
+            int start;
+            int length;
+            if (EntryAttribute.DIRECTORY.isEqual(entry[EntryStructure.ATTRIBUTE_POS.getValue()])) {
+                List<byte[]> children = visited.get(oldStart) ? new ArrayList<>() : entries(oldStart, visited);
+                int[] blocks = allocate(disk, Math.max(1, (children.size() + perBlock - 1) / perBlock), dirBlocks[0]);
+                imported += importDirectory(disk, blocks, children, visited);
+                start = blocks[0];
+                length = blocks.length;
+            } else {
+                byte[] content = content(oldStart);
+                int[] blocks = allocate(disk, Math.max(1, (content.length + blockSize - 1) / blockSize), dirBlocks[0]);
+                for (int i = 0; i < blocks.length; i++) {
+                    byte[] data = new byte[blockSize];
+                    System.arraycopy(content, i * blockSize, data, 0, Math.min(blockSize, content.length - i * blockSize));
+                    disk.writeBlock(blocks[i], data);
+                }
+                start = blocks[0];
+                length = blocks.length;
+            }
+            ByteBuffer dir = ByteBuffer.wrap(images[k / perBlock]);
+            int offset = k % perBlock * entryLength;
+            dir.position(offset);
+            dir.put(entry, 0, EntryStructure.START_NUM_POS.getValue()); // 文件名、类型和属性不变
+            dir.putInt(offset + EntryStructure.START_NUM_POS.getValue(), start);
+            dir.putInt(offset + EntryStructure.DISK_BLOCK_LENGTH_POS.getValue(), length);
+            imported++;
+        }
+        for (int i = 0; i < dirBlocks.length; i++) disk.writeMetadataBlock(dirBlocks[i], images[i]);
+        disk.flush(); // 每个目录单独提交，事务中的目录块不超过日志预留的块数
+        return imported;
+    }
+
+    // 在目标块附近分配count块并连成链，优先分配连续的一段
+    private static int[] allocate(DiskManager disk, int count, int goal) {
+        int[] blocks = new int[count];
+        int start = disk.allocateRun(count, goal);
+        for (int i = 0; i < count; i++) {
+            if (start != -1) {
+                blocks[i] = start + i;
+                continue;
+            }
+            blocks[i] = disk.allocateBlock(goal);
+            if (blocks[i] == -1) {
+                throw new IllegalStateException("新磁盘空间不足，无法导入旧格式磁盘的内容");
+            }
+            if (i > 0) disk.setFatEntry(blocks[i - 1], blocks[i]);
+        }
+        return blocks;
+    }
+
+    // 目录中的有效登记项，沿FAT链读取目录的所有块
+    private List<byte[]> entries(int dirBlock, BitSet visited) {
+        List<byte[]> entries = new ArrayList<>();
+        for (int block : chain(dirBlock)) {
+            visited.set(block);
+            for (int i = 0; i < BLOCK_SIZE; i += ENTRY_LENGTH) {
+                int offset = block * BLOCK_SIZE + i;
+                if (image[offset] == BlockStatus.EMPTY_ENTRY.getValue() || image[offset] == 0) continue;
+                byte[] entry = new byte[ENTRY_LENGTH];
+                System.arraycopy(image, offset, entry, 0, ENTRY_LENGTH);
+                int start = entry[START_POS] & 0xFF;
+                if (start < USER_AREA_START || start >= DISK_SIZE) continue; // 损坏的登记项不导入
+                entries.add(entry);
+            }
+        }
+        return entries;
+    }
+
+    // 文件内容：沿FAT链拼接各块，到第一个'#'为止（含'#'），没有'#'时在末尾补上
+    private byte[] content(int start) {
+        int[] chain = chain(start);
+        byte[] content = new byte[chain.length * BLOCK_SIZE + 1];
+        int length = 0;
+        for (int block : chain) {
+            for (int i = 0; i < BLOCK_SIZE; i++) {
+                byte b = image[block * BLOCK_SIZE + i];
+                content[length++] = b;
+                if (b == BlockStatus.EOF.getValue()) return Arrays.copyOf(content, length);
+            }
+        }
+        content[length++] = BlockStatus.EOF.getValue();
+        return Arrays.copyOf(content, length);
+    }
+
+    // 从start开始的FAT链，遇到结束标志、无效块号或环时停止
+    private int[] chain(int start) {
+        int[] blocks = new int[DISK_SIZE];
+        BitSet seen = new BitSet();
+        int count = 0;
+        for (int block = start; block >= 0 && block < DISK_SIZE && !seen.get(block); block = image[block]) {
+            if (block != ROOT_DIR_POS && block < USER_AREA_START) break;
+            seen.set(block);
+            blocks[count++] = block;
+            if (block == ROOT_DIR_POS) break; // 旧格式的根目录只有一块
+        }
+        return Arrays.copyOf(blocks, count);
+    }
+}
@@ -0,0 +1,44 @@
+package application.Manager;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+/**
+ * LRU淘汰策略：淘汰最久没有被访问的磁盘块
+ */
+class LruCachePolicy implements CachePolicy {
+    private final int capacity; // 缓存容量（块数）
+    // 从最久未使用到最近使用；按访问顺序排列的LinkedHashMap在get时原地移动节点，命中不分配新节点
+    private final LinkedHashMap<Integer, Boolean> order = new LinkedHashMap<>(16, 0.75f, true);
+
+    LruCachePolicy(int capacity) {
+        this.capacity = capacity;
+    }
+
+    @Override
+    public void onHit(int blockIndex) {
+        order.get(blockIndex);
+    }
+
+    @Override
+    public int admit(int blockIndex) {
+        int victim = -1;
+        if (order.size() >= capacity) {
+            Iterator<Integer> it = order.keySet().iterator();
+            victim = it.next();
+            it.remove();
+        }
+        order.put(blockIndex, Boolean.TRUE);
+        return victim;
+    }
+
+    @Override
+    public void remove(int blockIndex) {
+        order.remove(blockIndex);
+    }
+
+    @Override
+    public void clear() {
+        order.clear();
+    }
+}
@@ -0,0 +1,121 @@
+package application.Manager;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * 内存映射设备，把整个磁盘文件按段映射到内存
+ * 单个MappedByteBuffer最多2GB，所以超过1GB的磁盘文件按1GB一段映射，段大小是磁盘块大小的整数倍，磁盘块不会跨段
+ */
+class MappedBlockDevice implements BlockDevice {
+    private static final int SEGMENT_SHIFT = 30;
+    private static final long SEGMENT_SIZE = 1L << SEGMENT_SHIFT; // 每段1GB
+    private static final long SEGMENT_MASK = SEGMENT_SIZE - 1;
+
+    private final RandomAccessFile raf;
+    private final FileChannel channel;
+    private final MappedByteBuffer[] segments; // 映射段
+    private final ByteBuffer[] views; // 各段复用的读写视图，避免每次访问都duplicate，访问时加锁
+    private final long size; // 映射总大小
+
+    /**
+     * 映射磁盘文件，文件不足size时会被扩展
+     *
+     * @param diskFile 磁盘文件
+     * @param size     映射的总字节数
+     */
+    MappedBlockDevice(File diskFile, long size) throws IOException {
+        this.raf = new RandomAccessFile(diskFile, "rw");
+        this.channel = raf.getChannel();
+        this.size = size;
+        int count = (int) ((size + SEGMENT_SIZE - 1) >>> SEGMENT_SHIFT);
+        this.segments = new MappedByteBuffer[count];
+        this.views = new ByteBuffer[count];
+        for (int i = 0; i < count; i++) {
+            long start = (long) i << SEGMENT_SHIFT;
+            segments[i] = channel.map(FileChannel.MapMode.READ_WRITE, start, Math.min(SEGMENT_SIZE, size - start));
+            views[i] = segments[i].duplicate();
+        }
+    }
+
+    @Override
+    public synchronized void read(long position, ByteBuffer dst) throws IOException {
+        checkRange(position, dst.remaining());
+        while (dst.hasRemaining()) {
+            ByteBuffer src = slice(position, dst.remaining());
+            position += src.remaining();
+            dst.put(src);
+        }
+    }
+
+    @Override
+    public synchronized void write(long position, ByteBuffer src) throws IOException {
+        checkRange(position, src.remaining());
+        while (src.hasRemaining()) {
+            ByteBuffer dst = slice(position, src.remaining());
+            position += dst.remaining();
+            int limit = src.limit();
+            src.limit(src.position() + dst.remaining());
+            dst.put(src);
+            src.limit(limit);
+        }
+    }
+
+    @Override
+    public synchronized void read(long position, ByteBuffer[] dsts) throws IOException {
+        for (ByteBuffer dst : dsts) {
+            int length = dst.remaining();
+            read(position, dst);
+            position += length;
+        }
+    }
+
+    @Override
+    public synchronized void write(long position, ByteBuffer[] srcs) throws IOException {
+        for (ByteBuffer src : srcs) {
+            int length = src.remaining();
+            write(position, src);
+            position += length;
+        }
+    }
+
+    /**
+     * 映射内存只能整体刷盘，不区分是否刷写元数据
+     */
+    @Override
+    public void force(boolean metaData) {
+        for (MappedByteBuffer segment : segments) {
+            segment.force();
+        }
+    }
+
+    /**
+     * 刷盘后关闭文件；映射内存在Java 8中没有公开的释放方法，由GC回收
+     */
+    @Override
+    public void close() throws IOException {
+        force(false);
+        channel.close();
+        raf.close();
+    }
+
+    // 取得从position开始、不跨段、最多length字节的视图，返回的是复用的段视图，只能在锁内使用
+    private ByteBuffer slice(long position, int length) {
+        ByteBuffer view = views[(int) (position >>> SEGMENT_SHIFT)];
+        int offset = (int) (position & SEGMENT_MASK);
+        view.limit(view.capacity());
+        view.position(offset);
+        view.limit((int) Math.min(view.capacity(), (long) offset + length));
+        return view;
+    }
+
+    private void checkRange(long position, int length) throws IOException {
+        if (position < 0 || position + length > size) {
+            throw new IOException("Access outside mapped disk: " + position + "+" + length);
+        }
+    }
+}
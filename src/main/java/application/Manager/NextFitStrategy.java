@@ -0,0 +1,25 @@
+package application.Manager;
+
+/**
+ * 循环首次适应：从上次分配结束的位置开始查找，到末尾后回到用户区开头
+ */
+class NextFitStrategy implements AllocationStrategy {
+    private volatile int cursor; // 下一次查找的起点，多个线程同时分配时只是提示，不需要精确
+
+    @Override
+    public int find(FreeBlockMap map, int length) {
+        int from = cursor;
+        if (from < map.getStart() || from >= map.getEnd()) from = map.getStart();
+        int index = FirstFitStrategy.findIn(map, from, map.getEnd(), length);
+        if (index == -1) {
+            // 回绕到用户区开头，查找起点在游标之前的空闲段
+            index = FirstFitStrategy.findIn(map, map.getStart(), from, length);
+        }
+        return index;
+    }
+
+    @Override
+    public void allocated(int start, int length) {
+        cursor = start + length;
+    }
+}
@@ -6,6 +6,7 @@ import java.util.ArrayList;
 
 /**
  * 已打开文件（登记表）管理器
+ * 文件系统的读操作并发执行时readFile也会打开文件，所以各方法都加锁
  */
 public class OFTableManager {
     private final ArrayList<OFTLE> oftleList; // 已打开文件表
@@ -22,7 +23,7 @@ public class OFTableManager {
      * @param newOftle 要添加的OFTLE
      * @return 1：成功添加，-6：该oftle已存在于这个OpenFile表，-9：表已满
      */
-    public int add(OFTLE newOftle) {
+    public synchronized int add(OFTLE newOftle) {
         if (this.oftleList.size() >= maxLength) return -9;
         if (find(newOftle.getStartNum()) != null) return -6;
         else {
@@ -38,7 +39,7 @@ public class OFTableManager {
      * @param startNum 文件起始块号（startNum是唯一的）
      * @return 找到的OFTLE对象，未找到返回null
      */
-    public OFTLE find(int startNum) {
+    public synchronized OFTLE find(int startNum) {
         for (OFTLE oftle : oftleList) {
             if (oftle != null && oftle.getStartNum() == startNum)
                 return oftle;
@@ -51,7 +52,7 @@ public class OFTableManager {
      * @param filePath
      * @return
      */
-    public OFTLE find(String filePath) {
+    public synchronized OFTLE find(String filePath) {
         System.out.println(oftleList.size());
         for (OFTLE oftle : oftleList) {
             if (oftle.getFilePath().equals(filePath)) {
@@ -66,12 +67,12 @@ public class OFTableManager {
      *
      * @param targetOftle 要删除的OFTLE
      */
-    public void remove(OFTLE targetOftle) {
+    public synchronized void remove(OFTLE targetOftle) {
         System.out.println(targetOftle.getFilePath()+"从已打开文件表中移除");
         this.oftleList.remove(targetOftle);
     }
 
-    public boolean isOFTLEFull(){
+    public synchronized boolean isOFTLEFull(){
         return this.oftleList.size()>=maxLength;
     }
 
@@ -79,8 +80,8 @@ public class OFTableManager {
         return maxLength;
     }
 
-    public ArrayList<OFTLE> getOftleList() {
+    public synchronized ArrayList<OFTLE> getOftleList() {
         System.out.println(oftleList.size());
-        return oftleList;
+        return new ArrayList<>(oftleList); // 返回副本，调用方遍历时不受其他线程打开、关闭文件的影响
     }
 }
@@ -0,0 +1,272 @@
+package application.Manager;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 覆盖层设备：在一个只读的底层磁盘文件之上叠加一个可写的覆盖层文件，类似qcow2的backing file
+ * 覆盖层文件与普通磁盘文件按同样的位置存放磁盘块，是稀疏文件，只有写过的块占用空间；
+ * 磁盘容量之后是覆盖层尾部：魔数、磁盘块数、底层文件路径，以及每块一位的存在位图
+ * 读取时存在位为1的块读覆盖层，其余块读底层；写入只写覆盖层并置位，不满一块的写入先把底层的整块复制上来
+ * 存在位图常驻内存，刷盘时先写出有变化的位图块
+ */
+class OverlayBlockDevice implements BlockDevice {
+    private static final int MAGIC = 0x4F564C59; // 覆盖层尾部魔数"OVLY"
+    private static final int HEADER_LENGTH = 12; // 魔数、磁盘块数、路径长度
+
+    private final BlockDevice overlay; // 覆盖层
+    private final BlockDevice base; // 只读底层
+    private final File baseFile; // 底层磁盘文件
+    private final RandomAccessFile trailerFile; // 用于读写覆盖层尾部
+    private final FileChannel trailer;
+    private final int blockSize; // 磁盘块大小
+    private final long bitmapPosition; // 存在位图在覆盖层文件中的偏移
+    private final long[] present; // 存在位图，每位对应一个磁盘块
+    private final long[] dirtyChunks; // 有变化的位图块，每个位图块blockSize字节
+    private int presentCount; // 覆盖层中的块数
+
+    /**
+     * @param overlay     覆盖层文件上的设备，覆盖整个磁盘容量
+     * @param overlayFile 覆盖层文件
+     * @param baseFile    底层磁盘文件，null时使用尾部记录的路径
+     * @param blockSize   磁盘块大小
+     * @param diskSize    磁盘块数
+     */
+    OverlayBlockDevice(BlockDevice overlay, File overlayFile, File baseFile, int blockSize, int diskSize) throws IOException {
+        long capacity = (long) diskSize * blockSize;
+        this.overlay = overlay;
+        this.blockSize = blockSize;
+        this.trailerFile = new RandomAccessFile(overlayFile, "rw");
+        this.trailer = trailerFile.getChannel();
+        ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH);
+        trailer.read(header, capacity);
+        if (header.getInt(0) != MAGIC || header.getInt(4) != diskSize) {
+            trailerFile.close();
+            throw new IOException("Not an overlay image: " + overlayFile);
+        }
+        int pathLength = header.getInt(8);
+        ByteBuffer path = ByteBuffer.allocate(pathLength);
+        trailer.read(path, capacity + HEADER_LENGTH);
+        this.baseFile = baseFile != null ? baseFile : new File(new String(path.array(), StandardCharsets.UTF_8));
+        this.bitmapPosition = capacity + align(HEADER_LENGTH + pathLength, blockSize);
+
+        this.present = new long[(diskSize + 63) >>> 6];
+        ByteBuffer bitmap = ByteBuffer.allocate(present.length * 8);
+        trailer.read(bitmap, bitmapPosition);
+        bitmap.flip();
+        bitmap.asLongBuffer().get(present);
+        for (long word : present) presentCount += Long.bitCount(word);
+        this.dirtyChunks = new long[(chunkCount() + 63) >>> 6];
+        this.base = new ChannelBlockDevice(this.baseFile, true);
+    }
+
+    /**
+     * 在覆盖层文件的磁盘容量之后写出尾部，[0, presentBlocks)的块标记为已在覆盖层中
+     *
+     * @param overlayFile   覆盖层文件，已经写好前presentBlocks块
+     * @param baseFile      底层磁盘文件
+     * @param blockSize     磁盘块大小
+     * @param diskSize      磁盘块数
+     * @param presentBlocks 已复制到覆盖层的块数
+     */
+    static void create(File overlayFile, File baseFile, int blockSize, int diskSize, int presentBlocks) throws IOException {
+        long capacity = (long) diskSize * blockSize;
+        byte[] path = baseFile.getAbsolutePath().getBytes(StandardCharsets.UTF_8);
+        long[] bits = new long[(diskSize + 63) >>> 6];
+        for (int i = 0; i < presentBlocks; i++) bits[i >>> 6] |= 1L << i;
+        ByteBuffer buffer = ByteBuffer.allocate(align(HEADER_LENGTH + path.length, blockSize) + bits.length * 8);
+        buffer.putInt(MAGIC).putInt(diskSize).putInt(path.length).put(path);
+        buffer.position(align(HEADER_LENGTH + path.length, blockSize));
+        buffer.asLongBuffer().put(bits);
+        buffer.clear();
+        try (RandomAccessFile raf = new RandomAccessFile(overlayFile, "rw")) {
+            FileChannel channel = raf.getChannel();
+            while (buffer.hasRemaining()) channel.write(buffer, capacity + buffer.position());
+            channel.force(true);
+        }
+    }
+
+    /**
+     * 判断磁盘文件是否为覆盖层：磁盘容量之后有覆盖层尾部
+     *
+     * @param file     磁盘文件
+     * @param capacity 磁盘容量（字节）
+     */
+    static boolean isOverlay(File file, long capacity) {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            if (raf.length() < capacity + HEADER_LENGTH) return false;
+            raf.seek(capacity);
+            return raf.readInt() == MAGIC;
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static int align(int length, int blockSize) {
+        return (length + blockSize - 1) / blockSize * blockSize;
+    }
+
+    // 位图块数
+    private int chunkCount() {
+        return (present.length * 8 + blockSize - 1) / blockSize;
+    }
+
+    private synchronized boolean isPresent(int block) {
+        return (present[block >>> 6] & (1L << block)) != 0;
+    }
+
+    // 把[from, to)的块标记为已在覆盖层中
+    private synchronized void markPresent(int from, int to) {
+        for (int block = from; block < to; block++) {
+            long bit = 1L << block;
+            if ((present[block >>> 6] & bit) != 0) continue;
+            present[block >>> 6] |= bit;
+            presentCount++;
+            int chunk = (block >>> 6) * 8 / blockSize;
+            dirtyChunks[chunk >>> 6] |= 1L << chunk;
+        }
+    }
+
+    /**
+     * 覆盖层中还没有这一块时，先把底层的整块复制上来，用于不满一块的写入
+     */
+    private void copyUp(int block) throws IOException {
+        if (isPresent(block)) return;
+        ByteBuffer data = ByteBuffer.allocate(blockSize);
+        base.read((long) block * blockSize, data);
+        data.flip();
+        overlay.write((long) block * blockSize, data);
+        markPresent(block, block + 1);
+    }
+
+    @Override
+    public void read(long position, ByteBuffer dst) throws IOException {
+        int limit = dst.limit();
+        try {
+            while (dst.hasRemaining()) {
+                // 存在位相同的相邻块合并为一次读取
+                int block = (int) (position / blockSize);
+                boolean inOverlay = isPresent(block);
+                long end = (long) (block + 1) * blockSize;
+                long stop = position + dst.remaining();
+                while (end < stop && isPresent((int) (end / blockSize)) == inOverlay) end += blockSize;
+                int length = (int) (Math.min(end, stop) - position);
+                dst.limit(dst.position() + length);
+                (inOverlay ? overlay : base).read(position, dst);
+                dst.limit(limit);
+                position += length;
+            }
+        } finally {
+            dst.limit(limit);
+        }
+    }
+
+    @Override
+    public void write(long position, ByteBuffer src) throws IOException {
+        if (!src.hasRemaining()) return;
+        int first = (int) (position / blockSize);
+        long stop = position + src.remaining();
+        int last = (int) ((stop - 1) / blockSize);
+        if (position % blockSize != 0) copyUp(first);
+        if (stop % blockSize != 0) copyUp(last);
+        overlay.write(position, src);
+        markPresent(first, last + 1);
+    }
+
+    @Override
+    public void read(long position, ByteBuffer[] dsts) throws IOException {
+        long length = 0;
+        for (ByteBuffer dst : dsts) length += dst.remaining();
+        if (allPresent(position, length)) {
+            overlay.read(position, dsts);
+            return;
+        }
+        for (ByteBuffer dst : dsts) {
+            int remaining = dst.remaining();
+            read(position, dst);
+            position += remaining;
+        }
+    }
+
+    @Override
+    public void write(long position, ByteBuffer[] srcs) throws IOException {
+        long length = 0;
+        for (ByteBuffer src : srcs) length += src.remaining();
+        if (length == 0) return;
+        int first = (int) (position / blockSize);
+        long stop = position + length;
+        int last = (int) ((stop - 1) / blockSize);
+        if (position % blockSize != 0) copyUp(first);
+        if (stop % blockSize != 0) copyUp(last);
+        overlay.write(position, srcs);
+        markPresent(first, last + 1);
+    }
+
+    // [position, position + length)覆盖的块是否都在覆盖层中
+    private synchronized boolean allPresent(long position, long length) {
+        if (length == 0) return true;
+        int last = (int) ((position + length - 1) / blockSize);
+        for (int block = (int) (position / blockSize); block <= last; block++) {
+            if ((present[block >>> 6] & (1L << block)) == 0) return false;
+        }
+        return true;
+    }
+
+    /**
+     * 先写出有变化的位图块，再刷盘
+     */
+    @Override
+    public void force(boolean metaData) throws IOException {
+        boolean written = writeBitmap();
+        overlay.force(metaData);
+        if (written) trailer.force(false); // 内存映射的覆盖层只刷映射段，尾部经通道写入，需要单独刷盘
+    }
+
+    /**
+     * 写出有变化的位图块
+     *
+     * @return 是否写出了位图块
+     */
+    private synchronized boolean writeBitmap() throws IOException {
+        boolean written = false;
+        int longsPerChunk = blockSize / 8;
+        ByteBuffer chunk = ByteBuffer.allocate(blockSize);
+        for (int word = 0; word < dirtyChunks.length; word++) {
+            while (dirtyChunks[word] != 0) {
+                int index = (word << 6) + Long.numberOfTrailingZeros(dirtyChunks[word]);
+                dirtyChunks[word] &= dirtyChunks[word] - 1;
+                int from = index * longsPerChunk;
+                int count = Math.min(longsPerChunk, present.length - from);
+                chunk.clear();
+                chunk.asLongBuffer().put(present, from, count);
+                chunk.limit(count * 8);
+                while (chunk.hasRemaining()) trailer.write(chunk, bitmapPosition + (long) from * 8 + chunk.position());
+                written = true;
+            }
+        }
+        return written;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            writeBitmap();
+            overlay.close();
+        } finally {
+            base.close();
+            trailerFile.close();
+        }
+    }
+
+    File getBaseFile() {
+        return baseFile;
+    }
+
+    synchronized int getPresentCount() {
+        return presentCount;
+    }
+}
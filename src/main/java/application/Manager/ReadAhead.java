@@ -0,0 +1,184 @@
+package application.Manager;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 顺序读预读引擎：按文件（起始盘块号）记录上一次读到的块，下一次读的正好是它在FAT链上的后继时判定为顺序读，
+ * 沿FAT链异步读入后面的若干块放入磁盘块缓存，调用方处理当前块时后面的块已经在读，流式读取不再受每块的读延迟限制
+ * 预读窗口从MIN_WINDOW开始，每发出一批预读加倍，直到最大窗口；已预读而未读到的块少于窗口的一半时发出下一批，
+ * 读取位置跳跃时窗口回到MIN_WINDOW并停止预读，直到再次出现顺序读；从文件开头读总是按顺序读处理
+ * 一批预读中块号递增且间隔不大的块合并为一次异步读，交错分配的文件也不必每块发一次请求
+ * 要读的块仍在预读中时等待它完成，不重复读设备
+ */
+public class ReadAhead {
+    public static final int MIN_WINDOW = 4; // 初始预读窗口（块数）
+    private static final int MAX_STREAMS = 64; // 最多同时跟踪的文件数，超过时丢弃最久没有读过的
+    private static final int MAX_GAP = 4; // 链上相邻两块的块号相差不超过这个值时合并为一次读，中间的块读出后丢弃
+
+    // 一个文件的顺序读状态
+    private static final class Stream {
+        int expected = -1; // 顺序读时下一次应读的块
+        int frontier = -1; // 已发出预读的最后一块
+        int ahead; // 当前块之后已发出预读的块数
+        int window = MIN_WINDOW; // 预读窗口
+    }
+
+    private final DiskManager disk; // 磁盘
+    private final int maxWindow; // 最大预读窗口
+    private final Map<Integer, Stream> streams = new LinkedHashMap<Integer, Stream>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, Stream> eldest) {
+            return size() > MAX_STREAMS;
+        }
+    }; // 文件起始盘块号 -> 顺序读状态，按访问顺序排列
+    private final ConcurrentHashMap<Integer, CompletableFuture<Void>> inflight = new ConcurrentHashMap<>(); // 正在预读的块
+
+    private final AtomicLong reads = new AtomicLong(); // 经过预读引擎的读取次数
+    private final AtomicLong sequentialReads = new AtomicLong(); // 判定为顺序读的次数
+    private final AtomicLong issued = new AtomicLong(); // 发出的预读块数
+    private final AtomicLong waits = new AtomicLong(); // 要读的块仍在预读中、需要等待的次数
+    private final AtomicLong resets = new AtomicLong(); // 读取位置跳跃、窗口复位的次数
+
+    /**
+     * @param disk      磁盘
+     * @param maxWindow 最大预读窗口（块数），不小于MIN_WINDOW
+     */
+    ReadAhead(DiskManager disk, int maxWindow) {
+        this.disk = disk;
+        this.maxWindow = Math.max(MIN_WINDOW, maxWindow);
+    }
+
+    /**
+     * 读取文件的一块，顺序读时顺带发出后面的预读
+     *
+     * @param file  文件起始盘块号，区分不同文件的读取位置
+     * @param block 要读取的块
+     * @return 磁盘块数据
+     */
+    public byte[] read(int file, int block) {
+        reads.incrementAndGet();
+        access(file, block);
+        CompletableFuture<Void> pending = inflight.get(block);
+        if (pending != null) {
+            waits.incrementAndGet();
+            try {
+                pending.join();
+            } catch (CompletionException ignored) {
+                // 预读失败时下面按普通读取重新读一次，由它报告错误
+            }
+        }
+        return disk.readBlock(block);
+    }
+
+    /**
+     * 记录一次读取，判断是否顺序读并在需要时发出下一批预读
+     */
+    private void access(int file, int block) {
+        int[] chain;
+        synchronized (streams) {
+            Stream stream = streams.get(file);
+            if (stream == null) {
+                stream = new Stream();
+                streams.put(file, stream);
+            }
+            int expected = stream.expected;
+            stream.expected = disk.getFatEntry(block);
+            if (block != expected) {
+                // 从文件开头读按新的顺序读处理，其他位置的跳跃停止预读
+                stream.window = MIN_WINDOW;
+                stream.ahead = 0;
+                stream.frontier = block;
+                if (block != file) {
+                    if (expected != -1) resets.incrementAndGet();
+                    return;
+                }
+            }
+            sequentialReads.incrementAndGet();
+            if (stream.ahead > 0) {
+                stream.ahead--;
+            } else {
+                stream.frontier = block;
+            }
+            if (stream.ahead > stream.window / 2) return;
+            chain = disk.getChain(disk.getFatEntry(stream.frontier), stream.window - stream.ahead);
+            if (chain.length == 0) return;
+            stream.ahead += chain.length;
+            stream.frontier = chain[chain.length - 1];
+            stream.window = Math.min(maxWindow, stream.window * 2);
+        }
+        // 发出预读可能因为异步队列已满而阻塞，放到锁外
+        prefetch(chain);
+    }
+
+    // 异步读入各块，块号递增且间隔不超过MAX_GAP的一段合并为一次读
+    private void prefetch(int[] chain) {
+        for (int i = 0; i < chain.length; ) {
+            int end = i + 1;
+            while (end < chain.length && chain[end] > chain[end - 1] && chain[end] - chain[end - 1] <= MAX_GAP) end++;
+            CompletableFuture<Void> future = disk.prefetchBlocks(Arrays.copyOfRange(chain, i, end));
+            if (future != null) {
+                issued.addAndGet(end - i);
+                for (int j = i; j < end; j++) {
+                    int index = chain[j];
+                    inflight.put(index, future);
+                    future.whenComplete((v, e) -> inflight.remove(index, future));
+                }
+            }
+            i = end;
+        }
+    }
+
+    public int getMaxWindow() {
+        return maxWindow;
+    }
+
+    public long getReads() {
+        return reads.get();
+    }
+
+    public long getSequentialReads() {
+        return sequentialReads.get();
+    }
+
+    public long getIssued() {
+        return issued.get();
+    }
+
+    public long getWaits() {
+        return waits.get();
+    }
+
+    public long getResets() {
+        return resets.get();
+    }
+
+    /**
+     * 当前正在预读的块数
+     */
+    public int getInflight() {
+        return inflight.size();
+    }
+
+    /**
+     * 重置计数器
+     */
+    public void resetStats() {
+        reads.set(0);
+        sequentialReads.set(0);
+        issued.set(0);
+        waits.set(0);
+        resets.set(0);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("read-ahead window<=%d, reads=%d, sequential=%d, issued=%d, waits=%d, resets=%d",
+                maxWindow, reads.get(), sequentialReads.get(), issued.get(), waits.get(), resets.get());
+    }
+}
@@ -0,0 +1,201 @@
+package application.Manager;
+
+import application.Enum.BlockStatus;
+import application.Enum.RelocationResult;
+
+import java.util.BitSet;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.IntFunction;
+
+/**
+ * 后台巡检线程，按限定的速率逐块读取用户区中已分配的块并校验，发现坏块后交给调用方提供的搬迁操作
+ * 巡检读取直接读设备，不经过也不占用磁盘块缓存，不持有文件操作使用的锁，前台读写不需要等待巡检；
+ * 搬迁会修改FAT、目录块和登记项的起始盘块号，必须和前台文件操作互斥并作为一个事务提交，
+ * 所以由文件系统完成（FileSystem.relocateBlock()在全局写锁下搬迁并提交），巡检线程等待它返回
+ * 一轮结束后休息一段时间再从头开始，直到stop()
+ */
+public class Scrubber {
+    public static final long PASS_INTERVAL_MILLIS = 1000; // 两轮巡检之间的间隔
+
+    private final DiskManager disk; // 被巡检的磁盘
+    private final int blocksPerSecond; // 每秒最多读取的块数
+    private final IntFunction<RelocationResult> relocator; // 搬迁坏块并提交修改
+    private final Thread thread; // 巡检线程
+    private volatile boolean running; // 是否在运行
+    private final Object pause = new Object(); // 巡检线程在上面等待，stop()时唤醒
+
+    private volatile int position; // 本轮巡检到的块号
+    private volatile int passStart; // 本轮的起始块号
+    private volatile int passEnd; // 本轮的结束块号
+    private final AtomicLong scanned = new AtomicLong(); // 读取校验的块数
+    private final AtomicLong passes = new AtomicLong(); // 完成的轮数
+    private final AtomicLong badBlocks = new AtomicLong(); // 发现的坏块数
+    private final AtomicLong relocated = new AtomicLong(); // 搬迁到新块的坏块数
+    private final AtomicLong retired = new AtomicLong(); // 没有文件引用、直接停用的坏块数
+    private final AtomicLong failed = new AtomicLong(); // 无法搬迁的坏块数
+    private final BitSet handled = new BitSet(); // 已处理或正在处理的坏块，之后的轮次跳过
+
+    /**
+     * @param disk            被巡检的磁盘
+     * @param blocksPerSecond 每秒最多读取的块数
+     * @param relocator       搬迁坏块的操作，参数为坏块号，返回前修改已经提交，并且和文件操作互斥
+     */
+    Scrubber(DiskManager disk, int blocksPerSecond, IntFunction<RelocationResult> relocator) {
+        if (blocksPerSecond <= 0) {
+            throw new IllegalArgumentException("Invalid scrub rate: " + blocksPerSecond);
+        }
+        if (relocator == null) {
+            throw new IllegalArgumentException("Relocator is required");
+        }
+        this.disk = disk;
+        this.blocksPerSecond = blocksPerSecond;
+        this.relocator = relocator;
+        this.thread = new Thread(this::run, "disk-scrub");
+        this.thread.setDaemon(true);
+        this.thread.setPriority(Thread.MIN_PRIORITY);
+    }
+
+    void start() {
+        running = true;
+        thread.start();
+    }
+
+    /**
+     * 停止巡检并等待巡检线程退出，正在进行的搬迁先完成
+     */
+    public void stop() {
+        running = false;
+        // 不中断巡检线程：线程在FileChannel上读写时被中断会关闭通道，整个磁盘都不能再使用
+        synchronized (pause) {
+            pause.notifyAll();
+        }
+        if (Thread.currentThread() != thread) {
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private void run() {
+        long startNanos = System.nanoTime();
+        long budget = 0; // 从开始到现在按速率允许读取的块数中已经用掉的部分
+        try {
+            while (running) {
+                passStart = disk.getUserAreaStart();
+                passEnd = disk.getDiskSize();
+                for (int i = passStart; i < passEnd && running; i++) {
+                    position = i;
+                    if (disk.isBlockAllocated(i)) {
+                        scanned.incrementAndGet();
+                        if (!disk.verifyBlock(i)) report(i);
+                        // 按速率限制：读得比计划快时睡到计划时间
+                        long due = startNanos + ++budget * 1_000_000_000L / blocksPerSecond;
+                        long ahead = due - System.nanoTime();
+                        if (ahead > 1_000_000) pause(ahead / 1_000_000);
+                    } else if (BlockStatus.BAD_BLOCK.isEqual(disk.getFatEntry(i))) {
+                        report(i); // 旧方式标记的坏块也可能仍被文件引用
+                    }
+                }
+                position = passEnd;
+                passes.incrementAndGet();
+                pause(PASS_INTERVAL_MILLIS);
+                startNanos = System.nanoTime();
+                budget = 0;
+            }
+        } catch (InterruptedException ignored) {
+        } catch (RuntimeException e) {
+            // 磁盘已卸载或设备出错，巡检结束
+        } finally {
+            running = false;
+        }
+    }
+
+    // 等待指定的毫秒数，stop()时提前返回
+    private void pause(long millis) throws InterruptedException {
+        synchronized (pause) {
+            if (running) pause.wait(millis);
+        }
+    }
+
+    // 发现坏块，每个坏块只搬迁一次
+    private void report(int index) {
+        synchronized (handled) {
+            if (handled.get(index)) return;
+            handled.set(index);
+        }
+        badBlocks.incrementAndGet();
+        RelocationResult result;
+        try {
+            result = relocator.apply(index);
+        } catch (RuntimeException e) {
+            result = RelocationResult.FAILED;
+        }
+        switch (result) {
+            case RELOCATED:
+                relocated.incrementAndGet();
+                break;
+            case RETIRED:
+                retired.incrementAndGet();
+                break;
+            case FAILED:
+                failed.incrementAndGet();
+                break;
+            default: // 误报或文件正在打开，下一轮再检查
+                badBlocks.decrementAndGet();
+                synchronized (handled) {
+                    handled.clear(index);
+                }
+        }
+    }
+
+    public boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * 本轮巡检的进度
+     *
+     * @return 0到1之间
+     */
+    public double getProgress() {
+        int start = passStart;
+        int end = passEnd;
+        return end > start ? (double) (position - start) / (end - start) : 0;
+    }
+
+    public int getBlocksPerSecond() {
+        return blocksPerSecond;
+    }
+
+    public long getScanned() {
+        return scanned.get();
+    }
+
+    public long getPasses() {
+        return passes.get();
+    }
+
+    public long getBadBlocks() {
+        return badBlocks.get();
+    }
+
+    public long getRelocated() {
+        return relocated.get();
+    }
+
+    public long getRetired() {
+        return retired.get();
+    }
+
+    public long getFailed() {
+        return failed.get();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("scrub %.0f%%, passes=%d, scanned=%d, bad=%d, relocated=%d, retired=%d, failed=%d",
+                getProgress() * 100, passes.get(), scanned.get(), badBlocks.get(), relocated.get(), retired.get(), failed.get());
+    }
+}
@@ -0,0 +1,300 @@
+package application.Manager;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * 快照表，保存卷上所有只读快照的写时复制映射
+ * 快照按创建顺序排列，每个快照记录创建后第一次被覆盖的块：原块号 -> 保存旧内容的块号
+ * 读取快照S中的块时依次查找S及其后创建的快照，第一个保存了该块的快照中就是S创建时的内容；都没有保存说明之后没有被覆盖过，读原位置
+ * 写回一个块之前只需要保证最新的快照保存过它，逐块的快照纪元表记录每块最近一次为哪个快照保存过，O(1)判断是否需要复制
+ * <p>
+ * 快照表保存在超级块的剩余空间中（快照数、下一个纪元号和每个快照的名称、纪元、映射链起始块、映射数），
+ * 映射本身按(原块号, 副本块号)依次存放在用FAT串起来的映射块中
+ */
+class SnapshotTable {
+    static final int TABLE_POS = 24; // 快照表在超级块中的偏移，之前是几何参数
+    static final int NAME_LENGTH = 12; // 快照名最多12字节
+    private static final int RECORD_LENGTH = NAME_LENGTH + 12; // 每个快照：名称、纪元、映射链起始块、映射数
+    private static final int RECORDS_POS = TABLE_POS + 8; // 快照数和下一个纪元号之后是各快照的记录
+
+    // 一个快照
+    static class Snapshot {
+        final String name; // 快照名
+        final int epoch; // 纪元号，按创建顺序递增
+        final HashMap<Integer, Integer> copies = new HashMap<>(); // 原块号 -> 旧内容副本块号
+        int[] sources = new int[16]; // 按保存顺序排列的原块号，用于增量写出映射块
+        int[] targets = new int[16]; // 对应的副本块号
+        int count; // 映射数
+        int[] chain = new int[0]; // 映射块号
+        int persisted; // 已写入映射块的映射数
+        boolean deleted; // 已删除，挂载的快照视图不能再读取
+
+        Snapshot(String name, int epoch) {
+            this.name = name;
+            this.epoch = epoch;
+        }
+
+        void add(int source, int target) {
+            if (count == sources.length) {
+                sources = Arrays.copyOf(sources, count * 2);
+                targets = Arrays.copyOf(targets, count * 2);
+            }
+            sources[count] = source;
+            targets[count] = target;
+            count++;
+            copies.put(source, target);
+        }
+    }
+
+    private final int blockSize; // 磁盘块大小
+    private final int[] epochs; // 快照纪元表，每块最近一次被保存时所属快照的纪元号，0表示从未保存
+    private final BitSet owned; // 快照占用的块：旧内容副本和映射块，不参与写时复制
+    private final ArrayList<Snapshot> snapshots = new ArrayList<>(); // 按创建顺序排列
+    private int nextEpoch = 1; // 下一个快照的纪元号
+    private boolean dirty; // 超级块中的快照表需要重写
+
+    SnapshotTable(int diskSize, int blockSize) {
+        this.blockSize = blockSize;
+        this.epochs = new int[diskSize];
+        this.owned = new BitSet(diskSize);
+    }
+
+    /**
+     * 超级块能容纳的快照数
+     */
+    int getCapacity() {
+        return (blockSize - RECORDS_POS) / RECORD_LENGTH;
+    }
+
+    // 每个映射块容纳的映射数
+    private int entriesPerBlock() {
+        return blockSize / 8;
+    }
+
+    boolean isEmpty() {
+        return snapshots.isEmpty();
+    }
+
+    boolean isDirty() {
+        return dirty;
+    }
+
+    List<Snapshot> getSnapshots() {
+        return snapshots;
+    }
+
+    Snapshot find(String name) {
+        for (Snapshot snapshot : snapshots) {
+            if (snapshot.name.equals(name)) return snapshot;
+        }
+        return null;
+    }
+
+    boolean isOwned(int index) {
+        return owned.get(index);
+    }
+
+    int getOwnedCount() {
+        return owned.cardinality();
+    }
+
+    /**
+     * 写回原位置前是否需要先为最新的快照保存旧内容
+     */
+    boolean needsCopy(int index) {
+        return !snapshots.isEmpty() && !owned.get(index)
+                && epochs[index] != snapshots.get(snapshots.size() - 1).epoch;
+    }
+
+    /**
+     * 记录最新的快照保存了一个块的旧内容
+     *
+     * @param source 原块号
+     * @param copy   副本块号
+     */
+    void preserved(int source, int copy) {
+        Snapshot latest = snapshots.get(snapshots.size() - 1);
+        latest.add(source, copy);
+        epochs[source] = latest.epoch;
+        owned.set(copy);
+    }
+
+    /**
+     * 查找快照创建时一个块的内容所在的块号
+     *
+     * @return 副本块号，之后没有被覆盖时返回原块号
+     */
+    int resolve(Snapshot snapshot, int index) {
+        for (int i = snapshots.indexOf(snapshot); i >= 0 && i < snapshots.size(); i++) {
+            Integer copy = snapshots.get(i).copies.get(index);
+            if (copy != null) return copy;
+        }
+        return index;
+    }
+
+    /**
+     * 新建一个快照，不复制任何块
+     */
+    Snapshot create(String name) {
+        Snapshot snapshot = new Snapshot(name, nextEpoch++);
+        snapshots.add(snapshot);
+        dirty = true;
+        return snapshot;
+    }
+
+    /**
+     * 删除快照：前一个快照还没有保存的块由它继承副本，其余副本和映射块交给调用方回收
+     *
+     * @return 需要回收的块号
+     */
+    int[] delete(Snapshot snapshot) {
+        int position = snapshots.indexOf(snapshot);
+        Snapshot previous = position > 0 ? snapshots.get(position - 1) : null;
+        int[] freed = new int[snapshot.count + snapshot.chain.length];
+        int n = 0;
+        for (int i = 0; i < snapshot.count; i++) {
+            // 前一个快照没有保存这一块，说明两个快照之间它没有被覆盖，这份副本也是前一个快照的内容
+            if (previous != null && !previous.copies.containsKey(snapshot.sources[i])) {
+                previous.add(snapshot.sources[i], snapshot.targets[i]);
+            } else {
+                freed[n++] = snapshot.targets[i];
+                owned.clear(snapshot.targets[i]);
+            }
+        }
+        for (int block : snapshot.chain) {
+            freed[n++] = block;
+            owned.clear(block);
+        }
+        snapshots.remove(position);
+        snapshot.deleted = true;
+        if (previous != null && position == snapshots.size()) {
+            // 删除的是最新的快照，前一个快照成为最新，纪元表改为指向它
+            for (int i = 0; i < previous.count; i++) epochs[previous.sources[i]] = previous.epoch;
+        }
+        dirty = true;
+        return Arrays.copyOf(freed, n);
+    }
+
+    /**
+     * 映射块需要的块数
+     */
+    int chainLength(Snapshot snapshot) {
+        return (snapshot.count + entriesPerBlock() - 1) / entriesPerBlock();
+    }
+
+    /**
+     * 第一个内容有变化的映射块序号，之前的映射块已经写出
+     */
+    int firstDirtyChainBlock(Snapshot snapshot) {
+        return snapshot.persisted / entriesPerBlock();
+    }
+
+    /**
+     * 追加一个映射块，由调用方分配并在FAT中串起来
+     */
+    void appendChainBlock(Snapshot snapshot, int block) {
+        snapshot.chain = Arrays.copyOf(snapshot.chain, snapshot.chain.length + 1);
+        snapshot.chain[snapshot.chain.length - 1] = block;
+        owned.set(block);
+    }
+
+    /**
+     * 生成一个映射块的内容
+     *
+     * @param k 映射块序号
+     */
+    byte[] chainImage(Snapshot snapshot, int k) {
+        ByteBuffer image = ByteBuffer.allocate(blockSize);
+        int from = k * entriesPerBlock();
+        int to = Math.min(snapshot.count, from + entriesPerBlock());
+        for (int i = from; i < to; i++) image.putInt(snapshot.sources[i]).putInt(snapshot.targets[i]);
+        return image.array();
+    }
+
+    /**
+     * 映射块全部写出后调用
+     */
+    void chainPersisted(Snapshot snapshot) {
+        snapshot.persisted = snapshot.count;
+    }
+
+    /**
+     * 把快照表写入超级块的剩余部分
+     *
+     * @param superblock 超级块当前内容，前TABLE_POS字节保持不变
+     */
+    void writeTo(byte[] superblock) {
+        ByteBuffer buffer = ByteBuffer.wrap(superblock);
+        Arrays.fill(superblock, TABLE_POS, superblock.length, (byte) 0);
+        buffer.position(TABLE_POS);
+        buffer.putInt(snapshots.size()).putInt(nextEpoch);
+        for (Snapshot snapshot : snapshots) {
+            byte[] name = snapshot.name.getBytes(StandardCharsets.UTF_8);
+            buffer.put(name).position(buffer.position() + NAME_LENGTH - name.length);
+            buffer.putInt(snapshot.epoch).putInt(snapshot.chain.length > 0 ? snapshot.chain[0] : -1).putInt(snapshot.count);
+        }
+        dirty = false;
+    }
+
+    /**
+     * 挂载时从超级块和映射块载入快照表，重建纪元表和占用位图
+     *
+     * @param superblock 超级块内容
+     * @param fat        FAT，用于沿映射链读取
+     * @param reader     读取一个磁盘块的内容
+     */
+    void load(byte[] superblock, int[] fat, BlockReader reader) {
+        ByteBuffer buffer = ByteBuffer.wrap(superblock);
+        int size = buffer.getInt(TABLE_POS);
+        if (size <= 0 || size > getCapacity()) return; // 旧格式的超级块此处为0
+        nextEpoch = buffer.getInt(TABLE_POS + 4);
+        buffer.position(RECORDS_POS);
+        for (int i = 0; i < size; i++) {
+            byte[] name = new byte[NAME_LENGTH];
+            buffer.get(name);
+            int length = 0;
+            while (length < NAME_LENGTH && name[length] != 0) length++;
+            Snapshot snapshot = new Snapshot(new String(name, 0, length, StandardCharsets.UTF_8), buffer.getInt());
+            int block = buffer.getInt();
+            int count = buffer.getInt();
+            while (snapshot.count < count && block > 0 && block < fat.length) {
+                appendChainBlock(snapshot, block);
+                ByteBuffer image = ByteBuffer.wrap(reader.read(block));
+                for (int j = 0; j < entriesPerBlock() && snapshot.count < count; j++) {
+                    int source = image.getInt();
+                    int copy = image.getInt();
+                    snapshot.add(source, copy);
+                    owned.set(copy);
+                }
+                block = fat[block];
+            }
+            snapshot.persisted = snapshot.count;
+            snapshots.add(snapshot);
+        }
+        Snapshot latest = snapshots.get(snapshots.size() - 1);
+        for (int i = 0; i < latest.count; i++) epochs[latest.sources[i]] = latest.epoch;
+    }
+
+    /**
+     * 格式化后清空快照表
+     */
+    void clear() {
+        for (Snapshot snapshot : snapshots) snapshot.deleted = true;
+        snapshots.clear();
+        Arrays.fill(epochs, 0);
+        owned.clear();
+        nextEpoch = 1;
+        dirty = false;
+    }
+
+    // 读取一个磁盘块的内容
+    interface BlockReader {
+        byte[] read(int index);
+    }
+}
@@ -0,0 +1,71 @@
+package application.Manager;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 刷盘（force）延迟统计：次数、平均和最长耗时，按是否刷写元数据分别计数
+ */
+public class SyncStats {
+    private final AtomicLong dataSyncs = new AtomicLong(); // force(false)次数
+    private final AtomicLong fullSyncs = new AtomicLong(); // force(true)次数
+    private final AtomicLong totalNanos = new AtomicLong(); // 总耗时
+    private final AtomicLong maxNanos = new AtomicLong(); // 最长耗时
+
+    /**
+     * 记录一次刷盘
+     *
+     * @param metaData 是否刷写了元数据
+     * @param nanos    耗时
+     */
+    void record(boolean metaData, long nanos) {
+        (metaData ? fullSyncs : dataSyncs).incrementAndGet();
+        totalNanos.addAndGet(nanos);
+        maxNanos.accumulateAndGet(nanos, Math::max);
+    }
+
+    public long getCount() {
+        return dataSyncs.get() + fullSyncs.get();
+    }
+
+    public long getDataSyncs() {
+        return dataSyncs.get();
+    }
+
+    public long getFullSyncs() {
+        return fullSyncs.get();
+    }
+
+    /**
+     * 平均刷盘延迟
+     *
+     * @return 平均每次刷盘的微秒数，没有刷盘时为0
+     */
+    public double getAverageMicros() {
+        long count = getCount();
+        return count == 0 ? 0 : totalNanos.get() / 1e3 / count;
+    }
+
+    public double getMaxMicros() {
+        return maxNanos.get() / 1e3;
+    }
+
+    public double getTotalMillis() {
+        return totalNanos.get() / 1e6;
+    }
+
+    /**
+     * 重置计数器
+     */
+    public void reset() {
+        dataSyncs.set(0);
+        fullSyncs.set(0);
+        totalNanos.set(0);
+        maxNanos.set(0);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("fsync count=%d (data=%d, full=%d), avg=%.1fus, max=%.1fus, total=%.1fms",
+                getCount(), getDataSyncs(), getFullSyncs(), getAverageMicros(), getMaxMicros(), getTotalMillis());
+    }
+}
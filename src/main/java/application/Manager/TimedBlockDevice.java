@@ -0,0 +1,49 @@
+package application.Manager;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * 包装一个设备，读写直接转发，刷盘时记录耗时，日志和DiskManager的刷盘都经过这里统计
+ */
+class TimedBlockDevice implements BlockDevice {
+    private final BlockDevice device; // 被包装的设备
+    private final SyncStats stats; // 刷盘统计
+
+    TimedBlockDevice(BlockDevice device, SyncStats stats) {
+        this.device = device;
+        this.stats = stats;
+    }
+
+    @Override
+    public void read(long position, ByteBuffer dst) throws IOException {
+        device.read(position, dst);
+    }
+
+    @Override
+    public void write(long position, ByteBuffer src) throws IOException {
+        device.write(position, src);
+    }
+
+    @Override
+    public void read(long position, ByteBuffer[] dsts) throws IOException {
+        device.read(position, dsts);
+    }
+
+    @Override
+    public void write(long position, ByteBuffer[] srcs) throws IOException {
+        device.write(position, srcs);
+    }
+
+    @Override
+    public void force(boolean metaData) throws IOException {
+        long start = System.nanoTime();
+        device.force(metaData);
+        stats.record(metaData, System.nanoTime() - start);
+    }
+
+    @Override
+    public void close() throws IOException {
+        device.close();
+    }
+}
@@ -0,0 +1,186 @@
+package application.Service;
+
+import application.Enum.BlockStatus;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Iterator;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * 文件内容压缩：有压缩属性的文件每次写入的数据按CHUNK_SIZE分段用Deflater压缩成帧，再按普通文件的方式写入磁盘块；读取时逐帧解压
+ * 压缩在写入路径上，使用最快的压缩级别，文本的压缩率比默认级别略低，速度快几倍
+ * 帧的格式：方法（1字节，0原样保存、1为Deflate）、原始长度（4字节）、保存长度（4字节）、数据，压缩后没有变小的段原样保存
+ * 文件仍以'#'结束：帧写入前做转义（'#'写成ESCAPE 1，ESCAPE写成ESCAPE 2），磁盘上的内容中不会出现'#'，
+ * 计算文件长度、关闭时追加结束符、再次打开时的写指针都与普通文件相同，追加写入就是在末尾追加新的帧
+ */
+final class Compression {
+    static final int CHUNK_SIZE = 64 * 1024; // 每帧的原始数据长度上限
+    private static final byte ESCAPE = (byte) 0x7F; // 转义字节
+    private static final byte STORED = 0; // 原样保存
+    private static final byte DEFLATED = 1; // Deflate压缩
+    private static final int HEADER_LENGTH = 9; // 帧头长度
+
+    private Compression() {
+    }
+
+    /**
+     * 把要写入的数据压缩成转义后的帧
+     *
+     * @param data   数据
+     * @param length 数据长度
+     * @return 写入磁盘块的内容，不含'#'
+     */
+    static byte[] compress(byte[] data, int length) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(length / 2 + HEADER_LENGTH * 2);
+        byte[] buffer = new byte[CHUNK_SIZE + 64];
+        byte[] header = new byte[HEADER_LENGTH];
+        byte[] scratch = new byte[2 * buffer.length];
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try {
+            for (int from = 0; from < length; from += CHUNK_SIZE) {
+                int n = Math.min(CHUNK_SIZE, length - from);
+                deflater.reset();
+                deflater.setInput(data, from, n);
+                deflater.finish();
+                int size = 0;
+                // 压缩结果不小于原始数据时不必继续
+                while (!deflater.finished() && size < n) size += deflater.deflate(buffer, size, buffer.length - size);
+                boolean deflated = deflater.finished() && size < n;
+                header[0] = deflated ? DEFLATED : STORED;
+                Tools.writeInt(header, 1, n);
+                Tools.writeInt(header, 5, deflated ? size : n);
+                escape(out, header, 0, HEADER_LENGTH, scratch);
+                if (deflated) {
+                    escape(out, buffer, 0, size, scratch);
+                } else {
+                    escape(out, data, from, n, scratch);
+                }
+            }
+        } finally {
+            deflater.end();
+        }
+        return out.toByteArray();
+    }
+
+    // 转义后写出，每个字节最多变成两个，先转义到临时数组再整段写出
+    private static void escape(ByteArrayOutputStream out, byte[] data, int from, int length, byte[] scratch) {
+        int n = 0;
+        for (int i = from; i < from + length; i++) {
+            byte b = data[i];
+            if (b == BlockStatus.EOF.getValue()) {
+                scratch[n++] = ESCAPE;
+                scratch[n++] = 1;
+            } else if (b == ESCAPE) {
+                scratch[n++] = ESCAPE;
+                scratch[n++] = 2;
+            } else {
+                scratch[n++] = b;
+            }
+        }
+        out.write(scratch, 0, n);
+    }
+
+    /**
+     * 从磁盘块中依次读出转义后的帧并解压，跳过的帧不解压
+     *
+     * @param blocks 文件的磁盘块内容，按FAT链的顺序
+     * @param skip   跳过解压后开头的字节数
+     * @param limit  最多返回的字节数
+     * @return 解压后的内容
+     */
+    static byte[] decompress(Iterator<byte[]> blocks, long skip, int limit) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        Reader reader = new Reader(blocks);
+        byte[] header = new byte[HEADER_LENGTH];
+        byte[] chunk = new byte[CHUNK_SIZE];
+        byte[] payload = new byte[0];
+        Inflater inflater = new Inflater();
+        try {
+            while (out.size() < limit && reader.read(header, HEADER_LENGTH)) {
+                int rawLength = Tools.readInt(header, 1);
+                int storedLength = Tools.readInt(header, 5);
+                if (rawLength <= 0 || rawLength > CHUNK_SIZE || storedLength <= 0 || storedLength > rawLength) {
+                    throw new IllegalStateException("Corrupt compressed frame");
+                }
+                if (payload.length < storedLength) payload = new byte[storedLength];
+                if (!reader.read(payload, storedLength)) {
+                    throw new IllegalStateException("Truncated compressed frame");
+                }
+                if (skip >= rawLength) { // 整帧都在读位置之前
+                    skip -= rawLength;
+                    continue;
+                }
+                byte[] raw = payload;
+                if (header[0] == DEFLATED) {
+                    inflater.reset();
+                    inflater.setInput(payload, 0, storedLength);
+                    if (inflater.inflate(chunk, 0, rawLength) != rawLength || !inflater.finished()) {
+                        throw new IllegalStateException("Corrupt compressed frame");
+                    }
+                    raw = chunk;
+                }
+                int n = (int) Math.min(rawLength - skip, limit - out.size());
+                out.write(raw, (int) skip, n);
+                skip = 0;
+            }
+        } catch (DataFormatException e) {
+            throw new IllegalStateException("Corrupt compressed frame", e);
+        } finally {
+            inflater.end();
+        }
+        return out.toByteArray();
+    }
+
+    // 按块读出转义后的内容并还原，遇到'#'或链结束为止
+    private static class Reader {
+        private final Iterator<byte[]> blocks;
+        private byte[] block = new byte[0];
+        private int position;
+        private boolean ended;
+
+        Reader(Iterator<byte[]> blocks) {
+            this.blocks = blocks;
+        }
+
+        // 读满length字节，到达结尾时返回false
+        boolean read(byte[] dst, int length) {
+            for (int i = 0; i < length; i++) {
+                int b = next();
+                if (b == ESCAPE) {
+                    int code = next();
+                    if (code == 1) {
+                        b = BlockStatus.EOF.getValue();
+                    } else if (code == 2) {
+                        b = ESCAPE;
+                    } else {
+                        throw new IllegalStateException("Corrupt compressed file");
+                    }
+                }
+                if (b == -1) return false;
+                dst[i] = (byte) b;
+            }
+            return true;
+        }
+
+        // 下一个字节（0到255），结尾返回-1
+        private int next() {
+            while (!ended && position == block.length) {
+                if (!blocks.hasNext()) {
+                    ended = true;
+                    break;
+                }
+                block = blocks.next();
+                position = 0;
+            }
+            if (ended) return -1;
+            byte b = block[position++];
+            if (b == BlockStatus.EOF.getValue()) {
+                ended = true;
+                return -1;
+            }
+            return b & 0xFF;
+        }
+    }
+}
@@ -0,0 +1,134 @@
+package application.Service;
+
+import application.Entity.DefragReport;
+import application.Entity.FragmentationReport;
+import application.Enum.BlockStatus;
+import application.Enum.EntryAttribute;
+import application.Enum.EntryStructure;
+import application.Manager.DiskManager;
+import application.Manager.OFTableManager;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * 在线碎片整理：从根目录开始遍历目录树，把FAT链不连续的文件复制到一段连续的空闲块，
+ * 再把登记项的起始盘块号换成新链并回收原来的链
+ * 新链的分配、登记项的修改和原链的回收在同一个同步点提交，启用日志时是一个事务，崩溃后要么仍是原来的链，要么已经换成新链
+ * 按时间预算增量执行：每次调用重新遍历目录树（只读目录块），跳过本轮已经处理过的文件，整棵树走完后下一次调用开始新的一轮；
+ * 正在打开的文件跳过，它们在打开文件表中的块号不能失效
+ */
+class Defragmenter {
+    private static final int COPY_BLOCKS = 64; // 每次复制的块数
+
+    private final EntryOperator entryOperator; // 目录项操作
+    private final DiskManager diskManager; // 磁盘管理器
+    private final OFTableManager ofTableManager; // 打开文件表管理器
+    private final BitSet handled = new BitSet(); // 本轮已经处理过的文件（按起始盘块号）
+
+    Defragmenter(EntryOperator entryOperator, DiskManager diskManager, OFTableManager ofTableManager) {
+        this.entryOperator = entryOperator;
+        this.diskManager = diskManager;
+        this.ofTableManager = ofTableManager;
+    }
+
+    /**
+     * 在时间预算内整理尽量多的文件
+     *
+     * @param budgetNanos 时间预算（纳秒），不大于0表示走完整棵目录树
+     * @return 整理报告
+     */
+    DefragReport run(long budgetNanos) {
+        long start = System.nanoTime();
+        FragmentationReport before = diskManager.getFragmentationReport();
+        int scanned = 0, moved = 0, blocksMoved = 0, skippedOpen = 0, skippedNoSpace = 0;
+        boolean complete = true;
+
+        int entrySize = EntryStructure.ENTRY_LENGTH.getValue();
+        BitSet visited = new BitSet(); // 本次遍历过的目录块，防止损坏的目录树成环
+        ArrayDeque<Integer> dirs = new ArrayDeque<>(); // 待遍历的目录起始盘块号
+        dirs.push(DiskManager.ROOT_DIR_POS);
+        walk:
+        while (!dirs.isEmpty()) {
+            int dirStart = dirs.pop();
+            for (int dirBlock = dirStart; dirBlock != BlockStatus.END_OF_FILE.getValue();
+                 dirBlock = entryOperator.getNextBlockIndex(dirBlock)) {
+                if (dirBlock < 0 || visited.get(dirBlock)) break;
+                visited.set(dirBlock);
+                byte[] data = entryOperator.getContentFromBlock(dirBlock);
+                for (int i = 0; i + entrySize <= data.length; i += entrySize) {
+                    if (data[i] == BlockStatus.EMPTY_ENTRY.getValue()) continue;
+                    int fileStart = Tools.readInt(data, i + EntryStructure.START_NUM_POS.getValue());
+                    if (fileStart < diskManager.getUserAreaStart() || fileStart >= diskManager.getDiskSize()) continue;
+                    if (EntryAttribute.DIRECTORY.isEqual(data[i + EntryStructure.ATTRIBUTE_POS.getValue()])) {
+                        dirs.push(fileStart);
+                        continue;
+                    }
+                    if (handled.get(fileStart)) continue;
+                    // 每次调用至少检查一个文件，预算很小时也能向前推进
+                    if (budgetNanos > 0 && scanned > 0 && System.nanoTime() - start >= budgetNanos) {
+                        complete = false;
+                        break walk;
+                    }
+                    handled.set(fileStart);
+                    scanned++;
+                    if (ofTableManager.find(fileStart) != null) {
+                        skippedOpen++;
+                        handled.clear(fileStart); // 下一次调用再看
+                        continue;
+                    }
+                    int[] chain = entryOperator.getChain(fileStart);
+                    if (isContiguous(chain)) continue;
+                    int run = entryOperator.allocateDiskRun(chain.length, chain[0]); // 留在文件原来的分配组
+                    if (run == -1) {
+                        skippedNoSpace++;
+                        continue;
+                    }
+                    if (move(dirStart, chain, run)) {
+                        handled.set(run);
+                        moved++;
+                        blocksMoved += chain.length;
+                    }
+                }
+            }
+        }
+        if (complete) handled.clear(); // 本轮结束
+        return new DefragReport(before, diskManager.getFragmentationReport(), scanned, moved, blocksMoved,
+                skippedOpen, skippedNoSpace, complete, System.nanoTime() - start);
+    }
+
+    // 链上每一块的下一块都是物理上相邻的块
+    private static boolean isContiguous(int[] chain) {
+        for (int i = 1; i < chain.length; i++) {
+            if (chain[i] != chain[i - 1] + 1) return false;
+        }
+        return true;
+    }
+
+    /**
+     * 把文件的内容复制到从run开始的连续块，换掉登记项的起始盘块号并回收原链，在同步点一起提交
+     *
+     * @param dirStart 文件所在目录的起始盘块号
+     * @param chain    文件原来的FAT链
+     * @param run      已分配的连续块的起始块号，段内已在FAT中依次相连
+     * @return 是否完成搬迁，登记项已经不存在时放弃并回收新分配的块
+     */
+    private boolean move(int dirStart, int[] chain, int run) {
+        int[] target = new int[chain.length];
+        for (int i = 0; i < target.length; i++) target[i] = run + i;
+        for (int from = 0; from < chain.length; from += COPY_BLOCKS) {
+            int to = Math.min(chain.length, from + COPY_BLOCKS);
+            byte[][] blocks = entryOperator.getContentFromChain(chain[from], to - from);
+            entryOperator.setContentToBlocks(Arrays.copyOfRange(target, from, to), blocks);
+        }
+        if (!entryOperator.replaceStartNum(dirStart, chain[0], run)) {
+            diskManager.freeChain(run);
+            diskManager.flush();
+            return false;
+        }
+        diskManager.freeChain(chain[0]);
+        diskManager.flush();
+        return true;
+    }
+}
@@ -59,21 +59,21 @@ public class DirOperator {
             return -3; // 没有多余的磁盘块来添加目录项，所以实际上和没有多余磁盘块给目录一样，返回-3
         }
 
-        // 分配一个新的磁盘块给目录
-        int dirBlockIndex = this.entryOperator.allocateDiskBlock();
+        // 分配一个新的磁盘块给目录，目录分散在不同的分配组中
+        int dirBlockIndex = this.entryOperator.allocateDiskBlock(this.entryOperator.pickDirectoryGoal());
         if (dirBlockIndex == -1) {
             return -3;
         }
         // 初始化目录
-        byte[] rootDirBlock = new byte[DiskManager.BLOCK_SIZE];
+        byte[] rootDirBlock = new byte[this.entryOperator.getBlockSize()];
         Arrays.fill(rootDirBlock, (byte) 0);
-        for (int i = 0; i < DiskManager.BLOCK_SIZE; i += 8) {
+        for (int i = 0; i < rootDirBlock.length; i += EntryStructure.ENTRY_LENGTH.getValue()) {
             rootDirBlock[i] = BlockStatus.EMPTY_ENTRY.getValue();
         }
-        this.entryOperator.setContentToEntry(dirBlockIndex, rootDirBlock);
+        this.entryOperator.setContentToDirectory(dirBlockIndex, rootDirBlock);
 
         // 创建新的目录项并添加到父目录中
-        Entry newDirEntry = new Entry(dirNameBytes, attribute, (byte) dirBlockIndex);
+        Entry newDirEntry = new Entry(dirNameBytes, attribute, dirBlockIndex);
         this.entryOperator.addEntryToDirectory(parentDirBlockIndex, freeEntryIndex, newDirEntry);
 
         return 1;
@@ -149,7 +149,7 @@ public class DirOperator {
         while (currentBlockIndex != BlockStatus.END_OF_FILE.getValue()) {
             byte[] dirBlockData = this.entryOperator.getContentFromBlock(currentBlockIndex);
             // 遍历当前磁盘块中的所有目录项
-            for (int i = 0; i < DiskManager.BLOCK_SIZE; i += EntryStructure.ENTRY_LENGTH.getValue()) {
+            for (int i = 0; i < dirBlockData.length; i += EntryStructure.ENTRY_LENGTH.getValue()) {
                 byte[] entry = Arrays.copyOfRange(dirBlockData, i, i + EntryStructure.ENTRY_LENGTH.getValue());
                 if (entry[0] != BlockStatus.EMPTY_ENTRY.getValue()) {
                     return false;
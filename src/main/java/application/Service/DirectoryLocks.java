@@ -0,0 +1,98 @@
+package application.Service;
+
+import application.Enum.BlockStatus;
+import application.Manager.DiskManager;
+
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * 目录锁表：每个目录一把读写锁，以目录的起始盘块号区分
+ * 加锁与EntryOperator.findDirBlockIndex()的查找过程相同，从根目录开始逐级进行（锁耦合）：持有上一级的锁时读出目录块，
+ * 找到下一级的盘块号后再给下一级加锁；路径上的祖先目录加共享锁，只有目标目录按需要加独占锁，
+ * 所以/a下创建文件与/b下创建目录可以同时进行，而删除或改名/a时（持有根目录的独占锁）不会有操作正在/a下面进行
+ * <p>
+ * 一次加锁多个目录（跨目录的操作）时按层次从上到下、同一层按盘块号从小到大加锁；
+ * 逐级查找本身就是从上到下加锁，所有线程的加锁顺序一致，不会死锁
+ * 某一级目录不存在时停止加锁，由具体操作报告错误
+ */
+final class DirectoryLocks {
+    private final EntryOperator entryOperator; // 目录项操作，用于逐级查找
+    private final ConcurrentHashMap<Integer, ReentrantReadWriteLock> locks = new ConcurrentHashMap<>(); // 目录起始盘块号 -> 锁
+
+    DirectoryLocks(EntryOperator entryOperator) {
+        this.entryOperator = entryOperator;
+    }
+
+    /**
+     * 一次操作持有的目录锁，按加锁的相反顺序释放
+     */
+    static final class Held {
+        private final ArrayList<Lock> held = new ArrayList<>();
+
+        void release() {
+            for (int i = held.size() - 1; i >= 0; i--) held.get(i).unlock();
+            held.clear();
+        }
+    }
+
+    /**
+     * 给目标目录及其所有祖先目录加锁
+     *
+     * @param exclusive 目标目录是否加独占锁，祖先目录总是共享锁
+     * @param dirPaths  目标目录的路径，""或"/"表示根目录
+     * @return 持有的锁
+     */
+    Held lock(boolean exclusive, String... dirPaths) {
+        String[][] components = new String[dirPaths.length][];
+        int[] blocks = new int[dirPaths.length];
+        for (int i = 0; i < dirPaths.length; i++) {
+            components[i] = split(dirPaths[i]);
+            blocks[i] = DiskManager.ROOT_DIR_POS;
+        }
+        Held held = new Held();
+        ArrayList<Integer> locked = new ArrayList<>();
+        try {
+            for (int depth = 0; ; depth++) {
+                // 这一层要加锁的目录，同一目录在几条路径上时只加一次，其中一条以它为目标且要独占时加独占锁
+                TreeMap<Integer, Boolean> level = new TreeMap<>();
+                for (int i = 0; i < dirPaths.length; i++) {
+                    if (blocks[i] == BlockStatus.END_OF_FILE.getValue() || components[i].length < depth) continue;
+                    if (depth > 0) {
+                        // 上一层的锁已经持有，读出的目录内容不会被同时修改
+                        blocks[i] = entryOperator.findChildBlockIndex(blocks[i], components[i][depth - 1]);
+                        if (blocks[i] == BlockStatus.END_OF_FILE.getValue()) continue;
+                    }
+                    boolean target = exclusive && components[i].length == depth;
+                    level.merge(blocks[i], target, Boolean::logicalOr);
+                }
+                if (level.isEmpty()) break;
+                for (Map.Entry<Integer, Boolean> entry : level.entrySet()) {
+                    if (locked.contains(entry.getKey())) continue; // 损坏的目录树中同一块出现在不同层，不重复加锁
+                    ReentrantReadWriteLock lock = locks.computeIfAbsent(entry.getKey(), k -> new ReentrantReadWriteLock());
+                    Lock l = entry.getValue() ? lock.writeLock() : lock.readLock();
+                    l.lock();
+                    held.held.add(l);
+                    locked.add(entry.getKey());
+                }
+            }
+        } catch (RuntimeException e) {
+            held.release();
+            throw e;
+        }
+        return held;
+    }
+
+    // 按'/'拆分路径，跳过空字符串
+    private static String[] split(String path) {
+        ArrayList<String> names = new ArrayList<>();
+        for (String name : path.split("/")) {
+            if (!name.isEmpty()) names.add(name);
+        }
+        return names.toArray(new String[0]);
+    }
+}
@@ -3,28 +3,44 @@ package application.Service;
 import application.Enum.BlockStatus;
 import application.Enum.EntryAttribute;
 import application.Enum.EntryStructure;
+import application.Manager.BufferPool;
 import application.Manager.DiskManager;
+import application.Manager.ReadAhead;
 import application.Entity.Entry;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
 
 /**
  * 目录项操作项，使用到读写缓冲，为文件操作类和目录操作类提供接口
  */
 public class EntryOperator {
+    private static final int CHAIN_BATCH = 16; // 没有预读时顺序读取每批合并读取的块数
+
     private final DiskManager diskManager; // 磁盘管理器
     private final int entrySize; // 每个目录项的大小
+    private final int blockSize; // 磁盘块大小
 
-    private byte[] readBuffer; // 读缓冲
-    private byte[] writeBuffer; // 写缓冲
+    private final ThreadLocal<ByteBuffer> writeView; // 写缓冲，只在修改目录项和写文件时使用；不同目录下的修改可以并发执行，每个线程一个
 
     public EntryOperator(DiskManager diskManager) {
         this.diskManager = diskManager;
         this.entrySize = EntryStructure.ENTRY_LENGTH.getValue();
-        this.readBuffer = new byte[DiskManager.BLOCK_SIZE];
-        this.writeBuffer = new byte[DiskManager.BLOCK_SIZE];
+        this.blockSize = diskManager.getBlockSize();
+        this.writeView = ThreadLocal.withInitial(() -> ByteBuffer.allocate(blockSize));
+    }
+
+    /**
+     * 获取磁盘块大小
+     *
+     * @return 每个磁盘块的字节数
+     */
+    public int getBlockSize() {
+        return blockSize;
     }
 
     /**
@@ -36,6 +52,56 @@ public class EntryOperator {
         return diskManager.allocateBlock();
     }
 
+    /**
+     * 在目标块附近分配一个新的磁盘块
+     *
+     * @param goal 目标块号，优先在它所在的分配组中分配
+     * @return 分配的磁盘块索引，如果没有空闲块则返回 -1
+     */
+    public int allocateDiskBlock(int goal) {
+        return diskManager.allocateBlock(goal);
+    }
+
+    /**
+     * 分配一段连续的磁盘块，段内已在FAT中依次相连
+     *
+     * @param length 需要的连续块数
+     * @return 起始块号，如果没有足够长的连续空闲段则返回 -1
+     */
+    public int allocateDiskRun(int length) {
+        return diskManager.allocateRun(length);
+    }
+
+    /**
+     * 在目标块附近分配一段连续的磁盘块，段内已在FAT中依次相连
+     *
+     * @param length 需要的连续块数
+     * @param goal   目标块号，优先在它所在的分配组中分配
+     * @return 起始块号，如果没有足够长的连续空闲段则返回 -1
+     */
+    public int allocateDiskRun(int length, int goal) {
+        return diskManager.allocateRun(length, goal);
+    }
+
+    /**
+     * 为新目录选择目标块，使各目录分散在不同的分配组中
+     *
+     * @return 目标块号
+     */
+    public int pickDirectoryGoal() {
+        return diskManager.pickDirectoryGoal();
+    }
+
+    /**
+     * 设置FAT中当前块的下一块
+     *
+     * @param blockIndex     当前块号
+     * @param nextBlockIndex 下一块号
+     */
+    public void linkBlock(int blockIndex, int nextBlockIndex) {
+        diskManager.setFatEntry(blockIndex, nextBlockIndex);
+    }
+
     /**
      * 释放磁盘块
      *
@@ -50,16 +116,103 @@ public class EntryOperator {
     }
 
     /**
-     * 使用读缓冲区读取指定磁盘块的内容
+     * 读取指定磁盘块的内容
      *
      * @param blockIndex 磁盘块索引
-     * @return 读取结果
+     * @return 读取结果，调用方可以随意修改
      */
     public byte[] getContentFromBlock(int blockIndex) {
-        this.readBuffer = diskManager.readBlock(blockIndex);
-        byte[] data = new byte[DiskManager.BLOCK_SIZE];
-        System.arraycopy(this.readBuffer, 0, data, 0, DiskManager.BLOCK_SIZE);
-        return data;
+        return diskManager.readBlock(blockIndex);
+    }
+
+    /**
+     * 沿FAT链读取从指定块开始的若干块，相邻的块合并为一次读
+     *
+     * @param blockIndex 起始盘块
+     * @param maxBlocks  最多读取的块数
+     * @return 各块内容，按链上的顺序排列
+     */
+    public byte[][] getContentFromChain(int blockIndex, int maxBlocks) {
+        return readBlocks(diskManager.getChain(blockIndex, maxBlocks));
+    }
+
+    // 读取若干块，相邻的块合并为一次读
+    private byte[][] readBlocks(int[] chain) {
+        byte[][] blocks = new byte[chain.length][blockSize];
+        ByteBuffer[] buffers = new ByteBuffer[chain.length];
+        for (int i = 0; i < chain.length; i++) buffers[i] = ByteBuffer.wrap(blocks[i]);
+        diskManager.readBlocks(chain, buffers);
+        return blocks;
+    }
+
+    /**
+     * 沿FAT链逐块顺序读取文件，调用方边读边处理
+     * 启用预读时每块经过预读引擎读取，处理当前块时后面的块已经在异步读入缓存；没有预读时每批合并读取CHAIN_BATCH块
+     *
+     * @param fileStart  文件起始盘块号，预读引擎按它区分不同文件的读取位置
+     * @param blockIndex 开始读取的盘块
+     * @param maxBlocks  最多读取的块数
+     * @return 各块内容，按链上的顺序
+     */
+    public Iterator<byte[]> readChain(int fileStart, int blockIndex, int maxBlocks) {
+        ReadAhead readAhead = diskManager.getReadAhead();
+        return new Iterator<byte[]>() {
+            private int next = blockIndex; // 下一块的块号
+            private int remaining = Math.min(maxBlocks, diskManager.getDiskSize()); // 还可以读取的块数，防止损坏的FAT链成环
+            private byte[][] batch = new byte[0][]; // 没有预读时本批读出的块
+            private int position; // 下一块在本批中的序号
+
+            @Override
+            public boolean hasNext() {
+                return position < batch.length || remaining > 0 && isChainBlock(next);
+            }
+
+            @Override
+            public byte[] next() {
+                if (!hasNext()) throw new NoSuchElementException();
+                if (position < batch.length) return batch[position++];
+                if (readAhead != null) {
+                    int block = next;
+                    next = diskManager.getFatEntry(block);
+                    remaining--;
+                    return readAhead.read(fileStart, block);
+                }
+                int[] chain = diskManager.getChain(next, Math.min(CHAIN_BATCH, remaining));
+                batch = readBlocks(chain);
+                position = 0;
+                next = diskManager.getFatEntry(chain[chain.length - 1]);
+                remaining -= chain.length;
+                return batch[position++];
+            }
+        };
+    }
+
+    // 与DiskManager.getChain一致：只有根目录和用户区的块可以在链上
+    private boolean isChainBlock(int blockIndex) {
+        return blockIndex == DiskManager.ROOT_DIR_POS
+                || blockIndex >= diskManager.getUserAreaStart() && blockIndex < diskManager.getDiskSize();
+    }
+
+    /**
+     * 把若干块内容依次写入一段块，相邻的块合并为一次写
+     *
+     * @param blockIndices 目标块号
+     * @param blocks       各块内容，每个正好一块
+     */
+    public void setContentToBlocks(int[] blockIndices, byte[][] blocks) {
+        ByteBuffer[] buffers = new ByteBuffer[blocks.length];
+        for (int i = 0; i < blocks.length; i++) buffers[i] = ByteBuffer.wrap(blocks[i]);
+        diskManager.writeBlocks(blockIndices, buffers);
+    }
+
+    /**
+     * 获取从指定块开始的FAT链
+     *
+     * @param blockIndex 起始盘块
+     * @return 链上的块号
+     */
+    public int[] getChain(int blockIndex) {
+        return diskManager.getChain(blockIndex, Integer.MAX_VALUE);
     }
 
     /**
@@ -68,18 +221,15 @@ public class EntryOperator {
      * @param blockIndex 登记项起始盘块
      * @return 内容字符串
      */
-    public String getAllFromEntry(byte blockIndex) {
-        byte curBlockIndex = blockIndex;
+    public String getAllFromEntry(int blockIndex) {
         StringBuilder sb = new StringBuilder();
-        while (curBlockIndex != BlockStatus.END_OF_FILE.getValue()) {
-            byte[] blockData = getContentFromBlock(curBlockIndex);
-            for (byte b : blockData) {
+        for (Iterator<byte[]> blocks = readChain(blockIndex, blockIndex, Integer.MAX_VALUE); blocks.hasNext(); ) {
+            for (byte b : blocks.next()) {
                 if (b == (byte) '#') {
                     break;
                 }
                 sb.append((char) b);
             }
-            curBlockIndex = diskManager.getFatEntry(curBlockIndex);
         }
         return sb.toString();
     }
@@ -93,23 +243,36 @@ public class EntryOperator {
      */
     public void setContentToEntry(int blockIndex, byte[] data) throws Exception {
         // 确保数据长度不超过磁盘块大小
-        if (data.length > DiskManager.BLOCK_SIZE) {
+        if (data.length > blockSize) {
             throw new IllegalArgumentException("Data exceeds block size.");
         }
 
         // 读取磁盘块的当前内容到写缓冲区
-        this.readBuffer = getContentFromBlock(blockIndex);
-        System.arraycopy(this.readBuffer, 0, this.writeBuffer, 0, DiskManager.BLOCK_SIZE);
+        byte[] writeBuffer = readToWriteBuffer(blockIndex);
 
         // 将新数据写入写缓冲区的起始位置
-        System.arraycopy(data, 0, this.writeBuffer, 0, data.length);
+        System.arraycopy(data, 0, writeBuffer, 0, data.length);
 
         // 将写缓冲区的内容写回磁盘块
-        diskManager.writeBlock(blockIndex, this.writeBuffer);
+        diskManager.writeBlock(blockIndex, writeBuffer);
+    }
+
+    /**
+     * 写入整个目录块，目录块是元数据，启用日志时与同一操作的FAT修改一起提交
+     *
+     * @param blockIndex 目录块索引
+     * @param data       目录块的完整内容
+     */
+    public void setContentToDirectory(int blockIndex, byte[] data) {
+        if (data.length != blockSize) {
+            throw new IllegalArgumentException("Directory block must be exactly one block.");
+        }
+        diskManager.writeMetadataBlock(blockIndex, data);
     }
 
     /**
      * 在磁盘管理器中查找目录的盘块号（已经存在的），支持任意长
+     * 目录块读入从缓冲区池租用的缓冲区，名字在缓冲区中直接比较，不产生垃圾对象
      *
      * @param dirAbsolutePath 目录名
      * @return 找到的目录盘块号
@@ -117,41 +280,63 @@ public class EntryOperator {
     public int findDirBlockIndex(String dirAbsolutePath) throws Exception {
         // 从根目录开始查找
         int currentBlockIndex = DiskManager.ROOT_DIR_POS;
+        BufferPool bufferPool = diskManager.getBufferPool();
+        ByteBuffer dirBlock = bufferPool.lease();
+        try {
+            // 按'/'逐段取出路径中的目录名，from和to是当前目录名在路径中的范围
+            for (int from = 0; from <= dirAbsolutePath.length(); from++) {
+                int to = dirAbsolutePath.indexOf('/', from);
+                if (to == -1) to = dirAbsolutePath.length();
+                if (to == from) continue; // 跳过空字符串，如路径以 '/' 开头
+
+                currentBlockIndex = findChildBlockIndex(currentBlockIndex, dirAbsolutePath, from, to, dirBlock);
+                from = to;
+            }
+        } finally {
+            bufferPool.release(dirBlock);
+        }
+        return currentBlockIndex;
+    }
 
-        // 按路径分割父目录名
-        String[] dirComponents = dirAbsolutePath.split("/");
-
-        // 遍历父目录路径的每个部分
-        for (String eachName : dirComponents) {
-            if (eachName.isEmpty()) continue; // 跳过空字符串，如路径以 '/' 开头
-
-            // 遍历目录块中的每个目录项
-            while (currentBlockIndex != BlockStatus.END_OF_FILE.getValue()) {
-                // 读取当前目录块的数据
-                byte[] dirBlockData = getContentFromBlock(currentBlockIndex);
-                int entryIndex = -1; // 初始化为 -1，表示未找到
-
-                for (int j = 0; j < DiskManager.BLOCK_SIZE / this.entrySize; j++) {
-                    int offset = j * this.entrySize; // 目录项的偏移量
-                    byte[] entryNameBytes = Arrays.copyOfRange(dirBlockData, offset + EntryStructure.NAME_POS.getValue(), offset + EntryStructure.NAME_END.getValue());
-
-                    // 构造目录项的文件名
-                    String entryName = new String(entryNameBytes); // + "." + new String(entryTypeBytes);
-                    if (entryName.trim().equals(eachName)) {
-                        entryIndex = j; // 找到匹配的目录项，记录索引
-                        currentBlockIndex = dirBlockData[offset + EntryStructure.START_NUM_POS.getValue()];
-                        break;
-                    }
+    /**
+     * 在目录中按名字查找下一级的盘块号，即findDirBlockIndex()逐级查找中的一步，供目录锁沿路径逐级加锁时使用
+     *
+     * @param dirBlockIndex 目录盘块号
+     * @param name          下一级的名字
+     * @return 找到的盘块号，没有找到时为-1
+     */
+    int findChildBlockIndex(int dirBlockIndex, String name) {
+        BufferPool bufferPool = diskManager.getBufferPool();
+        ByteBuffer dirBlock = bufferPool.lease();
+        try {
+            return findChildBlockIndex(dirBlockIndex, name, 0, name.length(), dirBlock);
+        } finally {
+            bufferPool.release(dirBlock);
+        }
+    }
+
+    // 遍历目录的每个磁盘块，查找名字为path[from, to)的目录项
+    private int findChildBlockIndex(int currentBlockIndex, String path, int from, int to, ByteBuffer dirBlock) {
+        // 遍历目录块中的每个目录项
+        while (currentBlockIndex != BlockStatus.END_OF_FILE.getValue()) {
+            // 读取当前目录块的数据
+            dirBlock.clear();
+            diskManager.readBlock(currentBlockIndex, dirBlock);
+
+            for (int j = 0; j < blockSize / this.entrySize; j++) {
+                int offset = j * this.entrySize; // 目录项的偏移量
+                if (fieldEquals(dirBlock, offset + EntryStructure.NAME_POS.getValue(), EntryStructure.NAME_LENGTH.getValue(), path, from, to)) {
+                    return dirBlock.getInt(offset + EntryStructure.START_NUM_POS.getValue()); // 找到匹配的目录项
                 }
-                if (entryIndex == -1) currentBlockIndex = diskManager.getFatEntry(currentBlockIndex);
-                else break;
             }
+            currentBlockIndex = diskManager.getFatEntry(currentBlockIndex);
         }
         return currentBlockIndex;
     }
 
     /**
      * 在目录中查找特定文件的目录项（已经存在的目录项），支持任意长
+     * 目录块读入从缓冲区池租用的缓冲区，名字在缓冲区中直接比较，只有找到时才创建Entry对象
      *
      * @param dirBlockIndex   目录盘块号
      * @param fileNameAndType 文件名（含Type）
@@ -159,47 +344,80 @@ public class EntryOperator {
      * @return 找到的Entry对象，如果没有找到则返回null
      */
     public Entry findEntryInDirectory(int dirBlockIndex, String fileNameAndType, byte attribute) throws Exception {
-        // 读取
-        byte[] dirBlockData = getContentFromBlock(dirBlockIndex);
-
-        // 遍历目录块中的每个目录项
-        for (int i = 0; i < DiskManager.BLOCK_SIZE; i += this.entrySize) {
-            byte[] entry = Arrays.copyOfRange(dirBlockData, i, i + this.entrySize);
-            // 跳过空目录项
-            if (entry[0] == BlockStatus.EMPTY_ENTRY.getValue()) continue;
-
-            // 目录没有type，完整文件名为name + type
-            String entryName = "";
-            if (EntryAttribute.DIRECTORY.isEqual(entry[EntryStructure.ATTRIBUTE_POS.getValue()]))
-                entryName = new String(new byte[]{entry[0], entry[1], entry[2]}).trim();
-            else
-                entryName = new String(new byte[]{entry[0], entry[1], entry[2]}).trim() + "." + new String(new byte[]{entry[3], entry[4]}).trim();
-
-//            System.out.print("entryName: " + entryName);
-//            System.out.println(" and  "+fileNameAndType);
+        // 文件的完整文件名为name + "." + type，dot是两部分的分界
+        int dot = fileNameAndType.indexOf('.');
+        BufferPool bufferPool = diskManager.getBufferPool();
+        ByteBuffer dirBlock = bufferPool.lease();
+        try {
+            // 依次查找记录该目录的每个磁盘块
+            while (dirBlockIndex != BlockStatus.END_OF_FILE.getValue()) {
+                dirBlock.clear();
+                diskManager.readBlock(dirBlockIndex, dirBlock);
+
+                // 遍历目录块中的每个目录项
+                for (int i = 0; i < blockSize; i += this.entrySize) {
+                    // 跳过空目录项
+                    if (dirBlock.get(i) == BlockStatus.EMPTY_ENTRY.getValue()) continue;
+
+                    // 目录没有type，比较name；文件比较name和type
+                    byte entryAttribute = dirBlock.get(i + EntryStructure.ATTRIBUTE_POS.getValue());
+                    boolean matched;
+                    if (EntryAttribute.DIRECTORY.isEqual(entryAttribute))
+                        matched = fieldEquals(dirBlock, i + EntryStructure.NAME_POS.getValue(), EntryStructure.NAME_LENGTH.getValue(), fileNameAndType, 0, fileNameAndType.length());
+                    else
+                        matched = dot != -1
+                                && fieldEquals(dirBlock, i + EntryStructure.NAME_POS.getValue(), EntryStructure.NAME_LENGTH.getValue(), fileNameAndType, 0, dot)
+                                && fieldEquals(dirBlock, i + EntryStructure.TYPE_POS.getValue(), EntryStructure.TYPE_LENGTH.getValue(), fileNameAndType, dot + 1, fileNameAndType.length());
+
+                    // 找到后才复制出目录项的各个字段
+                    if (matched) {
+                        byte[] entryNameBytes = new byte[EntryStructure.NAME_LENGTH.getValue()];
+                        byte[] entryTypeBytes = new byte[EntryStructure.TYPE_LENGTH.getValue()];
+                        dirBlock.position(i + EntryStructure.NAME_POS.getValue());
+                        dirBlock.get(entryNameBytes);
+                        dirBlock.position(i + EntryStructure.TYPE_POS.getValue());
+                        dirBlock.get(entryTypeBytes);
+                        int startNum = dirBlock.getInt(i + EntryStructure.START_NUM_POS.getValue());
+                        int diskBlockLength = dirBlock.getInt(i + EntryStructure.DISK_BLOCK_LENGTH_POS.getValue());
+                        if (EntryAttribute.DIRECTORY.isEqual(attribute))
+                            return new Entry(entryNameBytes, entryAttribute, startNum);
+                        else
+                            return new Entry(entryNameBytes, entryTypeBytes, entryAttribute, startNum, diskBlockLength);
+                    }
+                }
 
-            // 比较
-            if (entryName.equals(fileNameAndType)) {
-                byte[] entryNameBytes = new byte[]{entry[0], entry[1], entry[2]};
-                byte[] entryTypeBytes = new byte[2];
-                entryTypeBytes[0] = entry[3];
-                entryTypeBytes[1] = entry[4];
-                if (EntryAttribute.DIRECTORY.isEqual(attribute))
-                    return new Entry(entryNameBytes, entry[5], entry[6]);
-                else
-                    return new Entry(entryNameBytes, entryTypeBytes, entry[5], entry[6], entry[7]);
+                // 未找到则获取记录该目录的下一个磁盘块号，查找后续目录块
+                dirBlockIndex = diskManager.getFatEntry(dirBlockIndex);
             }
+        } finally {
+            bufferPool.release(dirBlock);
         }
 
-        // 如果未找到目录项且该目录已经找完，返回 null
-        if (diskManager.getFatEntry(dirBlockIndex) == BlockStatus.END_OF_FILE.getValue())
-            return null;
+        // 该目录已经找完，返回 null
+        return null;
+    }
 
-            // 否则，获取记录该目录的下一个磁盘块号，查找后续目录块号
-        else {
-            dirBlockIndex = diskManager.getFatEntry(dirBlockIndex);
-            return findEntryInDirectory(dirBlockIndex, fileNameAndType, attribute);
+    /**
+     * 比较目录项中的一个字段去掉首尾空白后是否等于s中[from, to)的部分，与new String(...).trim().equals(...)等价，但不创建字符串
+     *
+     * @param block  目录块
+     * @param offset 字段在块中的偏移
+     * @param length 字段长度
+     * @param s      要比较的字符串
+     * @param from   比较部分的起始下标
+     * @param to     比较部分的结束下标（不含）
+     * @return 是否相等
+     */
+    private static boolean fieldEquals(ByteBuffer block, int offset, int length, String s, int from, int to) {
+        int start = offset;
+        int end = offset + length;
+        while (start < end && (block.get(start) & 0xff) <= ' ') start++;
+        while (end > start && (block.get(end - 1) & 0xff) <= ' ') end--;
+        if (end - start != to - from) return false;
+        for (int i = start; i < end; i++) {
+            if ((block.get(i) & 0xff) != s.charAt(from + i - start)) return false;
         }
+        return true;
     }
 
     /**
@@ -210,18 +428,26 @@ public class EntryOperator {
      */
     public void addEntryToDirectory(int dirBlockIndex, int freeEntryIndex, Entry newEntry) throws Exception {
         // 读取目录项磁盘块的原数据到写缓冲
-        this.writeBuffer = getContentFromBlock(dirBlockIndex);
+        byte[] writeBuffer = readToWriteBuffer(dirBlockIndex);
 
         // 把需要登记的数据写到写缓冲区对应freeEntryIndex的位置
         int entryOffset = freeEntryIndex * this.entrySize;
-        System.arraycopy(newEntry.getName(), 0, this.writeBuffer, entryOffset + EntryStructure.NAME_POS.getValue(), EntryStructure.NAME_LENGTH.getValue());
-        System.arraycopy(newEntry.getType(), 0, this.writeBuffer, entryOffset + EntryStructure.TYPE_POS.getValue(), EntryStructure.TYPE_LENGTH.getValue());
-        this.writeBuffer[entryOffset + EntryStructure.ATTRIBUTE_POS.getValue()] = newEntry.getAttribute(); // 文件属性
-        this.writeBuffer[entryOffset + EntryStructure.START_NUM_POS.getValue()] = newEntry.getStartNum(); // 起始盘块号
-        this.writeBuffer[entryOffset + EntryStructure.DISK_BLOCK_LENGTH_POS.getValue()] = newEntry.getDiskBlockLength(); // 长度
+        System.arraycopy(newEntry.getName(), 0, writeBuffer, entryOffset + EntryStructure.NAME_POS.getValue(), EntryStructure.NAME_LENGTH.getValue());
+        System.arraycopy(newEntry.getType(), 0, writeBuffer, entryOffset + EntryStructure.TYPE_POS.getValue(), EntryStructure.TYPE_LENGTH.getValue());
+        writeBuffer[entryOffset + EntryStructure.ATTRIBUTE_POS.getValue()] = newEntry.getAttribute(); // 文件属性
+        Tools.writeInt(writeBuffer, entryOffset + EntryStructure.START_NUM_POS.getValue(), newEntry.getStartNum()); // 起始盘块号
+        Tools.writeInt(writeBuffer, entryOffset + EntryStructure.DISK_BLOCK_LENGTH_POS.getValue(), newEntry.getDiskBlockLength()); // 长度
 
         // 将更新后的数据写回磁盘
-        diskManager.writeBlock(dirBlockIndex, this.writeBuffer);
+        diskManager.writeMetadataBlock(dirBlockIndex, writeBuffer);
+    }
+
+    // 把磁盘块直接读进当前线程的写缓冲区
+    private byte[] readToWriteBuffer(int blockIndex) {
+        ByteBuffer view = writeView.get();
+        view.clear();
+        diskManager.readBlock(blockIndex, view);
+        return view.array();
     }
 
     /**
@@ -235,7 +461,7 @@ public class EntryOperator {
         byte[] dirBlockData = getContentFromBlock(curDirBlockIndex);
 
         // 遍历目录项以找到第一个空闲项
-        for (int index = 0; index < DiskManager.BLOCK_SIZE / this.entrySize; index++) {
+        for (int index = 0; index < blockSize / this.entrySize; index++) {
             int offset = index * this.entrySize; // 计算目录项的偏移量
             byte[] entry = Arrays.copyOfRange(dirBlockData, offset, offset + this.entrySize);
 
@@ -252,14 +478,14 @@ public class EntryOperator {
 
         // 如果未找到空闲项，检查是否需要为父目录分配新盘块
         if (diskManager.getFatEntry(curDirBlockIndex) == BlockStatus.END_OF_FILE.getValue()) {
-            // 分配新盘块
-            int newBlockIndex = diskManager.allocateBlock();
+            // 分配新盘块，放在目录原有的块附近
+            int newBlockIndex = diskManager.allocateBlock(curDirBlockIndex);
             if (newBlockIndex == -1) {
                 return new int[]{-1, -1}; // 没有空闲的位置添加新目录项
             }
 
             // 更新FAT表，指向新分配的盘块
-            diskManager.setFatEntry(curDirBlockIndex, (byte) newBlockIndex);
+            diskManager.setFatEntry(curDirBlockIndex, newBlockIndex);
             // 初始化新目录盘块
             diskManager.initDirBlock(newBlockIndex);
 
@@ -289,7 +515,7 @@ public class EntryOperator {
         while (currentBlockIndex != BlockStatus.END_OF_FILE.getValue()) {
             byte[] dirBlockData = getContentFromBlock(currentBlockIndex);
             // 遍历该磁盘块下的所有登记项
-            for (int i = 0; i < DiskManager.BLOCK_SIZE; i += EntryStructure.ENTRY_LENGTH.getValue()) {
+            for (int i = 0; i < blockSize; i += EntryStructure.ENTRY_LENGTH.getValue()) {
                 // 取得磁盘块内容
                 byte[] entry = Arrays.copyOfRange(dirBlockData, i, i + EntryStructure.ENTRY_LENGTH.getValue());
                 if (entry[0] != BlockStatus.EMPTY_ENTRY.getValue()) {
@@ -297,8 +523,8 @@ public class EntryOperator {
                     byte[] name = Arrays.copyOfRange(entry, EntryStructure.NAME_POS.getValue(), EntryStructure.NAME_END.getValue());
                     byte[] type = Arrays.copyOfRange(entry, EntryStructure.TYPE_POS.getValue(), EntryStructure.TYPE_END.getValue());
                     byte attribute = entry[EntryStructure.ATTRIBUTE_POS.getValue()];
-                    byte startNum = entry[EntryStructure.START_NUM_POS.getValue()];
-                    byte diskBlockLength = entry[EntryStructure.DISK_BLOCK_LENGTH_POS.getValue()];
+                    int startNum = Tools.readInt(entry, EntryStructure.START_NUM_POS.getValue());
+                    int diskBlockLength = Tools.readInt(entry, EntryStructure.DISK_BLOCK_LENGTH_POS.getValue());
 
                     // 构建登记项对象，并加入到list
                     Entry newEntry = null;
@@ -328,7 +554,7 @@ public class EntryOperator {
         //从父目录中删除目录项
         byte[] dirBlockData = getContentFromBlock(parentDirBlockIndex);
         int entryIndex = -1; // 初始化为-1，表示未找到
-        for (int i = 0; i < DiskManager.BLOCK_SIZE; i += EntryStructure.ENTRY_LENGTH.getValue()) {
+        for (int i = 0; i < blockSize; i += EntryStructure.ENTRY_LENGTH.getValue()) {
             byte[] entry = Arrays.copyOfRange(dirBlockData, i, i + EntryStructure.ENTRY_LENGTH.getValue());
 
             // 获取目录项名称,需要判断是目录还是文件
@@ -345,14 +571,10 @@ public class EntryOperator {
         if (entryIndex != -1) {
             // 删除目录项，将其置为空闲
             System.arraycopy(new byte[]{BlockStatus.EMPTY_ENTRY.getValue()}, 0, dirBlockData, entryIndex * EntryStructure.ENTRY_LENGTH.getValue(), 1);
-            setContentToEntry(parentDirBlockIndex, dirBlockData);
+            setContentToDirectory(parentDirBlockIndex, dirBlockData);
 
-            // 回收磁盘块
-            while (dirBlockIndex != BlockStatus.END_OF_FILE.getValue()) {
-                int nextBlockIndex = diskManager.getFatEntry(dirBlockIndex);
-                diskManager.setFatEntry(dirBlockIndex, BlockStatus.FREE.getValue());
-                dirBlockIndex = nextBlockIndex;
-            }
+            // 回收磁盘块，整条链一次批量更新FAT
+            diskManager.freeChain(dirBlockIndex);
         } else {
             // 其实是不会到这里的，因为删除目录项的时候，已经判断了该登记项是否存在
             System.out.println("Entry not found: " + name);
@@ -396,7 +618,7 @@ public class EntryOperator {
         String fileNameAndType = new String(targetEntry.getName()).trim() +"."+ new String(targetEntry.getType()).trim();
 
         // 遍历目录块中的每个目录项
-        for (int entryOffset = 0; entryOffset < DiskManager.BLOCK_SIZE; entryOffset += this.entrySize) {
+        for (int entryOffset = 0; entryOffset < blockSize; entryOffset += this.entrySize) {
             byte[] entry = Arrays.copyOfRange(dirBlockData, entryOffset, entryOffset + this.entrySize);
             // 跳过空目录项
             if (entry[0] == BlockStatus.EMPTY_ENTRY.getValue()) continue;
@@ -409,20 +631,47 @@ public class EntryOperator {
                 entryName = new String(new byte[]{entry[0], entry[1], entry[2]}).trim() + "." + new String(new byte[]{entry[3], entry[4]}).trim();
 
             if (entryName.equals(fileNameAndType)) {
-                this.writeBuffer = Arrays.copyOf(dirBlockData, DiskManager.BLOCK_SIZE);
-                System.arraycopy(targetEntry.getName(), 0, this.writeBuffer, entryOffset + EntryStructure.NAME_POS.getValue(), EntryStructure.NAME_LENGTH.getValue());
-                System.arraycopy(targetEntry.getType(), 0, this.writeBuffer, entryOffset + EntryStructure.TYPE_POS.getValue(), EntryStructure.TYPE_LENGTH.getValue());
-                this.writeBuffer[entryOffset + EntryStructure.ATTRIBUTE_POS.getValue()] = targetEntry.getAttribute(); // 文件属性
-                this.writeBuffer[entryOffset + EntryStructure.START_NUM_POS.getValue()] = targetEntry.getStartNum(); // 起始盘块号
-                this.writeBuffer[entryOffset + EntryStructure.DISK_BLOCK_LENGTH_POS.getValue()] = targetEntry.getDiskBlockLength(); // 长度
+                byte[] writeBuffer = writeView.get().array();
+                System.arraycopy(dirBlockData, 0, writeBuffer, 0, blockSize);
+                System.arraycopy(targetEntry.getName(), 0, writeBuffer, entryOffset + EntryStructure.NAME_POS.getValue(), EntryStructure.NAME_LENGTH.getValue());
+                System.arraycopy(targetEntry.getType(), 0, writeBuffer, entryOffset + EntryStructure.TYPE_POS.getValue(), EntryStructure.TYPE_LENGTH.getValue());
+                writeBuffer[entryOffset + EntryStructure.ATTRIBUTE_POS.getValue()] = targetEntry.getAttribute(); // 文件属性
+                Tools.writeInt(writeBuffer, entryOffset + EntryStructure.START_NUM_POS.getValue(), targetEntry.getStartNum()); // 起始盘块号
+                Tools.writeInt(writeBuffer, entryOffset + EntryStructure.DISK_BLOCK_LENGTH_POS.getValue(), targetEntry.getDiskBlockLength()); // 长度
 
                 // 将更新后的数据写回磁盘
-                diskManager.writeBlock(parentDirBlockIndex, this.writeBuffer);
+                diskManager.writeMetadataBlock(parentDirBlockIndex, writeBuffer);
                 break;
             }
         }
     }
 
+    /**
+     * 把目录中起始盘块号为oldStartNum的登记项改为从newStartNum开始，登记项的其他字段不变
+     * 目录块作为元数据写入，启用日志时与同一操作的FAT修改一起提交
+     *
+     * @param dirBlockIndex 目录盘块号
+     * @param oldStartNum   原起始盘块号
+     * @param newStartNum   新起始盘块号
+     * @return 是否找到并修改了登记项
+     */
+    public boolean replaceStartNum(int dirBlockIndex, int oldStartNum, int newStartNum) {
+        // 依次查找记录该目录的每个磁盘块
+        while (dirBlockIndex != BlockStatus.END_OF_FILE.getValue()) {
+            byte[] writeBuffer = readToWriteBuffer(dirBlockIndex);
+            for (int i = 0; i < blockSize; i += this.entrySize) {
+                if (writeBuffer[i] == BlockStatus.EMPTY_ENTRY.getValue()) continue;
+                if (Tools.readInt(writeBuffer, i + EntryStructure.START_NUM_POS.getValue()) == oldStartNum) {
+                    Tools.writeInt(writeBuffer, i + EntryStructure.START_NUM_POS.getValue(), newStartNum);
+                    diskManager.writeMetadataBlock(dirBlockIndex, writeBuffer);
+                    return true;
+                }
+            }
+            dirBlockIndex = diskManager.getFatEntry(dirBlockIndex);
+        }
+        return false;
+    }
+
     /**
      * 获取登记项的磁盘块中偏移
      * @param parentDirBlockIndex
@@ -435,7 +684,7 @@ public class EntryOperator {
         String fileNameAndType = new String(targetEntry.getName()).trim() +"."+ new String(targetEntry.getType()).trim();
 
         // 遍历目录块中的每个目录项
-        for (int entryOffset = 0; entryOffset < DiskManager.BLOCK_SIZE; entryOffset += this.entrySize) {
+        for (int entryOffset = 0; entryOffset < blockSize; entryOffset += this.entrySize) {
             byte[] entry = Arrays.copyOfRange(dirBlockData, entryOffset, entryOffset + this.entrySize);
             // 跳过空目录项
             if (entry[0] == BlockStatus.EMPTY_ENTRY.getValue()) continue;
@@ -6,14 +6,16 @@ import application.Entity.Pointer;
 import application.Enum.BlockStatus;
 import application.Enum.EntryAttribute;
 import application.Enum.EntryStructure;
-import application.Manager.DiskManager;
 import application.Manager.OFTableManager;
 
+import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
+import java.util.Iterator;
 import java.util.Objects;
 
 /**
  * 文件操作，提供文件的操作接口：创建文件、读文件、写文件、关闭文件、删除文件等
+ * 有压缩属性的文件写入时先压缩再分配和写入磁盘块，读取和显示时边读边解压，见Compression
  */
 public class FileOperator {
     private final EntryOperator entryOperator; // 目录项操作
@@ -73,8 +75,8 @@ public class FileOperator {
             return -3; // 没有多余的磁盘块来添加目录项，所以实际上和没有多余磁盘块给文件一样，返回-3
         }
 
-        // 分配一个新的磁盘块给文件
-        int fileBlockIndex = this.entryOperator.allocateDiskBlock();
+        // 分配一个新的磁盘块给文件，放在登记项所在的目录块附近
+        int fileBlockIndex = this.entryOperator.allocateDiskBlock(parentDirBlockIndex);
         if (fileBlockIndex == -1) {
             return -3;
         }
@@ -82,7 +84,7 @@ public class FileOperator {
         this.entryOperator.setContentToEntry(fileBlockIndex, new byte[]{BlockStatus.EOF.getValue()});
 
         // 创建新的目录项并添加到父目录中
-        Entry newFileEntry = new Entry(fileNameBytes, fileType, attribute, (byte) fileBlockIndex, (byte) 1);
+        Entry newFileEntry = new Entry(fileNameBytes, fileType, attribute, fileBlockIndex, 1);
         this.entryOperator.addEntryToDirectory(parentDirBlockIndex, freeEntryIndex, newFileEntry);
 
         // 最后填写已打开文件表
@@ -117,7 +119,7 @@ public class FileOperator {
             return 0;
         }
         OFTLE ofTle = new OFTLE(fileAbsolutePath, EntryAttribute.NORMAL_FILE.getValue(),
-                entryStartNum, entryEndNum, bytesLength, operateFlag);
+                entryStartNum, entryEndNum, bytesLength, this.entryOperator.getBlockSize(), operateFlag);
 
         return this.ofTableManager.add(ofTle);
     }
@@ -146,15 +148,26 @@ public class FileOperator {
             throw new Exception("File is not opened in read mode");
         }
 
+        // 压缩文件从解压后的读位置开始解压所需长度
+        if (EntryAttribute.COMPRESSED.isEqual(Byte.parseByte(fileInfo[6]))) {
+            byte[] plain = Compression.decompress(chainBlocks(entryStartNum), ofTle.getPlainRead(), readLength);
+            ofTle.setPlainRead(ofTle.getPlainRead() + plain.length);
+            return new String(plain).trim();
+        }
+
         // 从已打开文件表中读出读指针，并从这个位置上读出所需长度
         Pointer readPointer = ofTle.getRead();
         byte[] fileContent = new byte[readLength];
         int bytesRead = 0;
         int curBlockIndex = readPointer.getdNum();
+        // 从读指针所在的块开始顺序读取本次需要的磁盘块，后面的块由预读提前读入
+        int blockSize = this.entryOperator.getBlockSize();
+        int needBlocks = (readPointer.getbNum() + readLength + blockSize - 1) / blockSize;
+        Iterator<byte[]> blocks = this.entryOperator.readChain(entryStartNum, curBlockIndex, needBlocks);
         // 读取文件内容
         while (bytesRead < readLength) {
-            byte[] blockData = this.entryOperator.getContentFromBlock(curBlockIndex);
-            for (; readPointer.getbNum() < blockData.length; readPointer.setbNum(readPointer.getbNum() + 1)) {
+            byte[] blockData = blocks.next();
+            for (; readPointer.getbNum() < blockData.length && bytesRead < readLength; readPointer.setbNum(readPointer.getbNum() + 1)) {
                 if (blockData[readPointer.getbNum()] == BlockStatus.EOF.getValue()) {
                     return new String(fileContent).trim();
                 }
@@ -196,6 +209,12 @@ public class FileOperator {
             throw new Exception("File is not opened in write mode.");
         }
 
+        // 压缩文件先压缩成帧，按压缩后的长度分配和写入磁盘块
+        if (EntryAttribute.COMPRESSED.isEqual(Byte.parseByte(fileInfo[6]))) {
+            writeData = Compression.compress(writeData, writeLength);
+            writeLength = writeData.length;
+        }
+
         // 获取写指针
         Pointer writePointer = ofTle.getWrite();
         int writePointerBNum = writePointer.getbNum();
@@ -219,11 +238,18 @@ public class FileOperator {
 
             // 检查是否需要移动到下一个块
             if (writePointerBNum >= blockData.length) {
-                curBlockIndex = this.entryOperator.getNextBlockIndex(curBlockIndex);
-                if (curBlockIndex == -1) {
-                    // 如果没有下一个块，需要请求新的块
-                    curBlockIndex = this.entryOperator.allocateDiskBlock();
+                int nextBlockIndex = this.entryOperator.getNextBlockIndex(curBlockIndex);
+                if (nextBlockIndex == -1) {
+                    // 如果没有下一个块，按剩余数据量请求一段连续的新块，找不到连续段时退回单块分配
+                    int blockSize = blockData.length;
+                    int needBlocks = Math.max(1, (writeLength - bytesWritten + blockSize - 1) / blockSize);
+                    nextBlockIndex = this.entryOperator.allocateDiskRun(needBlocks, curBlockIndex);
+                    if (nextBlockIndex == -1) nextBlockIndex = this.entryOperator.allocateDiskBlock(curBlockIndex);
+                    if (nextBlockIndex == -1) throw new Exception("Disk is full.");
+                    // 新块接到文件的FAT链上
+                    this.entryOperator.linkBlock(curBlockIndex, nextBlockIndex);
                 }
+                curBlockIndex = nextBlockIndex;
                 writePointerBNum = 0; // 重置为新块的开始位置
             }
         }
@@ -280,6 +306,7 @@ public class FileOperator {
         targetOftle.setRead(readPointer);
         // 从已打开文件表中删除对应项
         this.ofTableManager.remove(targetOftle);
+        // 关闭文件是ON_CLOSE模式的刷盘点，由FileSystem在释放目录锁后与其他同步点一样串行执行
         return 1;
     }
 
@@ -343,10 +370,25 @@ public class FileOperator {
         }
 
         // 从目录中取出文件的起始盘块号
-        byte startBlockIndex = fileEntry.getStartNum();
+        int startBlockIndex = fileEntry.getStartNum();
+        if (fileEntry.isCompressed()) {
+            // 与getAllFromEntry一样每个字节对应一个字符
+            return new String(Compression.decompress(chainBlocks(startBlockIndex), 0, Integer.MAX_VALUE),
+                    StandardCharsets.ISO_8859_1);
+        }
         return this.entryOperator.getAllFromEntry(startBlockIndex);
     }
 
+    /**
+     * 从文件开头按FAT链的顺序逐块读出磁盘块，解压时只读到需要的位置
+     *
+     * @param startBlockIndex 文件的起始盘块号
+     * @return 磁盘块内容
+     */
+    private Iterator<byte[]> chainBlocks(int startBlockIndex) {
+        return this.entryOperator.readChain(startBlockIndex, startBlockIndex, Integer.MAX_VALUE);
+    }
+
 
     /**
      * 改变文件属性
@@ -373,8 +415,9 @@ public class FileOperator {
             return -6;
         }
 
-        // 改变文件属性
-        existingEntry.setAttribute(newAttribute);
+        // 改变文件属性，压缩属性决定了磁盘上内容的格式，保持创建时的设置
+        byte compressed = (byte) (existingEntry.getAttribute() & EntryAttribute.COMPRESSED.getValue());
+        existingEntry.setAttribute((byte) (newAttribute & ~EntryAttribute.COMPRESSED.getValue() | compressed));
         this.entryOperator.setEntryToDirectory(parentDirBlockIndex, existingEntry);
         return 1;
     }
@@ -423,7 +466,7 @@ public class FileOperator {
         byte[] tmp = this.entryOperator.getContentFromBlock(parentDirBlockIndex);
         System.arraycopy(newFileNameBytes, 0, tmp, entryOffset, newFileNameBytes.length);
         System.arraycopy(newFileType, 0, tmp, entryOffset + EntryStructure.TYPE_POS.getValue(), newFileType.length);
-        this.entryOperator.setContentToEntry(parentDirBlockIndex, tmp);
+        this.entryOperator.setContentToDirectory(parentDirBlockIndex, tmp);
         return 1;
     }
 
@@ -447,24 +490,20 @@ public class FileOperator {
         );
 
         byte attribute = fileEntry.getAttribute();
-        int blockNum = fileEntry.getStartNum();
-        int endNum = blockNum;
         int byteLength;
-        int diskBlockLength = 0;
-        // 遍历所有的磁盘块，记录总盘块数，找出最后一个磁盘块
-        while (blockNum != -1) {
-            diskBlockLength++;
-            endNum = blockNum;      // 最后一个盘块号
-            blockNum = this.entryOperator.getNextBlockIndex(blockNum);
-        }
+        // 取出整条FAT链，记录总盘块数，找出最后一个磁盘块
+        int[] chain = this.entryOperator.getChain(fileEntry.getStartNum());
+        int diskBlockLength = chain.length;
+        int endNum = chain[chain.length - 1]; // 最后一个盘块号
 
-        // 计算最后一个盘块的实际字节长度，总字节数 = (总盘块数 - 1) * 64 + 最后一个盘块的字节数
+        // 计算最后一个盘块的实际字节长度，总字节数 = (总盘块数 - 1) * 磁盘块大小 + 最后一个盘块的字节数
+        int blockSize = this.entryOperator.getBlockSize();
         int lastDiskByteLength = 0;
         byte[] blockData = this.entryOperator.getContentFromBlock(endNum);
-        for (int i = 0; i < DiskManager.BLOCK_SIZE; i++)
+        for (int i = 0; i < blockSize; i++)
             if (blockData[i] == BlockStatus.EOF.getValue()) break;
             else lastDiskByteLength++;
-        byteLength = (diskBlockLength - 1) * DiskManager.BLOCK_SIZE + lastDiskByteLength;
+        byteLength = (diskBlockLength - 1) * blockSize + lastDiskByteLength;
 
         if (parentDirName.isEmpty()) {
             parentDirName = "/";
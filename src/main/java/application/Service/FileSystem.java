@@ -1,16 +1,30 @@
 package application.Service;
 
+import application.Entity.DefragReport;
+import application.Entity.DiskConfig;
+import application.Enum.RelocationResult;
 import application.Manager.DiskManager;
 import application.Manager.OFTableManager;
+import application.Manager.Scrubber;
 
 import java.io.BufferedWriter;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 /**
  * 文件系统，处理文件和目录的操作
+ * 每个修改类操作结束时是一个同步点，调用diskManager.flush()写回该操作产生的FAT脏块；
+ * 启用日志时该操作修改的FAT块和目录块作为一个事务提交，崩溃后要么全部生效要么全部不生效
+ * 可以被多个线程同时使用，锁分三层：
+ * 全局锁：碎片整理、坏块搬迁、快照和卸载涉及整个卷，持有写锁独占执行，文件和目录操作都持有读锁；
+ * 目录锁（DirectoryLocks）：沿路径从根目录逐级加锁，祖先目录共享，修改类操作对要修改的目录（文件所在目录、新建或删除的目录的父目录）独占，
+ * 读操作（getFileInfo、readFile、typeFile、listDir等）对目标目录共享，不同目录下的修改可以同时进行；
+ * 提交锁：修改类操作进行期间持有读锁，结束时先释放目录锁，再在写锁下执行同步点，提交的事务中不会有只做了一半的修改
+ * readFile会打开文件，修改的是已打开文件表（自身加锁）和该文件自己的读指针，不改动磁盘，所以只需要共享锁
  */
 public class FileSystem {// 目录项操作类
     private final FileOperator fileOperator; //文件操作类
@@ -19,17 +33,44 @@ public class FileSystem {// 目录项操作类
 
     private final ArrayList<String> currentPath; // 用于记录当前路径
 
-    private final DiskManager debug_diskManager;// 删
+    private final DiskManager diskManager; // 磁盘管理器
+    private final Defragmenter defragmenter; // 在线碎片整理，记录本轮的进度
+    private final ReentrantReadWriteLock lock; // 全局锁，整个卷的操作独占、文件和目录操作共享；快照上的文件系统与所属的文件系统共用
+    private final Lock readerLock; // 读操作持有的全局锁：普通挂载时为读锁，快照上为所属卷的写锁
+    private final DirectoryLocks dirLocks; // 目录锁
+    private final ReentrantReadWriteLock commitLock = new ReentrantReadWriteLock(); // 提交锁，修改类操作进行期间共享、同步点独占
 
     // 初始化文件目录操作类
     public FileSystem() {
+        this(new DiskConfig());
+    }
+
+    // 按指定的磁盘配置初始化文件目录操作类
+    public FileSystem(DiskConfig config) {
         //文件系统初始化，包括建立文件模拟磁盘、初始化磁盘、初始化根目录为空目录项
-        DiskManager disk = new DiskManager();
-        this.debug_diskManager = disk; //模拟磁盘管理器
+        this(new DiskManager(config));
+    }
+
+    // 在已挂载的磁盘上初始化文件目录操作类，例如DiskManager.openSnapshot()得到的只读快照
+    public FileSystem(DiskManager disk) {
+        this(disk, new ReentrantReadWriteLock(), false);
+    }
+
+    // 快照视图与所属的卷共用快照表和设备，读快照时卷不能同时被修改（写时复制与读取快照块不能交错），
+    // 所以共用同一把全局锁，快照上的读操作持有写锁
+    private FileSystem(DiskManager disk, ReentrantReadWriteLock lock, boolean snapshotView) {
+        this.diskManager = disk; //模拟磁盘管理器
+        this.lock = lock;
+        this.readerLock = snapshotView ? lock.writeLock() : lock.readLock();
         EntryOperator entryOperator = new EntryOperator(disk); // 目录项操作类
+        this.dirLocks = new DirectoryLocks(entryOperator);
         OFTableManager ofTableManager = new OFTableManager(); // 打开文件表管理类
         this.fileOperator = new FileOperator(entryOperator, ofTableManager); // 文件操作类
         this.dirOperator = new DirOperator(entryOperator); // 目录操作类
+        this.defragmenter = new Defragmenter(entryOperator, disk, ofTableManager); // 碎片整理
+        if (!disk.isReadOnly()) {
+            disk.setOpenFileCheck(start -> ofTableManager.find(start) != null); // 巡检搬迁坏块时跳过打开的文件
+        }
 
         this.currentPath = new ArrayList<>(); // 默认从根目录开始
         this.LOG_FILE_NAME = "log.txt"; // 日志文件名
@@ -41,11 +82,216 @@ public class FileSystem {// 目录项操作类
     }
 
     public void debug_printDisk() {
-        debug_diskManager.debug_printDisk();
+        diskManager.debug_printDisk();
     }
 
     public void debug_rootDir() {
-        debug_diskManager.debug_rootDir();
+        diskManager.debug_rootDir();
+    }
+
+    /**
+     * 获取已挂载的磁盘，供磁盘状态界面读取状态；修改磁盘的操作（坏块、巡检）要经过本类
+     *
+     * @return 磁盘管理器
+     */
+    public DiskManager getDiskManager() {
+        return diskManager;
+    }
+
+    /**
+     * 为当前磁盘创建只读快照，创建时不复制数据
+     *
+     * @param name 快照名，不超过12字节
+     * @return 错误信息
+     */
+    public String createSnapshot(String name) {
+        lock.writeLock().lock();
+        try {
+            try {
+                diskManager.createSnapshot(name);
+                return "1";
+            } catch (Exception e) {
+                Tools.logError("Error creating snapshot: " + e.getMessage(), this.LOG_FILE_NAME); //输出错误信息到日志文件
+                return "ERROR: Unknown error occurred.";
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 删除快照
+     *
+     * @param name 快照名
+     * @return 错误信息
+     */
+    public String deleteSnapshot(String name) {
+        lock.writeLock().lock();
+        try {
+            try {
+                diskManager.deleteSnapshot(name);
+                return "1";
+            } catch (Exception e) {
+                Tools.logError("Error deleting snapshot: " + e.getMessage(), this.LOG_FILE_NAME); //输出错误信息到日志文件
+                return "ERROR: Unknown error occurred.";
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 以只读方式挂载快照，修改类操作都会返回错误；本文件系统卸载后快照也不能再使用
+     *
+     * @param name 快照名
+     * @return 快照上的文件系统
+     */
+    public FileSystem openSnapshot(String name) {
+        lock.readLock().lock();
+        try {
+            return new FileSystem(diskManager.openSnapshot(name), lock, true);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 在线碎片整理：把FAT链不连续的文件搬到连续的空闲块，跳过正在打开的文件
+     * 按时间预算增量执行，预算用完时返回，下一次调用从上次停下的地方继续
+     *
+     * @param budgetMillis 时间预算（毫秒），不大于0表示整理整个目录树
+     * @return 整理报告，包括整理前后的碎片情况
+     */
+    public DefragReport defragment(long budgetMillis) {
+        lock.writeLock().lock();
+        try {
+            if (diskManager.isReadOnly()) {
+                throw new IllegalStateException("Cannot defragment a read-only file system");
+            }
+            return defragmenter.run(budgetMillis * 1_000_000);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 启动后台巡检，已经在运行时直接返回；发现的坏块在巡检线程中由relocateBlock()搬迁
+     *
+     * @param blocksPerSecond 每秒最多读取的块数
+     * @return 巡检
+     */
+    public Scrubber startScrubber(int blocksPerSecond) {
+        return diskManager.startScrubber(blocksPerSecond, this::relocateBlock);
+    }
+
+    /**
+     * 搬迁一个坏块：持有全局写锁，搬迁对FAT、目录块和登记项起始盘块号的修改作为一个事务提交
+     * 目录的起始块被搬迁后目录锁表中以原块号区分的锁不再使用，持有写锁时没有线程持有目录锁
+     *
+     * @param index 坏块号
+     * @return 搬迁结果
+     */
+    public RelocationResult relocateBlock(int index) {
+        lock.writeLock().lock();
+        try {
+            RelocationResult result = diskManager.relocateBlock(index);
+            diskManager.flush();
+            return result;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 随机损坏一个非系统区磁盘块，用于演示坏块的发现和修复
+     */
+    public void crippleBlock() {
+        lock.writeLock().lock();
+        try {
+            diskManager.crippleBlock();
+            diskManager.flush();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 修复所有坏块：被文件引用的坏块先搬迁，再恢复为空闲，每个坏块的修改作为一个事务提交
+     */
+    public void fixDisk() {
+        lock.writeLock().lock();
+        try {
+            diskManager.fixDisk();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 卸载文件系统，关闭磁盘
+     * 先停止后台巡检再取全局写锁，巡检线程可能正在等待写锁搬迁坏块
+     */
+    public void close() {
+        diskManager.stopScrubber();
+        lock.writeLock().lock();
+        try {
+            diskManager.close();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // 读操作开始：持有全局锁的读锁，目标目录及其祖先目录加共享锁
+    private DirectoryLocks.Held beginRead(String dirPath) {
+        readerLock.lock();
+        try {
+            return dirLocks.lock(false, dirPath);
+        } catch (RuntimeException e) {
+            readerLock.unlock();
+            throw e;
+        }
+    }
+
+    private void endRead(DirectoryLocks.Held held) {
+        held.release();
+        readerLock.unlock();
+    }
+
+    // 修改类操作开始：持有全局锁的读锁，要修改的目录加独占锁、祖先目录加共享锁，最后持有提交锁的读锁
+    // 提交锁在目录锁之后获取，等待目录锁的线程不会挡住同步点
+    private DirectoryLocks.Held beginUpdate(String dirPath) {
+        lock.readLock().lock();
+        try {
+            DirectoryLocks.Held held = dirLocks.lock(true, dirPath);
+            commitLock.readLock().lock();
+            return held;
+        } catch (RuntimeException e) {
+            lock.readLock().unlock();
+            throw e;
+        }
+    }
+
+    // 修改类操作结束：先释放目录锁，再在提交锁的写锁下执行同步点；同一时刻完成的修改由一次同步点一起提交
+    private void endUpdate(DirectoryLocks.Held held, boolean fileClosed) {
+        commitLock.readLock().unlock();
+        held.release();
+        commitLock.writeLock().lock();
+        try {
+            if (fileClosed) {
+                diskManager.syncOnFileClose();
+            } else {
+                diskManager.flush();
+            }
+        } finally {
+            commitLock.writeLock().unlock();
+            lock.readLock().unlock();
+        }
+    }
+
+    // 父目录路径，与FileOperator、DirOperator中的计算方式相同
+    private static String parentOf(String absolutePath) {
+        String[] pathComponents = absolutePath.split("/");
+        return String.join("/", Arrays.copyOfRange(pathComponents, 0, Math.max(0, pathComponents.length - 1)));
     }
 
     /**
@@ -55,12 +301,17 @@ public class FileSystem {// 目录项操作类
      * [3]文件结束块号、[4]文件总字节数、[5]文件总磁盘块数、[6]文件属性
      */
     public String[] getFileInfo(String fileAbsolutePath) {
+        DirectoryLocks.Held held = beginRead(parentOf(fileAbsolutePath));
         try {
-            // 调用文件操作类获取文件信息，并返回结果
-            return fileOperator.getFileInfo(fileAbsolutePath);
-        } catch (Exception e) {
-            Tools.logError("Error getting file info: " + e.getMessage(), this.LOG_FILE_NAME); //输出错误信息到日志文件
-            return null;
+            try {
+                // 调用文件操作类获取文件信息，并返回结果
+                return fileOperator.getFileInfo(fileAbsolutePath);
+            } catch (Exception e) {
+                Tools.logError("Error getting file info: " + e.getMessage(), this.LOG_FILE_NAME); //输出错误信息到日志文件
+                return null;
+            }
+        } finally {
+            endRead(held);
         }
     }
 
@@ -72,13 +323,18 @@ public class FileSystem {// 目录项操作类
      * @return 错误信息
      */
     public String createFile(String fileAbsolutePath, byte attribute) {
+        DirectoryLocks.Held held = beginUpdate(parentOf(fileAbsolutePath));
         try {
-            // 调用文件操作类创建文件，并检查结果
-            int result = fileOperator.create_file(fileAbsolutePath, attribute);
-            return Tools.checkResult(result);
-        } catch (Exception e) {
-            Tools.logError("Error creating file: " + e.getMessage(), this.LOG_FILE_NAME); //输出错误信息到日志文件
-            return "ERROR: Unknown error occurred.";
+            try {
+                // 调用文件操作类创建文件，并检查结果
+                int result = fileOperator.create_file(fileAbsolutePath, attribute);
+                return Tools.checkResult(result);
+            } catch (Exception e) {
+                Tools.logError("Error creating file: " + e.getMessage(), this.LOG_FILE_NAME); //输出错误信息到日志文件
+                return "ERROR: Unknown error occurred.";
+            }
+        } finally {
+            endUpdate(held, false);
         }
     }
 
@@ -90,12 +346,17 @@ public class FileSystem {// 目录项操作类
      * @return 读取的内容，如果文件不存在或无法读取，则返回错误信息
      */
     public String readFile(String fileAbsolutePath, int readLength) throws Exception {
+        DirectoryLocks.Held held = beginRead(parentOf(fileAbsolutePath));
         try {
-            // 调用文件操作类读取文件，并检查结果
-            return fileOperator.readFile(fileAbsolutePath, readLength);
-        } catch (Exception e) {
-            Tools.logError("Error reading file: " + e.getMessage(), this.LOG_FILE_NAME); //输出错误信息到日志文件
-            throw new Exception(e);
+            try {
+                // 调用文件操作类读取文件，并检查结果
+                return fileOperator.readFile(fileAbsolutePath, readLength);
+            } catch (Exception e) {
+                Tools.logError("Error reading file: " + e.getMessage(), this.LOG_FILE_NAME); //输出错误信息到日志文件
+                throw new Exception(e);
+            }
+        } finally {
+            endRead(held);
         }
     }
 
@@ -108,13 +369,18 @@ public class FileSystem {// 目录项操作类
      * @param isTotalFile      是否写入整个文件
      */
     public String writeFile(String fileAbsolutePath, byte[] writeData, int writeLength, boolean isTotalFile) {
+        DirectoryLocks.Held held = beginUpdate(parentOf(fileAbsolutePath));
         try {
-            // 调用文件操作类写入文件，并检查结果
-            int result = fileOperator.writeFile(fileAbsolutePath, writeData, writeLength,isTotalFile);
-            return Tools.checkResult(result);
-        } catch (Exception e) {
-            Tools.logError("Error writing file: " + e.getMessage(), this.LOG_FILE_NAME); //输出错误信息到日志文件
-            throw new RuntimeException(e);
+            try {
+                // 调用文件操作类写入文件，并检查结果
+                int result = fileOperator.writeFile(fileAbsolutePath, writeData, writeLength,isTotalFile);
+                return Tools.checkResult(result);
+            } catch (Exception e) {
+                Tools.logError("Error writing file: " + e.getMessage(), this.LOG_FILE_NAME); //输出错误信息到日志文件
+                throw new RuntimeException(e);
+            }
+        } finally {
+            endUpdate(held, false);
         }
     }
 
@@ -125,16 +391,23 @@ public class FileSystem {// 目录项操作类
      * @return 关闭成功返回 "1"
      */
     public String closeFile(String fileAbsolutePath) {
+        DirectoryLocks.Held held = beginUpdate(parentOf(fileAbsolutePath));
+        boolean closed = false; // 关闭成功时是ON_CLOSE模式的刷盘点
         try {
-            // 调用文件操作类关闭文件，并检查结果
-            int result = fileOperator.closeFile(fileAbsolutePath);
-//            if(result == 1){
-//                result = fileOperator.closeFile(fileAbsolutePath);
-//            }
-            return Tools.checkResult(result);
-        } catch (Exception e) {
-            Tools.logError("Error closing file: " + e.getMessage(), this.LOG_FILE_NAME); //输出错误信息到日志文件
-            return "ERROR: Unknown error occurred.";
+            try {
+                // 调用文件操作类关闭文件，并检查结果
+                int result = fileOperator.closeFile(fileAbsolutePath);
+    //            if(result == 1){
+    //                result = fileOperator.closeFile(fileAbsolutePath);
+    //            }
+                closed = result == 1;
+                return Tools.checkResult(result);
+            } catch (Exception e) {
+                Tools.logError("Error closing file: " + e.getMessage(), this.LOG_FILE_NAME); //输出错误信息到日志文件
+                return "ERROR: Unknown error occurred.";
+            }
+        } finally {
+            endUpdate(held, closed);
         }
     }
 
@@ -145,13 +418,18 @@ public class FileSystem {// 目录项操作类
      * @return 错误信息
      */
     public String deleteFile(String fileAbsolutePath) {
+        DirectoryLocks.Held held = beginUpdate(parentOf(fileAbsolutePath));
         try {
-            // 调用文件操作类删除文件，并检查结果
-            int result = fileOperator.deleteFile(fileAbsolutePath);
-            return Tools.checkResult(result);
-        } catch (Exception e) {
-            Tools.logError("Error deleting file: " + e.getMessage(), this.LOG_FILE_NAME); //输出错误信息到日志文件
-            return "ERROR: Unknown error occurred.";
+            try {
+                // 调用文件操作类删除文件，并检查结果
+                int result = fileOperator.deleteFile(fileAbsolutePath);
+                return Tools.checkResult(result);
+            } catch (Exception e) {
+                Tools.logError("Error deleting file: " + e.getMessage(), this.LOG_FILE_NAME); //输出错误信息到日志文件
+                return "ERROR: Unknown error occurred.";
+            }
+        } finally {
+            endUpdate(held, false);
         }
     }
 
@@ -162,12 +440,17 @@ public class FileSystem {// 目录项操作类
      * @return 文件内容的字符串表示，如果文件不存在或无法读取，则返回错误信息
      */
     public String typeFile(String fileAbsolutePath) {
+        DirectoryLocks.Held held = beginRead(parentOf(fileAbsolutePath));
         try {
-            // 调用文件操作类显示文件内容，并返回结果
-            return fileOperator.typeFile(fileAbsolutePath);
-        } catch (Exception e) {
-            Tools.logError("Error displaying file content: " + e.getMessage(), this.LOG_FILE_NAME); //输出错误信息到日志文件
-            return "ERROR: Unknown error occurred.";
+            try {
+                // 调用文件操作类显示文件内容，并返回结果
+                return fileOperator.typeFile(fileAbsolutePath);
+            } catch (Exception e) {
+                Tools.logError("Error displaying file content: " + e.getMessage(), this.LOG_FILE_NAME); //输出错误信息到日志文件
+                return "ERROR: Unknown error occurred.";
+            }
+        } finally {
+            endRead(held);
         }
     }
 
@@ -179,13 +462,18 @@ public class FileSystem {// 目录项操作类
      * @return 成功返回"1"
      */
     public String changeFileAttribute(String fileAbsolutePath, byte newAttribute) {
+        DirectoryLocks.Held held = beginUpdate(parentOf(fileAbsolutePath));
         try {
-            // 调用文件操作类修改文件属性，并检查结果
-            int result = fileOperator.changeFileAttribute(fileAbsolutePath, newAttribute);
-            return Tools.checkResult(result);
-        } catch (Exception e) {
-            Tools.logError("Error changing file attribute: " + e.getMessage(), this.LOG_FILE_NAME); //输出错误信息到日志文件
-            return "ERROR: Unknown error occurred.";
+            try {
+                // 调用文件操作类修改文件属性，并检查结果
+                int result = fileOperator.changeFileAttribute(fileAbsolutePath, newAttribute);
+                return Tools.checkResult(result);
+            } catch (Exception e) {
+                Tools.logError("Error changing file attribute: " + e.getMessage(), this.LOG_FILE_NAME); //输出错误信息到日志文件
+                return "ERROR: Unknown error occurred.";
+            }
+        } finally {
+            endUpdate(held, false);
         }
     }
 
@@ -197,13 +485,18 @@ public class FileSystem {// 目录项操作类
      * @return 成功返回"1"
      */
     public String changeFileName(String fileAbsolutePath, String newNameAndType) {
+        DirectoryLocks.Held held = beginUpdate(parentOf(fileAbsolutePath));
         try {
-            // 调用文件操作类修改文件名，并检查结果
-            int result = fileOperator.changeFileName(fileAbsolutePath, newNameAndType);
-            return Tools.checkResult(result);
-        } catch (Exception e) {
-            Tools.logError("Error changing file name: " + e.getMessage(), this.LOG_FILE_NAME); //输出错误信息到日志文件
-            return "ERROR: Unknown error occurred.";
+            try {
+                // 调用文件操作类修改文件名，并检查结果
+                int result = fileOperator.changeFileName(fileAbsolutePath, newNameAndType);
+                return Tools.checkResult(result);
+            } catch (Exception e) {
+                Tools.logError("Error changing file name: " + e.getMessage(), this.LOG_FILE_NAME); //输出错误信息到日志文件
+                return "ERROR: Unknown error occurred.";
+            }
+        } finally {
+            endUpdate(held, false);
         }
     }
 
@@ -215,13 +508,18 @@ public class FileSystem {// 目录项操作类
      * @return 信息
      */
     public String createDir(String dirAbsolutePath, byte attribute) {
+        DirectoryLocks.Held held = beginUpdate(parentOf(dirAbsolutePath));
         try {
-            // 调用目录操作类创建目录，并检查结果
-            int result = dirOperator.createDir(dirAbsolutePath, attribute);
-            return Tools.checkResult(result);
-        } catch (Exception e) {
-            Tools.logError("Error creating directory: " + e.getMessage(), this.LOG_FILE_NAME); //输出错误信息到日志文件
-            return "ERROR: Unknown error occurred.";
+            try {
+                // 调用目录操作类创建目录，并检查结果
+                int result = dirOperator.createDir(dirAbsolutePath, attribute);
+                return Tools.checkResult(result);
+            } catch (Exception e) {
+                Tools.logError("Error creating directory: " + e.getMessage(), this.LOG_FILE_NAME); //输出错误信息到日志文件
+                return "ERROR: Unknown error occurred.";
+            }
+        } finally {
+            endUpdate(held, false);
         }
     }
 
@@ -232,11 +530,16 @@ public class FileSystem {// 目录项操作类
      * @return 内容(name(and type),attribute,startNum,diskBlockLength)，null为目录不存在
      */
     public String[][] listDir(String dirAbsolutePath) {
+        DirectoryLocks.Held held = beginRead(dirAbsolutePath);
         try {
-            return dirOperator.listDir(dirAbsolutePath);
-        } catch (Exception e) {
-            Tools.logError("Error listing directory: " + e.getMessage(), this.LOG_FILE_NAME); //输出错误信息到日志文件
-            return new String[][]{{"ERROR: Unknown error occurred.", "ERROR: Unknown error occurred."}};
+            try {
+                return dirOperator.listDir(dirAbsolutePath);
+            } catch (Exception e) {
+                Tools.logError("Error listing directory: " + e.getMessage(), this.LOG_FILE_NAME); //输出错误信息到日志文件
+                return new String[][]{{"ERROR: Unknown error occurred.", "ERROR: Unknown error occurred."}};
+            }
+        } finally {
+            endRead(held);
         }
     }
 
@@ -247,12 +550,17 @@ public class FileSystem {// 目录项操作类
      * @return 结果信息
      */
     public String removeDir(String dirAbsolutePath) {
+        DirectoryLocks.Held held = beginUpdate(parentOf(dirAbsolutePath));
         try {
-            int res = dirOperator.removeDir(dirAbsolutePath);
-            return Tools.checkResult(res);
-        } catch (Exception e) {
-            Tools.logError("Error removing directory: " + e.getMessage(), this.LOG_FILE_NAME); //输出错误信息到日志文件
-            return "ERROR: Unknown error occurred.";
+            try {
+                int res = dirOperator.removeDir(dirAbsolutePath);
+                return Tools.checkResult(res);
+            } catch (Exception e) {
+                Tools.logError("Error removing directory: " + e.getMessage(), this.LOG_FILE_NAME); //输出错误信息到日志文件
+                return "ERROR: Unknown error occurred.";
+            }
+        } finally {
+            endUpdate(held, false);
         }
     }
 
@@ -262,15 +570,19 @@ public class FileSystem {// 目录项操作类
      * @param dirName 目录名（含路径）
      */
     public void enterDir(String dirName) {
-        this.currentPath.add(dirName);
+        synchronized (currentPath) {
+            this.currentPath.add(dirName);
+        }
     }
 
     /**
      * 返回上一级目录
      */
     public void goBack() {
-        if (this.currentPath.size() > 1) { // 确保不是在根目录
-            this.currentPath.remove(this.currentPath.size() - 1);
+        synchronized (currentPath) {
+            if (this.currentPath.size() > 1) { // 确保不是在根目录
+                this.currentPath.remove(this.currentPath.size() - 1);
+            }
         }
     }
 
@@ -280,7 +592,9 @@ public class FileSystem {// 目录项操作类
      * @return 当前路径
      */
     public String getCurrentPath() {
-        return String.join("/", this.currentPath);
+        synchronized (currentPath) {
+            return String.join("/", this.currentPath);
+        }
     }
 
     /**
@@ -290,28 +604,35 @@ public class FileSystem {// 目录项操作类
      * @return 进入成功返回 "1"，失败返回错误信息
      */
     public String enterAnyDir(String dirAbsolutePath) {
-        String[] pathComponents = dirAbsolutePath.split("/");
-        String curPath = "/";
-        // 判断合法性
-        for (String dirName : pathComponents) {
-            if (!dirName.isEmpty()) {
-                curPath += dirName + "/";
-                // 检查目录是否存在
-                try {
-                    if (!dirOperator.isDirExist(curPath)) {
-                        return "ERROR: Invalid directory path.";
+        DirectoryLocks.Held held = beginRead(dirAbsolutePath);
+        try {
+            String[] pathComponents = dirAbsolutePath.split("/");
+            String curPath = "/";
+            // 判断合法性
+            for (String dirName : pathComponents) {
+                if (!dirName.isEmpty()) {
+                    curPath += dirName + "/";
+                    // 检查目录是否存在
+                    try {
+                        if (!dirOperator.isDirExist(curPath)) {
+                            return "ERROR: Invalid directory path.";
+                        }
+                    } catch (Exception e) {
+                        return "ERROR: Unknown error occurred.";
                     }
-                } catch (Exception e) {
-                    return "ERROR: Unknown error occurred.";
                 }
             }
+            // 重置路径
+            synchronized (currentPath) {
+                this.currentPath.clear();
+                for (String dirName : pathComponents)
+                    if (!dirName.isEmpty())
+                        this.currentPath.add(dirName);
+            }
+            return null;
+        } finally {
+            endRead(held);
         }
-        // 重置路径
-        this.currentPath.clear();
-        for (String dirName : pathComponents)
-            if (!dirName.isEmpty())
-                this.currentPath.add(dirName);
-        return null;
     }
 
     /**
@@ -321,22 +642,27 @@ public class FileSystem {// 目录项操作类
      * @return 父目录路径，或者错误信息
      */
     public String searchPath(String absolutePath) {
-        String[] pathComponents = absolutePath.split("/");
-        String parentDirName = String.join(
-                "/", Arrays.copyOfRange(pathComponents, 0, pathComponents.length - 1)
-        );
-        String nameOnly = pathComponents[pathComponents.length - 1];
+        DirectoryLocks.Held held = beginRead(parentOf(absolutePath));
         try {
-            if (dirOperator.isDirExist(parentDirName)) {
-                String[][] nameResult = dirOperator.listDir(parentDirName);
-                for (String[] entry : nameResult) {
-                    if (entry[0].equals(nameOnly))
-                        return parentDirName;
+            String[] pathComponents = absolutePath.split("/");
+            String parentDirName = String.join(
+                    "/", Arrays.copyOfRange(pathComponents, 0, pathComponents.length - 1)
+            );
+            String nameOnly = pathComponents[pathComponents.length - 1];
+            try {
+                if (dirOperator.isDirExist(parentDirName)) {
+                    String[][] nameResult = dirOperator.listDir(parentDirName);
+                    for (String[] entry : nameResult) {
+                        if (entry[0].equals(nameOnly))
+                            return parentDirName;
+                    }
                 }
+                return "ERROR: Invalid directory path.";
+            } catch (Exception e) {
+                return "ERROR: Unknown error occurred.";
             }
-            return "ERROR: Invalid directory path.";
-        } catch (Exception e) {
-            return "ERROR: Unknown error occurred.";
+        } finally {
+            endRead(held);
         }
     }
 }
@@ -120,4 +120,30 @@ public class Tools {
             System.err.println("Failed to write to log file: " + e.getMessage());
         }
     }
+
+    /**
+     * 从字节数组中按大端序读取一个int（用于登记项中的起始盘块号、长度）
+     *
+     * @param data   字节数组
+     * @param offset 起始偏移
+     * @return 读到的值
+     */
+    public static int readInt(byte[] data, int offset) {
+        return (data[offset] & 0xFF) << 24 | (data[offset + 1] & 0xFF) << 16
+                | (data[offset + 2] & 0xFF) << 8 | (data[offset + 3] & 0xFF);
+    }
+
+    /**
+     * 按大端序向字节数组写入一个int
+     *
+     * @param data   字节数组
+     * @param offset 起始偏移
+     * @param value  要写入的值
+     */
+    public static void writeInt(byte[] data, int offset, int value) {
+        data[offset] = (byte) (value >>> 24);
+        data[offset + 1] = (byte) (value >>> 16);
+        data[offset + 2] = (byte) (value >>> 8);
+        data[offset + 3] = (byte) value;
+    }
 }
@@ -2,7 +2,12 @@ package application.controller;
 
 
 import application.Manager.DiskManager;
+import application.Manager.Scrubber;
+import application.Service.FileSystem;
+import javafx.animation.KeyFrame;
+import javafx.animation.Timeline;
 import javafx.fxml.FXML;
+import javafx.scene.control.Button;
 import javafx.scene.control.Label;
 import javafx.scene.control.ProgressBar;
 import javafx.scene.layout.TilePane;
@@ -10,8 +15,7 @@ import javafx.scene.layout.StackPane;
 import javafx.scene.paint.Color;
 import javafx.scene.shape.Rectangle;
 import javafx.scene.control.Tooltip;
-
-import java.util.List;
+import javafx.util.Duration;
 
 /**
  * 磁盘状态管理(界面交互)
@@ -33,26 +37,55 @@ public class DiskStatusController implements DiskStatusObserver {
     
     @FXML
     private TilePane blockPane;
+
+    @FXML
+    private Button scrubButton;
+
+    @FXML
+    private Label scrubStatusLabel;
+
+    @FXML
+    private ProgressBar scrubProgressBar;
     
-    private DiskManager diskManager;
+    private static final int MAX_DISPLAY_BLOCKS = 1024; // 最多显示的块数，大磁盘只显示开头部分
+    private static final int SCRUB_BLOCKS_PER_SECOND = 200; // 后台巡检每秒读取的块数
+
+    private Timeline scrubTimer; // 巡检期间定时刷新进度
+    private long scrubFindings; // 上次刷新时已处理的坏块数，有变化时重画磁盘块
+
+    private FileSystem fileSystem; // 修改磁盘的操作经过文件系统，与文件操作互斥
+    private DiskManager diskManager; // 只用于读取磁盘状态
+    private boolean sharedDisk; // 是否共用文件系统界面挂载的磁盘
 
     // 初始化
     public void initialize() {
-        diskManager = new DiskManager();
+        fileSystem = new FileSystem();
+        diskManager = fileSystem.getDiskManager();
+        updateDiskStatus();
+    }
+
+    // 共用文件系统界面已挂载的文件系统，传入null时改为单独挂载
+    public void setFileSystem(FileSystem shared) {
+        stopScrub();
+        if (!sharedDisk) fileSystem.close();
+        sharedDisk = shared != null;
+        fileSystem = sharedDisk ? shared : new FileSystem();
+        diskManager = fileSystem.getDiskManager();
         updateDiskStatus();
     }
 
+    // 窗口关闭时卸载单独挂载的文件系统
+    public void close() {
+        stopScrub();
+        if (!sharedDisk) fileSystem.close();
+    }
+
     // 更新磁盘状态
     public void updateDiskStatus() {
-        List<Boolean> blockStatus = diskManager.disk_status();
-        
-        // 计算使用情况
-        int totalBlocks = blockStatus.size();
-        int usedBlocks = 0;
-        for (Boolean status : blockStatus) {
-            if (status) usedBlocks++;
-        }
-        int freeBlocks = totalBlocks - usedBlocks;
+        // 使用空闲块位图维护的计数，不再逐块统计
+        int totalBlocks = diskManager.getDiskSize();
+        int usedBlocks = diskManager.getUsedBlockCount();
+        int freeBlocks = diskManager.getFreeBlockCount();
         
         // 更新标签
         totalCapacityLabel.setText(totalBlocks + " 块");
@@ -76,12 +109,13 @@ public class DiskStatusController implements DiskStatusObserver {
         blockPane.getChildren().clear();
         
         // 创建新的块显示
-        for (int i = 0; i < blockStatus.size(); i++) {
-            boolean isUsed = blockStatus.get(i);
+        for (int i = 0; i < Math.min(totalBlocks, MAX_DISPLAY_BLOCKS); i++) {
+            boolean isUsed = !diskManager.isBlockFree(i);
+            boolean isBad = diskManager.isBlockBad(i);
             
             // 创建一个小方块
             Rectangle block = new Rectangle(20, 20);
-            block.setFill(isUsed ? Color.valueOf("#F44336") : Color.valueOf("#4CAF50"));
+            block.setFill(isBad ? Color.valueOf("#616161") : isUsed ? Color.valueOf("#F44336") : Color.valueOf("#4CAF50"));
             block.setArcWidth(4);
             block.setArcHeight(4);
             
@@ -90,7 +124,7 @@ public class DiskStatusController implements DiskStatusObserver {
             blockContainer.setPrefSize(22, 22);
             
             // 添加提示信息
-            Tooltip tooltip = new Tooltip("块 " + i + ": " + (isUsed ? "已使用" : "未使用"));
+            Tooltip tooltip = new Tooltip("块 " + i + ": " + (isBad ? "坏块" : isUsed ? "已使用" : "未使用"));
             Tooltip.install(blockContainer, tooltip);
             
             // 添加到网格中
@@ -105,14 +139,57 @@ public class DiskStatusController implements DiskStatusObserver {
 
     @FXML
     private void handleMarkDamagedBlock() {
-        if (!diskManager.disk_status().isEmpty()) {
-            diskManager.crippleBlock();
-            updateDiskStatus();
-        }
+        fileSystem.crippleBlock();
+        updateDiskStatus();
     }
     @FXML
     public void handleRecoverBlock() {
-        diskManager.fixDisk();
+        fileSystem.fixDisk();
         updateDiskStatus();
     }
+
+    // 启动或停止后台巡检，坏块在巡检线程中由文件系统搬迁，与文件操作互斥
+    @FXML
+    private void handleToggleScrub() {
+        Scrubber scrubber = diskManager.getScrubber();
+        if (scrubber != null && scrubber.isRunning()) {
+            stopScrub();
+            return;
+        }
+        scrubFindings = 0;
+        fileSystem.startScrubber(SCRUB_BLOCKS_PER_SECOND);
+        scrubButton.setText("停止巡检");
+        scrubTimer = new Timeline(new KeyFrame(Duration.millis(500), e -> updateScrubStatus()));
+        scrubTimer.setCycleCount(Timeline.INDEFINITE);
+        scrubTimer.play();
+    }
+
+    private void stopScrub() {
+        if (scrubTimer != null) {
+            scrubTimer.stop();
+            scrubTimer = null;
+        }
+        diskManager.stopScrubber();
+        updateScrubStatus();
+        scrubButton.setText("后台巡检");
+    }
+
+    // 显示巡检进度和发现的坏块
+    private void updateScrubStatus() {
+        Scrubber scrubber = diskManager.getScrubber();
+        if (scrubber == null) {
+            scrubStatusLabel.setText("未巡检");
+            scrubProgressBar.setProgress(0);
+            return;
+        }
+        scrubProgressBar.setProgress(scrubber.getProgress());
+        scrubStatusLabel.setText(String.format("%s第%d轮，已校验%d块，坏块%d，已搬迁%d，已停用%d，无法搬迁%d",
+                scrubber.isRunning() ? "" : "已停止，", scrubber.getPasses() + 1, scrubber.getScanned(),
+                scrubber.getBadBlocks(), scrubber.getRelocated(), scrubber.getRetired(), scrubber.getFailed()));
+        long findings = scrubber.getRelocated() + scrubber.getRetired();
+        if (findings != scrubFindings) {
+            scrubFindings = findings;
+            updateDiskStatus();
+        }
+    }
 }
\ No newline at end of file
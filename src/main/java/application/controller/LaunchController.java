@@ -21,6 +21,7 @@ import java.util.Objects;
 public class LaunchController {
     
     private Stage fileSystemStage;
+    private MainController mainController;
     private Stage diskStatusStage;
     private DiskStatusController diskStatusController;
     
@@ -41,9 +42,10 @@ public class LaunchController {
                 Parent root = loader.load();
                 
                 // 获取MainController并设置观察者
-                MainController mainController = loader.getController();
+                mainController = loader.getController();
                 if (diskStatusController != null) {
                     mainController.setDiskStatusObserver(diskStatusController);
+                    diskStatusController.setFileSystem(mainController.getFileSystem());
                 }
                 
                 fileSystemStage = new Stage();
@@ -51,8 +53,16 @@ public class LaunchController {
                 fileSystemStage.setScene(new Scene(root, 600, 500));
                 fileSystemStage.initModality(Modality.NONE);
                 
-                // 当窗口关闭时，将stage设为null以允许再次打开
-                fileSystemStage.setOnCloseRequest(event -> fileSystemStage = null);
+                // 当窗口关闭时，卸载文件系统并将stage设为null以允许再次打开
+                fileSystemStage.setOnCloseRequest(event -> {
+                    mainController.close();
+                    mainController = null;
+                    fileSystemStage = null;
+                    // 磁盘状态界面改为单独挂载磁盘
+                    if (diskStatusController != null) {
+                        diskStatusController.setFileSystem(null);
+                    }
+                });
                 
                 fileSystemStage.show();
             } catch (Exception e) {
@@ -74,6 +84,11 @@ public class LaunchController {
                 Parent root = loader.load();
                 
                 diskStatusController = loader.getController();
+                // 文件系统已打开时共用其挂载的磁盘
+                if (mainController != null) {
+                    mainController.setDiskStatusObserver(diskStatusController);
+                    diskStatusController.setFileSystem(mainController.getFileSystem());
+                }
                 
                 diskStatusStage = new Stage();
                 diskStatusStage.setTitle("磁盘状态");
@@ -81,7 +96,14 @@ public class LaunchController {
                 diskStatusStage.setResizable(false);
                 diskStatusStage.initModality(Modality.NONE);
                 
-                diskStatusStage.setOnCloseRequest(event -> diskStatusStage = null);
+                diskStatusStage.setOnCloseRequest(event -> {
+                    if (mainController != null) {
+                        mainController.setDiskStatusObserver(null);
+                    }
+                    diskStatusController.close();
+                    diskStatusController = null;
+                    diskStatusStage = null;
+                });
                 
                 diskStatusStage.show();
             } catch (Exception e) {
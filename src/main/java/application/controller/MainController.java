@@ -524,6 +524,16 @@ public class MainController {
         this.diskStatusObserver = observer;
     }
 
+    // 获取文件系统
+    public FileSystem getFileSystem() {
+        return fileSystem;
+    }
+
+    // 窗口关闭时卸载文件系统
+    public void close() {
+        fileSystem.close();
+    }
+
     // 进入新目录
     private void refreshFileView() {
         System.out.println("刷新");
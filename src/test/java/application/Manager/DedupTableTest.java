@@ -0,0 +1,143 @@
+package application.Manager;
+
+import application.Entity.DedupReport;
+import application.Entity.DiskConfig;
+import application.Enum.BlockStatus;
+import application.Enum.EntryAttribute;
+import application.Enum.MountMode;
+import application.Service.FileSystem;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * 块级去重：相同内容共享物理块，改写共享块时先迁出，释放和元数据写入不影响共享者，重新挂载后映射仍然有效
+ */
+public class DedupTableTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static byte[] fill(int blockSize, int value) {
+        byte[] data = new byte[blockSize];
+        Arrays.fill(data, (byte) value);
+        return data;
+    }
+
+    private void sharing(int journalBlocks) {
+        DiskConfig config = new DiskConfig(new File(folder.getRoot(), "disk.dat"), MountMode.CHANNEL);
+        config.setGeometry(2048, 512);
+        config.setDedup(true);
+        config.setJournalBlocks(journalBlocks);
+        config.setCacheBlocks(0);
+        byte[] x = fill(512, 7);
+        byte[] y = fill(512, 9);
+        byte[] z = fill(512, 11);
+        int[] blocks = new int[5];
+        try (DiskManager disk = new DiskManager(config)) {
+            assertTrue(disk.isDedup());
+            for (int i = 0; i < blocks.length; i++) blocks[i] = disk.allocateBlock();
+            disk.writeBlock(blocks[0], x);
+            disk.writeBlock(blocks[1], x);
+            disk.writeBlock(blocks[2], x);
+            DedupReport report = disk.getDedupReport();
+            assertEquals(2, report.getHits());
+            assertEquals(2, report.getSavedBlocks());
+            for (int i = 0; i < 3; i++) assertArrayEquals(x, disk.readBlock(blocks[i]));
+
+            // 改写被共享的块：共享者的内容先迁出
+            disk.writeBlock(blocks[0], y);
+            assertArrayEquals(y, disk.readBlock(blocks[0]));
+            assertArrayEquals(x, disk.readBlock(blocks[1]));
+            assertArrayEquals(x, disk.readBlock(blocks[2]));
+            assertEquals(1, disk.getDedupReport().getEvacuations());
+
+            disk.setFatEntry(blocks[1], BlockStatus.FREE.getValue());
+            assertArrayEquals(x, disk.readBlock(blocks[2]));
+            disk.setFatEntry(blocks[1], BlockStatus.END_OF_FILE.getValue());
+            disk.writeBlock(blocks[1], z);
+            assertArrayEquals(x, disk.readBlock(blocks[2]));
+            assertArrayEquals(z, disk.readBlock(blocks[1]));
+
+            // 部分写入打破共享
+            disk.writeBlock(blocks[3], y);
+            disk.writeBlock(blocks[3], new byte[]{1, 2, 3});
+            byte[] partial = y.clone();
+            partial[0] = 1;
+            partial[1] = 2;
+            partial[2] = 3;
+            assertArrayEquals(partial, disk.readBlock(blocks[3]));
+            assertArrayEquals(y, disk.readBlock(blocks[0]));
+
+            // 目录块写在被共享的块上
+            disk.writeBlock(blocks[4], x);
+            disk.writeMetadataBlock(blocks[2], z);
+            assertArrayEquals(x, disk.readBlock(blocks[4]));
+
+            ByteBuffer[] buffers = new ByteBuffer[blocks.length];
+            for (int i = 0; i < buffers.length; i++) buffers[i] = ByteBuffer.allocate(512);
+            disk.readBlocks(blocks, buffers);
+            assertArrayEquals(y, buffers[0].array());
+            assertArrayEquals(x, buffers[4].array());
+            for (int block : blocks) assertTrue(disk.verifyBlock(block));
+        }
+
+        try (DiskManager disk = new DiskManager(config)) {
+            assertArrayEquals(y, disk.readBlock(blocks[0]));
+            assertArrayEquals(z, disk.readBlock(blocks[1]));
+            assertArrayEquals(z, disk.readBlock(blocks[2]));
+            assertArrayEquals(x, disk.readBlock(blocks[4]));
+            for (int block : blocks) assertTrue(disk.verifyBlock(block));
+            try {
+                disk.createSnapshot("s");
+                fail("snapshot accepted on a deduplicated disk");
+            } catch (IllegalStateException expected) {
+            }
+        }
+    }
+
+    @Test
+    public void sharingWithJournal() {
+        sharing(-1);
+    }
+
+    @Test
+    public void sharingWithoutJournal() {
+        sharing(0);
+    }
+
+    @Test
+    public void identicalFilesShareBlocks() {
+        DiskConfig config = new DiskConfig(new File(folder.getRoot(), "disk.dat"), MountMode.CHANNEL);
+        config.setGeometry(4096, 512);
+        config.setDedup(true);
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < 512 * 6; i++) builder.append((char) ('a' + i % 26));
+        String content = builder.toString();
+        FileSystem fileSystem = new FileSystem(config);
+        try {
+            for (int i = 0; i < 8; i++) {
+                fileSystem.createFile("/f" + i + ".tx", EntryAttribute.NORMAL_FILE.getValue());
+                fileSystem.writeFile("/f" + i + ".tx", content.getBytes(), content.length(), true);
+                fileSystem.closeFile("/f" + i + ".tx");
+            }
+            assertTrue(fileSystem.getDiskManager().getDedupReport().getSavedBlocks() > 0);
+        } finally {
+            fileSystem.close();
+        }
+        fileSystem = new FileSystem(config);
+        try {
+            for (int i = 0; i < 8; i++) assertEquals(content, fileSystem.typeFile("/f" + i + ".tx"));
+        } finally {
+            fileSystem.close();
+        }
+    }
+}
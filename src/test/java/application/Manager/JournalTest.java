@@ -0,0 +1,171 @@
+package application.Manager;
+
+import application.Entity.DiskConfig;
+import application.Enum.DurabilityMode;
+import application.Enum.EntryAttribute;
+import application.Enum.MountMode;
+import application.Service.FileSystem;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * 元数据日志：崩溃后重放、不刷盘的提交不写原位置、日志容量与事务大小
+ */
+public class JournalTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File diskFile() {
+        return new File(folder.getRoot(), "disk.dat");
+    }
+
+    // 直接从磁盘文件读取一块在原位置的内容
+    private static byte[] readHome(File file, int index, int blockSize) throws Exception {
+        byte[] data = new byte[blockSize];
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            raf.seek((long) index * blockSize);
+            raf.readFully(data);
+        }
+        return data;
+    }
+
+    // 不卸载就重新挂载，模拟进程被终止：日志中的事务在挂载时重放，不要求提交时刷盘
+    private void replayAfterCrash(DurabilityMode mode) {
+        DiskConfig config = new DiskConfig(diskFile(), MountMode.CHANNEL);
+        config.setGeometry(1024, 256);
+        config.setDurability(mode, 60_000);
+        FileSystem fileSystem = new FileSystem(config);
+        long fsyncs = fileSystem.getDiskManager().getJournal().getFsyncs();
+        fileSystem.createDir("/d", EntryAttribute.DIRECTORY.getValue());
+        fileSystem.createFile("/d/x.tx", EntryAttribute.NORMAL_FILE.getValue());
+        fileSystem.writeFile("/d/x.tx", "hello".getBytes(), 5, true);
+        assertEquals(fsyncs, fileSystem.getDiskManager().getJournal().getFsyncs());
+
+        FileSystem again = new FileSystem(config);
+        try {
+            assertTrue(again.getDiskManager().getJournal().getReplayed() > 0);
+            String[][] list = again.listDir("/d");
+            assertNotNull(list);
+            assertEquals(1, list.length);
+        } finally {
+            again.close();
+        }
+    }
+
+    @Test
+    public void replayAfterCrashWithoutSync() {
+        replayAfterCrash(DurabilityMode.NONE);
+    }
+
+    @Test
+    public void replayAfterCrashSyncOnClose() {
+        replayAfterCrash(DurabilityMode.ON_CLOSE);
+    }
+
+    @Test
+    public void replayAfterCrashPeriodic() {
+        replayAfterCrash(DurabilityMode.PERIODIC);
+    }
+
+    // 不刷盘的提交只追加日志，原位置在检查点时才写入，期间读取返回日志中的新内容
+    @Test
+    public void unforcedCommitLeavesHomeBlocksUntilCheckpoint() throws Exception {
+        DiskConfig config = new DiskConfig(diskFile(), MountMode.CHANNEL);
+        config.setGeometry(1024, 256);
+        config.setDurability(DurabilityMode.NONE);
+        FileSystem fileSystem = new FileSystem(config);
+        try {
+            byte[] before = readHome(diskFile(), DiskManager.ROOT_DIR_POS, 256);
+            fileSystem.createDir("/d", EntryAttribute.DIRECTORY.getValue());
+            assertArrayEquals(before, readHome(diskFile(), DiskManager.ROOT_DIR_POS, 256));
+            assertEquals(1, fileSystem.listDir("/").length);
+            // 删除目录后它的块被文件重用，检查点写回的目录内容不能覆盖文件
+            fileSystem.removeDir("/d");
+            fileSystem.createFile("/x.tx", EntryAttribute.NORMAL_FILE.getValue());
+            fileSystem.writeFile("/x.tx", "payload".getBytes(), 7, true);
+            fileSystem.closeFile("/x.tx");
+            for (int i = 0; i < 40; i++) {
+                fileSystem.createFile("/y" + i + ".tx", EntryAttribute.NORMAL_FILE.getValue());
+                fileSystem.deleteFile("/y" + i + ".tx");
+            }
+            assertTrue(fileSystem.getDiskManager().getJournal().getCheckpoints() > 0);
+            assertEquals("payload", fileSystem.typeFile("/x.tx"));
+        } finally {
+            fileSystem.close();
+        }
+        fileSystem = new FileSystem(config);
+        try {
+            assertEquals("payload", fileSystem.typeFile("/x.tx"));
+        } finally {
+            fileSystem.close();
+        }
+    }
+
+    // 默认配置下写满用户区再删除：FAT和校验和块都在一个事务中，日志要能容纳
+    @Test
+    public void defaultJournalHoldsLargestTransaction() {
+        FileSystem fileSystem = new FileSystem(new DiskConfig(diskFile(), MountMode.CHANNEL));
+        try {
+            DiskManager disk = fileSystem.getDiskManager();
+            Journal journal = disk.getJournal();
+            assertTrue(journal.fits(disk.getMaxTransactionBlocks()));
+            byte[] data = new byte[(disk.getDiskSize() - disk.getUserAreaStart() - 2) * disk.getBlockSize()];
+            Arrays.fill(data, (byte) 'a');
+            fileSystem.createFile("/big.tx", EntryAttribute.NORMAL_FILE.getValue());
+            assertEquals("1", fileSystem.writeFile("/big.tx", data, data.length, true));
+            fileSystem.closeFile("/big.tx");
+            long transactions = journal.getTransactions();
+            assertEquals("1", fileSystem.deleteFile("/big.tx"));
+            assertTrue(journal.getTransactions() > transactions);
+        } finally {
+            fileSystem.close();
+        }
+    }
+
+    @Test
+    public void journalTooSmallForLargestTransactionIsRejected() {
+        DiskConfig config = new DiskConfig(diskFile(), MountMode.CHANNEL);
+        config.setJournalBlocks(8);
+        try {
+            new DiskManager(config).close();
+            fail("journal smaller than the largest transaction was accepted");
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+
+    // 超过日志容量的事务不能提交：同步点失败，原位置不变，修改留在内存中
+    @Test
+    public void transactionLargerThanJournalFails() throws Exception {
+        DiskConfig config = new DiskConfig(diskFile(), MountMode.CHANNEL);
+        config.setGeometry(1024, 128);
+        DiskManager disk = new DiskManager(config);
+        int blocks = disk.getJournal().getLength();
+        int run = disk.allocateRun(blocks);
+        disk.flush();
+        byte[] data = new byte[disk.getBlockSize()];
+        data[0] = 7;
+        for (int i = 0; i < blocks; i++) disk.writeMetadataBlock(run + i, data);
+        for (int attempt = 0; attempt < 2; attempt++) {
+            try {
+                disk.flush();
+                fail("transaction larger than the journal was committed");
+            } catch (IllegalStateException expected) {
+            }
+        }
+        assertEquals(0, readHome(diskFile(), run, disk.getBlockSize())[0]);
+        assertEquals(7, disk.readBlock(run)[0]);
+        assertFalse(disk.getJournal().fits(blocks));
+    }
+}
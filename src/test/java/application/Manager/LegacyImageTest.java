@@ -0,0 +1,85 @@
+package application.Manager;
+
+import application.Entity.DiskConfig;
+import application.Enum.EntryAttribute;
+import application.Enum.MountMode;
+import application.Service.FileSystem;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.file.Files;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * 旧布局磁盘镜像：挂载时迁移到新布局，文件和目录保留；无法识别的文件不被改写
+ */
+public class LegacyImageTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    // 旧布局的登记项：3字节名字、2字节类型、属性、起始块号、长度
+    private static void putEntry(byte[] image, int offset, String nameType, byte attribute, int start) {
+        System.arraycopy(nameType.getBytes(), 0, image, offset, 5);
+        image[offset + 5] = attribute;
+        image[offset + 6] = (byte) start;
+        image[offset + 7] = 1;
+    }
+
+    @Test
+    public void legacyImageIsMigrated() throws Exception {
+        // 128块、每块64字节，FAT占前两块，根目录在第2块
+        byte[] image = new byte[128 * 64];
+        for (int i = 0; i < 7; i++) image[i] = -1;
+        image[7] = 8;
+        image[8] = -1;
+        for (int i = 0; i < 64; i += 8) {
+            image[2 * 64 + i] = '$';
+            image[6 * 64 + i] = '$';
+        }
+        putEntry(image, 2 * 64, "abctx", EntryAttribute.NORMAL_FILE.getValue(), 5);
+        putEntry(image, 2 * 64 + 8, "dd\0\0\0", EntryAttribute.DIRECTORY.getValue(), 6);
+        putEntry(image, 6 * 64, "bigtx", EntryAttribute.NORMAL_FILE.getValue(), 7);
+        byte[] hello = "hello#garbage".getBytes();
+        System.arraycopy(hello, 0, image, 5 * 64, hello.length);
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < 100; i++) builder.append((char) ('a' + i % 26));
+        String big = builder.toString();
+        byte[] bigBytes = (big + "#").getBytes();
+        System.arraycopy(bigBytes, 0, image, 7 * 64, bigBytes.length);
+        File file = folder.newFile("legacy.img");
+        Files.write(file.toPath(), image);
+
+        FileSystem fileSystem = new FileSystem(new DiskConfig(file, MountMode.CHANNEL));
+        try {
+            assertTrue(fileSystem.getDiskManager().getLegacyEntries() > 0);
+            assertEquals("hello", fileSystem.typeFile("/abc.tx"));
+            assertEquals(big, fileSystem.typeFile("/dd/big.tx"));
+        } finally {
+            fileSystem.close();
+        }
+        fileSystem = new FileSystem(new DiskConfig(file, MountMode.CHANNEL));
+        try {
+            assertEquals("hello", fileSystem.typeFile("/abc.tx"));
+            assertEquals(big, fileSystem.typeFile("/dd/big.tx"));
+        } finally {
+            fileSystem.close();
+        }
+    }
+
+    @Test
+    public void unrecognizedImageIsRefused() throws Exception {
+        File file = folder.newFile("junk.img");
+        Files.write(file.toPath(), new byte[1000]);
+        try {
+            new FileSystem(new DiskConfig(file, MountMode.CHANNEL)).close();
+            fail("unrecognized image was mounted");
+        } catch (RuntimeException expected) {
+        }
+        assertEquals(1000, file.length());
+    }
+}
@@ -0,0 +1,149 @@
+package application.Manager;
+
+import application.Entity.DiskConfig;
+import application.Enum.BlockStatus;
+import application.Enum.EntryAttribute;
+import application.Enum.MountMode;
+import application.Service.EntryOperator;
+import application.Service.FileSystem;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 后台巡检：发现的坏块由FileSystem搬迁到新块并接回FAT链或登记项，坏块停用，重新挂载后仍然有效
+ */
+public class ScrubberTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static String text(int length, int seed) {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < length; i++) builder.append((char) ('a' + (i + seed) % 26));
+        return builder.toString();
+    }
+
+    // 等待巡检完成一轮
+    private static void awaitPass(Scrubber scrubber) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (scrubber.getPasses() < 1 && System.currentTimeMillis() < deadline) Thread.sleep(10);
+        assertTrue("scrub did not finish a pass", scrubber.getPasses() >= 1);
+    }
+
+    private void relocate(boolean checksums, MountMode mountMode) throws Exception {
+        File file = new File(folder.getRoot(), "disk.dat");
+        DiskConfig config = new DiskConfig(file, mountMode);
+        config.setChecksums(checksums);
+        config.setGeometry(512, 128);
+        FileSystem fileSystem = new FileSystem(config);
+        String a = text(600, 1);
+        String b = text(300, 7);
+        int middle;
+        try {
+            DiskManager disk = fileSystem.getDiskManager();
+            fileSystem.createDir("/dd", EntryAttribute.DIRECTORY.getValue());
+            fileSystem.createFile("/dd/a.tx", EntryAttribute.NORMAL_FILE.getValue());
+            fileSystem.writeFile("/dd/a.tx", a.getBytes(), a.length(), true);
+            fileSystem.closeFile("/dd/a.tx");
+            fileSystem.createFile("/b.tx", EntryAttribute.NORMAL_FILE.getValue());
+            fileSystem.writeFile("/b.tx", b.getBytes(), b.length(), true);
+            fileSystem.closeFile("/b.tx");
+
+            EntryOperator entryOperator = new EntryOperator(disk);
+            int dirBlock = entryOperator.findDirBlockIndex("/dd");
+            int aStart = entryOperator.findEntryInDirectory(dirBlock, "a.tx", EntryAttribute.NORMAL_FILE.getValue()).getStartNum();
+            int bStart = entryOperator.findEntryInDirectory(DiskManager.ROOT_DIR_POS, "b.tx", EntryAttribute.NORMAL_FILE.getValue()).getStartNum();
+            int[] aChain = disk.getChain(aStart, 100);
+            middle = aChain[2];
+            int blockSize = disk.getBlockSize();
+            if (checksums) {
+                // 绕过文件系统改写设备上的内容：a的中间一块、b的第一块和/dd的目录块
+                try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+                    for (int block : new int[]{middle, bStart, dirBlock}) {
+                        raf.seek((long) block * blockSize + (block == dirBlock ? blockSize - 1 : 1));
+                        raf.write('Z');
+                    }
+                }
+            } else {
+                // 没有校验和时只能按旧方式在FAT中标记坏块，标记覆盖了下一块的块号
+                disk.setFatEntry(middle, BlockStatus.BAD_BLOCK.getValue());
+                disk.setFatEntry(bStart, BlockStatus.BAD_BLOCK.getValue());
+            }
+            if (disk.getBlockCache() != null) disk.getBlockCache().clear();
+
+            Scrubber scrubber = fileSystem.startScrubber(100_000);
+            awaitPass(scrubber);
+            disk.stopScrubber();
+            assertEquals(checksums ? 3 : 2, scrubber.getRelocated());
+            assertTrue(disk.isBlockBad(middle));
+            assertTrue(disk.isBlockBad(bStart));
+
+            dirBlock = entryOperator.findDirBlockIndex("/dd");
+            int aStartAfter = entryOperator.findEntryInDirectory(dirBlock, "a.tx", EntryAttribute.NORMAL_FILE.getValue()).getStartNum();
+            assertEquals(aStart, aStartAfter);
+            int[] aChainAfter = disk.getChain(aStartAfter, 100);
+            for (int block : aChainAfter) assertNotEquals(middle, block);
+            String aRead = fileSystem.typeFile("/dd/a.tx");
+            assertFalse(aRead.startsWith("ERROR"));
+            if (checksums) {
+                assertEquals(aChain.length, aChainAfter.length);
+                assertEquals(a.substring(0, 2 * blockSize), aRead.substring(0, 2 * blockSize));
+                assertEquals(a.substring(3 * blockSize), aRead.substring(3 * blockSize, a.length()));
+            }
+            int bStartAfter = entryOperator.findEntryInDirectory(DiskManager.ROOT_DIR_POS, "b.tx", EntryAttribute.NORMAL_FILE.getValue()).getStartNum();
+            assertNotEquals(bStart, bStartAfter);
+            assertFalse(fileSystem.typeFile("/b.tx").startsWith("ERROR"));
+        } finally {
+            fileSystem.close();
+        }
+
+        fileSystem = new FileSystem(config);
+        try {
+            assertFalse(fileSystem.typeFile("/dd/a.tx").startsWith("ERROR"));
+            assertTrue(fileSystem.getDiskManager().isBlockBad(middle));
+        } finally {
+            fileSystem.close();
+        }
+    }
+
+    @Test
+    public void relocateWithChecksums() throws Exception {
+        relocate(true, MountMode.CHANNEL);
+    }
+
+    @Test
+    public void relocateWithChecksumsOnMappedDisk() throws Exception {
+        relocate(true, MountMode.MAPPED);
+    }
+
+    @Test
+    public void relocateMarkedBadBlocks() throws Exception {
+        relocate(false, MountMode.CHANNEL);
+    }
+
+    // 巡检线程可能正在等待全局写锁搬迁坏块，卸载不能因此卡住，也不能关闭正在使用的通道
+    @Test(timeout = 60_000)
+    public void closeWhileScrubbing() {
+        for (int round = 0; round < 10; round++) {
+            DiskConfig config = new DiskConfig(new File(folder.getRoot(), "disk" + round + ".dat"), MountMode.CHANNEL);
+            config.setGeometry(512, 128);
+            FileSystem fileSystem = new FileSystem(config);
+            for (int i = 0; i < 6; i++) {
+                fileSystem.createFile("/f" + i + ".tx", EntryAttribute.NORMAL_FILE.getValue());
+                fileSystem.writeFile("/f" + i + ".tx", "hello world".getBytes(), 11, true);
+                fileSystem.closeFile("/f" + i + ".tx");
+            }
+            for (int i = 0; i < 5; i++) fileSystem.crippleBlock();
+            fileSystem.startScrubber(1_000_000);
+            fileSystem.close();
+        }
+    }
+}
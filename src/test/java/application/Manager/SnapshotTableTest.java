@@ -0,0 +1,121 @@
+package application.Manager;
+
+import application.Entity.DiskConfig;
+import application.Enum.EntryAttribute;
+import application.Enum.MountMode;
+import application.Service.FileSystem;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 只读快照：创建时不占用块，之后的修改不影响快照，卸载重新挂载后快照仍在，删除快照回收空间
+ */
+public class SnapshotTableTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static String text(int length, char first) {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < length; i++) builder.append((char) ('a' + (first + i) % 26));
+        return builder.toString();
+    }
+
+    private static void write(FileSystem fileSystem, String path, String content) {
+        fileSystem.writeFile(path, content.getBytes(), content.length(), true);
+        fileSystem.closeFile(path);
+    }
+
+    private DiskConfig config(MountMode mountMode, int journalBlocks) {
+        DiskConfig config = new DiskConfig(new File(folder.getRoot(), "disk.dat"), mountMode);
+        config.setGeometry(512, 128);
+        if (journalBlocks >= 0) config.setJournalBlocks(journalBlocks);
+        return config;
+    }
+
+    private void snapshots(MountMode mountMode, int journalBlocks) {
+        byte normal = EntryAttribute.NORMAL_FILE.getValue();
+        FileSystem fileSystem = new FileSystem(config(mountMode, journalBlocks));
+        String a1 = text(700, 'a');
+        String b1 = text(300, 'A');
+        String a2 = text(900, 'k');
+        String a3 = text(1000, 'q');
+        int used;
+        try {
+            fileSystem.createDir("/d", EntryAttribute.DIRECTORY.getValue());
+            fileSystem.createFile("/d/a.tx", normal);
+            write(fileSystem, "/d/a.tx", a1);
+            fileSystem.createFile("/b.tx", normal);
+            write(fileSystem, "/b.tx", b1);
+            DiskManager disk = fileSystem.getDiskManager();
+            used = disk.getUsedBlockCount();
+            assertEquals("1", fileSystem.createSnapshot("s1"));
+            assertEquals(used, disk.getUsedBlockCount());
+
+            write(fileSystem, "/d/a.tx", a2);
+            fileSystem.deleteFile("/b.tx");
+            assertEquals(a2, fileSystem.typeFile("/d/a.tx"));
+            FileSystem s1 = fileSystem.openSnapshot("s1");
+            assertEquals(a1, s1.typeFile("/d/a.tx"));
+            assertEquals(b1, s1.typeFile("/b.tx"));
+            assertNotEquals("1", s1.createFile("/z.tx", normal));
+            assertTrue(s1.getDiskManager().isReadOnly());
+
+            assertEquals("1", fileSystem.createSnapshot("s2"));
+            write(fileSystem, "/d/a.tx", a3);
+        } finally {
+            fileSystem.close();
+        }
+
+        int usedWithSnapshots;
+        int snapshotBlocks;
+        fileSystem = new FileSystem(config(mountMode, journalBlocks));
+        try {
+            DiskManager disk = fileSystem.getDiskManager();
+            usedWithSnapshots = disk.getUsedBlockCount();
+            snapshotBlocks = disk.getSnapshotBlockCount();
+            assertTrue(snapshotBlocks > 0);
+            assertEquals(a3, fileSystem.typeFile("/d/a.tx"));
+            assertEquals(a1, fileSystem.openSnapshot("s1").typeFile("/d/a.tx"));
+            assertEquals(a2, fileSystem.openSnapshot("s2").typeFile("/d/a.tx"));
+            assertEquals(b1, fileSystem.openSnapshot("s1").typeFile("/b.tx"));
+            // 删除较新的快照，较早的快照不受影响
+            assertEquals("1", fileSystem.deleteSnapshot("s2"));
+            assertEquals(a1, fileSystem.openSnapshot("s1").typeFile("/d/a.tx"));
+            assertEquals("1", fileSystem.deleteSnapshot("s1"));
+        } finally {
+            fileSystem.close();
+        }
+
+        fileSystem = new FileSystem(config(mountMode, journalBlocks));
+        try {
+            DiskManager disk = fileSystem.getDiskManager();
+            assertTrue(disk.getSnapshots().isEmpty());
+            assertEquals(0, disk.getSnapshotBlockCount());
+            assertEquals(usedWithSnapshots - snapshotBlocks, disk.getUsedBlockCount());
+        } finally {
+            fileSystem.close();
+        }
+    }
+
+    @Test
+    public void snapshotsWithJournal() {
+        snapshots(MountMode.CHANNEL, -1);
+    }
+
+    @Test
+    public void snapshotsWithoutJournal() {
+        snapshots(MountMode.CHANNEL, 0);
+    }
+
+    @Test
+    public void snapshotsOnMappedDisk() {
+        snapshots(MountMode.MAPPED, -1);
+    }
+}
@@ -0,0 +1,76 @@
+package application.Service;
+
+import application.Entity.DiskConfig;
+import application.Enum.EntryAttribute;
+import application.Enum.MountMode;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 压缩文件：占用块数明显少于普通文件，追加、顺序读取、改属性和重新挂载后内容不变
+ */
+public class CompressionTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static final byte COMPRESSED = (byte) (EntryAttribute.NORMAL_FILE.getValue() | EntryAttribute.COMPRESSED.getValue());
+
+    private static void write(FileSystem fileSystem, String path, String content, boolean overwrite) {
+        fileSystem.writeFile(path, content.getBytes(), content.length(), overwrite);
+        fileSystem.closeFile(path);
+    }
+
+    @Test
+    public void compressedFileRoundTrip() throws Exception {
+        DiskConfig config = new DiskConfig(new File(folder.getRoot(), "disk.dat"), MountMode.CHANNEL);
+        config.setGeometry(4096, 512);
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; builder.length() < 200_000; i++) {
+            builder.append("line ").append(i % 97).append(" the quick brown fox # jumps\u007f over\n");
+        }
+        String text = builder.toString();
+        String plain = text.replace("#", "");
+        FileSystem fileSystem = new FileSystem(config);
+        try {
+            fileSystem.createFile("/z.tx", COMPRESSED);
+            write(fileSystem, "/z.tx", text, true);
+            fileSystem.createFile("/p.tx", EntryAttribute.NORMAL_FILE.getValue());
+            write(fileSystem, "/p.tx", plain, true);
+            int compressedBlocks = Integer.parseInt(fileSystem.getFileInfo("/z.tx")[5]);
+            int plainBlocks = Integer.parseInt(fileSystem.getFileInfo("/p.tx")[5]);
+            assertTrue(compressedBlocks * 10 < plainBlocks);
+            assertEquals(text, fileSystem.typeFile("/z.tx"));
+
+            write(fileSystem, "/z.tx", "tail-1 ", false);
+            write(fileSystem, "/z.tx", "tail-2", false);
+            assertEquals(text + "tail-1 tail-2", fileSystem.typeFile("/z.tx"));
+
+            assertEquals(text.substring(0, 100).trim(), fileSystem.readFile("/z.tx", 100));
+            fileSystem.closeFile("/z.tx");
+            assertEquals(text.substring(0, 70_000).trim(), fileSystem.readFile("/z.tx", 70_000));
+            fileSystem.closeFile("/z.tx");
+            assertEquals("1", fileSystem.changeFileAttribute("/z.tx", EntryAttribute.READ_ONLY.getValue()));
+        } finally {
+            fileSystem.close();
+        }
+
+        fileSystem = new FileSystem(config);
+        try {
+            assertEquals(text + "tail-1 tail-2", fileSystem.typeFile("/z.tx"));
+            // 压缩不划算的小文件按原样存储，覆盖为更短的内容
+            fileSystem.createFile("/s.tx", COMPRESSED);
+            write(fileSystem, "/s.tx", "ab#\u007fc", true);
+            assertEquals("ab#\u007fc", fileSystem.typeFile("/s.tx"));
+            write(fileSystem, "/s.tx", "xy", true);
+            assertEquals("xy", fileSystem.typeFile("/s.tx"));
+        } finally {
+            fileSystem.close();
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package application.Service;
+
+import application.Entity.DefragReport;
+import application.Entity.DiskConfig;
+import application.Enum.AllocationPolicy;
+import application.Enum.DurabilityMode;
+import application.Enum.EntryAttribute;
+import application.Enum.MountMode;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 在线碎片整理：搬迁后文件内容不变，卸载重新挂载后也不变
+ */
+public class DefragmenterTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static String text(int length) {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < length; i++) builder.append((char) ('a' + i % 26));
+        return builder.toString();
+    }
+
+    // 删除目录释放的块被整理时的新位置使用；不刷盘的模式下删除目录和整理之间没有刷盘，
+    // 整理写入的块之前是目录块，写入不能被日志中的目录内容覆盖
+    private void defragmentAfterRemoveDir(DurabilityMode mode) throws Exception {
+        String content = text(600);
+        DiskConfig config = new DiskConfig(new File(folder.getRoot(), "disk.dat"), MountMode.CHANNEL);
+        config.setAllocationPolicy(AllocationPolicy.FIRST_FIT);
+        config.setDurability(mode, 60_000);
+        FileSystem fileSystem = new FileSystem(config);
+        DefragReport report;
+        try {
+            fileSystem.createFile("/a.tx", EntryAttribute.NORMAL_FILE.getValue());
+            fileSystem.closeFile("/a.tx");
+            for (int i = 0; i < 6; i++) fileSystem.createDir("/d" + i, EntryAttribute.DIRECTORY.getValue());
+            fileSystem.createFile("/b.tx", EntryAttribute.NORMAL_FILE.getValue());
+            fileSystem.closeFile("/b.tx");
+            // 重写后/a.tx的链跨过目录块，不连续
+            fileSystem.writeFile("/a.tx", content.getBytes(), content.length(), true);
+            fileSystem.closeFile("/a.tx");
+            for (int i = 0; i < 6; i++) fileSystem.removeDir("/d" + i);
+            report = fileSystem.defragment(0);
+            assertEquals(content, fileSystem.typeFile("/a.tx"));
+        } finally {
+            fileSystem.close();
+        }
+        assertTrue(report.getFilesMoved() > 0);
+        fileSystem = new FileSystem(config);
+        try {
+            assertEquals(content, fileSystem.typeFile("/a.tx"));
+        } finally {
+            fileSystem.close();
+        }
+    }
+
+    @Test
+    public void defragmentAfterRemoveDirWithoutSync() throws Exception {
+        defragmentAfterRemoveDir(DurabilityMode.NONE);
+    }
+
+    @Test
+    public void defragmentAfterRemoveDirPeriodic() throws Exception {
+        defragmentAfterRemoveDir(DurabilityMode.PERIODIC);
+    }
+
+    @Test
+    public void defragmentMakesChainsContiguous() throws Exception {
+        DiskConfig config = new DiskConfig(new File(folder.getRoot(), "disk.dat"), MountMode.CHANNEL);
+        config.setGeometry(1024, 128);
+        FileSystem fileSystem = new FileSystem(config);
+        try {
+            String[] contents = new String[4];
+            for (int i = 0; i < contents.length; i++) {
+                fileSystem.createFile("/f" + i + ".tx", EntryAttribute.NORMAL_FILE.getValue());
+                fileSystem.closeFile("/f" + i + ".tx");
+            }
+            // 轮流追加，各文件的块交错排列
+            for (int round = 0; round < 5; round++) {
+                for (int i = 0; i < contents.length; i++) {
+                    String chunk = text(100 + i);
+                    fileSystem.writeFile("/f" + i + ".tx", chunk.getBytes(), chunk.length(), false);
+                    fileSystem.closeFile("/f" + i + ".tx");
+                    contents[i] = contents[i] == null ? chunk : contents[i] + chunk;
+                }
+            }
+            DefragReport report = fileSystem.defragment(0);
+            assertTrue(report.isPassComplete());
+            assertTrue(report.getFilesMoved() > 0);
+            assertEquals(0, report.getAfter().getBrokenLinks());
+            for (int i = 0; i < contents.length; i++) {
+                assertEquals(contents[i], fileSystem.typeFile("/f" + i + ".tx"));
+            }
+        } finally {
+            fileSystem.close();
+        }
+    }
+}